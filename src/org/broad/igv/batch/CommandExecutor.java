@@ -33,8 +33,10 @@ package org.broad.igv.batch;
 import org.apache.log4j.Logger;
 import org.broad.igv.Globals;
 import org.broad.igv.dev.api.batch.Command;
+import org.broad.igv.feature.AbstractCacher;
 import org.broad.igv.feature.Locus;
 import org.broad.igv.feature.RegionOfInterest;
+import org.broad.igv.feature.genome.Genome;
 import org.broad.igv.feature.genome.GenomeManager;
 import org.broad.igv.ga4gh.Ga4ghAPIHelper;
 import org.broad.igv.ga4gh.OAuthUtils;
@@ -53,6 +55,7 @@ import org.broad.igv.ui.util.MessageUtils;
 import org.broad.igv.ui.util.SnapshotUtilities;
 import org.broad.igv.ui.util.UIUtilities;
 import org.broad.igv.util.*;
+import org.broad.igv.util.stream.MappedSeekableStream;
 
 import java.awt.*;
 import java.io.File;
@@ -190,6 +193,10 @@ public class CommandExecutor {
                     return this.overridePreference(param1, param2);
                 } else if (cmd.equalsIgnoreCase("version")) {
                     return Globals.VERSION;
+                } else if (cmd.equalsIgnoreCase("cacheStats")) {
+                    return this.cacheStats();
+                } else if (cmd.equalsIgnoreCase("loadStats")) {
+                    return LoadScheduler.getInstance().toString();
                 } else if (cmd.equals("exit")) {
                     System.exit(0);
                 } else if (cmd.equals("zoomin")) {
@@ -356,6 +363,18 @@ public class CommandExecutor {
     }
 
 
+    /**
+     * Return hit and miss counts, and sizes, of the data caches, and the size of memory mapped files.
+     */
+    private String cacheStats() {
+        Genome genome = GenomeManager.getInstance().getCurrentGenome();
+        String sequenceStats = genome == null ? null : genome.getSequenceCacheStatistics();
+        return "sequence: " + (sequenceStats == null ? "none" : sequenceStats) +
+                "; features: " + AbstractCacher.getTotalStatistics() +
+                "; mapped: streams=" + MappedSeekableStream.getOpenCount() + " bytes=" + MappedSeekableStream.getMappedBytes();
+    }
+
+
     private String genome(String param1) {
         if (param1 == null) {
             return "ERROR missing genome parameter";
@@ -0,0 +1,114 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.bbfile;
+
+import htsjdk.samtools.seekablestream.SeekableStream;
+import org.broad.igv.util.CompressionUtils;
+import org.broad.igv.util.collections.LRUCache;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads and decompresses the data blocks referenced by R+ tree leaf items, keeping the most recently used
+ * decompressed blocks keyed by file offset.
+ * <p/>
+ * The file stream is shared by all queries on a BBFileReader, so each seek and read is done while holding the
+ * stream's monitor; the R+ tree reads its nodes under the same lock.  Decompression is done outside the lock with
+ * a per-thread {@link CompressionUtils}, so concurrent queries only contend for the raw reads.  Returned buffers are
+ * shared between callers and must not be modified.
+ */
+public class BBDataBlockCache {
+
+    public static final int DEFAULT_CACHE_SIZE = 256;
+
+    private final SeekableStream fis;
+    private final int uncompressBufSize;    // decompression buffer size; 0 for uncompressed data
+    private final LRUCache<Long, byte[]> blockCache;
+    private final ThreadLocal<CompressionUtils> compressionUtils = ThreadLocal.withInitial(CompressionUtils::new);
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * @param fis               file input stream handle
+     * @param uncompressBufSize byte size for decompression buffer (BBFile Table C); 0 for uncompressed data
+     * @param cacheSize         maximum number of decompressed blocks retained
+     */
+    public BBDataBlockCache(SeekableStream fis, int uncompressBufSize, int cacheSize) {
+        this.fis = fis;
+        this.uncompressBufSize = uncompressBufSize;
+        this.blockCache = new LRUCache<>(cacheSize);
+    }
+
+    public SeekableStream getStream() {
+        return fis;
+    }
+
+    /**
+     * Return the decompressed data block referenced by a leaf item, reading it if not cached.
+     *
+     * @param leafItem R+ tree leaf item with the data block file location
+     * @return the decompressed block, shared and read-only
+     */
+    public byte[] getDataBlock(RPTreeLeafNodeItem leafItem) throws IOException {
+
+        Long fileOffset = leafItem.getDataOffset();
+        byte[] block = blockCache.get(fileOffset);
+        if (block != null) {
+            hitCount.incrementAndGet();
+            return block;
+        }
+        missCount.incrementAndGet();
+
+        byte[] buffer = new byte[(int) leafItem.geDataSize()];
+        synchronized (fis) {
+            fis.seek(fileOffset);
+            fis.readFully(buffer);
+        }
+
+        // decompress if necessary - the buffer size is 0 for uncompressed data
+        block = uncompressBufSize > 0 ?
+                compressionUtils.get().decompress(buffer, uncompressBufSize) :
+                buffer;
+
+        // Concurrent misses on the same block decompress it twice, the last one wins.  Both results are identical.
+        blockCache.put(fileOffset, block);
+        return block;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public void clear() {
+        blockCache.clear();
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.bbfile;
+
+import htsjdk.samtools.seekablestream.SeekableStream;
+import org.apache.log4j.Logger;
+import org.broad.igv.DirectoryManager;
+import org.broad.igv.util.FileUtils;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * The chromosome B+ tree and the chromosome data R+ tree of a BBFile, read in bulk.
+ * <p/>
+ * The B+ tree (Tables E, F, G, H) lies between its header and the data section, and is read in a single request.
+ * The R+ tree is read one level per request into a {@link RPTreeLeafIndex}.  Queries then need no index I/O at all.
+ * R+ trees larger than {@link #MAX_LOCAL_DATA_TREE_SIZE}, or {@link #MAX_REMOTE_DATA_TREE_SIZE} for a remote file,
+ * are not indexed, they are read node by node as queried.
+ * <p/>
+ * The index of a local file can be saved to a sidecar file and reused by later sessions, next to the file
+ * (<i>path</i>.bbindex) if its directory is writable, else in the IGV cache directory.  A sidecar is used only if
+ * the file's length, modification time and section offsets are unchanged.  Remote files have no sidecar, as
+ * there is no reliable modification time to tell a replaced file of the same layout.
+ */
+public class BBFileIndex {
+
+    private static Logger log = Logger.getLogger(BBFileIndex.class);
+
+    public static final String SIDECAR_EXTENSION = ".bbindex";
+
+    static final int SIDECAR_MAGIC = 0x42424958;    // "BBIX"
+    static final int SIDECAR_VERSION = 2;
+
+    // Largest B+ tree read at once, larger trees are read node by node
+    static final int MAX_CHROMOSOME_TREE_SIZE = 64 * 1024 * 1024;
+
+    // Largest R+ trees read in bulk, larger trees are read node by node as queried
+    static final long MAX_LOCAL_DATA_TREE_SIZE = 64 * 1024 * 1024;
+    static final long MAX_REMOTE_DATA_TREE_SIZE = 4 * 1024 * 1024;
+
+    private final String path;
+    private final long fileLength;
+    private final long lastModified;
+    private final long chromosomeTreeOffset;
+    private final long fullDataOffset;
+    private final long fullIndexOffset;
+
+    private final byte[] chromosomeTreeBytes;    // null if the tree is read node by node
+    private final RPTreeLeafIndex leafIndex;     // null if the tree is read node by node
+
+    private BBFileIndex(String path, long fileLength, long lastModified, long chromosomeTreeOffset,
+                        long fullDataOffset, long fullIndexOffset, byte[] chromosomeTreeBytes,
+                        RPTreeLeafIndex leafIndex) {
+        this.path = path;
+        this.fileLength = fileLength;
+        this.lastModified = lastModified;
+        this.chromosomeTreeOffset = chromosomeTreeOffset;
+        this.fullDataOffset = fullDataOffset;
+        this.fullIndexOffset = fullIndexOffset;
+        this.chromosomeTreeBytes = chromosomeTreeBytes;
+        this.leafIndex = leafIndex;
+    }
+
+    /**
+     * Read the index of a BBFile.
+     *
+     * @param fis        file input stream handle
+     * @param fileHeader the file header (Table C)
+     */
+    public static BBFileIndex read(SeekableStream fis, BBFileHeader fileHeader) throws IOException {
+        return read(fis, fileHeader, FileUtils.isRemote(fileHeader.getPath()) ?
+                MAX_REMOTE_DATA_TREE_SIZE : MAX_LOCAL_DATA_TREE_SIZE);
+    }
+
+    /**
+     * @param maxDataTreeSize largest R+ tree to read in bulk
+     */
+    static BBFileIndex read(SeekableStream fis, BBFileHeader fileHeader, long maxDataTreeSize) throws IOException {
+
+        String path = fileHeader.getPath();
+        long chromosomeTreeOffset = fileHeader.getChromosomeTreeOffset();
+        long fullDataOffset = fileHeader.getFullDataOffset();
+        long fullIndexOffset = fileHeader.getFullIndexOffset();
+
+        byte[] chromosomeTreeBytes = null;
+        long treeSize = fullDataOffset - chromosomeTreeOffset;
+        if (chromosomeTreeOffset > 0 && treeSize > 0 && treeSize <= MAX_CHROMOSOME_TREE_SIZE) {
+            chromosomeTreeBytes = new byte[(int) treeSize];
+            synchronized (fis) {
+                fis.seek(chromosomeTreeOffset);
+                fis.readFully(chromosomeTreeBytes);
+            }
+        }
+
+        RPTreeLeafIndex leafIndex = RPTreeLeafIndex.read(fis, fullIndexOffset, fileHeader.isLowToHigh(), maxDataTreeSize);
+        if (leafIndex == null) {
+            log.debug("R+ tree too large to read in bulk, reading nodes as queried: " + path);
+        }
+
+        return new BBFileIndex(path, fis.length(), getLastModified(path), chromosomeTreeOffset,
+                fullDataOffset, fullIndexOffset, chromosomeTreeBytes, leafIndex);
+    }
+
+    /**
+     * Return the index saved in the sidecar file for the BBFile, or null if there is none or it is out of date.
+     */
+    public static BBFileIndex readSidecar(File sidecar, SeekableStream fis, BBFileHeader fileHeader) {
+
+        if (sidecar == null || !sidecar.exists() || FileUtils.isRemote(fileHeader.getPath())) {
+            return null;
+        }
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(sidecar)))) {
+            if (dis.readInt() != SIDECAR_MAGIC || dis.readInt() != SIDECAR_VERSION) {
+                return null;
+            }
+            String path = dis.readUTF();
+            long fileLength = dis.readLong();
+            long lastModified = dis.readLong();
+            long chromosomeTreeOffset = dis.readLong();
+            long fullDataOffset = dis.readLong();
+            long fullIndexOffset = dis.readLong();
+            if (!path.equals(fileHeader.getPath()) ||
+                    fileLength != fis.length() ||
+                    lastModified != getLastModified(path) ||
+                    chromosomeTreeOffset != fileHeader.getChromosomeTreeOffset() ||
+                    fullDataOffset != fileHeader.getFullDataOffset() ||
+                    fullIndexOffset != fileHeader.getFullIndexOffset()) {
+                return null;
+            }
+            int treeSize = dis.readInt();
+            byte[] chromosomeTreeBytes = null;
+            if (treeSize >= 0) {
+                chromosomeTreeBytes = new byte[treeSize];
+                dis.readFully(chromosomeTreeBytes);
+            }
+            RPTreeLeafIndex leafIndex = dis.readBoolean() ? RPTreeLeafIndex.read(dis) : null;
+            return new BBFileIndex(path, fileLength, lastModified, chromosomeTreeOffset, fullDataOffset,
+                    fullIndexOffset, chromosomeTreeBytes, leafIndex);
+        } catch (IOException e) {
+            log.error("Error reading index sidecar: " + sidecar.getAbsolutePath(), e);
+            return null;
+        }
+    }
+
+    public void writeSidecar(File sidecar) throws IOException {
+
+        // Write to a temporary file first, so a concurrent reader never sees a partial index
+        File tmp = File.createTempFile("bbindex", ".tmp", sidecar.getAbsoluteFile().getParentFile());
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            dos.writeInt(SIDECAR_MAGIC);
+            dos.writeInt(SIDECAR_VERSION);
+            dos.writeUTF(path);
+            dos.writeLong(fileLength);
+            dos.writeLong(lastModified);
+            dos.writeLong(chromosomeTreeOffset);
+            dos.writeLong(fullDataOffset);
+            dos.writeLong(fullIndexOffset);
+            if (chromosomeTreeBytes == null) {
+                dos.writeInt(-1);
+            } else {
+                dos.writeInt(chromosomeTreeBytes.length);
+                dos.write(chromosomeTreeBytes);
+            }
+            dos.writeBoolean(leafIndex != null);
+            if (leafIndex != null) {
+                leafIndex.write(dos);
+            }
+        } catch (IOException e) {
+            tmp.delete();
+            throw e;
+        }
+        Files.move(tmp.toPath(), sidecar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Return the sidecar file for a local BBFile: next to the file if its directory is writable, else in the
+     * IGV cache directory.  Returns null for a remote file, or if neither directory is available.
+     */
+    public static File getSidecarFile(String path) {
+        if (FileUtils.isRemote(path)) {
+            return null;
+        }
+        File dir = new File(path).getAbsoluteFile().getParentFile();
+        if (dir != null && dir.canWrite()) {
+            return new File(path + SIDECAR_EXTENSION);
+        }
+        File cacheDirectory = DirectoryManager.getCacheDirectory();
+        if (cacheDirectory == null) {
+            return null;
+        }
+        File indexDirectory = new File(cacheDirectory, "bbindex");
+        if (!indexDirectory.exists() && !indexDirectory.mkdir()) {
+            return null;
+        }
+        // The full path is stored in the sidecar and verified when it is read, so collisions are harmless
+        return new File(indexDirectory, Integer.toHexString(path.hashCode()) + SIDECAR_EXTENSION);
+    }
+
+    private static long getLastModified(String path) {
+        // Remote indexes are never saved, so the value is not compared
+        return FileUtils.isRemote(path) ? 0 : new File(path).lastModified();
+    }
+
+    /**
+     * Construct the chromosome B+ tree, from memory if it was read in bulk.
+     */
+    public BPTree getChromosomeIDTree(SeekableStream fis, boolean isLowToHigh) {
+        SeekableStream treeStream = chromosomeTreeBytes == null ? fis :
+                new ByteRangeSeekableStream(path, chromosomeTreeOffset, chromosomeTreeBytes);
+        return new BPTree(treeStream, chromosomeTreeOffset, isLowToHigh);
+    }
+
+    /**
+     * Construct the chromosome data R+ tree, answering queries from the leaf index.  Returns null if the tree
+     * was too large to index.
+     */
+    public RPTree getChromosomeDataTree(SeekableStream fis, boolean isLowToHigh, int uncompressBufSize) {
+        return leafIndex == null ? null : new RPTree(fis, fullIndexOffset, isLowToHigh, uncompressBufSize, leafIndex);
+    }
+
+    /**
+     * @return the leaf index of the R+ tree, or null if the tree was too large to index
+     */
+    public RPTreeLeafIndex getLeafIndex() {
+        return leafIndex;
+    }
+}
@@ -27,10 +27,13 @@ package org.broad.igv.bbfile;
 
 import htsjdk.samtools.seekablestream.SeekableStream;
 import org.apache.log4j.Logger;
-import org.broad.igv.util.stream.IGVSeekableBufferedStream;
+import org.broad.igv.prefs.Constants;
+import org.broad.igv.prefs.IGVPreferences;
+import org.broad.igv.prefs.PreferencesManager;
 import org.broad.igv.util.stream.IGVSeekableStreamFactory;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -121,12 +124,25 @@ public class BBFileReader {
     private RPTree chromosomeDataTree;     // Container for the mChromosome data R+ tree
     private String autoSql;
 
+    // Decompressed data blocks, shared by all iterators
+    private BBDataBlockCache blockCache;
+
 
     public BBFileReader(String path) throws IOException {
+        this(path, PreferencesManager.getPreferences().getAsBoolean(Constants.BB_BULK_INDEX), getSidecarFile(path));
+    }
+
+    /**
+     * @param path      file path or url
+     * @param bulkIndex read the chromosome B+ tree and the R+ tree in bulk, and answer queries from a leaf index
+     * @param sidecar   file to load the index from, or save it to, if bulkIndex is true.  May be null.
+     */
+    BBFileReader(String path, boolean bulkIndex, File sidecar) throws IOException {
 
         log.debug("Opening BBFile source  " + path);
 
-        fis = new IGVSeekableBufferedStream(IGVSeekableStreamFactory.getInstance().getStreamFor(path), 128000);
+        IGVSeekableStreamFactory streamFactory = IGVSeekableStreamFactory.getInstance();
+        fis = streamFactory.getBufferedStream(streamFactory.getStreamFor(path), 128000);
 
         // read in file header
         fileOffset = BBFILE_HEADER_OFFSET;
@@ -141,6 +157,7 @@ public class BBFileReader {
         // get data characteristics
         isLowToHigh = fileHeader.isLowToHigh();
         uncompressBufSize = fileHeader.getUncompressBuffSize();
+        blockCache = new BBDataBlockCache(fis, uncompressBufSize, BBDataBlockCache.DEFAULT_CACHE_SIZE);
 
         // update file offset past BBFile header
         fileOffset += BBFileHeader.BBFILE_HEADER_SIZE;
@@ -174,14 +191,28 @@ public class BBFileReader {
 
         // get Chromosome Data B+ Tree (Table E, F, G, H) : should always exist
         chromIDTreeOffset = fileHeader.getChromosomeTreeOffset();
-        if (chromIDTreeOffset != 0) {
+        chromDataTreeOffset = fileHeader.getFullIndexOffset();
+        BBFileIndex index = bulkIndex && chromIDTreeOffset != 0 && chromDataTreeOffset != 0 ?
+                loadIndex(sidecar) : null;
+
+        if (index != null) {
+            try {
+                chromosomeIDTree = index.getChromosomeIDTree(fis, isLowToHigh);
+                chromosomeDataTree = index.getChromosomeDataTree(fis, isLowToHigh, uncompressBufSize);
+            } catch (RuntimeException e) {
+                log.warn("Error constructing trees from BBFile index, reading tree nodes individually: " + path, e);
+                chromosomeIDTree = null;
+                chromosomeDataTree = null;
+            }
+        }
+
+        if (chromIDTreeOffset != 0 && chromosomeIDTree == null) {
             fileOffset = chromIDTreeOffset;
             chromosomeIDTree = new BPTree(fis, fileOffset, isLowToHigh);
         }
 
         // get R+ chromosome data location tree (Tables K, L, M, N)
-        chromDataTreeOffset = fileHeader.getFullIndexOffset();
-        if (chromDataTreeOffset != 0) {
+        if (chromDataTreeOffset != 0 && chromosomeDataTree == null) {
             fileOffset = chromDataTreeOffset;
             boolean forceDescend = false;
             chromosomeDataTree = new RPTree(fis, fileOffset, isLowToHigh, uncompressBufSize, forceDescend);
@@ -194,7 +225,50 @@ public class BBFileReader {
 
 
 
+    /*
+    *   Method returns the index sidecar file for the path if sidecars are enabled; else null.
+    * */
+
+    private static File getSidecarFile(String path) {
+        IGVPreferences prefs = PreferencesManager.getPreferences();
+        return prefs.getAsBoolean(Constants.BB_BULK_INDEX) && prefs.getAsBoolean(Constants.BB_INDEX_SIDECAR) ?
+                BBFileIndex.getSidecarFile(path) : null;
+    }
+
+    /*
+    *   Method loads the B+ and R+ tree index from the sidecar file if it is current, else reads it in bulk
+    *   and saves it to the sidecar.
+    *
+    *   Returns:
+    *       The index, or null if it could not be read in bulk.  The trees are then read node by node.
+    * */
+
+    private BBFileIndex loadIndex(File sidecar) {
+
+        BBFileIndex index = BBFileIndex.readSidecar(sidecar, fis, fileHeader);
+        if (index != null) {
+            return index;
+        }
+
+        try {
+            index = BBFileIndex.read(fis, fileHeader);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Error reading BBFile index in bulk, reading tree nodes individually: " + fileHeader.getPath(), e);
+            return null;
+        }
+
+        if (sidecar != null) {
+            try {
+                index.writeSidecar(sidecar);
+            } catch (IOException e) {
+                log.error("Error writing BBFile index sidecar: " + sidecar.getAbsolutePath(), e);
+            }
+        }
+        return index;
+    }
+
     public void close() {
+        blockCache.clear();
         try {
             fis.close();
         } catch (IOException e) {
@@ -277,6 +351,28 @@ public class BBFileReader {
         return zoomLevels;
     }
 
+    /*
+    *   Method returns the R+ chromosome data location tree.
+    *
+    *   Returns:
+    *       R+ tree locating the data blocks of chromosome regions (Tables K, L, M, N)
+    * */
+
+    public RPTree getChromosomeDataTree() {
+        return chromosomeDataTree;
+    }
+
+    /*
+    *   Method returns the cache of decompressed data blocks shared by the iterators.
+    *
+    *   Returns:
+    *       Data block cache for the Big Binary File
+    * */
+
+    public BBDataBlockCache getDataBlockCache() {
+        return blockCache;
+    }
+
 
     /*
     *   Method finds chromosome names in the B+ chromosome index tree.
@@ -314,8 +410,8 @@ public class BBFileReader {
      * 1) An empty iterator is returned if region has no data available
      * 2) A null object is returned if the file is not BigBed.(see isBigBedFile method)
      */
-    synchronized public BigBedIterator getBigBedIterator(String startChromosome, int startBase,
-                                                         String endChromosome, int endBase, boolean contained) {
+    public BigBedIterator getBigBedIterator(String startChromosome, int startBase,
+                                            String endChromosome, int endBase, boolean contained) {
 
         if (!isBigBedFile())
             return null;
@@ -330,7 +426,7 @@ public class BBFileReader {
             return new BigBedIterator();  // an empty iterator
 
         // compose an iterator
-        BigBedIterator bedIterator = new BigBedIterator(fis, chromosomeIDTree, chromosomeDataTree,
+        BigBedIterator bedIterator = new BigBedIterator(blockCache, chromosomeIDTree, chromosomeDataTree,
                 selectionRegion, contained);
 
         return bedIterator;
@@ -356,8 +452,8 @@ public class BBFileReader {
      * 1) An empty iterator is returned if region has no data available
      * 2) A null object is returned if the file is not BigWig.(see isBigWigFile method)
      */
-    synchronized public BigWigIterator getBigWigIterator(String startChromosome, int startBase,
-                                                         String endChromosome, int endBase, boolean contained) {
+    public BigWigIterator getBigWigIterator(String startChromosome, int startBase,
+                                            String endChromosome, int endBase, boolean contained) {
 
 
         if (!isBigWigFile())
@@ -372,7 +468,7 @@ public class BBFileReader {
             return new BigWigIterator();
 
         // compose an iterator
-        BigWigIterator wigIterator = new BigWigIterator(fis, chromosomeIDTree, chromosomeDataTree,
+        BigWigIterator wigIterator = new BigWigIterator(blockCache, chromosomeIDTree, chromosomeDataTree,
                 selectionRegion, contained);
 
         return wigIterator;
@@ -398,8 +494,8 @@ public class BBFileReader {
      * Error conditions:
      * 1) An empty iterator is returned if region has no data available
      */
-    synchronized public ZoomLevelIterator getZoomLevelIterator(int zoomLevel, String startChromosome, int startBase,
-                                                               String endChromosome, int endBase, boolean contained) {
+    public ZoomLevelIterator getZoomLevelIterator(int zoomLevel, String startChromosome, int startBase,
+                                                  String endChromosome, int endBase, boolean contained) {
         // check for valid zoom level
         if (zoomLevel < 1 || zoomLevel > zoomLevelCount)
             throw new RuntimeException("Error: ZoomLevelIterator zoom level is out of range\n");
@@ -417,7 +513,7 @@ public class BBFileReader {
         }
 
         /// compose an iterator
-        ZoomLevelIterator zoomIterator = new ZoomLevelIterator(fis, chromosomeIDTree,
+        ZoomLevelIterator zoomIterator = new ZoomLevelIterator(blockCache, chromosomeIDTree,
                 zoomDataTree, zoomLevel, selectionRegion, contained);
 
         return zoomIterator;
@@ -436,7 +532,7 @@ public class BBFileReader {
      * Error conditions:
      * 1) An empty iterator is returned if region has no data available
      */
-    synchronized public ZoomLevelIterator getZoomLevelIterator(int zoomLevel) {
+    public ZoomLevelIterator getZoomLevelIterator(int zoomLevel) {
 
         // check for valid zoom level
         if (zoomLevel < 1 || zoomLevel > zoomLevelCount)
@@ -450,7 +546,7 @@ public class BBFileReader {
 
         // compose an iterator
         boolean contained = true;   //all regions are contained
-        ZoomLevelIterator zoomIterator = new ZoomLevelIterator(fis, chromosomeIDTree,
+        ZoomLevelIterator zoomIterator = new ZoomLevelIterator(blockCache, chromosomeIDTree,
                 zoomDataTree, zoomLevel, selectionRegion, contained);
 
         return zoomIterator;
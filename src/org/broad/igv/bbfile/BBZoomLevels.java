@@ -27,7 +27,7 @@ package org.broad.igv.bbfile;
 
 import htsjdk.samtools.seekablestream.SeekableStream;
 import org.apache.log4j.Logger;
-import org.broad.igv.util.stream.IGVSeekableBufferedStream;
+import org.broad.igv.util.stream.IGVSeekableStreamFactory;
 
 import java.util.ArrayList;
 
@@ -96,7 +96,7 @@ public class BBZoomLevels {
         zoomLevelsCount = zoomLevels;
 
         // We don't know the exact size of the header fields, so use a buffered stream
-        IGVSeekableBufferedStream fis = new IGVSeekableBufferedStream(is, 512000);
+        SeekableStream fis = IGVSeekableStreamFactory.getInstance().getBufferedStream(is, 512000);
         
         // Note: a bad zoom header will result in a 0 count returned
         zoomHeadersRead =  readZoomHeaders(fis, zoomHeadersOffset, zoomLevels, isLowToHigh);
@@ -25,7 +25,6 @@
 
 package org.broad.igv.bbfile;
 
-import htsjdk.samtools.seekablestream.SeekableStream;
 import org.apache.log4j.Logger;
 
 import java.util.*;
@@ -46,7 +45,7 @@ public class BigBedIterator implements Iterator<BedFeature> {
     private boolean contained; // if true, features must be fully contained by extraction region
 
     // File access variables for reading Bed data block
-    private SeekableStream fis;  // file input stream handle
+    private BBDataBlockCache blockCache;  // reads and caches decompressed data blocks
     private BPTree chromIDTree;    // B+ chromosome index tree
     private RPTree chromDataTree;  // R+ chromosome data location tree
 
@@ -59,7 +58,7 @@ public class BigBedIterator implements Iterator<BedFeature> {
      * Constructor for a BigBed iterator over the specified chromosome region
      * <p/>
      * Parameters:
-     * fis - file input stream handle
+     * blockCache - file data block reader and cache
      * chromIDTree - B+ index tree returns chromomosme ID's for chromosome names
      * chromDataTree - R+ chromosome data locations tree
      * selectionRegion - chromosome region for selection of Bed feature extraction
@@ -71,14 +70,14 @@ public class BigBedIterator implements Iterator<BedFeature> {
      * contained - specifies bed features must be contained by region, if true;
      * else return any intersecting region features
      */
-    public BigBedIterator(SeekableStream fis, BPTree chromIDTree, RPTree chromDataTree,
+    public BigBedIterator(BBDataBlockCache blockCache, BPTree chromIDTree, RPTree chromDataTree,
                           RPChromosomeRegion selectionRegion, boolean contained) {
 
         // check for valid selection region
         if (selectionRegion == null)
             throw new RuntimeException("Error: BigBedIterator selection region is null\n");
 
-        this.fis = fis;
+        this.blockCache = blockCache;
         this.chromIDTree = chromIDTree;
         this.chromDataTree = chromDataTree;
         this.selectionRegion = selectionRegion;
@@ -143,11 +142,9 @@ public class BigBedIterator implements Iterator<BedFeature> {
         chromosomeMap = chromIDTree.getChromosomeIDMap(startChromID, endChromID);
 
         boolean isLowToHigh = chromDataTree.isIsLowToHigh();
-        int uncompressBufSize = chromDataTree.getUncompressBuffSize();
 
         // decompress leaf item data block for feature extraction
-        BigBedDataBlock bedDataBlock = new BigBedDataBlock(fis, leafHitItem, chromosomeMap, isLowToHigh,
-                uncompressBufSize);
+        BigBedDataBlock bedDataBlock = new BigBedDataBlock(blockCache, leafHitItem, chromosomeMap, isLowToHigh);
 
         // get data block Bed feature list and set next index to first item
         return bedDataBlock.getBedData(selectionRegion, contained);
@@ -51,7 +51,7 @@ public class BigWigIterator implements Iterator<WigItem> {
     private boolean isContained;     // if true, features must be fully contained by selection region
 
     // File access variables for reading Bed data block
-    private SeekableStream fis;  // file input stream handle
+    private BBDataBlockCache blockCache;  // reads and caches decompressed data blocks
     private BPTree chromIDTree;    // B+ chromosome index tree
     private RPTree chromDataTree;  // R+ chromosome data location tree
 
@@ -74,7 +74,7 @@ public class BigWigIterator implements Iterator<WigItem> {
      * Constructor for a BigWig iterator over the specified chromosome region
      * <p/>
      * Parameters:
-     * fis - file input stream handle
+     * blockCache - file data block reader and cache
      * chromIDTree - B+ chromosome index tree provides chromosome ID's for chromosome names
      * chromDataTree - R+ chromosome data locations tree
      * selectionRegion - chromosome region for selection of Wig feature extraction
@@ -87,7 +87,7 @@ public class BigWigIterator implements Iterator<WigItem> {
      * else return any intersecting region values
      */
 
-    public BigWigIterator(SeekableStream fis, BPTree chromIDTree, RPTree chromDataTree,
+    public BigWigIterator(BBDataBlockCache blockCache, BPTree chromIDTree, RPTree chromDataTree,
                           RPChromosomeRegion selectionRegion, boolean contained) {
 
         // check for valid selection region
@@ -95,7 +95,7 @@ public class BigWigIterator implements Iterator<WigItem> {
             throw new RuntimeException("Error: BigWigIterator selection region is null\n");
 
 
-        this.fis = fis;
+        this.blockCache = blockCache;
         this.chromIDTree = chromIDTree;
         this.chromDataTree = chromDataTree;
         this.selectionRegion = new RPChromosomeRegion(selectionRegion);
@@ -245,7 +245,7 @@ public class BigWigIterator implements Iterator<WigItem> {
     * */
 
     public SeekableStream getBBFis() {
-        return fis;
+        return blockCache.getStream();
     }
 
     /*
@@ -379,11 +379,10 @@ public class BigWigIterator implements Iterator<WigItem> {
         chromosomeMap = chromIDTree.getChromosomeIDMap(startChromID, endChromID);
 
         boolean isLowToHigh = chromDataTree.isIsLowToHigh();
-        int uncompressBufSize = chromDataTree.getUncompressBuffSize();
 
         // decompress leaf item data block for feature extraction
 
-        wigDataBlock = new BigWigDataBlock(fis, leafHitItem, chromosomeMap, isLowToHigh, uncompressBufSize);
+        wigDataBlock = new BigWigDataBlock(blockCache, leafHitItem, chromosomeMap, isLowToHigh);
 
         // get section Wig item list and set next index to first item
         wigItemList = wigDataBlock.getWigData(selectionRegion, isContained);
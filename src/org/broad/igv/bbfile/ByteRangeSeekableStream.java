@@ -0,0 +1,108 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.bbfile;
+
+import htsjdk.samtools.seekablestream.SeekableStream;
+
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * A seekable stream over a range of a file held in memory.  Positions are file positions, so readers written
+ * against the file stream can parse the range unchanged.  Reads outside the range fail with an EOFException.
+ */
+class ByteRangeSeekableStream extends SeekableStream {
+
+    private final String source;
+    private final long rangeOffset;
+    private final byte[] bytes;
+    private long position;
+
+    /**
+     * @param source      file path, for messages
+     * @param rangeOffset file position of the first byte
+     * @param bytes       the bytes of the range
+     */
+    ByteRangeSeekableStream(String source, long rangeOffset, byte[] bytes) {
+        this.source = source;
+        this.rangeOffset = rangeOffset;
+        this.bytes = bytes;
+        this.position = rangeOffset;
+    }
+
+    @Override
+    public long length() {
+        return rangeOffset + bytes.length;
+    }
+
+    @Override
+    public long position() {
+        return position;
+    }
+
+    @Override
+    public void seek(long position) {
+        this.position = position;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (position < rangeOffset) {
+            throw new EOFException("Attempt to read before start of cached range of " + source + ": " + position);
+        }
+        long available = rangeOffset + bytes.length - position;
+        if (available <= 0) {
+            return -1;
+        }
+        int n = (int) Math.min(length, available);
+        System.arraycopy(bytes, (int) (position - rangeOffset), buffer, offset, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) == 1 ? b[0] & 0xff : -1;
+    }
+
+    @Override
+    public boolean eof() {
+        return position >= rangeOffset + bytes.length;
+    }
+
+    @Override
+    public String getSource() {
+        return source;
+    }
+
+    @Override
+    public void close() {
+    }
+}
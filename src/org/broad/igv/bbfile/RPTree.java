@@ -86,7 +86,9 @@ public class RPTree {
 
     // R+ tree nodal variables
     private int order;         // R+ tree order: maximum number of leaves per node
-    private RPTreeNode rootNode;  // root node for R+ tree
+    private volatile RPTreeNode rootNode;  // root node for R+ tree
+    private SeekableStream fis;   // file handle for reading the root node on demand, if indexed
+    private RPTreeLeafIndex leafIndex;   // leaf items of the tree, if indexed
     private long nodeCount;        // number of nodes defined in the R+ tree
     private long leafCount;        // number of leaves in the R+ tree
 
@@ -114,6 +116,42 @@ public class RPTree {
         this.isLowToHigh = isLowToHigh;
 
         // read in R+ tree header - verify the R+ tree info exits
+        readHeader(fis);
+
+        // populate the tree - read in the nodes
+        long nodeOffset = rpTreeOffset + rpTreeHeader.getHeaderSize();
+        RPTreeNode parentNode = null;      // parent node of the root is itself, or null
+
+        // start constructing the R+ tree - get the root node
+        rootNode = readRPTreeNode(fis, nodeOffset, isLowToHigh, forceDescend);
+    }
+
+    /*
+    *   Constructor for an R+ tree whose leaf items have been indexed.  Queries for data hits are answered
+    *   from the index; the tree nodes are only read if other searches are made.
+    *
+    *   Parameters:
+    *       fis - file input stream handle
+    *       fileOffset - location for R+ tree header
+    *       isLowToHigh - binary values are low to high if true; else high to low
+    *       uncompressBuffSize - buffer size for decompression; else 0 for uncompressed data
+    *       leafIndex - leaf items of the tree, including its header
+    * */
+
+    public RPTree(SeekableStream fis, long fileOffset, boolean isLowToHigh, int uncompressBuffSize,
+                  RPTreeLeafIndex leafIndex) {
+
+        rpTreeOffset = fileOffset;
+        this.uncompressBuffSize = uncompressBuffSize;
+        this.isLowToHigh = isLowToHigh;
+        this.fis = fis;
+        this.leafIndex = leafIndex;
+
+        readHeader(new ByteRangeSeekableStream(fis.getSource(), fileOffset, leafIndex.getHeaderBytes()));
+    }
+
+    private void readHeader(SeekableStream fis) {
+
         rpTreeHeader = new RPTreeHeader(fis, rpTreeOffset, isLowToHigh);
 
         // log error if header not found and throw exception
@@ -127,13 +165,21 @@ public class RPTree {
         order = rpTreeHeader.getBlockSize();
         chromosomeBounds = new RPChromosomeRegion(rpTreeHeader.getStartChromID(), rpTreeHeader.getStartBase(),
                 rpTreeHeader.getEndChromID(), rpTreeHeader.getEndBase());
+    }
 
-        // populate the tree - read in the nodes
-        long nodeOffset = rpTreeOffset + rpTreeHeader.getHeaderSize();
-        RPTreeNode parentNode = null;      // parent node of the root is itself, or null
+    /*
+    *   Method returns the root node, reading it if the tree was constructed from a leaf index.
+    * */
 
-        // start constructing the R+ tree - get the root node
-        rootNode = readRPTreeNode(fis, nodeOffset, isLowToHigh, forceDescend);
+    private RPTreeNode getRootNode() {
+        if (rootNode == null && fis != null) {
+            synchronized (fis) {
+                if (rootNode == null) {
+                    rootNode = readRPTreeNode(fis, rpTreeOffset + rpTreeHeader.getHeaderSize(), isLowToHigh, false);
+                }
+            }
+        }
+        return rootNode;
     }
 
     /*
@@ -246,7 +292,7 @@ public class RPTree {
         RPChromosomeRegion region;
 
         // Search the R+ tree to extract the chromosome region.
-        RPTreeNode thisNode = rootNode;
+        RPTreeNode thisNode = getRootNode();
         RPChromosomeRegion seedRegion = null;  // null until a chromosome match
 
         region = findChromosomeRegion(thisNode, startChromID, endChromID, seedRegion);
@@ -264,7 +310,7 @@ public class RPTree {
     public ArrayList<RPChromosomeRegion> getAllChromosomeRegions() {
 
         // Search the R+ tree to extract the chromosome regions
-        RPTreeNode thisNode = rootNode;
+        RPTreeNode thisNode = getRootNode();
 
         ArrayList<RPChromosomeRegion> regionList = new ArrayList<RPChromosomeRegion>();
 
@@ -315,6 +361,10 @@ public class RPTree {
         */
 
 
+        if (leafIndex != null) {
+            return leafIndex.getLeafItems(selectionRegion);
+        }
+
         findChromosomeRegionItems(rootNode, selectionRegion, leafHitItems);
 
         return leafHitItems;
@@ -335,8 +385,8 @@ public class RPTree {
         rpTreeHeader.print();
 
         // print  R+ tree node and leaf items - recursively
-        if (rootNode != null)
-            rootNode.printItems();
+        if (getRootNode() != null)
+            getRootNode().printItems();
 
     }
 
@@ -42,7 +42,7 @@ public class RPTreeChildNodeItem extends RPTreeNodeItem {
 
     private static Logger log = Logger.getLogger(RPTreeChildNodeItem.class);
 
-    private RPTreeNode childNode;  // child node assigned to node item
+    private volatile RPTreeNode childNode;  // child node assigned to node item
     private RPTreeNodeProxy childNodeProxy;
 
     /*  Constructor for child node items.
@@ -74,8 +74,13 @@ public class RPTreeChildNodeItem extends RPTreeNodeItem {
     public RPTreeNode getChildNode() {
 
         if (childNode == null) {
+            // The node is read on first use by a query, possibly concurrent with others sharing the stream
             RPTreeNodeProxy proxy = childNodeProxy;
-            childNode = RPTree.readRPTreeNode(proxy.fis, proxy.fileOffset, proxy.isLowToHigh, true);
+            synchronized (proxy.fis) {
+                if (childNode == null) {
+                    childNode = RPTree.readRPTreeNode(proxy.fis, proxy.fileOffset, proxy.isLowToHigh, true);
+                }
+            }
         }
 
         return childNode;
@@ -0,0 +1,339 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.bbfile;
+
+import htsjdk.samtools.seekablestream.SeekableStream;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * The leaf items of an R+ tree (Tables K, L, M, N) flattened into arrays sorted by start position.
+ * <p/>
+ * The tree is read one level per request: the nodes of a level are contiguous in the file, so the range spanning
+ * the child offsets of the level above is read at once and parsed in memory.  A query resolves to its leaf items by
+ * binary search with no further I/O.  Positions are compared as (chromosome ID, base) keys packed in a long.
+ */
+public class RPTreeLeafIndex {
+
+    static final int MAGIC = 0x2468ACE0;
+    static final int HEADER_SIZE = 48;
+
+    private final byte[] headerBytes;   // R+ tree header (Table K), as read from the file
+    private final int size;
+    private final long[] starts;
+    private final long[] ends;
+    private final long[] maxEnds;       // maxEnds[i] = max(ends[0..i])
+    private final long[] dataOffsets;
+    private final long[] dataSizes;
+
+    private RPTreeLeafIndex(byte[] headerBytes, int size, long[] starts, long[] ends,
+                            long[] dataOffsets, long[] dataSizes) {
+        this.headerBytes = headerBytes;
+        this.size = size;
+        this.starts = starts;
+        this.ends = ends;
+        this.dataOffsets = dataOffsets;
+        this.dataSizes = dataSizes;
+        this.maxEnds = new long[size];
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            max = Math.max(max, ends[i]);
+            maxEnds[i] = max;
+        }
+    }
+
+    /**
+     * Read the R+ tree at {@code treeOffset} and index its leaves.  Returns null, having read only the tree header
+     * and possibly its upper levels, if the tree is larger than {@code maxTreeSize}.  The tree should then be
+     * read node by node as queried.
+     *
+     * @param fis         file input stream handle
+     * @param treeOffset  file offset of the R+ tree header
+     * @param isLowToHigh byte order is low to high if true; else high to low
+     * @param maxTreeSize largest number of tree bytes to read
+     */
+    public static RPTreeLeafIndex read(SeekableStream fis, long treeOffset, boolean isLowToHigh, long maxTreeSize) throws IOException {
+
+        ByteOrder byteOrder = isLowToHigh ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        long fileLength = fis.length();
+
+        byte[] headerBytes = readRange(fis, treeOffset, HEADER_SIZE, fileLength);
+        if (headerBytes.length < HEADER_SIZE) {
+            throw new IOException("Truncated R+ tree header at " + treeOffset);
+        }
+        ByteBuffer header = ByteBuffer.wrap(headerBytes).order(byteOrder);
+        int magic = header.getInt();
+        if (magic != MAGIC) {
+            throw new IOException("Error reading R+ tree header: bad magic = " + magic);
+        }
+        int blockSize = header.getInt();
+        long itemCount = header.getLong();
+        int maxNodeSize = RPTree.RPTREE_NODE_FORMAT_SIZE + blockSize * RPTree.RPTREE_NODE_LEAF_ITEM_SIZE;
+
+        // The leaf level alone holds itemCount leaf items
+        if (itemCount * RPTree.RPTREE_NODE_LEAF_ITEM_SIZE > maxTreeSize) {
+            return null;
+        }
+        long treeSize = HEADER_SIZE;
+
+        LeafArrays leaves = new LeafArrays((int) Math.min(Math.max(itemCount, 16), 1 << 20));
+
+        long[] levelOffsets = {treeOffset + HEADER_SIZE};
+        while (levelOffsets.length > 0) {
+
+            // All nodes of a level in one read
+            long rangeStart = levelOffsets[0];
+            long rangeEnd = levelOffsets[0];
+            for (long offset : levelOffsets) {
+                rangeStart = Math.min(rangeStart, offset);
+                rangeEnd = Math.max(rangeEnd, offset);
+            }
+            long rangeSize = rangeEnd - rangeStart + maxNodeSize;
+            treeSize += rangeSize;
+            if (treeSize > maxTreeSize) {
+                return null;
+            }
+            if (rangeSize > Integer.MAX_VALUE) {
+                throw new IOException("R+ tree level too large to read at once: " + rangeSize);
+            }
+            ByteBuffer level = ByteBuffer.wrap(readRange(fis, rangeStart, (int) rangeSize, fileLength)).order(byteOrder);
+
+            LongArray childOffsets = new LongArray();
+            for (long offset : levelOffsets) {
+                level.position((int) (offset - rangeStart));
+                boolean isLeaf = level.get() == 1;
+                level.get();    // reserved
+                int count = level.getShort() & 0xffff;
+                for (int i = 0; i < count; i++) {
+                    int startChromID = level.getInt();
+                    int startBase = level.getInt();
+                    int endChromID = level.getInt();
+                    int endBase = level.getInt();
+                    if (isLeaf) {
+                        leaves.add(key(startChromID, startBase), key(endChromID, endBase), level.getLong(), level.getLong());
+                    } else {
+                        childOffsets.add(level.getLong());
+                    }
+                }
+            }
+            levelOffsets = childOffsets.toArray();
+        }
+
+        return leaves.toIndex(headerBytes);
+    }
+
+    /**
+     * Read up to {@code length} bytes at {@code offset}, fewer if the range extends past the end of the file.
+     */
+    private static byte[] readRange(SeekableStream fis, long offset, int length, long fileLength) throws IOException {
+        if (fileLength > 0) {
+            length = (int) Math.max(0, Math.min(length, fileLength - offset));
+        }
+        byte[] buffer = new byte[length];
+        int n = 0;
+        synchronized (fis) {
+            fis.seek(offset);
+            while (n < length) {
+                int count = fis.read(buffer, n, length - n);
+                if (count < 0) {
+                    break;
+                }
+                n += count;
+            }
+        }
+        return n == length ? buffer : Arrays.copyOf(buffer, n);
+    }
+
+    static long key(int chromID, int base) {
+        return ((long) chromID << 32) | (base & 0xffffffffL);
+    }
+
+    /**
+     * @return the R+ tree header bytes (Table K)
+     */
+    byte[] getHeaderBytes() {
+        return headerBytes;
+    }
+
+    public int getLeafCount() {
+        return size;
+    }
+
+    /**
+     * Return the leaf items intersecting the selection region, in file order.  As for
+     * {@link RPTree#getChromosomeDataHits(RPChromosomeRegion, boolean)} leaves which merely touch the region
+     * boundaries are excluded.
+     */
+    public ArrayList<RPTreeLeafNodeItem> getLeafItems(RPChromosomeRegion selectionRegion) {
+
+        ArrayList<RPTreeLeafNodeItem> leafItems = new ArrayList<>();
+        if (selectionRegion == null) {
+            return leafItems;
+        }
+        long queryStart = key(selectionRegion.getStartChromID(), selectionRegion.getStartBase());
+        long queryEnd = key(selectionRegion.getEndChromID(), selectionRegion.getEndBase());
+
+        // Leaves starting before the end of the query, scanned back until none earlier can reach the query start
+        int idx = upperBound(queryEnd) - 1;
+        for (; idx >= 0 && maxEnds[idx] > queryStart; idx--) {
+            if (ends[idx] > queryStart) {
+                leafItems.add(new RPTreeLeafNodeItem(
+                        (int) (starts[idx] >> 32), (int) starts[idx], (int) (ends[idx] >> 32), (int) ends[idx],
+                        dataOffsets[idx], dataSizes[idx]));
+            }
+        }
+        Collections.reverse(leafItems);
+        return leafItems;
+    }
+
+    /**
+     * @return the index of the first leaf starting at or after {@code key}
+     */
+    private int upperBound(long key) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (starts[mid] < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    public void write(DataOutputStream dos) throws IOException {
+        dos.writeInt(headerBytes.length);
+        dos.write(headerBytes);
+        dos.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            dos.writeLong(starts[i]);
+            dos.writeLong(ends[i]);
+            dos.writeLong(dataOffsets[i]);
+            dos.writeLong(dataSizes[i]);
+        }
+    }
+
+    public static RPTreeLeafIndex read(DataInputStream dis) throws IOException {
+        byte[] headerBytes = new byte[dis.readInt()];
+        dis.readFully(headerBytes);
+        int size = dis.readInt();
+        LeafArrays leaves = new LeafArrays(size);
+        for (int i = 0; i < size; i++) {
+            leaves.add(dis.readLong(), dis.readLong(), dis.readLong(), dis.readLong());
+        }
+        return leaves.toIndex(headerBytes);
+    }
+
+    /**
+     * Leaf arrays under construction.
+     */
+    private static class LeafArrays {
+
+        int size;
+        long[] starts;
+        long[] ends;
+        long[] dataOffsets;
+        long[] dataSizes;
+
+        LeafArrays(int capacity) {
+            starts = new long[capacity];
+            ends = new long[capacity];
+            dataOffsets = new long[capacity];
+            dataSizes = new long[capacity];
+        }
+
+        void add(long start, long end, long dataOffset, long dataSize) {
+            if (size == starts.length) {
+                int capacity = Math.max(16, 2 * size);
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+                dataOffsets = Arrays.copyOf(dataOffsets, capacity);
+                dataSizes = Arrays.copyOf(dataSizes, capacity);
+            }
+            starts[size] = start;
+            ends[size] = end;
+            dataOffsets[size] = dataOffset;
+            dataSizes[size] = dataSize;
+            size++;
+        }
+
+        RPTreeLeafIndex toIndex(byte[] headerBytes) {
+            // Leaves are written in start order, sort defensively if a file is not
+            for (int i = 1; i < size; i++) {
+                if (starts[i] < starts[i - 1]) {
+                    sort();
+                    break;
+                }
+            }
+            return new RPTreeLeafIndex(headerBytes, size, starts, ends, dataOffsets, dataSizes);
+        }
+
+        private void sort() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(starts[a], starts[b]));
+            long[] s = new long[size], e = new long[size], o = new long[size], z = new long[size];
+            for (int i = 0; i < size; i++) {
+                s[i] = starts[order[i]];
+                e[i] = ends[order[i]];
+                o[i] = dataOffsets[order[i]];
+                z[i] = dataSizes[order[i]];
+            }
+            starts = s;
+            ends = e;
+            dataOffsets = o;
+            dataSizes = z;
+        }
+    }
+
+    private static class LongArray {
+
+        long[] values = new long[16];
+        int size;
+
+        void add(long v) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, 2 * size);
+            }
+            values[size++] = v;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -25,9 +25,7 @@
 
 package org.broad.igv.bbfile;
 
-import htsjdk.samtools.seekablestream.SeekableStream;
 import org.apache.log4j.Logger;
-import org.broad.igv.util.CompressionUtils;
 import org.broad.igv.util.LittleEndianInputStream;
 
 import java.io.ByteArrayInputStream;
@@ -76,15 +74,14 @@ public class ZoomDataBlock {
     *
     *   Parameters:
     *       zoomLevel - zoom level for data block
-    *       fis - file input stream handle
+    *       blockCache - reads and decompresses data blocks, or returns them from cache
     *       leafItem - R+ tree leaf item containing block data file location
     *       chromIDTree - B+ chromosome index tree returns chromosome ID's for names
     *       isLowToHigh - byte order is low to high if true; else high to low
-    *       uncompressBufSize - byte size for decompression buffer; else 0 for uncompressed
     * */
 
-    public ZoomDataBlock(int zoomLevel, SeekableStream fis, RPTreeLeafNodeItem leafHitItem,
-                         HashMap<Integer, String> chromosomeMap, boolean isLowToHigh, int uncompressBufSize) {
+    public ZoomDataBlock(int zoomLevel, BBDataBlockCache blockCache, RPTreeLeafNodeItem leafHitItem,
+                         HashMap<Integer, String> chromosomeMap, boolean isLowToHigh) {
 
         this.zoomLevel = zoomLevel;
         this.leafHitItem = leafHitItem;
@@ -93,20 +90,10 @@ public class ZoomDataBlock {
 
         fileOffset = this.leafHitItem.getDataOffset();
         dataBlockSize = this.leafHitItem.geDataSize();
-        byte[] buffer = new byte[(int) dataBlockSize];
 
-        // read Bed data block into a buffer
+        // get the decompressed zoom data block
         try {
-            fis.seek(fileOffset);
-            fis.readFully(buffer);
-
-            // decompress if necessary - the buffer size is 0 for uncomressed data
-            // Note:  BBFile Table C specifies a decompression buffer size
-            if (uncompressBufSize > 0)
-                zoomBuffer = (new CompressionUtils()).decompress(buffer, uncompressBufSize);
-            else
-                zoomBuffer = buffer;    // use uncompressed read buffer directly
-
+            zoomBuffer = blockCache.getDataBlock(this.leafHitItem);
         } catch (IOException ex) {
             log.error("Error reading Zoom level " + this.zoomLevel + " data for leaf item ",  ex);
             String error = String.format("Error reading zoom level %d data for leaf item %d\n", this.zoomLevel);
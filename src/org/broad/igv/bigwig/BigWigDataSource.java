@@ -43,6 +43,7 @@ import htsjdk.tribble.Feature;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A hybrid source, implements both DataSource and FeatureSource.   Way of the future?
@@ -69,7 +70,8 @@ public class BigWigDataSource extends AbstractDataSource implements FeatureSourc
     // Lookup table to support chromosome aliasing.
     private Map<String, String> chrNameMap = new HashMap();
 
-    private RawDataInterval currentInterval = null;
+    // Most recently loaded raw data.  Queries are not serialized, so it is replaced atomically and read once.
+    private volatile RawDataInterval currentInterval = null;
 
     private double dataMin = 0;
     private double dataMax = 100;
@@ -81,7 +83,7 @@ public class BigWigDataSource extends AbstractDataSource implements FeatureSourc
 
         this.reader = reader;
         this.levels = reader.getZoomLevels();
-        this.wholeGenomeScores = new HashMap<>();
+        this.wholeGenomeScores = new ConcurrentHashMap<>();
 
         if (reader.isBigWigFile()) initMinMax();
 
@@ -281,15 +283,16 @@ public class BigWigDataSource extends AbstractDataSource implements FeatureSourc
 
 
     @Override
-    protected synchronized DataTile getRawData(String chr, int start, int end) {
+    protected DataTile getRawData(String chr, int start, int end) {
 
         if (chr.equals(Globals.CHR_ALL)) {
             return null;
         }
 
-
-        if (currentInterval != null && currentInterval.contains(chr, start, end)) {
-            return currentInterval.tile;
+        // The reader supports concurrent queries, so loci of a multi-locus view can be loaded in parallel
+        RawDataInterval interval = currentInterval;
+        if (interval != null && interval.contains(chr, start, end)) {
+            return interval.tile;
         }
 
         // TODO -- fetch data directly in arrays to avoid creation of multiple "WigItem" objects?
@@ -328,10 +331,12 @@ public class BigWigDataSource extends AbstractDataSource implements FeatureSourc
                 String lastChr = reader.getChromsomeFromId(maxChromId);
 
                 ArrayList<LocusScore> scores = new ArrayList<LocusScore>();
-                wholeGenomeScores.put(windowFunction, scores);
 
                 BBZoomLevelHeader lowestResHeader = this.getZoomLevelForScale(scale);
-                if (lowestResHeader == null) return null;
+                if (lowestResHeader == null) {
+                    wholeGenomeScores.put(windowFunction, scores);
+                    return null;
+                }
 
                 Set<String> wgChrNames = new HashSet<>(genome.getLongChromosomeNames());
 
@@ -362,6 +367,9 @@ public class BigWigDataSource extends AbstractDataSource implements FeatureSourc
 
                 scores.sort((o1, o2) -> o1.getStart() - o2.getStart());
 
+                // Published only when complete, it may be read by concurrent queries
+                wholeGenomeScores.put(windowFunction, scores);
+
             }
             return wholeGenomeScores.get(windowFunction);
         } else {
@@ -73,7 +73,9 @@ public class VCFEncoder implements FeatureEncoder<VCFVariant> {
         writer.writeHeader(this.header);
 
         while(features.hasNext()){
-            writer.add(features.next().getVariantContext());
+            VCFVariant variant = features.next();
+            variant.getGenotypes();     // decode lazily parsed genotypes under the codec's lock
+            writer.add(variant.getVariantContext());
         }
 
         return null;
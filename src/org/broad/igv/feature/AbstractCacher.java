@@ -27,20 +27,25 @@
 package org.broad.igv.feature;
 
 import org.apache.log4j.Logger;
-import org.broad.igv.util.collections.LRUCache;
 import htsjdk.tribble.CloseableTribbleIterator;
 import htsjdk.tribble.Feature;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Iterator;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
  * Class to handle caching data from any source of features
  * Subclasses must override queryRaw
+ * <p/>
+ * Bins are kept in a number of independently locked stripes, each a least-recently-used map bounded by a share
+ * of the bin count and of the feature count.  A bin being loaded is registered as in flight, so concurrent
+ * queries for the same bin wait for the one load rather than repeating it.  Queries for different bins proceed
+ * in parallel.
  *
  * @author jrobinso
  * @date Jun 24, 2010
@@ -49,12 +54,37 @@ public abstract class AbstractCacher {
 
     private static Logger log = Logger.getLogger(AbstractCacher.class);
 
+    public static final long DEFAULT_MAX_FEATURES = 2000000;
+
+    private static final int MAX_STRIPES = 16;
+
+    // Statistics summed over all cachers, for the batch "cacheStats" command
+    private static final Statistics totalStatistics = new Statistics();
+
     protected int binSize = Integer.MAX_VALUE;
-    protected LRUCache<String, Bin> cache;
+    private final Stripe[] stripes;
+    private final ConcurrentHashMap<String, Bin> binsInFlight = new ConcurrentHashMap<>();
+    private final Statistics statistics = new Statistics(totalStatistics);
+
+    // Incremented when the cache is invalidated, so that loads started earlier are not cached
+    private volatile int generation;
 
 
     public AbstractCacher(int binCount, int binSize) {
-        this.cache = new LRUCache(binCount);
+        this(binCount, binSize, DEFAULT_MAX_FEATURES);
+    }
+
+    /**
+     * @param binCount    maximum number of bins cached
+     * @param binSize     bin size in base pairs, 0 for a single bin per chromosome
+     * @param maxFeatures maximum number of features cached, counting a feature once for each bin it is in
+     */
+    public AbstractCacher(int binCount, int binSize, long maxFeatures) {
+        int stripeCount = Math.max(1, Math.min(MAX_STRIPES, binCount / 16));
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(Math.max(1, binCount / stripeCount), Math.max(1, maxFeatures / stripeCount));
+        }
         setBinSize(binSize);
     }
 
@@ -77,12 +107,21 @@ public abstract class AbstractCacher {
      */
     public void setBinSize(int newSize) {
         this.binSize = newSize == 0 ? Integer.MAX_VALUE : newSize;  // A binSize of zero => use a single bin for the entire chromosome
-        cache.clear();
+        clearCache();
 
     }
 
     public void close() throws IOException {
-        cache.clear();
+        clearCache();
+    }
+
+    private void clearCache() {
+        generation++;
+        // Loads in progress still complete their bins, releasing any waiters, but are no longer shared
+        binsInFlight.clear();
+        for (Stripe stripe : stripes) {
+            stripe.clear();
+        }
     }
 
     /**
@@ -123,59 +162,86 @@ public abstract class AbstractCacher {
     /**
      * Return loaded tiles that span the query interval.
      * <p/>
-     * We synchronize this method because different threads might be using
-     * the same source. Synchronizing here ensures that data
-     * is loaded as few times as possible (first caller loads it into the cache,
-     * the second caller accesses it from there) as well as preventing bugs stemming
-     * from multiple thread access
+     * Tiles not cached are either claimed by this thread, and loaded in contiguous runs, or are already being
+     * loaded by another thread, and are waited for.  All claimed tiles are loaded before waiting on any other,
+     * so two threads never wait on each other.
      *
      * @param seq
      * @param startBin
      * @param endBin
      * @return
      */
-    private synchronized List<Bin> getBins(String seq, int startBin, int endBin) {
+    private List<Bin> getBins(String seq, int startBin, int endBin) {
 
+        int binGeneration = generation;
         List<Bin> tiles = new ArrayList(endBin - startBin + 1);
         List<Bin> tilesToLoad = new ArrayList(endBin - startBin + 1);
+        List<Bin> tilesToAwait = new ArrayList(0);
 
         for (int t = startBin; t <= endBin; t++) {
             String key = seq + "_" + t;
-            Bin tile = cache.get(key);
+            Bin tile = getStripe(key).get(key);
 
             if (tile == null) {
-                if (log.isDebugEnabled()) {
-                    log.debug("Tile cache miss: " + t);
-                }
                 int start = t * binSize;
                 int end = start + binSize;
-                tile = new Bin(t, start, end);
-                cache.put(key, tile);
+                Bin newTile = new Bin(t, start, end, binGeneration);
+                tile = binsInFlight.putIfAbsent(key, newTile);
+                if (tile == null) {
+                    // Claimed.  Another thread may have finished loading the tile since the cache was checked.
+                    Bin cachedTile = getStripe(key).get(key);
+                    if (cachedTile != null) {
+                        newTile.setRecords(cachedTile);
+                        binsInFlight.remove(key, newTile);
+                        tile = cachedTile;
+                    } else {
+                        if (log.isDebugEnabled()) {
+                            log.debug("Tile cache miss: " + t);
+                        }
+                        statistics.miss();
+                        tile = newTile;
+                        tilesToLoad.add(tile);
+                    }
+                } else {
+                    statistics.sharedLoad();
+                    tilesToAwait.add(tile);
+                }
+            } else {
+                statistics.hit();
             }
 
             tiles.add(tile);
+        }
 
-            // The current tile is loaded,  load any preceding tiles we have pending
-            if (tile.isLoaded()) {
-                if (tilesToLoad.size() > 0) {
-                    if (!loadTiles(seq, tilesToLoad)) {
-                        return tiles;
-                    }
+        // Load claimed tiles in runs of consecutive bins
+        int runStart = 0;
+        try {
+            for (int i = 1; i <= tilesToLoad.size(); i++) {
+                if (i == tilesToLoad.size() ||
+                        tilesToLoad.get(i).getBinNumber() != tilesToLoad.get(i - 1).getBinNumber() + 1) {
+                    loadTiles(seq, tilesToLoad.subList(runStart, i));
+                    runStart = i;
+                }
+            }
+        } finally {
+            // If a run failed the tiles of later runs were never loaded.  Release them, so that other queries
+            // load them again rather than wait forever.
+            for (Bin tile : tilesToLoad) {
+                if (!tile.isDone()) {
+                    binsInFlight.remove(seq + "_" + tile.getBinNumber(), tile);
+                    tile.complete(new IOException("Error loading an adjacent bin"));
                 }
-                tilesToLoad.clear();
-            } else {
-                tilesToLoad.add(tile);
             }
         }
 
-        if (tilesToLoad.size() > 0) {
-            loadTiles(seq, tilesToLoad);
+        for (Bin tile : tilesToAwait) {
+            tile.await();
         }
 
         return tiles;
     }
 
-    private boolean loadTiles(String seq, List<Bin> tiles) {
+    private void loadTiles(String seq, List<Bin> tiles) {
 
         assert (tiles.size() > 0);
 
@@ -192,13 +258,14 @@ public abstract class AbstractCacher {
 
         //log.debug("Loading : " + start + " - " + end);
         int featureCount = 0;
-        long t0 = System.currentTimeMillis();
+        long t0 = System.nanoTime();
         try {
 
             iter = queryRaw(seq, start, end);
 
             while (iter != null && iter.hasNext()) {
                 Feature record = iter.next();
+                featureCount++;
 
                 // Range of tile indices that this feature contributes to.
                 int aStart = record.getStart();
@@ -223,43 +290,222 @@ public abstract class AbstractCacher {
                 }
             }
 
-            for (Bin t : tiles) {
-                t.setLoaded(true);
-            }
+            long dt = System.nanoTime() - t0;
+            statistics.load(featureCount, dt);
             if (log.isDebugEnabled()) {
-                long dt = System.currentTimeMillis() - t0;
-                long rate = dt == 0 ? Long.MAX_VALUE : featureCount / dt;
-                log.debug("Loaded " + featureCount + " reads in " + dt + "ms.  (" + rate + " reads/ms)");
+                long ms = dt / 1000000;
+                long rate = ms == 0 ? Long.MAX_VALUE : featureCount / ms;
+                log.debug("Loaded " + featureCount + " reads in " + ms + "ms.  (" + rate + " reads/ms)");
+            }
+
+            for (Bin t : tiles) {
+                String key = seq + "_" + t.getBinNumber();
+                if (t.generation == generation) {
+                    getStripe(key).put(key, t);
+                }
+                binsInFlight.remove(key, t);
+                t.complete(null);
             }
-            return true;
 
-        } catch (IOException e) {
+        } catch (IOException | RuntimeException e) {
+            for (Bin t : tiles) {
+                binsInFlight.remove(seq + "_" + t.getBinNumber(), t);
+                t.complete(e);
+            }
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
             log.error("IOError loading feature data", e);
 
             // TODO -- do something about this,  how do we want to handle this exception?
             throw new RuntimeException(e);
-        } finally {
-            if (iter != null) {
-                //iter.close();
+        }
+    }
+
+    private Stripe getStripe(String key) {
+        return stripes.length == 1 ? stripes[0] : stripes[(key.hashCode() & 0x7fffffff) % stripes.length];
+    }
+
+    /**
+     * @return statistics of this cacher
+     */
+    public Statistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * @return statistics summed over all cachers
+     */
+    public static Statistics getTotalStatistics() {
+        return totalStatistics;
+    }
+
+    /**
+     * @return the number of features cached, counting a feature once for each bin it is in
+     */
+    public long getCachedFeatureCount() {
+        long count = 0;
+        for (Stripe stripe : stripes) {
+            count += stripe.getFeatureCount();
+        }
+        return count;
+    }
+
+
+    /**
+     * Hit, miss and load counts of a cacher.  Shared loads are misses which waited for a load in progress rather
+     * than loading again.
+     */
+    public static class Statistics {
+
+        private final Statistics total;
+        private final AtomicLong hitCount = new AtomicLong();
+        private final AtomicLong missCount = new AtomicLong();
+        private final AtomicLong sharedLoadCount = new AtomicLong();
+        private final AtomicLong loadCount = new AtomicLong();
+        private final AtomicLong loadedFeatureCount = new AtomicLong();
+        private final AtomicLong loadNanos = new AtomicLong();
+        private final AtomicLong evictionCount = new AtomicLong();
+
+        private Statistics() {
+            this(null);
+        }
+
+        private Statistics(Statistics total) {
+            this.total = total;
+        }
+
+        void hit() {
+            hitCount.incrementAndGet();
+            if (total != null) total.hit();
+        }
+
+        void miss() {
+            missCount.incrementAndGet();
+            if (total != null) total.miss();
+        }
+
+        void sharedLoad() {
+            sharedLoadCount.incrementAndGet();
+            if (total != null) total.sharedLoad();
+        }
+
+        void load(int featureCount, long nanos) {
+            loadCount.incrementAndGet();
+            loadedFeatureCount.addAndGet(featureCount);
+            loadNanos.addAndGet(nanos);
+            if (total != null) total.load(featureCount, nanos);
+        }
+
+        void evict() {
+            evictionCount.incrementAndGet();
+            if (total != null) total.evict();
+        }
+
+        public long getHitCount() {
+            return hitCount.get();
+        }
+
+        public long getMissCount() {
+            return missCount.get();
+        }
+
+        public long getSharedLoadCount() {
+            return sharedLoadCount.get();
+        }
+
+        public long getLoadCount() {
+            return loadCount.get();
+        }
+
+        public long getLoadedFeatureCount() {
+            return loadedFeatureCount.get();
+        }
+
+        public long getLoadTimeMillis() {
+            return loadNanos.get() / 1000000;
+        }
+
+        public long getEvictionCount() {
+            return evictionCount.get();
+        }
+
+        @Override
+        public String toString() {
+            return "hits=" + getHitCount() + " misses=" + getMissCount() + " shared=" + getSharedLoadCount() +
+                    " loads=" + getLoadCount() + " features=" + getLoadedFeatureCount() +
+                    " loadMs=" + getLoadTimeMillis() + " evictions=" + getEvictionCount();
+        }
+    }
+
+
+    /**
+     * A least-recently-used map of bins bounded by bin and feature counts.
+     */
+    private class Stripe {
+
+        private final int maxBins;
+        private final long maxFeatures;
+        private final LinkedHashMap<String, Bin> bins = new LinkedHashMap<>(16, 0.75f, true);
+        private long featureCount = 0;
+
+        Stripe(int maxBins, long maxFeatures) {
+            this.maxBins = maxBins;
+            this.maxFeatures = maxFeatures;
+        }
+
+        synchronized Bin get(String key) {
+            return bins.get(key);
+        }
+
+        /**
+         * Add a bin, then remove least recently used bins until the stripe is within its bounds.  The bin just
+         * added is never removed, so a single bin larger than the bounds is still cached.
+         */
+        synchronized void put(String key, Bin bin) {
+            Bin previous = bins.put(key, bin);
+            if (previous != null) {
+                featureCount -= previous.getWeight();
             }
-            //IGV.getInstance().resetStatusMessage();
+            featureCount += bin.getWeight();
+
+            Iterator<Map.Entry<String, Bin>> iter = bins.entrySet().iterator();
+            while ((bins.size() > maxBins || featureCount > maxFeatures) && iter.hasNext()) {
+                Map.Entry<String, Bin> entry = iter.next();
+                if (entry.getValue() != bin) {
+                    featureCount -= entry.getValue().getWeight();
+                    iter.remove();
+                    statistics.evict();
+                }
+            }
+        }
+
+        synchronized void clear() {
+            bins.clear();
+            featureCount = 0;
+        }
+
+        synchronized long getFeatureCount() {
+            return featureCount;
         }
     }
 
 
     private static class Bin {
 
-        private boolean loaded = false;
+        private final CompletableFuture<Void> loaded = new CompletableFuture<>();
+        private final int generation;
         private int start;
         private int end;
         private int binNumber;
         private List<Feature> containedRecords;
         private List<Feature> overlappingRecords;
 
-        Bin(int binNumber, int start, int end) {
+        Bin(int binNumber, int start, int end, int generation) {
             this.binNumber = binNumber;
             this.start = start;
             this.end = end;
+            this.generation = generation;
             containedRecords = new ArrayList(1000);
             overlappingRecords = new ArrayList(100);
         }
@@ -273,10 +519,6 @@ public abstract class AbstractCacher {
             return start;
         }
 
-        public void setStart(int start) {
-            this.start = start;
-        }
-
         public List<Feature> getContainedRecords() {
             return containedRecords;
         }
@@ -285,14 +527,51 @@ public abstract class AbstractCacher {
             return overlappingRecords;
         }
 
-        public boolean isLoaded() {
-            return loaded;
+        /**
+         * Number of features, plus one so that empty bins have a weight
+         */
+        long getWeight() {
+            return 1 + containedRecords.size() + overlappingRecords.size();
         }
 
-        public void setLoaded(boolean loaded) {
-            this.loaded = loaded;
+        /**
+         * Take the records of a bin loaded concurrently by another thread, and release any waiters.
+         */
+        void setRecords(Bin bin) {
+            containedRecords = bin.containedRecords;
+            overlappingRecords = bin.overlappingRecords;
+            loaded.complete(null);
         }
 
+        /**
+         * Mark the bin loaded, or failed if {@code error} is not null, releasing threads waiting for it.
+         */
+        void complete(Exception error) {
+            if (error == null) {
+                loaded.complete(null);
+            } else {
+                loaded.completeExceptionally(error);
+            }
+        }
+
+        boolean isDone() {
+            return loaded.isDone();
+        }
+
+        /**
+         * Wait until the bin is loaded.
+         */
+        void await() {
+            try {
+                loaded.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for feature data", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+            }
+        }
     }
 
     /**
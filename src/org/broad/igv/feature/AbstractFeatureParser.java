@@ -35,6 +35,7 @@ import org.broad.igv.exceptions.ParserException;
 import org.broad.igv.feature.genome.Genome;
 import org.broad.igv.feature.tribble.CodecFactory;
 import org.broad.igv.feature.tribble.FeatureFileHeader;
+import org.broad.igv.feature.tribble.ParallelFeatureDecoder;
 import org.broad.igv.track.FeatureCollectionSource;
 import org.broad.igv.track.FeatureTrack;
 import org.broad.igv.track.TrackProperties;
@@ -52,8 +53,12 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * @author jrobinso
@@ -78,7 +83,10 @@ public abstract class AbstractFeatureParser implements FeatureParser {
      */
     public static FeatureParser getInstanceFor(ResourceLocator locator, Genome genome) {
         FeatureCodec codec = CodecFactory.getCodec(locator, genome);
-        if (codec != null && codec instanceof AsciiFeatureCodec) {
+        if (codec != null && ParallelFeatureDecoder.canDecodeInParallel(codec)) {
+            return new FeatureCodecParser((AsciiFeatureCodec) codec,
+                    () -> (AsciiFeatureCodec) CodecFactory.getCodec(locator, genome), genome);
+        } else if (codec != null && codec instanceof AsciiFeatureCodec) {
             return new FeatureCodecParser((AsciiFeatureCodec) codec, genome);
         } else {
             return null;
@@ -104,6 +112,11 @@ public abstract class AbstractFeatureParser implements FeatureParser {
      */
     public List<htsjdk.tribble.Feature> loadFeatures(BufferedReader reader, Genome genome, int maxLines) {
 
+        Supplier<Function<String, Feature>> lineParserFactory = getLineParserFactory();
+        if (maxLines <= 0 && lineParserFactory != null && ParallelFeatureDecoder.getDefaultParallelism() > 0) {
+            return loadFeaturesInParallel(reader, genome, lineParserFactory);
+        }
+
         List<htsjdk.tribble.Feature> features = new ArrayList<htsjdk.tribble.Feature>();
         String nextLine = null;
 
@@ -121,34 +134,7 @@ public abstract class AbstractFeatureParser implements FeatureParser {
 
                 try {
                     if (nextLine.startsWith("#")) {
-                        if (nextLine.startsWith("#type")) {
-                            String[] tokens = Globals.equalPattern.split(nextLine);
-                            if (tokens.length > 1) {
-                                try {
-                                    // TODO: type is not currently used, is there any reason to keep this?
-                                    TrackType type = TrackType.valueOf(tokens[1]);
-                                } catch (Exception e) {
-                                    log.error("Error converting track type: " + tokens[1]);
-                                }
-                            }
-                        } else if (nextLine.startsWith("#track") || nextLine.startsWith("track")) {
-                            TrackProperties tp = new TrackProperties();
-                            ParsingUtils.parseTrackLine(nextLine, tp);
-                            setTrackProperties(tp);
-                            if (tp.isGffTags()) {
-                                gffTags = true;
-                            }
-                        } else if (nextLine.startsWith("#coords")) {
-                            try {
-                                String[] tokens = Globals.equalPattern.split(nextLine);
-                                startBase = Integer.parseInt(tokens[1]);
-                            } catch (Exception e) {
-                                log.error("Error parsing coords line: " + nextLine, e);
-                            }
-
-                        } else if (nextLine.startsWith("#gffTags")) {
-                            gffTags = true;
-                        }
+                        parseHeaderLine(nextLine);
                     } else {
                         Feature feature = parseLine(nextLine);
                         if (feature != null) {
@@ -184,8 +170,114 @@ public abstract class AbstractFeatureParser implements FeatureParser {
         return features;
     }
 
+    /**
+     * Parse the features of a file on several threads.  Header lines are handled on the calling thread as they
+     * are read, other lines are parsed in batches by per-thread parsers.
+     */
+    private List<htsjdk.tribble.Feature> loadFeaturesInParallel(BufferedReader reader, Genome genome,
+                                                                Supplier<Function<String, Feature>> lineParserFactory) {
+
+        List<htsjdk.tribble.Feature> features = new ArrayList<htsjdk.tribble.Feature>();
+        AtomicInteger nErrors = new AtomicInteger();
+        int maxLogErrors = 10;
+
+        Iterator<String> lines = new Iterator<String>() {
+            String next = advance();
+
+            private String advance() {
+                try {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        line = line.trim();
+                        if (line.length() == 0) continue;
+                        if (line.startsWith("#")) {
+                            parseHeaderLine(line);
+                        } else {
+                            return line;
+                        }
+                    }
+                    return null;
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            public String next() {
+                String line = next;
+                next = advance();
+                return line;
+            }
+        };
+
+        try {
+            ParallelFeatureDecoder.decodeLines(lines, () -> {
+                Function<String, Feature> lineParser = lineParserFactory.get();
+                return line -> {
+                    try {
+                        return lineParser.apply(line);
+                    } catch (NumberFormatException e) {
+                        if (nErrors.getAndIncrement() < maxLogErrors) {
+                            log.error("Number format error parsing line: " + line, e);
+                        }
+                        return null;
+                    } catch (Exception e) {
+                        throw new ParserException(e.getMessage(), e, -1, line);
+                    }
+                };
+            }, ParallelFeatureDecoder.getDefaultParallelism(), features::add);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        FeatureDB.addFeatures(features, genome);
+        return features;
+    }
+
+    private void parseHeaderLine(String nextLine) {
+        if (nextLine.startsWith("#type")) {
+            String[] tokens = Globals.equalPattern.split(nextLine);
+            if (tokens.length > 1) {
+                try {
+                    // TODO: type is not currently used, is there any reason to keep this?
+                    TrackType type = TrackType.valueOf(tokens[1]);
+                } catch (Exception e) {
+                    log.error("Error converting track type: " + tokens[1]);
+                }
+            }
+        } else if (nextLine.startsWith("#track") || nextLine.startsWith("track")) {
+            TrackProperties tp = new TrackProperties();
+            ParsingUtils.parseTrackLine(nextLine, tp);
+            setTrackProperties(tp);
+            if (tp.isGffTags()) {
+                gffTags = true;
+            }
+        } else if (nextLine.startsWith("#coords")) {
+            try {
+                String[] tokens = Globals.equalPattern.split(nextLine);
+                startBase = Integer.parseInt(tokens[1]);
+            } catch (Exception e) {
+                log.error("Error parsing coords line: " + nextLine, e);
+            }
+
+        } else if (nextLine.startsWith("#gffTags")) {
+            gffTags = true;
+        }
+    }
+
     abstract protected Feature parseLine(String nextLine);
 
+    /**
+     * Return a factory of line parsers, one for each parsing thread, or null if lines can only be parsed by
+     * {@link #parseLine(String)} on one thread.
+     */
+    protected Supplier<Function<String, Feature>> getLineParserFactory() {
+        return null;
+    }
+
     /**
      * Convenience method.  Write a list of features out as a BED file
      *
@@ -175,6 +175,23 @@ public class Exon extends AbstractFeature implements IExon {
         this.codingEnd = Math.min(getEnd(), codingEnd);
     }
 
+    /**
+     * Set the coding range and flag as saved, without the adjustments made by the individual setters.
+     */
+    void restoreCoding(int codingStart, int codingEnd, boolean noncoding) {
+        this.codingStart = codingStart;
+        this.codingEnd = codingEnd;
+        this.noncoding = noncoding;
+    }
+
+    public int getMrnaBase() {
+        return mrnaBase;
+    }
+
+    public int getNumber() {
+        return number;
+    }
+
     public void setPhase(int phase) {
         if (getStrand() == Strand.POSITIVE) {
             readingFrame = phase;
@@ -30,6 +30,9 @@ import htsjdk.tribble.AsciiFeatureCodec;
 import htsjdk.tribble.Feature;
 import htsjdk.tribble.FeatureCodec;
 
+import java.util.function.Function;
+import java.util.function.Supplier;
+
 /**
  * FeatureParser which reads features using a codec.
  * Intended as a bridge between FeatureParser interface
@@ -43,13 +46,33 @@ import htsjdk.tribble.FeatureCodec;
  */
 public class FeatureCodecParser extends AbstractFeatureParser {
     private AsciiFeatureCodec codec;
+    private Supplier<AsciiFeatureCodec> codecFactory;
 
     public FeatureCodecParser(AsciiFeatureCodec codec, Genome genome) {
         this.codec = codec;
     }
 
+    /**
+     * @param codecFactory creates codecs equivalent to {@code codec}, for parsing on several threads
+     */
+    public FeatureCodecParser(AsciiFeatureCodec codec, Supplier<AsciiFeatureCodec> codecFactory, Genome genome) {
+        this.codec = codec;
+        this.codecFactory = codecFactory;
+    }
+
     @Override
     protected Feature parseLine(String nextLine) {
         return codec.decode(nextLine);
     }
+
+    @Override
+    protected Supplier<Function<String, Feature>> getLineParserFactory() {
+        if (codecFactory == null) {
+            return null;
+        }
+        return () -> {
+            AsciiFeatureCodec threadCodec = codecFactory.get();
+            return line -> (Feature) threadCodec.decode(line);
+        };
+    }
 }
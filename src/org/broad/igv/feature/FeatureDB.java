@@ -27,7 +27,6 @@ package org.broad.igv.feature;
 
 //~--- non-JDK imports --------------------------------------------------------
 
-import com.jidesoft.utils.SortedList;
 import org.apache.log4j.Logger;
 import org.broad.igv.Globals;
 import org.broad.igv.feature.genome.Genome;
@@ -41,18 +40,20 @@ import java.util.*;
 /**
  * This is a placeholder class for a true "feature database" wrapper.  Its purpose
  * is to return a feature given a name.  Used to support the "search" box.
+ * <p/>
+ * Names are held in a {@link FeatureNameIndex}, lookups take no lock.
  *
  * @author jrobinso
  */
 public class FeatureDB {
 
     private static Logger log = Logger.getLogger(FeatureDB.class);
+    private static final int MAX_DUPLICATE_COUNT = 20;
     /**
      * Map for all features other than genes.
      */
-    //private static Map<String, NamedFeature> featureMap = new HashMap(10000);
-    private static Map<String, List<NamedFeature>> featureMap = Collections.synchronizedSortedMap(new TreeMap<String, List<NamedFeature>>());
-    private static final int MAX_DUPLICATE_COUNT = 20;
+    private static final FeatureNameIndex featureIndex =
+            new FeatureNameIndex(FeatureComparator.get(true), MAX_DUPLICATE_COUNT + 1);
 
     public static void addFeature(NamedFeature feature, Genome genome) {
 
@@ -82,13 +83,13 @@ public class FeatureDB {
 
         final String name = feature.getName();
         if (name != null && name.length() > 0 && !name.equals(".")) {
-            featureMap.remove(name.toUpperCase());
+            featureIndex.remove(name.toUpperCase());
         }
         if (feature instanceof IGVFeature) {
             final IGVFeature igvFeature = (IGVFeature) feature;
             final String id = igvFeature.getIdentifier();
             if (id != null && id.length() > 0) {
-                featureMap.remove(id.toUpperCase());
+                featureIndex.remove(id.toUpperCase());
             }
 
             removeByAttributes(igvFeature, genome);
@@ -118,7 +119,7 @@ public class FeatureDB {
         if (attributes != null) {
             for (String value : attributes.values()) {
                 if (value.length() < 20) {
-                    featureMap.remove(value.toUpperCase());
+                    featureIndex.remove(value.toUpperCase());
                 }
             }
         }
@@ -142,26 +143,8 @@ public class FeatureDB {
             }
         }
 
-        synchronized (featureMap) {
-            List<NamedFeature> currentList = featureMap.get(key);
-            if (currentList == null) {
-                List<NamedFeature> newList = new SortedList<NamedFeature>(
-                        new ArrayList<>(), FeatureComparator.get(true));
-                boolean added = newList.add(feature);
-                if (added) {
-                    featureMap.put(key, newList);
-                }
-                return added;
-            } else {
-                // Don't let list grow without bounds
-                if (currentList.size() > MAX_DUPLICATE_COUNT) {
-                    return false;
-                }
-
-                return currentList.add(feature);
-
-            }
-        }
+        // Don't let list grow without bounds
+        return featureIndex.add(key, feature);
     }
 
     /*
@@ -217,11 +200,11 @@ public class FeatureDB {
 
 
     public static void clearFeatures() {
-        featureMap.clear();
+        featureIndex.clear();
     }
 
     static int size() {
-        return featureMap.size();
+        return featureIndex.size();
     }
 
     /**
@@ -229,7 +212,7 @@ public class FeatureDB {
      */
     public static NamedFeature getFeature(String name) {
         String nm = name.trim().toUpperCase();
-        List<NamedFeature> features = featureMap.get(nm);
+        List<NamedFeature> features = featureIndex.get(nm);
 
         if (features != null) {
             return features.get(0);
@@ -243,22 +226,18 @@ public class FeatureDB {
      * an exact match. Current implementation will match anything
      * for which name is at the beginning, including but not limited to
      * exact matches.
-     * <p/>
-     * NOTE: "It is imperative that the user manually synchronize
-     * on [this sorted map] when iterating over any of its
-     * collection views, or the collections views of any of its
-     * subMap, headMap or tailMap views". See
-     * <a href="http://docs.oracle.com/javase/6/docs/api/java/util/Collections.html#synchronizedSortedMap%28java.util.SortedMap%29> here</a>
      *
      * @param name : Search string. Features which begin with this
      *             string will be found.
-     * @return
+     * @return a snapshot of the matching names and their features, in name order
      */
     static Map<String, List<NamedFeature>> getFeaturesMap(String name) {
         String nm = name.trim().toUpperCase();
-        SortedMap<String, List<NamedFeature>> treeMap = (SortedMap) featureMap;
-        //Search is inclusive to first argument, exclusive to second
-        return treeMap.subMap(nm, nm + Character.MAX_VALUE);
+        Map<String, List<NamedFeature>> result = new LinkedHashMap<>();
+        for (Map.Entry<String, NamedFeature[]> entry : featureIndex.getPrefixMap(nm).entrySet()) {
+            result.put(entry.getKey(), Arrays.asList(entry.getValue()));
+        }
+        return result;
     }
 
     /**
@@ -284,25 +263,47 @@ public class FeatureDB {
      */
     public static List<NamedFeature> getFeaturesList(String name, int limit, boolean longestOnly) {
 
-        //Note: We are iterating over submap, this needs
-        //to be synchronized over the main map.
-        synchronized (featureMap) {
-            Map<String, List<NamedFeature>> resultMap = getFeaturesMap(name);
-            Set<String> names = resultMap.keySet();
-            Iterator<String> nameIter = names.iterator();
-            ArrayList<NamedFeature> features = new ArrayList<NamedFeature>((Math.min(limit, names.size())));
-            int ii = 0;
-            while (nameIter.hasNext() && ii < limit) {
-                List<NamedFeature> subFeats = resultMap.get(nameIter.next());
-                if (longestOnly) {
-                    features.add(subFeats.get(0));
-                } else {
-                    features.addAll(subFeats);
-                }
-                ii++;
+        String nm = name.trim().toUpperCase();
+        ArrayList<NamedFeature> features = new ArrayList<NamedFeature>(Math.min(limit, 100));
+        int ii = 0;
+        for (NamedFeature[] subFeats : featureIndex.getPrefixMap(nm).values()) {
+            if (ii >= limit) {
+                break;
+            }
+            if (longestOnly) {
+                features.add(subFeats[0]);
+            } else {
+                features.addAll(Arrays.asList(subFeats));
+            }
+            ii++;
+        }
+        return features;
+    }
+
+    /**
+     * Get a list of features whose names approximately start with the provided name, allowing for a typing
+     * error or two, closest matches first.  Only the longest feature for each name is returned.
+     *
+     * @param name
+     * @param limit
+     * @return
+     */
+    public static List<NamedFeature> getApproximateFeaturesList(String name, int limit) {
+
+        String nm = name.trim().toUpperCase();
+        if (nm.length() < 3) {
+            return Collections.emptyList();
+        }
+        int maxEdits = nm.length() < 8 ? 1 : 2;
+
+        List<NamedFeature> features = new ArrayList<>();
+        for (String key : featureIndex.getApproximateNames(nm, limit, maxEdits)) {
+            List<NamedFeature> subFeats = featureIndex.get(key);
+            if (subFeats != null) {    // Removed since the names were indexed
+                features.add(subFeats.get(0));
             }
-            return features;
         }
+        return features;
     }
 
 
@@ -327,29 +328,26 @@ public class FeatureDB {
         }
 
         Map<Integer, BasicFeature> results = new HashMap<Integer, BasicFeature>();
-        List<NamedFeature> possibles = featureMap.get(nm);
+        List<NamedFeature> possibles = featureIndex.get(nm);
 
         if (possibles != null) {
-            synchronized (featureMap) {
-                for (NamedFeature f : possibles) {
-                    if (!(f instanceof BasicFeature)) {
-                        continue;
-                    }
+            for (NamedFeature f : possibles) {
+                if (!(f instanceof BasicFeature)) {
+                    continue;
+                }
 
-                    BasicFeature bf = (BasicFeature) f;
-                    Codon c = bf.getCodon(currentGenome, proteinPosition);
-                    if (c == null) {
-                        continue;
-                    }
-                    if (c.getAminoAcid().equalsByName(refAA)) {
-                        Set<String> snps = AminoAcidManager.getInstance().getMappingSNPs(c.getSequence(),
-                                AminoAcidManager.getAminoAcidByName(mutAA));
-                        if (snps.size() >= 1) {
-                            results.put(c.getGenomePositions()[0], bf);
-                        }
+                BasicFeature bf = (BasicFeature) f;
+                Codon c = bf.getCodon(currentGenome, proteinPosition);
+                if (c == null) {
+                    continue;
+                }
+                if (c.getAminoAcid().equalsByName(refAA)) {
+                    Set<String> snps = AminoAcidManager.getInstance().getMappingSNPs(c.getSequence(),
+                            AminoAcidManager.getAminoAcidByName(mutAA));
+                    if (snps.size() >= 1) {
+                        results.put(c.getGenomePositions()[0], bf);
                     }
                 }
-
             }
         }
 
@@ -376,37 +374,34 @@ public class FeatureDB {
         }
 
         Map<Integer, BasicFeature> results = new HashMap<Integer, BasicFeature>();
-        List<NamedFeature> possibles = featureMap.get(nm);
+        List<NamedFeature> possibles = featureIndex.get(nm);
         String tempNT;
         String brefNT = refNT.toUpperCase();
 
         if (possibles != null) {
-            synchronized (featureMap) {
-                for (NamedFeature f : possibles) {
-                    if (!(f instanceof BasicFeature)) {
-                        continue;
-                    }
+            for (NamedFeature f : possibles) {
+                if (!(f instanceof BasicFeature)) {
+                    continue;
+                }
 
-                    BasicFeature bf = (BasicFeature) f;
+                BasicFeature bf = (BasicFeature) f;
 
-                    int genomePosition = bf.featureToGenomePosition(new int[]{startPosition - 1})[0];
-                    if (genomePosition < 0) {
-                        continue;
-                    }
-                    final byte[] nuclSequence = currentGenome.getSequence(bf.getChr(), genomePosition, genomePosition + 1);
-                    if (nuclSequence == null) {
-                        continue;
-                    }
-                    tempNT = new String(nuclSequence);
-                    if (bf.getStrand() == Strand.NEGATIVE) {
-                        tempNT = SequenceTrack.getReverseComplement(tempNT);
-                    }
-
-                    if (tempNT.toUpperCase().equals(brefNT)) {
-                        results.put(genomePosition, bf);
-                    }
+                int genomePosition = bf.featureToGenomePosition(new int[]{startPosition - 1})[0];
+                if (genomePosition < 0) {
+                    continue;
+                }
+                final byte[] nuclSequence = currentGenome.getSequence(bf.getChr(), genomePosition, genomePosition + 1);
+                if (nuclSequence == null) {
+                    continue;
+                }
+                tempNT = new String(nuclSequence);
+                if (bf.getStrand() == Strand.NEGATIVE) {
+                    tempNT = SequenceTrack.getReverseComplement(tempNT);
                 }
 
+                if (tempNT.toUpperCase().equals(brefNT)) {
+                    results.put(genomePosition, bf);
+                }
             }
         }
 
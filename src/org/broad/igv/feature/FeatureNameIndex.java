@@ -0,0 +1,337 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.feature;
+
+import org.broad.igv.util.collections.IntArrayList;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * An index of features by upper-cased name, supporting exact, prefix and approximate lookup.
+ * <p/>
+ * Names are held in a concurrent skip list, so lookups take no lock and don't block while features are added.
+ * The features for a name are an immutable array sorted by the index comparator and replaced on update, so a
+ * reader always sees a consistent snapshot.  Each name is stored once, however many features share it.
+ * <p/>
+ * Approximate lookup uses a trigram index of the names, built when first needed.  Names added or removed after
+ * that are queued and applied to the index in a batch by the next approximate lookup.
+ */
+class FeatureNameIndex {
+
+    private final Comparator<? super NamedFeature> comparator;
+    private final int maxFeaturesPerName;
+    private final ConcurrentSkipListMap<String, NamedFeature[]> featureMap = new ConcurrentSkipListMap<>();
+
+    // Names added or removed since the trigram index was last updated
+    private final ConcurrentLinkedQueue<String> changedNames = new ConcurrentLinkedQueue<>();
+    private volatile TrigramIndex trigramIndex;
+
+    /**
+     * @param comparator         order of the features for a name, the first is the preferred match
+     * @param maxFeaturesPerName further features for a name are not indexed
+     */
+    FeatureNameIndex(Comparator<? super NamedFeature> comparator, int maxFeaturesPerName) {
+        this.comparator = comparator;
+        this.maxFeaturesPerName = maxFeaturesPerName;
+    }
+
+    /**
+     * Add a feature for an upper-cased name.
+     *
+     * @return true if the feature was added, false if the name already has the maximum number of features
+     */
+    boolean add(String key, NamedFeature feature) {
+        while (true) {
+            NamedFeature[] current = featureMap.get(key);
+            if (current == null) {
+                if (featureMap.putIfAbsent(key, new NamedFeature[]{feature}) == null) {
+                    nameChanged(key);
+                    return true;
+                }
+            } else {
+                if (current.length >= maxFeaturesPerName) {
+                    return false;
+                }
+                // Insert after equal features, so the first added is preferred among equals
+                int idx = current.length;
+                while (idx > 0 && comparator.compare(current[idx - 1], feature) > 0) {
+                    idx--;
+                }
+                NamedFeature[] updated = new NamedFeature[current.length + 1];
+                System.arraycopy(current, 0, updated, 0, idx);
+                updated[idx] = feature;
+                System.arraycopy(current, idx, updated, idx + 1, current.length - idx);
+                if (featureMap.replace(key, current, updated)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    void remove(String key) {
+        if (featureMap.remove(key) != null) {
+            nameChanged(key);
+        }
+    }
+
+    private void nameChanged(String key) {
+        if (trigramIndex != null) {
+            changedNames.add(key);
+        }
+    }
+
+    synchronized void clear() {
+        featureMap.clear();
+        trigramIndex = null;
+        changedNames.clear();
+    }
+
+    int size() {
+        return featureMap.size();
+    }
+
+    /**
+     * @return the features for the name, best first, or null if there are none
+     */
+    List<NamedFeature> get(String key) {
+        NamedFeature[] features = featureMap.get(key);
+        return features == null ? null : Collections.unmodifiableList(Arrays.asList(features));
+    }
+
+    /**
+     * @return the names starting with {@code prefix} and their features, in name order.  The map is a live view.
+     */
+    NavigableMap<String, NamedFeature[]> getPrefixMap(String prefix) {
+        return featureMap.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+
+    /**
+     * Return names which approximately start with {@code query}: some prefix of the name is within
+     * {@code maxEdits} insertions, deletions or substitutions of the query.  Closest names are returned first.
+     *
+     * @param query    upper-cased query
+     * @param limit    maximum number of names returned
+     * @param maxEdits maximum edit distance
+     */
+    synchronized List<String> getApproximateNames(String query, int limit, int maxEdits) {
+        TrigramIndex index = trigramIndex;
+        if (index == null || index.isFragmented()) {
+            // Published before the names are read, so names added meanwhile are queued.  Adding is idempotent.
+            index = new TrigramIndex();
+            trigramIndex = index;
+            changedNames.clear();
+            for (String name : featureMap.keySet()) {
+                index.add(name);
+            }
+        }
+        String key;
+        while ((key = changedNames.poll()) != null) {
+            if (featureMap.containsKey(key)) {
+                index.add(key);
+            } else {
+                index.remove(key);
+            }
+        }
+        return index.search(query, limit, maxEdits);
+    }
+
+    /**
+     * Names by the trigrams of their prefixes.  A prefix within k edits of a query of length m shares at least
+     * m - 3k of the query's trigrams, as each edit changes at most 3 trigrams; names sharing that many are
+     * candidates, which are then verified by computing the edit distance.
+     * <p/>
+     * Trigrams are coded from the low 7 bits of each character.  Characters outside ASCII can collide, which only
+     * adds candidates.  A removed name's id is left in the posting lists and skipped; once removed names outnumber
+     * the rest the index is rebuilt.  Not thread safe, callers synchronize.
+     */
+    private static class TrigramIndex {
+
+        private static final int MIN_REBUILD_REMOVED = 1024;
+
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final Map<Integer, IntArrayList> postings = new HashMap<>();    // name ids, ascending, by trigram
+        private String[] names = new String[1024];    // by id, null once removed
+        private int nameCount;
+        private int removedCount;
+
+        // Query scratch, reused: shared[id] counts the query trigrams of a name, valid if stamps[id] == queryStamp
+        private int[] shared = new int[0];
+        private int[] stamps = new int[0];
+        private int queryStamp;
+        private final IntArrayList candidates = new IntArrayList();
+
+        void add(String name) {
+            if (ids.containsKey(name)) {
+                return;
+            }
+            int id = nameCount++;
+            if (id == names.length) {
+                names = Arrays.copyOf(names, 2 * names.length);
+            }
+            names[id] = name;
+            ids.put(name, id);
+            for (int code : trigrams(name)) {
+                IntArrayList posting = postings.get(code);
+                if (posting == null) {
+                    posting = new IntArrayList(4);
+                    postings.put(code, posting);
+                }
+                posting.add(id);
+            }
+        }
+
+        void remove(String name) {
+            Integer id = ids.remove(name);
+            if (id != null) {
+                names[id] = null;
+                removedCount++;
+            }
+        }
+
+        boolean isFragmented() {
+            return removedCount > MIN_REBUILD_REMOVED && removedCount > ids.size();
+        }
+
+        List<String> search(String query, int limit, int maxEdits) {
+
+            int[] queryTrigrams = trigrams(query);
+            int minShared = Math.max(1, queryTrigrams.length - 3 * maxEdits);
+
+            if (shared.length < nameCount) {
+                shared = new int[names.length];
+                stamps = new int[names.length];
+                queryStamp = 0;
+            }
+            if (++queryStamp == Integer.MAX_VALUE) {
+                Arrays.fill(stamps, 0);
+                queryStamp = 1;
+            }
+
+            candidates.clear();
+            for (int code : queryTrigrams) {
+                IntArrayList posting = postings.get(code);
+                if (posting != null) {
+                    for (int i = 0; i < posting.size(); i++) {
+                        int id = posting.get(i);
+                        if (names[id] == null) {
+                            continue;
+                        }
+                        if (stamps[id] != queryStamp) {
+                            stamps[id] = queryStamp;
+                            shared[id] = 0;
+                        }
+                        if (++shared[id] == minShared) {
+                            candidates.add(id);
+                        }
+                    }
+                }
+            }
+
+            List<int[]> matches = new ArrayList<>();    // {name id, distance}
+            for (int i = 0; i < candidates.size(); i++) {
+                int id = candidates.get(i);
+                int distance = prefixEditDistance(query, names[id], maxEdits);
+                if (distance <= maxEdits) {
+                    matches.add(new int[]{id, distance});
+                }
+            }
+            matches.sort((a, b) -> a[1] != b[1] ? a[1] - b[1] :
+                    names[a[0]].length() != names[b[0]].length() ? names[a[0]].length() - names[b[0]].length() :
+                            names[a[0]].compareTo(names[b[0]]));
+
+            List<String> result = new ArrayList<>(Math.min(limit, matches.size()));
+            for (int i = 0; i < matches.size() && i < limit; i++) {
+                result.add(names[matches.get(i)[0]]);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * @return the distinct trigram codes of the string padded with two leading blanks, so short strings and
+     * the start of a string are represented
+     */
+    static int[] trigrams(String s) {
+        int[] codes = new int[s.length()];
+        int c0 = ' ';
+        int c1 = ' ';
+        for (int i = 0; i < s.length(); i++) {
+            int c2 = s.charAt(i) & 0x7f;
+            codes[i] = (c0 << 14) | (c1 << 7) | c2;
+            c0 = c1;
+            c1 = c2;
+        }
+        Arrays.sort(codes);
+        int n = 0;
+        for (int i = 0; i < codes.length; i++) {
+            if (i == 0 || codes[i] != codes[i - 1]) {
+                codes[n++] = codes[i];
+            }
+        }
+        return n == codes.length ? codes : Arrays.copyOf(codes, n);
+    }
+
+    /**
+     * Return the smallest edit distance between {@code query} and a prefix of {@code name}, or
+     * {@code maxEdits + 1} if it exceeds {@code maxEdits}.
+     */
+    static int prefixEditDistance(String query, String name, int maxEdits) {
+        int m = query.length();
+        int n = Math.min(name.length(), m + maxEdits);
+        if (n < m - maxEdits) {
+            return maxEdits + 1;
+        }
+        int[] previous = new int[n + 1];
+        int[] current = new int[n + 1];
+        for (int j = 0; j <= n; j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= m; i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            char qc = query.charAt(i - 1);
+            for (int j = 1; j <= n; j++) {
+                int cost = qc == name.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > maxEdits) {
+                return maxEdits + 1;
+            }
+            int[] tmp = previous;
+            previous = current;
+            current = tmp;
+        }
+        // The query against every prefix of the name
+        int distance = maxEdits + 1;
+        for (int j = 0; j <= n; j++) {
+            distance = Math.min(distance, previous[j]);
+        }
+        return distance;
+    }
+}
@@ -0,0 +1,567 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.feature;
+
+import org.apache.log4j.Logger;
+import org.broad.igv.DirectoryManager;
+import org.broad.igv.data.DataTile;
+import org.broad.igv.util.FileUtils;
+import org.broad.igv.util.collections.MultiMap;
+import htsjdk.tribble.Feature;
+
+import java.awt.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.List;
+
+/**
+ * A binary snapshot of the features parsed from a non-indexed feature file, saved in the IGV cache directory so
+ * that later sessions can load the file without parsing it.
+ * <p/>
+ * The snapshot is keyed by the file's path, length and modification time, the genome, and the codec; it is used
+ * only if all of them match.  The file is memory mapped when opened, and the features of a chromosome are decoded
+ * on request from their own section.  Strings are stored once, in a table decoded one entry at a time as the
+ * features referring to them are read.  The genome-wide coverage of the features is saved as well, so the whole
+ * genome view can be drawn without decoding any chromosome.
+ * <p/>
+ * Only {@link BasicFeature}s with {@link Exon}s are supported; a collection containing any other feature class
+ * is not saved.
+ * <p/>
+ * Layout: header, feature sections, string table, chromosome directory, genome coverage, and a trailer holding
+ * the offset of the string table.  Values are big-endian.
+ * <p/>
+ * Snapshots are touched when opened, and {@link #evict} removes the least recently used ones to keep the
+ * snapshot directory within a size limit.
+ */
+public class FeatureSnapshot {
+
+    private static Logger log = Logger.getLogger(FeatureSnapshot.class);
+
+    public static final String EXTENSION = ".features";
+
+    static final int MAGIC = 0x49475646;    // "IGVF"
+    static final int VERSION = 1;
+
+    private static final int NULL = -1;
+
+    private final MappedByteBuffer buffer;
+    private final int stringDataOffset;
+    private final int[] stringOffsets;
+    private final String[] strings;
+    private final Map<String, Section> sections;
+    private final DataTile genomeCoverage;
+    private final double dataMax;
+
+    private FeatureSnapshot(MappedByteBuffer buffer) {
+
+        this.buffer = buffer;
+        ByteBuffer in = buffer.duplicate();
+
+        in.position(in.limit() - 4);
+        in.position(in.getInt());
+
+        // String table: count, offsets relative to the string data, directory offset, string data
+        int stringCount = in.getInt();
+        stringOffsets = new int[stringCount];
+        for (int i = 0; i < stringCount; i++) {
+            stringOffsets[i] = in.getInt();
+        }
+        strings = new String[stringCount];
+        int directoryOffset = in.getInt();
+        stringDataOffset = in.position();
+        in.position(directoryOffset);
+
+        int chrCount = in.getInt();
+        sections = new LinkedHashMap<>(chrCount);
+        for (int i = 0; i < chrCount; i++) {
+            String chr = getString(in.getInt());
+            sections.put(chr, new Section(in.getInt(), in.getInt()));
+        }
+
+        if (in.get() == 1) {
+            int nBins = in.getInt();
+            int[] starts = new int[nBins];
+            int[] ends = new int[nBins];
+            float[] values = new float[nBins];
+            for (int i = 0; i < nBins; i++) {
+                starts[i] = in.getInt();
+                ends[i] = in.getInt();
+                values[i] = in.getFloat();
+            }
+            genomeCoverage = new DataTile(starts, ends, values, null);
+        } else {
+            genomeCoverage = null;
+        }
+        dataMax = in.getDouble();
+    }
+
+    /**
+     * Return the snapshot file for a feature file, or null if there is no cache directory.  The key is stored in
+     * the snapshot and verified when it is opened, so hash collisions are harmless.
+     */
+    public static File getSnapshotFile(String path, String genomeId) {
+        File cacheDirectory = DirectoryManager.getCacheDirectory();
+        if (cacheDirectory == null) {
+            return null;
+        }
+        File snapshotDirectory = new File(cacheDirectory, "features");
+        if (!snapshotDirectory.exists() && !snapshotDirectory.mkdir()) {
+            return null;
+        }
+        return new File(snapshotDirectory, Integer.toHexString((path + "\t" + genomeId).hashCode()) + EXTENSION);
+    }
+
+    /**
+     * @return true if the features can be saved in a snapshot
+     */
+    public static boolean isSupported(Collection<List<Feature>> featureLists) {
+        for (List<Feature> features : featureLists) {
+            for (Feature f : features) {
+                if (f.getClass() != BasicFeature.class) {
+                    return false;
+                }
+                List<Exon> exons = ((BasicFeature) f).getExons();
+                if (exons != null) {
+                    for (Exon exon : exons) {
+                        if (exon.getClass() != Exon.class) return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Open the snapshot for a feature file, or return null if there is none or it is out of date.
+     *
+     * @param snapshot the snapshot file
+     * @param path     path of the feature file
+     * @param genomeId id of the genome the features were loaded for
+     * @param codec    name of the codec class
+     */
+    public static FeatureSnapshot open(File snapshot, String path, String genomeId, String codec) {
+
+        if (snapshot == null || !snapshot.exists() || FileUtils.isRemote(path)) {
+            return null;
+        }
+        File file = new File(path);
+        try (FileChannel channel = FileChannel.open(snapshot.toPath())) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            ByteBuffer in = buffer.duplicate();
+            if (in.getInt() != MAGIC || in.getInt() != VERSION ||
+                    !path.equals(readUTF8(in)) ||
+                    in.getLong() != file.length() ||
+                    in.getLong() != file.lastModified() ||
+                    !genomeId.equals(readUTF8(in)) ||
+                    !codec.equals(readUTF8(in))) {
+                return null;
+            }
+            snapshot.setLastModified(System.currentTimeMillis());
+            return new FeatureSnapshot(buffer);
+        } catch (IOException | RuntimeException e) {
+            log.error("Error reading feature snapshot: " + snapshot.getAbsolutePath(), e);
+            return null;
+        }
+    }
+
+    /**
+     * @return the chromosomes with features, in the order they were saved
+     */
+    public Set<String> getChromosomes() {
+        return Collections.unmodifiableSet(sections.keySet());
+    }
+
+    public boolean hasChromosome(String chr) {
+        return sections.containsKey(chr);
+    }
+
+    public int getFeatureCount(String chr) {
+        Section section = sections.get(chr);
+        return section == null ? 0 : section.featureCount;
+    }
+
+    /**
+     * @return the genome-wide coverage saved with the features, or null if none was saved
+     */
+    public DataTile getGenomeCoverage() {
+        return genomeCoverage;
+    }
+
+    public double getDataMax() {
+        return dataMax;
+    }
+
+    /**
+     * Decode the features of a chromosome.  Each call returns new feature instances.
+     *
+     * @return the features in the order saved, or null if the snapshot has none for the chromosome
+     */
+    public List<Feature> readFeatures(String chr) {
+        Section section = sections.get(chr);
+        if (section == null) {
+            return null;
+        }
+        ByteBuffer in = buffer.duplicate();
+        in.position(section.offset);
+        List<Feature> features = new ArrayList<>(section.featureCount);
+        for (int i = 0; i < section.featureCount; i++) {
+            features.add(readFeature(in));
+        }
+        return features;
+    }
+
+    private BasicFeature readFeature(ByteBuffer in) {
+        String chr = getString(in.getInt());
+        int start = in.getInt();
+        int end = in.getInt();
+        BasicFeature f = new BasicFeature(chr, start, end, readStrand(in));
+        readCommonFields(in, f);
+        f.setThickStart(in.getInt());
+        f.setThickEnd(in.getInt());
+        f.level = in.getInt();
+        f.score = in.getFloat();
+        f.confidence = in.getFloat();
+        f.identifier = getString(in.getInt());
+        f.representation = getString(in.getInt());
+        f.link = getString(in.getInt());
+        int parentCount = in.getInt();
+        if (parentCount != NULL) {
+            f.parentIds = new String[parentCount];
+            for (int i = 0; i < parentCount; i++) {
+                f.parentIds[i] = getString(in.getInt());
+            }
+        }
+        int exonCount = in.getInt();
+        if (exonCount != NULL) {
+            f.exons = new ArrayList<>(exonCount);
+            for (int i = 0; i < exonCount; i++) {
+                Exon exon = new Exon(chr, in.getInt(), in.getInt(), readStrand(in));
+                readCommonFields(in, exon);
+                exon.restoreCoding(in.getInt(), in.getInt(), in.get() == 1);
+                exon.setNumber(in.getInt());
+                exon.setMrnaBase(in.getInt());
+                f.exons.add(exon);
+            }
+        }
+        return f;
+    }
+
+    private Strand readStrand(ByteBuffer in) {
+        return Strand.values()[in.get()];
+    }
+
+    private void readCommonFields(ByteBuffer in, AbstractFeature f) {
+        f.name = getString(in.getInt());
+        f.type = getString(in.getInt());
+        f.description = getString(in.getInt());
+        f.readingFrame = in.getInt();
+        if (in.get() == 1) {
+            f.color = new Color(in.getInt(), true);
+        }
+        int attributeCount = in.getInt();
+        if (attributeCount != NULL) {
+            f.attributes = new MultiMap<>(attributeCount);
+            for (int i = 0; i < attributeCount; i++) {
+                f.attributes.put(getString(in.getInt()), getString(in.getInt()));
+            }
+        }
+    }
+
+    /**
+     * Return string {@code index} of the string table, decoding it on first use.  Races decode a string twice,
+     * harmlessly.
+     */
+    private String getString(int index) {
+        if (index == NULL) {
+            return null;
+        }
+        String s = strings[index];
+        if (s == null) {
+            ByteBuffer in = buffer.duplicate();
+            in.position(stringDataOffset + stringOffsets[index]);
+            s = readUTF8(in);
+            strings[index] = s;
+        }
+        return s;
+    }
+
+    private static String readUTF8(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Save features in a snapshot.  The snapshot is written to a temporary file first, so a concurrent reader
+     * never sees a partial snapshot.
+     *
+     * @param snapshot       the snapshot file
+     * @param path           path of the feature file
+     * @param genomeId       id of the genome the features were loaded for
+     * @param codec          name of the codec class
+     * @param fileLength     length of the feature file when the features were read
+     * @param lastModified   modification time of the feature file when the features were read
+     * @param featureMap     features by chromosome, all {@link BasicFeature}s (see {@link #isSupported})
+     * @param genomeCoverage genome-wide coverage of the features, or null
+     * @param dataMax        maximum coverage value
+     */
+    public static void write(File snapshot, String path, String genomeId, String codec, long fileLength, long lastModified,
+                             Map<String, List<Feature>> featureMap, DataTile genomeCoverage, double dataMax) throws IOException {
+
+        File tmp = File.createTempFile("features", ".tmp", snapshot.getAbsoluteFile().getParentFile());
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            writeUTF8(dos, path);
+            dos.writeLong(fileLength);
+            dos.writeLong(lastModified);
+            writeUTF8(dos, genomeId);
+            writeUTF8(dos, codec);
+
+            StringTable stringTable = new StringTable();
+            Map<String, Section> sections = new LinkedHashMap<>();
+            for (Map.Entry<String, List<Feature>> entry : featureMap.entrySet()) {
+                List<Feature> features = entry.getValue();
+                stringTable.indexOf(entry.getKey());
+                sections.put(entry.getKey(), new Section(dos.size(), features.size()));
+                for (Feature f : features) {
+                    writeFeature(dos, (BasicFeature) f, stringTable);
+                }
+                checkSize(dos);
+            }
+
+            int stringTableOffset = dos.size();
+            dos.writeInt(stringTable.strings.size());
+            int offset = 0;
+            List<byte[]> encoded = new ArrayList<>(stringTable.strings.size());
+            for (String s : stringTable.strings) {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                encoded.add(bytes);
+                dos.writeInt(offset);
+                offset += 4 + bytes.length;
+            }
+            dos.writeInt(dos.size() + 4 + offset);     // Directory offset, following the string data
+            for (byte[] bytes : encoded) {
+                dos.writeInt(bytes.length);
+                dos.write(bytes);
+            }
+
+            dos.writeInt(sections.size());
+            for (Map.Entry<String, Section> entry : sections.entrySet()) {
+                dos.writeInt(stringTable.indexOf(entry.getKey()));
+                dos.writeInt(entry.getValue().offset);
+                dos.writeInt(entry.getValue().featureCount);
+            }
+
+            if (genomeCoverage == null) {
+                dos.writeByte(0);
+            } else {
+                dos.writeByte(1);
+                int[] starts = genomeCoverage.getStartLocations();
+                int[] ends = genomeCoverage.getEndLocations();
+                float[] values = genomeCoverage.getValues();
+                dos.writeInt(starts.length);
+                for (int i = 0; i < starts.length; i++) {
+                    dos.writeInt(starts[i]);
+                    dos.writeInt(ends[i]);
+                    dos.writeFloat(values[i]);
+                }
+            }
+            dos.writeDouble(dataMax);
+
+            checkSize(dos);
+            dos.writeInt(stringTableOffset);
+
+        } catch (IOException | RuntimeException e) {
+            tmp.delete();
+            throw e;
+        }
+        Files.move(tmp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Delete the least recently used snapshots in a directory until the rest total at most maxBytes.  Temporary
+     * files left by interrupted writes are deleted once they are a day old.
+     */
+    public static void evict(File directory, long maxBytes) {
+
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        List<File> snapshots = new ArrayList<>();
+        long totalBytes = 0;
+        for (File f : files) {
+            if (f.getName().endsWith(EXTENSION)) {
+                snapshots.add(f);
+                totalBytes += f.length();
+            } else if (f.getName().startsWith("features") && f.getName().endsWith(".tmp") &&
+                    now - f.lastModified() > 24 * 60 * 60 * 1000L) {
+                f.delete();
+            }
+        }
+
+        snapshots.sort(Comparator.comparingLong(File::lastModified));
+        for (File f : snapshots) {
+            if (totalBytes <= maxBytes) {
+                break;
+            }
+            long length = f.length();
+            if (f.delete()) {
+                totalBytes -= length;
+            } else {
+                log.warn("Could not delete feature snapshot: " + f.getAbsolutePath());
+            }
+        }
+    }
+
+    private static void checkSize(DataOutputStream dos) throws IOException {
+        // DataOutputStream.size() saturates at Integer.MAX_VALUE, which is also the limit of a single mapping
+        if (dos.size() >= Integer.MAX_VALUE - 1024) {
+            throw new IOException("Too many features for a snapshot");
+        }
+    }
+
+    private static void writeFeature(DataOutputStream dos, BasicFeature f, StringTable strings) throws IOException {
+        dos.writeInt(strings.indexOf(f.getChr()));
+        dos.writeInt(f.getStart());
+        dos.writeInt(f.getEnd());
+        writeStrand(dos, f.getStrand());
+        writeCommonFields(dos, f, strings);
+        dos.writeInt(f.getThickStart());
+        dos.writeInt(f.getThickEnd());
+        dos.writeInt(f.level);
+        dos.writeFloat(f.score);
+        dos.writeFloat(f.confidence);
+        dos.writeInt(strings.indexOf(f.identifier));
+        dos.writeInt(strings.indexOf(f.representation));
+        dos.writeInt(strings.indexOf(f.link));
+        if (f.parentIds == null) {
+            dos.writeInt(NULL);
+        } else {
+            dos.writeInt(f.parentIds.length);
+            for (String id : f.parentIds) {
+                dos.writeInt(strings.indexOf(id));
+            }
+        }
+        if (f.exons == null) {
+            dos.writeInt(NULL);
+        } else {
+            dos.writeInt(f.exons.size());
+            for (Exon exon : f.exons) {
+                dos.writeInt(exon.getStart());
+                dos.writeInt(exon.getEnd());
+                writeStrand(dos, exon.getStrand());
+                writeCommonFields(dos, exon, strings);
+                dos.writeInt(exon.getCdStart());
+                dos.writeInt(exon.getCdEnd());
+                dos.writeByte(exon.isNonCoding() ? 1 : 0);
+                dos.writeInt(exon.getNumber());
+                dos.writeInt(exon.getMrnaBase());
+            }
+        }
+    }
+
+    private static void writeStrand(DataOutputStream dos, Strand strand) throws IOException {
+        dos.writeByte((strand == null ? Strand.NONE : strand).ordinal());
+    }
+
+    private static void writeCommonFields(DataOutputStream dos, AbstractFeature f, StringTable strings) throws IOException {
+        dos.writeInt(strings.indexOf(f.name));
+        dos.writeInt(strings.indexOf(f.type));
+        dos.writeInt(strings.indexOf(f.description));
+        dos.writeInt(f.readingFrame);
+        if (f.color == null) {
+            dos.writeByte(0);
+        } else {
+            dos.writeByte(1);
+            dos.writeInt(f.color.getRGB());
+        }
+        if (f.attributes == null) {
+            dos.writeInt(NULL);
+        } else {
+            // Counted from the pairs written, MultiMap.size() isn't maintained by addAll()
+            int count = 0;
+            for (String key : f.attributes.keys()) {
+                count += f.attributes.getAll(key).size();
+            }
+            dos.writeInt(count);
+            for (String key : f.attributes.keys()) {
+                for (String value : f.attributes.getAll(key)) {
+                    dos.writeInt(strings.indexOf(key));
+                    dos.writeInt(strings.indexOf(value));
+                }
+            }
+        }
+    }
+
+    private static void writeUTF8(DataOutputStream dos, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        dos.writeInt(bytes.length);
+        dos.write(bytes);
+    }
+
+    private static class Section {
+
+        final int offset;
+        final int featureCount;
+
+        Section(int offset, int featureCount) {
+            this.offset = offset;
+            this.featureCount = featureCount;
+        }
+    }
+
+    /**
+     * Distinct strings in order of first use.
+     */
+    private static class StringTable {
+
+        final List<String> strings = new ArrayList<>();
+        final Map<String, Integer> indexes = new HashMap<>();
+
+        int indexOf(String s) {
+            if (s == null) {
+                return NULL;
+            }
+            Integer index = indexes.get(s);
+            if (index == null) {
+                index = strings.size();
+                strings.add(s);
+                indexes.put(s, index);
+            }
+            return index;
+        }
+    }
+}
@@ -29,8 +29,11 @@ import org.apache.log4j.Logger;
 import org.broad.igv.exceptions.ParserException;
 import org.broad.igv.feature.genome.Genome;
 import org.broad.igv.feature.tribble.GFFCodec;
+import org.broad.igv.feature.tribble.ParallelFeatureDecoder;
 import org.broad.igv.track.*;
 import htsjdk.tribble.Feature;
+import htsjdk.tribble.readers.LineIteratorImpl;
+import htsjdk.tribble.readers.SynchronousLineReader;
 
 import java.io.*;
 import java.util.*;
@@ -48,13 +51,29 @@ public class GFFParser implements FeatureParser {
     private TrackProperties trackProperties = null;
 
     public List<htsjdk.tribble.Feature> loadFeatures(BufferedReader reader, Genome genome) {
-        return loadFeatures(reader, genome, new GFFCodec(genome));
+
+        if (ParallelFeatureDecoder.getDefaultParallelism() == 0) {
+            return loadFeatures(reader, genome, new GFFCodec(genome));
+        }
+
+        // Decode on several threads.  Header lines are read from the top of the file only.
+        Map<String, List<Feature>> featureMap = new LinkedHashMap<>();
+        try {
+            Object header = ParallelFeatureDecoder.decode(new LineIteratorImpl(new SynchronousLineReader(reader)),
+                    () -> new LenientGFFCodec(genome),
+                    f -> addFeature(featureMap, f));
+            trackProperties = TrackLoader.getTrackProperties(header);
+        } catch (IOException ex) {
+            log.error("Error reading GFF file", ex);
+            throw new RuntimeException(ex);
+        }
+        return combineFeatures(featureMap, genome);
     }
 
     public List<htsjdk.tribble.Feature> loadFeatures(BufferedReader reader, Genome genome, GFFCodec codec) {
         String line = null;
         int lineNumber = 0;
-        GFFFeatureSource.GFFCombiner combiner = new GFFFeatureSource.GFFCombiner();
+        Map<String, List<Feature>> featureMap = new LinkedHashMap<>();
         try {
             while ((line = reader.readLine()) != null) {
                 lineNumber++;
@@ -65,7 +84,7 @@ public class GFFParser implements FeatureParser {
                     try {
                         Feature f = codec.decode(line);
                         if (f != null) {
-                            combiner.addFeature((BasicFeature) f);
+                            addFeature(featureMap, f);
                         }
                     } catch (Exception e) {
                         log.error("Error parsing: " + line, e);
@@ -85,14 +104,61 @@ public class GFFParser implements FeatureParser {
 
         trackProperties = TrackLoader.getTrackProperties(codec.getHeader());
 
-        //Combine the features
-        List<Feature> iFeatures = combiner.combineFeatures();
+        return combineFeatures(featureMap, genome);
+    }
+
+    private static void addFeature(Map<String, List<Feature>> featureMap, Feature f) {
+        List<Feature> features = featureMap.get(f.getChr());
+        if (features == null) {
+            features = new ArrayList<>();
+            featureMap.put(f.getChr(), features);
+        }
+        features.add(f);
+    }
+
+    /**
+     * Combine the features, chromosomes in parallel, and register them with the FeatureDB.
+     */
+    private static List<Feature> combineFeatures(Map<String, List<Feature>> featureMap, Genome genome) {
+
+        Map<String, List<Feature>> combinedFeatures;
+        try {
+            combinedFeatures = GFFFeatureSource.combineByChromosome(featureMap);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+
+        List<Feature> iFeatures = new ArrayList<>();
+        for (List<Feature> features : combinedFeatures.values()) {
+            iFeatures.addAll(features);
+        }
 
         FeatureDB.addFeatures(iFeatures, genome);
 
         return iFeatures;
     }
 
+    /**
+     * A codec which logs and skips lines it cannot parse, as the sequential parser does, rather than failing
+     * the load.
+     */
+    private static class LenientGFFCodec extends GFFCodec {
+
+        LenientGFFCodec(Genome genome) {
+            super(genome);
+        }
+
+        @Override
+        public BasicFeature decode(String line) {
+            try {
+                return super.decode(line);
+            } catch (Exception e) {
+                log.error("Error parsing: " + line, e);
+                return null;
+            }
+        }
+    }
+
 
     public static Set<String> geneParts = new HashSet();
 
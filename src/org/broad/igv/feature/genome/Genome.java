@@ -44,6 +44,7 @@ import org.broad.igv.util.ResourceLocator;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Simple model of a genome.  Keeps an ordered list of Chromosomes, an alias table, and genome position offsets
@@ -85,7 +86,7 @@ public class Genome {
     public Genome(String id, String displayName, Sequence sequence, boolean chromosOrdered) {
         this.id = id;
         this.displayName = displayName;
-        this.chrAliasTable = new HashMap<String, String>();
+        this.chrAliasTable = new ConcurrentHashMap<String, String>();
         this.sequence = sequence;
         chromosomeNames = sequence.getChromosomeNames();
         this.ucscID = ucsdIDMap.containsKey(id) ? ucsdIDMap.get(id) : id;
@@ -125,7 +126,7 @@ public class Genome {
     public Genome(String id, List<Chromosome> chromosomes) {
         this.id = id;
         this.displayName = id;
-        this.chrAliasTable = new HashMap<String, String>();
+        this.chrAliasTable = new ConcurrentHashMap<String, String>();
         this.sequence = null;
 
         chromosomeNames = new ArrayList<String>(chromosomes.size());
@@ -144,11 +145,9 @@ public class Genome {
             return str;
         } else {
             //We intern strings used as chromosomes
-            //to prevent storing multiple times
-            if (!chrAliasTable.containsKey(str)) {
-                chrAliasTable.put(str, str);
-            }
-            return chrAliasTable.get(str);
+            //to prevent storing multiple times.  Features may be parsed on several threads.
+            String chr = chrAliasTable.putIfAbsent(str, str);
+            return chr == null ? str : chr;
         }
     }
 
@@ -169,7 +168,7 @@ public class Genome {
      */
     public void addChrAliases(Collection<Collection<String>> synonymsList) {
 
-        if (chrAliasTable == null) chrAliasTable = new HashMap<String, String>();
+        if (chrAliasTable == null) chrAliasTable = new ConcurrentHashMap<String, String>();
 
         // Convert names to a set for fast "contains" testing.
         Set<String> chrNameSet = new HashSet<String>(chromosomeNames);
@@ -604,6 +603,20 @@ public class Genome {
         return sequence.isLoaded(frame);
     }
 
+    public void prefetchSequence(ReferenceFrame frame) {
+        if (sequence != null) {
+            sequence.prefetch(frame);
+        }
+    }
+
+    /**
+     * Return a summary of the sequence tile cache for the batch "cacheStats" command, or null if the sequence
+     * is not cached.
+     */
+    public String getSequenceCacheStatistics() {
+        return sequence instanceof SequenceWrapper ? ((SequenceWrapper) sequence).getSequenceCache().toString() : null;
+    }
+
     public void setAnnotationResources(ArrayList<ResourceLocator> annotationResources) {
         this.annotationResources = annotationResources;
     }
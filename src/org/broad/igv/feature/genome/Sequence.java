@@ -52,4 +52,16 @@ public interface Sequence {
     boolean isRemote();
 
     default boolean isFasta() {return false;}
+
+    /**
+     * Return true if bases are read directly from memory, so getBase and getSequence are cheap enough to need
+     * no caching.
+     */
+    default boolean isRandomAccess() {return false;}
+
+    /**
+     * Start loading, in the background, sequence around the frame that is likely to be needed next.
+     */
+    default void prefetch(ReferenceFrame frame) {
+    }
 }
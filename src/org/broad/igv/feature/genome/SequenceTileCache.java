@@ -0,0 +1,134 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.feature.genome;
+
+import org.apache.log4j.Logger;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A least-recently-used cache of sequence tiles bounded by the total size of the cached bases.  Tiles are
+ * weighted by their length, so a budget is shared sensibly between full tiles and the short tiles at the ends
+ * of chromosomes.  Lookups through {@link #get(String)} are counted as hits or misses.
+ */
+public class SequenceTileCache {
+
+    private static Logger log = Logger.getLogger(SequenceTileCache.class);
+
+    // Rough per-tile overhead of the key, tile and map entry
+    private static final int TILE_OVERHEAD_BYTES = 100;
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, SequenceWrapper.SequenceTile> tiles;
+    private long cachedBytes = 0;
+    private long hitCount = 0;
+    private long missCount = 0;
+
+    public SequenceTileCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+        this.tiles = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Return the tile for {@code key}, or null if it is not cached.
+     */
+    public synchronized SequenceWrapper.SequenceTile get(String key) {
+        SequenceWrapper.SequenceTile tile = tiles.get(key);
+        if (tile == null) {
+            missCount++;
+        } else {
+            hitCount++;
+        }
+        return tile;
+    }
+
+    /**
+     * Return true if the tile is cached.  Unlike {@link #get(String)} this neither counts as a lookup nor
+     * affects the eviction order.
+     */
+    public synchronized boolean containsKey(String key) {
+        return tiles.containsKey(key);
+    }
+
+    /**
+     * Add a tile, then remove least recently used tiles until the cache is within its budget.  The tile just
+     * added is never removed, so a single tile larger than the budget is still cached.
+     */
+    public synchronized void put(String key, SequenceWrapper.SequenceTile tile) {
+        SequenceWrapper.SequenceTile previous = tiles.put(key, tile);
+        if (previous != null) {
+            cachedBytes -= weight(previous);
+        }
+        cachedBytes += weight(tile);
+
+        Iterator<Map.Entry<String, SequenceWrapper.SequenceTile>> iter = tiles.entrySet().iterator();
+        while (cachedBytes > maxBytes && iter.hasNext()) {
+            Map.Entry<String, SequenceWrapper.SequenceTile> entry = iter.next();
+            if (!entry.getKey().equals(key)) {
+                cachedBytes -= weight(entry.getValue());
+                iter.remove();
+                log.debug("Evicted sequence tile " + entry.getKey());
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        tiles.clear();
+        cachedBytes = 0;
+    }
+
+    public synchronized int size() {
+        return tiles.size();
+    }
+
+    public synchronized long getCachedBytes() {
+        return cachedBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "tiles=" + tiles.size() + " bytes=" + cachedBytes + "/" + maxBytes +
+                " hits=" + hitCount + " misses=" + missCount;
+    }
+
+    private static long weight(SequenceWrapper.SequenceTile tile) {
+        return TILE_OVERHEAD_BYTES + tile.getSize();
+    }
+}
@@ -30,14 +30,24 @@
 package org.broad.igv.feature.genome;
 
 import org.apache.log4j.Logger;
+import org.broad.igv.Globals;
+import org.broad.igv.prefs.Constants;
+import org.broad.igv.prefs.PreferencesManager;
 import org.broad.igv.ui.panel.ReferenceFrame;
-import org.broad.igv.util.ObjectCache;
 
 import java.util.Hashtable;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
 
 /**
  * A wrapper class that provides caching for on-disk, queried, and web-service Sequence implementations.
+ * Random access sequences, such as memory mapped fasta files, are read directly.
+ * <p/>
+ * Tiles are held in a {@link SequenceTileCache} bounded by the preference IO.SEQUENCE_CACHE_MB.  Tiles next to
+ * the current view are loaded in the background by {@link #prefetch(ReferenceFrame)}.  A request for a tile
+ * which is being prefetched waits for it rather than reading it again, and a request for a tile still queued for
+ * prefetch loads it on the requesting thread, so it never waits behind other prefetches.
  *
  * @author jrobinso
  */
@@ -47,16 +57,37 @@ public class SequenceWrapper implements Sequence  {
     private static boolean cacheSequences = true;
     private static int tileSize = 1000000;
 
+    private static ExecutorService prefetchExecutor;
+
     private Sequence sequence;
-    private ObjectCache<String, SequenceTile> sequenceCache = new ObjectCache<String, SequenceTile>(50);
+    private SequenceTileCache sequenceCache;
+    private Map<String, FutureTask<Void>> pendingTiles = new ConcurrentHashMap<>();
 
     public SequenceWrapper(Sequence sequence) {
+        this(sequence, PreferencesManager.getPreferences().getAsInt(Constants.SEQUENCE_CACHE_MB) * 1000000L);
+    }
+
+    SequenceWrapper(Sequence sequence, long cacheBytes) {
         this.sequence = sequence;
+        this.sequenceCache = new SequenceTileCache(cacheBytes);
+    }
+
+    private static synchronized ExecutorService getPrefetchExecutor() {
+        if (prefetchExecutor == null) {
+            prefetchExecutor = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "sequence-prefetch");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return prefetchExecutor;
     }
 
 
     public byte getBase(String chr, int position) {
-        if (cacheSequences) {
+        if (sequence.isRandomAccess()) {
+            return sequence.getBase(chr, position);
+        } else if (cacheSequences) {
             int tileNo = position / tileSize;
 
             // Get first chunk
@@ -89,6 +120,7 @@ public class SequenceWrapper implements Sequence  {
 
     @Override
     public boolean isLoaded(ReferenceFrame frame) {
+        if (sequence.isRandomAccess()) return true;
         if (!cacheSequences) return false;
 
         int startTile = (int) frame.getOrigin() / tileSize;
@@ -123,7 +155,9 @@ public class SequenceWrapper implements Sequence  {
      */
     public byte[] getSequence(String chr, int start, int end, boolean useCache) {
 
-        if (cacheSequences && useCache) {
+        if (sequence.isRandomAccess()) {
+            return getUncachedSequence(chr, start, end);
+        } else if (cacheSequences && useCache) {
             byte[] seqbytes = new byte[end - start];
 
             int startTile = start / tileSize;
@@ -175,23 +209,113 @@ public class SequenceWrapper implements Sequence  {
     }
 
 
+    /**
+     * Read the sequence directly, aligned as the tiled sequence would be: a start before the beginning of the
+     * chromosome is padded with zeros at the left, an end past its end with zeros at the right.
+     */
+    private byte[] getUncachedSequence(String chr, int start, int end) {
+        if (end <= start) {
+            return null;
+        }
+        byte[] bytes = sequence.getSequence(chr, Math.max(0, start), end, false);
+        if (bytes == null || (start >= 0 && bytes.length == end - start)) {
+            return bytes;
+        }
+        byte[] seqbytes = new byte[end - start];
+        int toOffset = Math.max(0, -start);
+        System.arraycopy(bytes, 0, seqbytes, toOffset, Math.min(bytes.length, seqbytes.length - toOffset));
+        return seqbytes;
+    }
+
+    @Override
+    public boolean isRandomAccess() {
+        return sequence.isRandomAccess();
+    }
+
+
+    /**
+     * Load the tiles covering and adjacent to the frame in the background, if they are not already cached.
+     * Nothing is loaded if the frame spans more than a tile, the sequence is then too small to display.
+     */
+    @Override
+    public void prefetch(ReferenceFrame frame) {
+
+        if (!cacheSequences || sequence.isRandomAccess() || Globals.isBatch()) {
+            return;
+        }
+
+        final String chr = frame.getChrName();
+        int chrLength = getChromosomeLength(chr);
+        int start = (int) frame.getOrigin();
+        int end = (int) frame.getEnd();
+        if (chrLength <= 0 || end - start > tileSize) {
+            return;
+        }
+
+        int startTile = Math.max(0, start / tileSize - 1);
+        int endTile = Math.min((chrLength - 1) / tileSize, end / tileSize + 1);
+        for (int t = startTile; t <= endTile; t++) {
+            final String key = getKey(chr, t);
+            if (sequenceCache.containsKey(key) || pendingTiles.containsKey(key)) {
+                continue;
+            }
+            final int tileNo = t;
+            FutureTask<Void> task = new FutureTask<>(() -> {
+                try {
+                    if (!sequenceCache.containsKey(key)) {
+                        loadTile(chr, tileNo);
+                    }
+                } finally {
+                    pendingTiles.remove(key);
+                }
+            }, null);
+            if (pendingTiles.putIfAbsent(key, task) == null) {
+                getPrefetchExecutor().execute(task);
+            }
+        }
+    }
+
+    /**
+     * Wait for the tile to be loaded if it is being prefetched, or load it now if it is still queued.
+     */
+    private void awaitPrefetch(String key) {
+        FutureTask<Void> pending = pendingTiles.get(key);
+        if (pending != null) {
+            try {
+                // Runs the task here unless it has started, a task runs only once
+                pending.run();
+                pending.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                log.error("Error prefetching sequence tile " + key, e.getCause());
+            }
+        }
+    }
+
     private SequenceTile getSequenceTile(String chr, int tileNo) {
         String key = getKey(chr, tileNo);
+        awaitPrefetch(key);
         SequenceTile tile = sequenceCache.get(key);
 
         if (tile == null) {
-            int start = tileNo * tileSize;
-            int end = start + tileSize; // <=  UCSC coordinate conventions (end base not inclusive)
+            tile = loadTile(chr, tileNo);
+        }
 
-            if (end <= start) {
-                return null;
-            }
+        return tile;
+    }
+
+    private SequenceTile loadTile(String chr, int tileNo) {
+        int start = tileNo * tileSize;
+        int end = start + tileSize; // <=  UCSC coordinate conventions (end base not inclusive)
 
-            byte[] seq = sequence.getSequence(chr, start, end, true);
-            tile = new SequenceTile(start, seq);
-            sequenceCache.put(key, tile);
+        if (end <= start) {
+            return null;
         }
 
+        byte[] seq = sequence.getSequence(chr, start, end, true);
+        SequenceTile tile = new SequenceTile(start, seq);
+        sequenceCache.put(getKey(chr, tileNo), tile);
         return tile;
     }
 
@@ -204,6 +328,7 @@ public class SequenceWrapper implements Sequence  {
         for (int tileNo = startTile; tileNo <= endTile; tileNo++) {
 
             String key = getKey(chr, tileNo);
+            awaitPrefetch(key);
             SequenceTile tile = sequenceCache.get(key);
 
             if (tile == null) {
@@ -302,6 +427,10 @@ public class SequenceWrapper implements Sequence  {
         sequenceCache.clear();
     }
 
+    public SequenceTileCache getSequenceCache() {
+        return sequenceCache;
+    }
+
     static class SequenceTile {
 
         private int start;
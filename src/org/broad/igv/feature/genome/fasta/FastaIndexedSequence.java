@@ -31,9 +31,10 @@ import org.broad.igv.feature.genome.Sequence;
 import org.broad.igv.util.FileUtils;
 import org.broad.igv.util.ParsingUtils;
 import org.broad.igv.util.stream.IGVSeekableStreamFactory;
+import org.broad.igv.util.stream.MappedSeekableStream;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -50,6 +51,7 @@ public class FastaIndexedSequence implements Sequence {
     final FastaIndex index;
     final String path;
     final long contentLength;
+    private final MappedSeekableStream mappedStream;    // null if the file is not mapped
 
     private final ArrayList<String> chromoNamesList;
 
@@ -66,6 +68,28 @@ public class FastaIndexedSequence implements Sequence {
 
         index = new FastaIndex(indexPath);
         chromoNamesList = new ArrayList<>(index.getSequenceNames());
+
+        mappedStream = openMappedStream(path);
+    }
+
+    /**
+     * Return a stream mapping the fasta file, or null if it is remote or mapping is disabled.  The stream is held
+     * open for the life of the sequence.
+     */
+    private static MappedSeekableStream openMappedStream(String path) {
+        if (FileUtils.isRemote(path)) {
+            return null;
+        }
+        try {
+            SeekableStream ss = IGVSeekableStreamFactory.getInstance().getStreamFor(path);
+            if (ss instanceof MappedSeekableStream) {
+                return (MappedSeekableStream) ss;
+            }
+            ss.close();
+        } catch (IOException e) {
+            log.error("Error mapping fasta file: " + path, e);
+        }
+        return null;
     }
 
 
@@ -106,50 +130,37 @@ public class FastaIndexedSequence implements Sequence {
             final int start = Math.max(0, qstart);    // qstart should never be < 0
             final int end = Math.min((int) idxEntry.getSize(), qend);
 
-            final int bytesPerLine = idxEntry.getBytesPerLine();
-            final int basesPerLine = idxEntry.getBasesPerLine();
-            int nEndBytes = bytesPerLine - basesPerLine;
-
-            int startLine = start / basesPerLine;
-            int endLine = end / basesPerLine;
-
-            int base0 = startLine * basesPerLine;   // Base at beginning of start line
-
-            int offset = start - base0;
-            final long position = idxEntry.getPosition();
-            long startByte = position + startLine * bytesPerLine + offset;
-
-            int base1 = endLine * basesPerLine;
-            int offset1 = end - base1;
-            long endByte = position + endLine * bytesPerLine + offset1;
+            final long startByte = getByteOffset(idxEntry, start);
+            final long endByte = getByteOffset(idxEntry, end);
 
             if (startByte >= endByte) {
                 return null;
             }
 
-            // Read all the bytes in the range.  This will include endline characters
-            byte[] allBytes = readBytes(startByte, endByte);
+            // All the bytes in the range, including endline characters.  For a mapped file this is a view of the
+            // mapping, nothing is copied until the bases are extracted below.
+            ByteBuffer allBytes = mappedStream != null ?
+                    mappedStream.slice(startByte, (int) (endByte - startByte)) :
+                    ByteBuffer.wrap(readBytes(startByte, endByte));
 
-            // Create the array for the sequence -- this will be "allBytes" without the endline characters.
-            ByteArrayOutputStream bos = new ByteArrayOutputStream(end - start);
+            // Copy the bases line by line, skipping the endline characters
+            final int bytesPerLine = idxEntry.getBytesPerLine();
+            final int basesPerLine = idxEntry.getBasesPerLine();
+            final int nEndBytes = bytesPerLine - basesPerLine;
+            final byte[] seqbytes = new byte[end - start];
 
             int srcPos = 0;
-
-            // Copy first line
-            final int allBytesLength = allBytes.length;
-            if (offset > 0) {
-                int nBases = Math.min(end - start, basesPerLine - offset);
-                bos.write(allBytes, srcPos, nBases);
-                srcPos += (nBases + nEndBytes);
+            int destPos = 0;
+            int nBases = Math.min(seqbytes.length, basesPerLine - start % basesPerLine);   // First, possibly partial, line
+            while (destPos < seqbytes.length) {
+                allBytes.position(srcPos);
+                allBytes.get(seqbytes, destPos, nBases);
+                destPos += nBases;
+                srcPos += nBases + nEndBytes;
+                nBases = Math.min(basesPerLine, seqbytes.length - destPos);
             }
 
-            while (srcPos < allBytesLength) {
-                int nBases = Math.min(basesPerLine, allBytesLength - srcPos);
-                bos.write(allBytes, srcPos, nBases);
-                srcPos += (nBases + nEndBytes);
-            }
-
-            return bos.toByteArray();
+            return seqbytes;
 
         } catch (IOException e) {
             log.error("Error loading sequence " + chr + ":" + qstart + "-" + qend, e);
@@ -158,9 +169,48 @@ public class FastaIndexedSequence implements Sequence {
     }
 
 
+    /**
+     * Return the base at {@code position}, or 0 if the position is outside the sequence.  For a mapped file
+     * this is a single read from the mapping.
+     */
     @Override
     public byte getBase(String chr, int position) {
-        throw new RuntimeException("getBase() is not implemented for class " + FastaIndexedSequence.class.getName());
+
+        FastaIndex.FastaSequenceIndexEntry idxEntry = index.getIndexEntry(chr);
+        if (idxEntry == null || position < 0 || position >= idxEntry.getSize()) {
+            return 0;
+        }
+
+        if (mappedStream != null) {
+            try {
+                return mappedStream.get(getByteOffset(idxEntry, position));
+            } catch (IOException e) {
+                log.error("Error reading base " + chr + ":" + position, e);
+                return 0;
+            }
+        } else {
+            byte[] bytes = getSequence(chr, position, position + 1, false);
+            return bytes == null || bytes.length == 0 ? 0 : bytes[0];
+        }
+    }
+
+
+    /**
+     * Return the file offset of the base at {@code position}, see {@link #getSequence}.
+     */
+    private static long getByteOffset(FastaIndex.FastaSequenceIndexEntry idxEntry, int position) {
+        final int basesPerLine = idxEntry.getBasesPerLine();
+        final long line = position / basesPerLine;
+        return idxEntry.getPosition() + line * idxEntry.getBytesPerLine() + (position - line * basesPerLine);
+    }
+
+
+    /**
+     * Return true if the file is mapped, so bases are read from memory with no file I/O.
+     */
+    @Override
+    public boolean isRandomAccess() {
+        return mappedStream != null;
     }
 
 
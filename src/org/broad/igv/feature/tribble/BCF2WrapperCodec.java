@@ -28,6 +28,7 @@ package org.broad.igv.feature.tribble;
 import htsjdk.samtools.util.LocationAware;
 import org.apache.log4j.Logger;
 import org.broad.igv.feature.genome.Genome;
+import org.broad.igv.variant.vcf.BCF2Variant;
 import org.broad.igv.variant.vcf.VCFVariant;
 import htsjdk.tribble.Feature;
 import htsjdk.tribble.FeatureCodec;
@@ -36,11 +37,16 @@ import htsjdk.tribble.readers.AsciiLineReader;
 import htsjdk.tribble.readers.AsciiLineReaderIterator;
 import htsjdk.tribble.readers.PositionalBufferedStream;
 import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFHeader;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 
 /**
+ * Reads BCF2 records as {@link BCF2Variant}s, which parse the site fields from the record bytes and leave INFO and
+ * genotype decoding, by the wrapped htsjdk codec, until needed.
+ *
  * @author Jacob Silterra
  * @date 2013-Jun-14
  */
@@ -50,6 +56,7 @@ public class BCF2WrapperCodec implements FeatureCodec<VCFVariant, PositionalBuff
 
     FeatureCodec<VariantContext, PositionalBufferedStream> wrappedCodec;
     Genome genome;
+    BCF2Variant.Decoder decoder;    // created from the file header
 
     public BCF2WrapperCodec(FeatureCodec<VariantContext, PositionalBufferedStream> wrappedCodec, Genome genome) {
         this.wrappedCodec = wrappedCodec;
@@ -58,13 +65,41 @@ public class BCF2WrapperCodec implements FeatureCodec<VCFVariant, PositionalBuff
 
     @Override
     public VCFVariant decode(PositionalBufferedStream stream) throws IOException {
-        VariantContext vc = wrappedCodec.decode(stream);
-        if (vc == null) {
-            return null;
+        if (decoder == null) {
+            VariantContext vc = wrappedCodec.decode(stream);
+            if (vc == null) {
+                return null;
+            }
+            String chr = genome == null ? vc.getChr() : genome.getCanonicalChrName(vc.getChr());
+            return new VCFVariant(vc, chr, wrappedCodec);
+        }
+
+        byte[] sizes = new byte[8];
+        readFully(stream, sizes);
+        byte[] shared = new byte[readInt(sizes, 0)];
+        byte[] indiv = new byte[readInt(sizes, 4)];
+        readFully(stream, shared);
+        readFully(stream, indiv);
+
+        String contig = decoder.getContig(shared);
+        String chr = genome == null ? contig : genome.getCanonicalChrName(contig);
+        return new BCF2Variant(decoder, shared, indiv, chr);
+    }
+
+    private static void readFully(PositionalBufferedStream stream, byte[] bytes) throws IOException {
+        int n = 0;
+        while (n < bytes.length) {
+            int count = stream.read(bytes, n, bytes.length - n);
+            if (count < 0) {
+                throw new EOFException("Unexpected end of BCF2 record");
+            }
+            n += count;
         }
-        String chr = genome == null ? vc.getChr() : genome.getCanonicalChrName(vc.getChr());
-        return new VCFVariant(vc, chr);
+    }
 
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8 |
+                (bytes[offset + 2] & 0xff) << 16 | (bytes[offset + 3] & 0xff) << 24;
     }
 
     @Override
@@ -74,7 +109,11 @@ public class BCF2WrapperCodec implements FeatureCodec<VCFVariant, PositionalBuff
 
     @Override
     public FeatureCodecHeader readHeader(PositionalBufferedStream stream) throws IOException {
-        return this.wrappedCodec.readHeader(stream);
+        FeatureCodecHeader header = this.wrappedCodec.readHeader(stream);
+        if (header != null && header.getHeaderValue() instanceof VCFHeader) {
+            decoder = new BCF2Variant.Decoder(wrappedCodec, (VCFHeader) header.getHeaderValue());
+        }
+        return header;
     }
 
     @Override
@@ -0,0 +1,291 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.feature.tribble;
+
+import htsjdk.tribble.AsciiFeatureCodec;
+import htsjdk.tribble.Feature;
+import htsjdk.tribble.FeatureCodec;
+import htsjdk.tribble.readers.LineIterator;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Decodes the lines of a feature file on several threads.
+ * <p/>
+ * The calling thread reads lines and hands them out in batches to a pool of decoders, then delivers the decoded
+ * features to a sink in file order, itself.  The sink therefore need not be thread safe.  A bounded number of
+ * batches is in flight at once, so memory use does not grow with the file size.
+ * <p/>
+ * Codecs keep per-instance state, so each decoding thread uses its own codec.  When decoding with an
+ * {@link AsciiFeatureCodec} the header is read by one codec, and the header lines are replayed to each thread's
+ * codec before it decodes any features.
+ */
+public class ParallelFeatureDecoder {
+
+    // Lines per batch.  Not final so that tests can use small batches.
+    static int batchSize = 2048;
+
+    private static ExecutorService executor;
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(getPoolSize(), r -> {
+                Thread t = new Thread(r, "feature-decoder");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return executor;
+    }
+
+    private static int getPoolSize() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    }
+
+    /**
+     * @return the number of decoding threads worth using, 0 if decoding should be done on the calling thread
+     */
+    public static int getDefaultParallelism() {
+        return Runtime.getRuntime().availableProcessors() > 1 ? getPoolSize() : 0;
+    }
+
+    /**
+     * @return true if the codec decodes each line independently of the others, so that a file can be decoded in
+     * parallel by several instances
+     */
+    public static boolean canDecodeInParallel(FeatureCodec codec) {
+        return codec instanceof IGVBEDCodec || codec instanceof GFFCodec || codec instanceof UCSCGeneTableCodec;
+    }
+
+    /**
+     * Read the header and decode all features with codecs from {@code codecFactory}, passing the features to
+     * {@code sink} in file order.
+     *
+     * @return the header, as read by the codec
+     */
+    public static Object decode(LineIterator lines, Supplier<? extends AsciiFeatureCodec> codecFactory,
+                                Consumer<Feature> sink) throws IOException {
+        return decode(lines, codecFactory, getDefaultParallelism(), sink);
+    }
+
+    public static Object decode(LineIterator lines, Supplier<? extends AsciiFeatureCodec> codecFactory,
+                                int parallelism, Consumer<Feature> sink) throws IOException {
+
+        AsciiFeatureCodec headerCodec = codecFactory.get();
+        RecordingLineIterator recorder = new RecordingLineIterator(lines);
+        Object header = headerCodec.readActualHeader(recorder);
+        List<String> headerLines = recorder.recordedLines;
+
+        decodeLines(lines, () -> {
+            AsciiFeatureCodec codec;
+            if (parallelism > 0) {
+                codec = codecFactory.get();
+                codec.readActualHeader(new ListLineIterator(headerLines));
+            } else {
+                codec = headerCodec;
+            }
+            return line -> (Feature) codec.decode(line);
+        }, parallelism, sink);
+
+        return header;
+    }
+
+    /**
+     * Decode lines with per-thread decoders from {@code decoderFactory}, passing the features to {@code sink} in
+     * order.  Lines which decode to null are skipped.
+     *
+     * @param parallelism number of decoding threads, 0 to decode on the calling thread
+     */
+    public static void decodeLines(Iterator<String> lines, Supplier<Function<String, ? extends Feature>> decoderFactory,
+                                   int parallelism, Consumer<Feature> sink) throws IOException {
+
+        if (parallelism <= 0) {
+            Function<String, ? extends Feature> decoder = decoderFactory.get();
+            while (lines.hasNext()) {
+                Feature f = decoder.apply(lines.next());
+                if (f != null) sink.accept(f);
+            }
+            return;
+        }
+
+        // One decoder per thread for the duration of this call
+        Map<Thread, Function<String, ? extends Feature>> decoders = new ConcurrentHashMap<>();
+        ExecutorService executor = getExecutor();
+        int maxPending = 2 * parallelism;
+        ArrayDeque<Future<List<Feature>>> pending = new ArrayDeque<>(maxPending + 1);
+
+        try {
+            while (lines.hasNext()) {
+                List<String> batch = new ArrayList<>(batchSize);
+                while (batch.size() < batchSize && lines.hasNext()) {
+                    batch.add(lines.next());
+                }
+                pending.add(executor.submit(() -> {
+                    Function<String, ? extends Feature> decoder =
+                            decoders.computeIfAbsent(Thread.currentThread(), t -> decoderFactory.get());
+                    List<Feature> features = new ArrayList<>(batch.size());
+                    for (String line : batch) {
+                        Feature f = decoder.apply(line);
+                        if (f != null) features.add(f);
+                    }
+                    return features;
+                }));
+                if (pending.size() >= maxPending) {
+                    deliver(pending.poll(), sink);
+                }
+            }
+            while (!pending.isEmpty()) {
+                deliver(pending.poll(), sink);
+            }
+        } finally {
+            for (Future<List<Feature>> f : pending) {
+                f.cancel(true);
+            }
+        }
+    }
+
+    private static void deliver(Future<List<Feature>> batch, Consumer<Feature> sink) throws IOException {
+        try {
+            for (Feature f : batch.get()) {
+                sink.accept(f);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while decoding features", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new IOException(cause);
+            }
+        }
+    }
+
+    /**
+     * Run {@code task} on each key in parallel, returning the results keyed by the input keys, in key order.
+     * Used to assemble features of different chromosomes independently.
+     */
+    public static <K, V> Map<K, V> invokeAll(Collection<K> keys, Function<K, V> task) throws IOException {
+
+        Map<K, V> results = new LinkedHashMap<>();
+        if (getDefaultParallelism() == 0 || keys.size() < 2) {
+            for (K key : keys) {
+                results.put(key, task.apply(key));
+            }
+            return results;
+        }
+
+        Map<K, Future<V>> futures = new LinkedHashMap<>();
+        ExecutorService executor = getExecutor();
+        for (K key : keys) {
+            futures.put(key, executor.submit(() -> task.apply(key)));
+        }
+        try {
+            for (Map.Entry<K, Future<V>> entry : futures.entrySet()) {
+                results.put(entry.getKey(), entry.getValue().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while assembling features", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
+        } finally {
+            for (Future<V> f : futures.values()) {
+                f.cancel(true);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * A line iterator which records the lines consumed, used to capture the header lines read by a codec.
+     */
+    private static class RecordingLineIterator implements LineIterator {
+
+        private final LineIterator lines;
+        private final List<String> recordedLines = new ArrayList<>();
+
+        RecordingLineIterator(LineIterator lines) {
+            this.lines = lines;
+        }
+
+        @Override
+        public String peek() {
+            return lines.peek();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return lines.hasNext();
+        }
+
+        @Override
+        public String next() {
+            String line = lines.next();
+            recordedLines.add(line);
+            return line;
+        }
+    }
+
+    private static class ListLineIterator implements LineIterator {
+
+        private final List<String> lines;
+        private int index;
+
+        ListLineIterator(List<String> lines) {
+            this.lines = lines;
+        }
+
+        @Override
+        public String peek() {
+            return index < lines.size() ? lines.get(index) : null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return index < lines.size();
+        }
+
+        @Override
+        public String next() {
+            if (index >= lines.size()) {
+                throw new NoSuchElementException();
+            }
+            return lines.get(index++);
+        }
+    }
+}
@@ -64,18 +64,22 @@ public class VCFWrapperCodec extends AsciiFeatureCodec<VCFVariant> {
         // but does not currently support missing only certain elements of a field.
         // IGV is much more permissive.
 
+        // The codec's parse buffers are shared by its records.  Genotypes are parsed lazily, when a genotype is
+        // drawn or inspected, possibly on another thread, so all parsing is done holding the codec.
         VariantContext vc = null;
-        try {
-            vc = (VariantContext) wrappedCodec.decode(line);
-            //The genotype fields are loaded lazily, we force parsing here to
-            //catch the exception if necessary
-            if (vc != null) vc.getSampleNames();
-        } catch (NumberFormatException e) {
-            String msg = String.format("NumberFormatException on line: %s \n Attempting to reformat by replacing ,., with ,0,", line);
-            log.warn(msg);
-            String refLine = line.replaceAll(",\\.", ",0");
-            refLine = refLine.replaceAll("\\.,", "0,");
-            vc = (VariantContext) wrappedCodec.decode(refLine);
+        synchronized (wrappedCodec) {
+            try {
+                vc = (VariantContext) wrappedCodec.decode(line);
+                //We force parsing of the genotypes here, to catch the exception, only for lines the
+                //reformatting below could repair.  Other malformed genotypes are reported when decoded.
+                if (vc != null && (line.contains(",.") || line.contains(".,"))) vc.getSampleNames();
+            } catch (NumberFormatException e) {
+                String msg = String.format("NumberFormatException on line: %s \n Attempting to reformat by replacing ,., with ,0,", line);
+                log.warn(msg);
+                String refLine = line.replaceAll(",\\.", ",0");
+                refLine = refLine.replaceAll("\\.,", "0,");
+                vc = (VariantContext) wrappedCodec.decode(refLine);
+            }
         }
 
 
@@ -83,7 +87,7 @@ public class VCFWrapperCodec extends AsciiFeatureCodec<VCFVariant> {
             return null;
         }
         String chr = genome == null ? vc.getChr() : genome.getCanonicalChrName(vc.getChr());
-        return new VCFVariant(vc, chr);
+        return new VCFVariant(vc, chr, wrappedCodec);
 
     }
 
@@ -28,8 +28,7 @@ package org.broad.igv.maf;
 import org.broad.igv.Globals;
 import org.broad.igv.util.ParsingUtils;
 import org.broad.igv.util.ResourceLocator;
-import org.broad.igv.util.index.Interval;
-import org.broad.igv.util.index.IntervalTree;
+import org.broad.igv.util.StaticIntervalIndex;
 import htsjdk.tribble.readers.AsciiLineReader;
 
 import java.io.*;
@@ -45,9 +44,14 @@ public class MAFIndex {
     private List<String> species;
 
     /**
-     * Map of chromosome name -> interval tree
+     * Map of chromosome name -> interval index.  Intervals map to file offsets.
      */
-    private Map<String, IntervalTree> intervalTrees;
+    private Map<String, StaticIntervalIndex<Long>> intervalIndexes;
+
+    /**
+     * Intervals collected while the index is loaded or created
+     */
+    private Map<String, StaticIntervalIndex.Builder<Long>> builders;
 
     /**
      * The # of alignments represented by an interval in the tree.
@@ -56,7 +60,8 @@ public class MAFIndex {
     public static int blockSize = 50;
 
     public MAFIndex() {
-        intervalTrees = new HashMap<String, IntervalTree>();
+        intervalIndexes = new HashMap<>();
+        builders = new LinkedHashMap<>();
     }
 
     /**
@@ -78,31 +83,35 @@ public class MAFIndex {
     }
 
     public Collection<String> getChromosomes() {
-        return intervalTrees.keySet();
+        return intervalIndexes.keySet();
     }
 
-    public IntervalTree getIntervalTree(String chr) {
+    public StaticIntervalIndex<Long> getIntervalIndex(String chr) {
 
-        IntervalTree iv = intervalTrees.get(chr);
+        StaticIntervalIndex<Long> iv = intervalIndexes.get(chr);
         if(iv == null) {
-            iv = intervalTrees.get("*"); // To support legacy MAF indeces, files are split by chromosome
+            iv = intervalIndexes.get("*"); // To support legacy MAF indeces, files are split by chromosome
         }
         return iv;
     }
 
-
-    public void putIntervalTree(String s, IntervalTree iv) {
-
-        intervalTrees.put(s, iv);
+    public void insertInterval(String chr, int intervalStart, int intervalEnd, long value) {
+        StaticIntervalIndex.Builder<Long> builder = builders.get(chr);
+        if (builder == null) {
+            builder = StaticIntervalIndex.builder();
+            builders.put(chr, builder);
+        }
+        builder.add(intervalStart, intervalEnd, value);
     }
 
-    public void insertInterval(String lastChr, int intervalStart, int intervalEnd, long value) {
-        IntervalTree iv = intervalTrees.get(lastChr);
-        if (iv == null) {
-            iv = new IntervalTree();
-            intervalTrees.put(lastChr, iv);
+    /**
+     * Build the interval indexes from the inserted intervals.  Called once all intervals are inserted.
+     */
+    void buildIntervalIndexes() {
+        for (Map.Entry<String, StaticIntervalIndex.Builder<Long>> entry : builders.entrySet()) {
+            intervalIndexes.put(entry.getKey(), entry.getValue().build());
         }
-        iv.insert(new Interval(intervalStart, intervalEnd, value));
+        builders.clear();
     }
 
 
@@ -115,7 +124,6 @@ public class MAFIndex {
         MAFIndex index = new MAFIndex();
         index.species = new ArrayList<String>();
 
-        //index = new IntervalTree<Long>();
         BufferedReader br = null;
         try {
             br = ParsingUtils.openBufferedReader(idxFile);
@@ -131,19 +139,18 @@ public class MAFIndex {
                     index.species.add(line.trim());
                 }
 
-                IntervalTree iv = null;
+                String chr = null;
                 while ((line = br.readLine()) != null) {
                     if (line.trim().length() == 0) continue;
                     if (line.startsWith("#chr=")) {
-                        String chr = ParsingUtils.EQ_PATTERN.split(line)[1];
-                        iv = new IntervalTree();
-                        index.putIntervalTree(chr, iv);
-                    } else if (iv != null) {
+                        chr = ParsingUtils.EQ_PATTERN.split(line)[1];
+                        index.builders.put(chr, StaticIntervalIndex.builder());
+                    } else if (chr != null) {
                         String[] info = Globals.tabPattern.split(line);
                         int start = Integer.parseInt(info[0]);
                         int end = Integer.parseInt(info[1]) + start;
                         long offset = Long.parseLong(info[2]);
-                        iv.insert(new Interval(start, end, offset));
+                        index.insertInterval(chr, start, end, offset);
                     } else {
                         // log.info("Skipping line " + line);
                     }
@@ -152,7 +159,6 @@ public class MAFIndex {
             } else {
                 // A "legacy" index, created for Broad hosted files that are separated by chromosome.
                 // Every alignment is indexed, which is overkill.  Below we lump them into blocks of 50.
-                IntervalTree iv = new IntervalTree();
                 int l = 0;
                 int intervalStart = 0;
                 int intervalEnd = 0;
@@ -162,7 +168,7 @@ public class MAFIndex {
                     int start = Integer.parseInt(info[0]);
                     intervalEnd = Integer.parseInt(info[1]) + start;
                     if (l % 50 == 0) {
-                        iv.insert(new Interval(intervalStart, intervalEnd, lastOffset));
+                        index.insertInterval("*", intervalStart, intervalEnd, lastOffset);
                         intervalStart = intervalEnd;
                         lastOffset = Long.parseLong(info[2]);
                     }
@@ -170,14 +176,13 @@ public class MAFIndex {
                 }
 
                 if(intervalEnd > intervalStart) {
-                    iv.insert(new Interval(intervalStart, intervalEnd, lastOffset));
+                    index.insertInterval("*", intervalStart, intervalEnd, lastOffset);
                 }
-
-                index.putIntervalTree("*", iv);
             }
         } finally {
             if (br != null) br.close();
         }
+        index.buildIntervalIndexes();
         return index;
     }
 
@@ -281,6 +286,7 @@ public class MAFIndex {
             // Merge species list, if any, from previous block and start new one
             mergeSpecies(blockSpecies, allSpecies, speciesRanks);
             index.setSpecies(sortSpecies(allSpecies, speciesRanks));
+            index.buildIntervalIndexes();
 
             return index;
 
@@ -345,14 +351,13 @@ public class MAFIndex {
             Collection<String> chrList = index.getChromosomes();
             for (String chr : chrList) {
                 pw.println("#chr=" + chr);
-                IntervalTree tree = index.getIntervalTree(chr);
-                Collection<Interval> intervals = tree.getIntervals();
-                for (Interval node : intervals) {
-                    pw.print(String.valueOf(node.getLow()));
+                StaticIntervalIndex<Long> intervals = index.getIntervalIndex(chr);
+                for (int i = 0; i < intervals.size(); i++) {
+                    pw.print(String.valueOf(intervals.getStart(i)));
                     pw.print("\t");
-                    pw.print(String.valueOf(node.getHigh() - node.getLow()));
+                    pw.print(String.valueOf(intervals.getEnd(i) - intervals.getStart(i)));
                     pw.print("\t");
-                    pw.println(String.valueOf(node.getValue()));
+                    pw.println(String.valueOf(intervals.getValue(i)));
                 }
             }
 
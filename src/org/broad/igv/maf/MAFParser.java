@@ -28,8 +28,7 @@ package org.broad.igv.maf;
 import htsjdk.samtools.seekablestream.SeekableStream;
 import org.broad.igv.Globals;
 import org.broad.igv.util.ParsingUtils;
-import org.broad.igv.util.index.Interval;
-import org.broad.igv.util.index.IntervalTree;
+import org.broad.igv.util.StaticIntervalIndex;
 import org.broad.igv.util.stream.IGVSeekableStreamFactory;
 
 import java.io.BufferedReader;
@@ -83,21 +82,18 @@ public class MAFParser implements MAFReader {
     @Override
     public List<MultipleAlignmentBlock> loadAlignments(String chr, int start, int end) throws IOException {
 
-        IntervalTree ivTree = index.getIntervalTree(chr);
-        if (ivTree == null) return null;
-
-        List<Interval> intervals = ivTree.findOverlapping(start, end);
-        if (intervals.isEmpty()) {
-            return null;
-        }
-
+        StaticIntervalIndex<Long> intervals = index.getIntervalIndex(chr);
+        if (intervals == null) return null;
 
         // Find the starting (left most) interval.  Alignment blocks do not overlap, so we can start at the
         // minimum file offset and just proceed until the end of the interval.
-        long startPosition = Long.MAX_VALUE;
-        for (Interval iv : intervals) {
-            startPosition = Math.min(startPosition, iv.getValue());
+        long[] minOffset = {Long.MAX_VALUE};
+        int count = intervals.findOverlapping(start, end,
+                (s, e, offset) -> minOffset[0] = Math.min(minOffset[0], offset));
+        if (count == 0) {
+            return null;
         }
+        long startPosition = minOffset[0];
 
 
         SeekableStream is = null;
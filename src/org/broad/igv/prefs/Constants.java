@@ -68,6 +68,7 @@ final public class Constants {
     public static final String TRACK_HEIGHT_KEY = "IGV.track.height";
     public static final String CHART_TRACK_HEIGHT_KEY = "IGV.chart.track.height";
     public static final String CHART_SHOW_ALL_HEATMAP = "CHART.SHOW_ALL_HEATMAP";
+    public static final String CHART_TILE_CACHE_MB = "CHART.TILE_CACHE_MB";
     public static final String SHOW_REGION_BARS = "SHOW_REGION_BARS";
     public static final String DEFAULT_VISIBILITY_WINDOW = "DEFAULT_VISIBILITY_WINDOW";
     public static final String EXPAND_FEAUTRE_TRACKS = "EXPAND_FEATURE_TRACKS";
@@ -145,6 +146,12 @@ final public class Constants {
     public static final String SAM_SHOW_GROUP_SEPARATOR = "SAM.SHOW_GROUP_SEPARATOR";
     public static final String SAM_COMPLETE_READS_ONLY = "SAM.COMPLETE_READS_ONLY";
     public static final String SAM_REDUCED_MEMORY_MODE = "SAM.REDUCED_MEMORY_MODE";
+    public static final String SAM_PARALLEL_LOAD = "SAM.PARALLEL_LOAD";
+    public static final String SAM_PARALLEL_LOAD_THREADS = "SAM.PARALLEL_LOAD_THREADS";
+    public static final String SAM_COLUMNAR_ALIGNMENTS = "SAM.COLUMNAR_ALIGNMENTS";
+    public static final String SAM_TILED_CACHE = "SAM.TILED_CACHE";
+    public static final String SAM_TILE_SIZE = "SAM.TILE_SIZE";
+    public static final String SAM_TILE_CACHE_MB = "SAM.TILE_CACHE_MB";
     public static final String SAM_HIDE_SMALL_INDEL = "SAM.HIDE_SMALL_INDEL";
     public static final String SAM_SMALL_INDEL_BP_THRESHOLD = "SAM.SMALL_INDEL_BP_THRESHOLD";
     public static final String SAM_LINK_READS = "SAM.LINK_READS";
@@ -235,6 +242,19 @@ final public class Constants {
     public static final String PROXY_TYPE = "PROXY.TYPE";
     public static final String PROXY_WHITELIST = "PROXY.WHITELIST";
 
+    // File IO
+    public static final String MAPPED_LOCAL_FILES = "IO.MAPPED_LOCAL_FILES";
+    public static final String REMOTE_BLOCK_CACHE = "IO.REMOTE_BLOCK_CACHE";
+    public static final String REMOTE_MEMORY_CACHE_MB = "IO.REMOTE_MEMORY_CACHE_MB";
+    public static final String REMOTE_DISK_CACHE_MB = "IO.REMOTE_DISK_CACHE_MB";
+    public static final String REMOTE_DISK_CACHE_AUTHENTICATED = "IO.REMOTE_DISK_CACHE_AUTHENTICATED";
+    public static final String BB_BULK_INDEX = "IO.BB_BULK_INDEX";
+    public static final String BB_INDEX_SIDECAR = "IO.BB_INDEX_SIDECAR";
+    public static final String SEQUENCE_CACHE_MB = "IO.SEQUENCE_CACHE_MB";
+    public static final String FEATURE_SNAPSHOTS = "IO.FEATURE_SNAPSHOTS";
+    public static final String FEATURE_SNAPSHOT_CACHE_MB = "IO.FEATURE_SNAPSHOT_CACHE_MB";
+    public static final String LOAD_THREADS = "IO.LOAD_THREADS";
+
     // Port settings
     public static final String PORT_ENABLED = "PORT_ENABLED";
     public static final String PORT_NUMBER = "PORT_NUMBER";
@@ -58,7 +58,7 @@ public class ContinuousColorScale extends AbstractColorScale {
     private Color minColor;
     private Color midColor = Color.white;
     private Color maxColor;
-    private Color[] colors;
+    private volatile Color[] colors;    // filled before publication, tracks may be rendered concurrently
     private boolean defaultCS = false;
 
 
@@ -241,8 +241,8 @@ public class ContinuousColorScale extends AbstractColorScale {
 
     private double delta;
 
-    private void initColors() {
-        colors = new Color[251];
+    private Color[] initColors() {
+        Color[] colors = new Color[251];
         delta = (posEnd - negEnd) / colors.length;
         if (isUseDoubleGradient()) {
             ColorGradient csPos = new ColorGradient(posStart, posEnd, midColor, maxColor);
@@ -267,6 +267,8 @@ public class ContinuousColorScale extends AbstractColorScale {
                 colors[i] = cs.getColor(x);
             }
         }
+        this.colors = colors;
+        return colors;
     }
 
     /**
@@ -278,8 +280,9 @@ public class ContinuousColorScale extends AbstractColorScale {
     @Override
     public Color getColor(float val) {
 
+        Color[] colors = this.colors;
         if (colors == null) {
-            initColors();
+            colors = initColors();
         }
 
         if(Float.isNaN(val)) {
@@ -33,7 +33,9 @@ import org.broad.igv.feature.genome.Genome;
 import org.broad.igv.prefs.IGVPreferences;
 import org.broad.igv.prefs.PreferencesManager;
 import org.broad.igv.sam.AlignmentTrack.SortOption;
+import org.broad.igv.sam.reader.AlignmentReader;
 import org.broad.igv.sam.reader.AlignmentReaderFactory;
+import org.broad.igv.sam.reader.ShardedAlignmentReader;
 import org.broad.igv.track.RenderContext;
 import org.broad.igv.event.IGVEventBus;
 import org.broad.igv.event.IGVEventObserver;
@@ -70,9 +72,24 @@ public class AlignmentDataManager implements IGVEventObserver {
     private AlignmentTrack.ExperimentType inferredExperimentType;
     private Set<Track> subscribedTracks;
 
+    /**
+     * Cache of fixed size alignment tiles, used to build intervals incrementally.  Null unless the tiled cache
+     * preference is set.
+     */
+    private AlignmentTileCache tileCache;
+
+    /**
+     * The most recently loaded tiled interval for each frame, used to extend packing when the view moves
+     */
+    private Map<String, AlignmentInterval> lastTiledIntervals = Collections.synchronizedMap(new HashMap<>());
+
     public AlignmentDataManager(ResourceLocator locator, Genome genome) throws IOException {
         this.locator = locator;
-        reader = new AlignmentTileLoader(AlignmentReaderFactory.getReader(locator));
+        reader = new AlignmentTileLoader(getAlignmentReader(locator));
+        IGVPreferences prefs = PreferencesManager.getPreferences();
+        if (prefs.getAsBoolean(SAM_TILED_CACHE)) {
+            tileCache = new AlignmentTileCache(prefs.getAsInt(SAM_TILE_SIZE), prefs.getAsInt(SAM_TILE_CACHE_MB) * 1000000L);
+        }
         peStats = new HashMap();
         initLoadOptions();
         initChrMap(genome);
@@ -83,6 +100,19 @@ public class AlignmentDataManager implements IGVEventObserver {
         IGVEventBus.getInstance().subscribe(RefreshEvent.class, this);
     }
 
+    /**
+     * Return a reader for the locator, wrapped to decode index-aligned sub-ranges concurrently if the
+     * parallel load preference is set and the file supports it.
+     */
+    private static AlignmentReader getAlignmentReader(ResourceLocator locator) throws IOException {
+        AlignmentReader alignmentReader = AlignmentReaderFactory.getReader(locator);
+        IGVPreferences prefs = PreferencesManager.getPreferences();
+        if (prefs.getAsBoolean(SAM_PARALLEL_LOAD) && ShardedAlignmentReader.supports(locator, alignmentReader)) {
+            alignmentReader = new ShardedAlignmentReader(locator, alignmentReader, prefs.getAsInt(SAM_PARALLEL_LOAD_THREADS));
+        }
+        return alignmentReader;
+    }
+
     public void receiveEvent(Object event) {
 
         if (event instanceof FrameManager.ChangeEvent) {
@@ -92,13 +122,16 @@ public class AlignmentDataManager implements IGVEventObserver {
 
             // Trim cache to include only current frames
 
+            Set<String> frameNames = new HashSet<>();
             for (ReferenceFrame f : frames) {
                 AlignmentInterval i = getLoadedInterval(f);
                 if (i != null) {
                     newCache.add(i);
                 }
+                frameNames.add(f.getName());
             }
             intervalCache = newCache;
+            lastTiledIntervals.keySet().retainAll(frameNames);
 
 
         } else if (event instanceof RefreshEvent) {
@@ -306,10 +339,21 @@ public class AlignmentDataManager implements IGVEventObserver {
 
             log.debug("Loading alignments: " + chr + ":" + adjustedStart + "-" + adjustedEnd + " for " + AlignmentDataManager.this);
 
-            AlignmentInterval loadedInterval = loadInterval(chr, adjustedStart, adjustedEnd, renderOptions);
-            intervalCache.add(loadedInterval);
+            if (tileCache != null && (renderOptions == null || renderOptions.bisulfiteContext == null)) {
+                // Build the interval from cached tiles, loading only the newly exposed tiles, and extend the
+                // packing of the frame's previous interval
+                AlignmentInterval loadedInterval = loadTiledInterval(chr, adjustedStart, adjustedEnd);
+                intervalCache.add(loadedInterval);
+                if (renderOptions != null) {
+                    loadedInterval.packAlignments(renderOptions, lastTiledIntervals.get(referenceFrame.getName()));
+                }
+                lastTiledIntervals.put(referenceFrame.getName(), loadedInterval);
+            } else {
+                AlignmentInterval loadedInterval = loadInterval(chr, adjustedStart, adjustedEnd, renderOptions);
+                intervalCache.add(loadedInterval);
+                packAlignments(renderOptions);
+            }
 
-            packAlignments(renderOptions);
             isLoading.remove(range);
 
             //  IGVEventBus.getInstance().post(new DataLoadedEvent(referenceFrame));
@@ -344,6 +388,53 @@ public class AlignmentDataManager implements IGVEventObserver {
         return new AlignmentInterval(chr, start, end, alignments, t.getCounts(), spliceJunctionHelper, downsampledIntervals);
     }
 
+    /**
+     * Load an interval covering [start, end) from fixed size tiles.  Cached tiles are reused, and the interval
+     * coverage counts delegate to the counts of the individual tiles.
+     */
+    AlignmentInterval loadTiledInterval(String chr, int start, int end) {
+
+        final String sequence = chrMappings.containsKey(chr) ? chrMappings.get(chr) : chr;
+
+        final DownsampleOptions downsampleOptions = new DownsampleOptions();
+
+        List<AlignmentTileLoader.AlignmentTile> tiles = tileCache.getTiles(sequence, start, end, (tileChr, tileStart, tileEnd) -> {
+
+            SpliceJunctionHelper spliceJunctionHelper = new SpliceJunctionHelper(this.loadOptions);
+            spliceJunctionHelper.setJunctionStartRange(tileStart, tileEnd);
+
+            ReadStats readStats = new ReadStats();
+
+            AlignmentTileLoader.AlignmentTile t = reader.loadTile(tileChr, tileStart, tileEnd, spliceJunctionHelper,
+                    downsampleOptions, readStats, peStats, null, showAlignments, true);
+
+            if (inferredExperimentType == null && !Globals.VERSION.contains("2.4")) {
+                readStats.compute();
+                inferType(readStats);
+            }
+            return t;
+        });
+
+        // Tiles contain alignments starting within the tile, the first tile also contributes alignments overlapping it
+        List<Alignment> alignments = new ArrayList<>(tiles.get(0).getLeftOverlaps());
+        List<DownsampledInterval> downsampledIntervals = new ArrayList<>();
+        List<AlignmentCounts> counts = new ArrayList<>(tiles.size());
+        List<SpliceJunctionHelper> spliceJunctionHelpers = new ArrayList<>(tiles.size());
+        for (AlignmentTileLoader.AlignmentTile t : tiles) {
+            alignments.addAll(t.getAlignments());
+            downsampledIntervals.addAll(t.getDownsampledIntervals());
+            counts.add(t.getCounts());
+            spliceJunctionHelpers.add(t.getSpliceJunctionHelper());
+        }
+
+        int intervalStart = tiles.get(0).getStart();
+        int intervalEnd = tiles.get(tiles.size() - 1).getEnd();
+        return new AlignmentInterval(chr, intervalStart, intervalEnd, alignments,
+                new TiledAlignmentCounts(counts, tileCache.getTileSize()),
+                SpliceJunctionHelper.combine(this.loadOptions, spliceJunctionHelpers),
+                downsampledIntervals);
+    }
+
     /**
      * Some empirical metrics for determining experiment type
      *
@@ -375,12 +466,21 @@ public class AlignmentDataManager implements IGVEventObserver {
 
     public void clear() {
         intervalCache.clear();
+        clearTileCache();
     }
 
     public void dumpAlignments() {
         for (AlignmentInterval interval : intervalCache) {
             interval.dumpAlignments();
         }
+        clearTileCache();
+    }
+
+    private void clearTileCache() {
+        if (tileCache != null) {
+            tileCache.clear();
+        }
+        lastTiledIntervals.clear();
     }
 
     /**
@@ -465,6 +565,10 @@ public class AlignmentDataManager implements IGVEventObserver {
         return loadOptions;
     }
 
+    public AlignmentTileCache getTileCache() {
+        return tileCache;
+    }
+
     public void setMinJunctionCoverage(int minJunctionCoverage) {
         this.loadOptions = new SpliceJunctionHelper.LoadOptions(minJunctionCoverage, this.loadOptions.minReadFlankingWidth);
         for (AlignmentInterval interval : intervalCache) {
@@ -484,6 +588,7 @@ public class AlignmentDataManager implements IGVEventObserver {
             } else {
                 // Change from false => true,  need to reload
                 intervalCache.clear();
+                clearTileCache();
             }
         }
 
@@ -46,6 +46,7 @@ public class AlignmentInterval extends Locus {
     private SpliceJunctionHelper spliceJunctionHelper;
     private List<DownsampledInterval> downsampledIntervals;
     private PackedAlignments packedAlignments;
+    private String packingKey;
 
     public AlignmentInterval(String chr, int start, int end,
                              List<Alignment> alignments,
@@ -168,6 +169,28 @@ public class AlignmentInterval extends Locus {
 
         final AlignmentPacker alignmentPacker = new AlignmentPacker();
         this.packedAlignments = alignmentPacker.packAlignments(this, renderOptions);
+        this.packingKey = AlignmentPacker.getPackingKey(renderOptions);
+    }
+
+    /**
+     * Pack alignments, extending the packing of {@code previous} if possible rather than packing from scratch.
+     */
+    public void packAlignments(AlignmentTrack.RenderOptions renderOptions, AlignmentInterval previous) {
+
+        PackedAlignments extended = null;
+        if (previous != null) {
+            extended = new AlignmentPacker().extendPacking(this, previous, renderOptions);
+        }
+        if (extended == null) {
+            packAlignments(renderOptions);
+        } else {
+            this.packedAlignments = extended;
+            this.packingKey = AlignmentPacker.getPackingKey(renderOptions);
+        }
+    }
+
+    String getPackingKey() {
+        return packingKey;
     }
 
     public PackedAlignments getPackedAlignments() {
@@ -117,6 +117,156 @@ public class AlignmentPacker {
     }
 
 
+    /**
+     * Pack the alignments of {@code interval} by extending the packing of {@code previous}, an overlapping
+     * interval packed with the same options.  Alignments shared by both intervals keep their rows, alignments
+     * no longer loaded are dropped, and new alignments are placed in the first row with room for them.
+     *
+     * @return the packed alignments, or null if the previous packing cannot be extended
+     */
+    public PackedAlignments extendPacking(AlignmentInterval interval,
+                                          AlignmentInterval previous,
+                                          AlignmentTrack.RenderOptions renderOptions) {
+
+        PackedAlignments previousPacking = previous.getPackedAlignments();
+        if (previousPacking == null ||
+                renderOptions.isViewPairs() ||
+                renderOptions.isLinkedReads() ||
+                !interval.getChr().equals(previous.getChr()) ||
+                !getPackingKey(renderOptions).equals(previous.getPackingKey())) {
+            return null;
+        }
+
+        List<Alignment> alList = interval.getAlignments();
+        Set<Alignment> current = Collections.newSetFromMap(new IdentityHashMap<>(alList.size() * 2));
+        current.addAll(alList);
+
+        // Retain rows of the previous packing, minus alignments no longer loaded
+        Set<Alignment> retained = Collections.newSetFromMap(new IdentityHashMap<>(alList.size() * 2));
+        Map<String, List<Row>> groupRows = new HashMap<>();
+        int minRetainedStart = Integer.MAX_VALUE;
+        for (Map.Entry<String, List<Row>> entry : previousPacking.entrySet()) {
+            List<Row> rows = new ArrayList<>(entry.getValue().size());
+            for (Row row : entry.getValue()) {
+                Row newRow = new Row();
+                for (Alignment alignment : row.alignments) {
+                    if (current.contains(alignment)) {
+                        newRow.addAlignment(alignment);
+                        retained.add(alignment);
+                        minRetainedStart = Math.min(minRetainedStart, alignment.getStart());
+                    }
+                }
+                if (newRow.alignments.size() > 0) {
+                    newRow.setScore(row.getScore());
+                    rows.add(newRow);
+                }
+            }
+            groupRows.put(entry.getKey(), rows);
+        }
+        if (retained.isEmpty()) {
+            return null;
+        }
+
+        // New alignments to the left of the retained region are placed right to left, those to the right left to right
+        List<Alignment> left = new ArrayList<>();
+        List<Alignment> right = new ArrayList<>();
+        for (Alignment alignment : alList) {
+            if (alignment.isMapped() && !retained.contains(alignment)) {
+                if (alignment.getStart() < minRetainedStart) {
+                    left.add(alignment);
+                } else {
+                    right.add(alignment);
+                }
+            }
+        }
+        Collections.reverse(left);
+        for (Alignment alignment : left) {
+            insert(alignment, groupRows, renderOptions);
+        }
+        for (Alignment alignment : right) {
+            insert(alignment, groupRows, renderOptions);
+        }
+
+        LinkedHashMap<String, List<Row>> packedAlignments = new LinkedHashMap<>();
+        if (renderOptions.getGroupByOption() == null) {
+            packedAlignments.put(NULL_GROUP_VALUE, groupRows.get(NULL_GROUP_VALUE));
+        } else {
+            List<String> keys = new ArrayList<>(groupRows.keySet());
+            Collections.sort(keys, getGroupComparator(renderOptions.getGroupByOption()));
+            for (String key : keys) {
+                packedAlignments.put(key, groupRows.get(key));
+            }
+        }
+
+        List<AlignmentInterval> tmp = new ArrayList<AlignmentInterval>();
+        tmp.add(interval);
+        return new PackedAlignments(tmp, packedAlignments);
+    }
+
+    private void insert(Alignment alignment, Map<String, List<Row>> groupRows, AlignmentTrack.RenderOptions renderOptions) {
+
+        String groupKey = renderOptions.getGroupByOption() == null ? NULL_GROUP_VALUE : getGroupValue(alignment, renderOptions);
+        if (groupKey == null) {
+            groupKey = NULL_GROUP_VALUE;
+        }
+        List<Row> rows = groupRows.get(groupKey);
+        if (rows == null) {
+            rows = new ArrayList<>();
+            groupRows.put(groupKey, rows);
+        }
+
+        for (Row row : rows) {
+            if (insert(alignment, row)) {
+                return;
+            }
+        }
+        Row row = new Row();
+        row.addAlignment(alignment);
+        rows.add(row);
+    }
+
+    /**
+     * Insert the alignment into the row, in start order, if it does not overlap its neighbors.
+     *
+     * @return true if the alignment was added
+     */
+    private static boolean insert(Alignment alignment, Row row) {
+
+        List<Alignment> alignments = row.alignments;
+        int start = alignment.getStart();
+
+        // Index of the first alignment starting after this one
+        int lo = 0;
+        int hi = alignments.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (alignments.get(mid).getStart() <= start) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+
+        if (lo > 0 && alignments.get(lo - 1).getEnd() + MIN_ALIGNMENT_SPACING > start) {
+            return false;
+        }
+        if (lo < alignments.size() && alignment.getEnd() + MIN_ALIGNMENT_SPACING > alignments.get(lo).getStart()) {
+            return false;
+        }
+        alignments.add(lo, alignment);
+        return true;
+    }
+
+    /**
+     * A key for the render options that affect packing.  Packings with equal keys can be extended incrementally.
+     */
+    static String getPackingKey(AlignmentTrack.RenderOptions renderOptions) {
+        return renderOptions.getGroupByOption() + "|" + renderOptions.getGroupByTag() + "|" +
+                renderOptions.getGroupByPos() + "|" + renderOptions.isViewPairs() + "|" +
+                renderOptions.isLinkedReads() + "|" + renderOptions.getLinkByTag();
+    }
+
+
     private void pack(List<Alignment> alList, AlignmentTrack.RenderOptions renderOptions, List<Row> alignmentRows) {
 
         Map<String, PairedAlignment> pairs = null;
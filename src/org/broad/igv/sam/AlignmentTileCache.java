@@ -0,0 +1,216 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.sam;
+
+import org.apache.log4j.Logger;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * A least-recently-used cache of alignment tiles of fixed genomic size, bounded by an estimate of the memory
+ * used by the cached alignments and counts.  Tiles are loaded with {@code ownedOnly} set, so a contiguous run
+ * of tiles can be combined into a single interval without duplicate alignments.  When the view moves only
+ * the newly exposed tiles need to be loaded.
+ */
+public class AlignmentTileCache {
+
+    private static Logger log = Logger.getLogger(AlignmentTileCache.class);
+
+    // Rough per-object estimates used to bound the cache size
+    private static final int ALIGNMENT_OVERHEAD_BYTES = 300;
+    private static final int BYTES_PER_ALIGNED_BASE = 3;
+    private static final int BYTES_PER_COUNTS_POSITION = 80;
+
+    public interface TileLoader {
+        AlignmentTileLoader.AlignmentTile loadTile(String chr, int start, int end);
+    }
+
+    private final int tileSize;
+    private final long maxBytes;
+    private final LinkedHashMap<String, CachedTile> tiles;
+    private final Map<String, CompletableFuture<AlignmentTileLoader.AlignmentTile>> tilesInFlight = new HashMap<>();
+    private long cachedBytes = 0;
+
+    public AlignmentTileCache(int tileSize, long maxBytes) {
+        this.tileSize = Math.max(1, tileSize);
+        this.maxBytes = maxBytes;
+        this.tiles = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Return the contiguous tiles covering [start, end), loading tiles which are not cached.  Tiles are loaded
+     * outside the cache lock.  A tile being loaded by another caller is waited for rather than loaded again.
+     */
+    public List<AlignmentTileLoader.AlignmentTile> getTiles(String chr, int start, int end, TileLoader loader) {
+
+        int startTile = Math.max(0, start) / tileSize;
+        int endTile = Math.max(startTile, (end - 1) / tileSize);
+        int nTiles = endTile - startTile + 1;
+
+        List<CompletableFuture<AlignmentTileLoader.AlignmentTile>> futures = new ArrayList<>(nTiles);
+        List<Integer> claimed = new ArrayList<>();
+        synchronized (this) {
+            for (int t = startTile; t <= endTile; t++) {
+                String key = getKey(chr, t);
+                CachedTile cachedTile = tiles.get(key);
+                CompletableFuture<AlignmentTileLoader.AlignmentTile> future;
+                if (cachedTile != null) {
+                    future = CompletableFuture.completedFuture(cachedTile.tile);
+                } else {
+                    future = tilesInFlight.get(key);
+                    if (future == null) {
+                        future = new CompletableFuture<>();
+                        tilesInFlight.put(key, future);
+                        claimed.add(t);
+                    }
+                }
+                futures.add(future);
+            }
+        }
+
+        try {
+            for (int t : claimed) {
+                int tileStart = t * tileSize;
+                AlignmentTileLoader.AlignmentTile tile = loader.loadTile(chr, tileStart, tileStart + tileSize);
+                CachedTile cachedTile = new CachedTile(tile, estimateBytes(tile));
+                String key = getKey(chr, t);
+                CompletableFuture<AlignmentTileLoader.AlignmentTile> future = futures.get(t - startTile);
+                synchronized (this) {
+                    // A clear() during the load discards the claim, the tile is then returned but not cached
+                    if (tilesInFlight.remove(key, future)) {
+                        CachedTile previous = tiles.put(key, cachedTile);
+                        if (previous != null) {
+                            cachedBytes -= previous.bytes;
+                        }
+                        cachedBytes += cachedTile.bytes;
+                    }
+                }
+                future.complete(tile);
+            }
+        } catch (RuntimeException | Error e) {
+            // Release the claimed tiles not yet loaded, other callers waiting on them fail rather than block
+            synchronized (this) {
+                for (int t : claimed) {
+                    CompletableFuture<AlignmentTileLoader.AlignmentTile> future = futures.get(t - startTile);
+                    if (!future.isDone()) {
+                        tilesInFlight.remove(getKey(chr, t), future);
+                        future.completeExceptionally(e);
+                    }
+                }
+            }
+            throw e;
+        }
+
+        List<AlignmentTileLoader.AlignmentTile> result = new ArrayList<>(nTiles);
+        for (CompletableFuture<AlignmentTileLoader.AlignmentTile> future : futures) {
+            result.add(join(future));
+        }
+
+        synchronized (this) {
+            Set<String> requested = new HashSet<>();
+            for (int t = startTile; t <= endTile; t++) {
+                requested.add(getKey(chr, t));
+            }
+            evict(requested);
+        }
+        return result;
+    }
+
+    private static AlignmentTileLoader.AlignmentTile join(CompletableFuture<AlignmentTileLoader.AlignmentTile> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Remove least recently used tiles until the cache is within its memory budget.  Called holding the lock.  Tiles in {@code requested}
+     * are never removed, so the budget can be exceeded if a single request is larger than the budget.
+     */
+    private void evict(Set<String> requested) {
+        Iterator<Map.Entry<String, CachedTile>> iter = tiles.entrySet().iterator();
+        while (cachedBytes > maxBytes && iter.hasNext()) {
+            Map.Entry<String, CachedTile> entry = iter.next();
+            if (!requested.contains(entry.getKey())) {
+                cachedBytes -= entry.getValue().bytes;
+                iter.remove();
+                log.debug("Evicted alignment tile " + entry.getKey());
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        tiles.clear();
+        tilesInFlight.clear();
+        cachedBytes = 0;
+    }
+
+    public synchronized int size() {
+        return tiles.size();
+    }
+
+    public synchronized long getCachedBytes() {
+        return cachedBytes;
+    }
+
+    private static String getKey(String chr, int tileNumber) {
+        return chr + ":" + tileNumber;
+    }
+
+    static long estimateBytes(AlignmentTileLoader.AlignmentTile tile) {
+        long bytes = (long) (tile.getEnd() - tile.getStart()) * BYTES_PER_COUNTS_POSITION;
+        for (Alignment a : tile.getAlignments()) {
+            bytes += ALIGNMENT_OVERHEAD_BYTES + BYTES_PER_ALIGNED_BASE * (a.getEnd() - a.getStart());
+        }
+        for (Alignment a : tile.getLeftOverlaps()) {
+            bytes += ALIGNMENT_OVERHEAD_BYTES + BYTES_PER_ALIGNED_BASE * (a.getEnd() - a.getStart());
+        }
+        return bytes;
+    }
+
+    private static class CachedTile {
+        final AlignmentTileLoader.AlignmentTile tile;
+        final long bytes;
+
+        CachedTile(AlignmentTileLoader.AlignmentTile tile, long bytes) {
+            this.tile = tile;
+            this.bytes = bytes;
+        }
+    }
+}
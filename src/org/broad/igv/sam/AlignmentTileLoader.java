@@ -123,6 +123,24 @@ public class AlignmentTileLoader implements IGVEventObserver {
                            ReadStats readStats, Map<String, PEStats> peStats,
                            AlignmentTrack.BisulfiteContext bisulfiteContext,
                            boolean showAlignments) {
+        return loadTile(chr, start, end, spliceJunctionHelper, downsampleOptions, readStats, peStats, bisulfiteContext,
+                showAlignments, false);
+    }
+
+    /**
+     * Load a tile.  If {@code ownedOnly} is true the tile's alignment list contains only alignments starting within
+     * the tile, so that adjacent tiles can be combined without duplicates.  Alignments overlapping the tile from
+     * the left are still counted, and are available separately from {@link AlignmentTile#getLeftOverlaps()}.
+     */
+    AlignmentTile loadTile(String chr,
+                           int start,
+                           int end,
+                           SpliceJunctionHelper spliceJunctionHelper,
+                           AlignmentDataManager.DownsampleOptions downsampleOptions,
+                           ReadStats readStats, Map<String, PEStats> peStats,
+                           AlignmentTrack.BisulfiteContext bisulfiteContext,
+                           boolean showAlignments,
+                           boolean ownedOnly) {
 
         final IGVPreferences prefMgr = PreferencesManager.getPreferences();
         boolean filterFailedReads = prefMgr.getAsBoolean(SAM_FILTER_FAILED_READS);
@@ -135,6 +153,15 @@ public class AlignmentTileLoader implements IGVEventObserver {
         boolean reducedMemory = prefMgr.getAsBoolean(SAM_REDUCED_MEMORY_MODE);
 
         AlignmentTile t = new AlignmentTile(start, end, spliceJunctionHelper, downsampleOptions, bisulfiteContext, showAlignments, reducedMemory);
+        t.ownedOnly = ownedOnly;
+
+        // Columnar storage applies to full alignments only, and is pointless if alignments are not retained
+        if (!reducedMemory && showAlignments && prefMgr.getAsBoolean(SAM_COLUMNAR_ALIGNMENTS)) {
+            SAMFileHeader header = reader.getFileHeader();
+            if (header != null) {
+                t.setColumnarStore(new ColumnarAlignmentStore(header));
+            }
+        }
 
 
         //assert (tiles.size() > 0);
@@ -226,7 +253,11 @@ public class AlignmentTileLoader implements IGVEventObserver {
                     continue;
                 }
 
-                t.addRecord(record, reducedMemory);
+                Alignment stored = t.addRecord(record, reducedMemory);
+                if (stored != record && mappedMates.get(readName) == record) {
+                    // Mate sequence must be set on the retained alignment
+                    mappedMates.put(readName, stored);
+                }
 
                 alignmentCount++;
                 int interval = Globals.isTesting() ? 100000 : 1000;
@@ -411,6 +442,14 @@ public class AlignmentTileLoader implements IGVEventObserver {
         private int downsampledCount = 0;
         private int offset = 0;
         private int indelLimit;
+        private ColumnarAlignmentStore columnarStore;
+
+        /**
+         * If true only alignments starting in this tile are added to the alignment list, see {@link #getLeftOverlaps()}
+         */
+        private boolean ownedOnly;
+        private List<Alignment> leftOverlaps;
+        private int leftOverlapCount = 0;
 
         AlignmentTile(int start,
                       int end,
@@ -466,17 +505,45 @@ public class AlignmentTileLoader implements IGVEventObserver {
             this.start = start;
         }
 
+        public int getEnd() {
+            return end;
+        }
+
+        public SpliceJunctionHelper getSpliceJunctionHelper() {
+            return spliceJunctionHelper;
+        }
+
+        /**
+         * Alignments starting before this tile that overlap it.  Only collected for tiles loaded with
+         * {@code ownedOnly} set, and limited to the sampling depth if downsampling.
+         */
+        public List<Alignment> getLeftOverlaps() {
+            return leftOverlaps == null ? Collections.<Alignment>emptyList() : leftOverlaps;
+        }
+
+        /**
+         * Store alignments added to this tile in {@code store}, retaining flyweight views rather than the
+         * original records.
+         */
+        void setColumnarStore(ColumnarAlignmentStore store) {
+            this.columnarStore = store;
+        }
+
         int ignoredCount = 0;    // <= just for debugging
 
         /**
          * Add an alignment record to this tile.  This record is not necessarily retained after down-sampling.
          * <p/>
          * // * @param alignment
+         *
+         * @return the alignment as stored in this tile, which might be a wrapper of the original record
          */
-        public void addRecord(Alignment alignment, boolean reducedMemory) {
+        public Alignment addRecord(Alignment alignment, boolean reducedMemory) {
 
             if (reducedMemory) {
                 alignment = new ReducedMemoryAlignment(alignment, this.indelLimit);
+            } else if (columnarStore != null) {
+                alignment = columnarStore.add(alignment);
             }
 
             counts.incCounts(alignment);
@@ -485,7 +552,9 @@ public class AlignmentTileLoader implements IGVEventObserver {
                 spliceJunctionHelper.addAlignment(alignment);
             }
 
-            if (showAlignments) {
+            if (showAlignments && ownedOnly && alignment.getStart() < start) {
+                addLeftOverlap(alignment);
+            } else if (showAlignments) {
                 if (downsample) {
                     final int alignmentStart = alignment.getAlignmentStart();
                     int currentSamplingBucketEnd = currentSamplingWindowStart + samplingWindowSize;
@@ -501,6 +570,24 @@ public class AlignmentTileLoader implements IGVEventObserver {
             }
 
             alignment.finish();
+            return alignment;
+        }
+
+        private void addLeftOverlap(Alignment alignment) {
+            if (leftOverlaps == null) {
+                leftOverlaps = new ArrayList<>();
+            }
+            if (!downsample || leftOverlaps.size() < samplingDepth) {
+                leftOverlaps.add(alignment);
+            } else {
+                // Reservoir sample, keeping the list in start order
+                int idx = RAND.nextInt(leftOverlapCount + 1);
+                if (idx < samplingDepth) {
+                    leftOverlaps.remove(idx);
+                    leftOverlaps.add(alignment);
+                }
+            }
+            leftOverlapCount++;
         }
 
         /**
@@ -648,6 +735,15 @@ public class AlignmentTileLoader implements IGVEventObserver {
             if (downsample) {
                 sortFilterDownsampled();
             }
+            if (columnarStore != null && alignments != null) {
+                // Release storage of alignments removed by downsampling
+                List<Alignment> retained = alignments;
+                if (leftOverlaps != null) {
+                    retained = new ArrayList<>(leftOverlaps);
+                    retained.addAll(alignments);
+                }
+                columnarStore.compact(retained);
+            }
             finalizeSpliceJunctions();
             counts.finish();
         }
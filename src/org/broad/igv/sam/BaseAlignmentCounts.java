@@ -119,6 +119,11 @@ abstract public class BaseAlignmentCounts implements AlignmentCounts {
             bisulfiteCounts.incrementCounts(alignment);
         }
 
+        if (alignment instanceof ColumnarAlignment) {
+            ((ColumnarAlignment) alignment).incCounts(this);
+            return;
+        }
+
         int alignmentStart = alignment.getAlignmentStart();
         int alignmentEnd = alignment.getAlignmentEnd();
         Strand strand = alignment.getReadStrand();
@@ -160,7 +165,7 @@ abstract public class BaseAlignmentCounts implements AlignmentCounts {
                     if (insBlock.getEnd() < start) continue;
                     if (insBlock.getStart() > end) break;
 
-                    incrementInsertion(insBlock);
+                    incrementInsertion(insBlock.getStart());
                 }
             }
         } else {
@@ -296,7 +301,7 @@ abstract public class BaseAlignmentCounts implements AlignmentCounts {
 
     protected abstract void incPositionCount(int pos, byte n, byte q, boolean negativeStrand);
 
-    protected abstract void incrementInsertion(AlignmentBlock insBlock);
+    protected abstract void incrementInsertion(int pos);
 
     protected abstract void incrementDeletion(int pos, boolean negativeStrand);
 
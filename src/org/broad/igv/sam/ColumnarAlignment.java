@@ -0,0 +1,330 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.sam;
+
+import htsjdk.samtools.SAMReadGroupRecord;
+import org.broad.igv.feature.LocusScore;
+import org.broad.igv.feature.Strand;
+import org.broad.igv.track.WindowFunction;
+
+import java.awt.*;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A flyweight view of a single row of a {@link ColumnarAlignmentStore}.
+ * <p/>
+ * Scalar properties are read directly from the store columns.  Alignment blocks are created on first request
+ * (typically when the alignment is rendered) and reference the stored bases rather than copying them.  Operations
+ * that need the full record, such as popup text, decode it from the store.
+ */
+public class ColumnarAlignment implements Alignment {
+
+    private static final int READ_PAIRED_FLAG = 0x1;
+    private static final int PROPER_PAIR_FLAG = 0x2;
+    private static final int READ_UNMAPPED_FLAG = 0x4;
+    private static final int READ_STRAND_FLAG = 0x10;
+    private static final int FIRST_OF_PAIR_FLAG = 0x40;
+    private static final int SECOND_OF_PAIR_FLAG = 0x80;
+    private static final int NOT_PRIMARY_ALIGNMENT_FLAG = 0x100;
+    private static final int READ_FAILS_VENDOR_QUALITY_CHECK_FLAG = 0x200;
+    private static final int DUPLICATE_READ_FLAG = 0x400;
+    private static final int SUPPLEMENTARY_ALIGNMENT_FLAG = 0x800;
+
+    final ColumnarAlignmentStore store;
+    int row;
+
+    AlignmentBlock[] alignmentBlocks;
+    AlignmentBlock[] insertions;
+    List<Gap> gaps;
+
+    ColumnarAlignment(ColumnarAlignmentStore store, int row) {
+        this.store = store;
+        this.row = row;
+    }
+
+    /**
+     * Increment coverage counts directly from the stored record.
+     */
+    void incCounts(BaseAlignmentCounts counts) {
+        store.incCounts(row, counts);
+    }
+
+    /**
+     * Decode the stored record as a full PicardAlignment.
+     */
+    public PicardAlignment toPicardAlignment() {
+        PicardAlignment alignment = new PicardAlignment(store.getRecord(row));
+        String mateSequence = store.getMateSequence(row);
+        if (mateSequence != null) {
+            alignment.setMateSequence(mateSequence);
+        }
+        return alignment;
+    }
+
+    private synchronized void createAlignmentBlocks() {
+        if (alignmentBlocks == null) {
+            store.createAlignmentBlocks(this);
+        }
+    }
+
+    public String getReadName() {
+        return store.getReadName(row);
+    }
+
+    public String getReadSequence() {
+        return store.getReadSequence(row);
+    }
+
+    public String getChr() {
+        return store.getChr(row);
+    }
+
+    @Override
+    public String getContig() {
+        return store.getChr(row);
+    }
+
+    public int getStart() {
+        return store.getStart(row);
+    }
+
+    public int getEnd() {
+        return store.getEnd(row);
+    }
+
+    public void setStart(int start) {
+        store.setStart(row, start);
+    }
+
+    public void setEnd(int end) {
+        store.setEnd(row, end);
+    }
+
+    public int getAlignmentStart() {
+        return store.getAlignmentStart(row);
+    }
+
+    public int getAlignmentEnd() {
+        return store.getAlignmentEnd(row);
+    }
+
+    public boolean contains(double location) {
+        return location >= getStart() && location < getEnd();
+    }
+
+    public AlignmentBlock[] getAlignmentBlocks() {
+        createAlignmentBlocks();
+        return alignmentBlocks;
+    }
+
+    public AlignmentBlock[] getInsertions() {
+        createAlignmentBlocks();
+        return insertions;
+    }
+
+    @Override
+    public AlignmentBlock getInsertionAt(int position) {
+        for (AlignmentBlock block : getInsertions()) {
+            if (block.getStart() == position) return block;
+            if (block.getStart() > position) return null;  // Blocks increase linearly
+        }
+        return null;
+    }
+
+    public List<Gap> getGaps() {
+        createAlignmentBlocks();
+        return gaps;
+    }
+
+    public String getCigarString() {
+        return store.getCigarString(row);
+    }
+
+    public int getInferredInsertSize() {
+        return store.getInferredInsertSize(row);
+    }
+
+    public int getMappingQuality() {
+        return store.getMappingQuality(row);
+    }
+
+    public float getScore() {
+        return getMappingQuality();
+    }
+
+    public ReadMate getMate() {
+        return store.getMate(row);
+    }
+
+    public Strand getReadStrand() {
+        return isNegativeStrand() ? Strand.NEGATIVE : Strand.POSITIVE;
+    }
+
+    public boolean isProperPair() {
+        int flags = store.getFlags(row);
+        return ((flags & READ_PAIRED_FLAG) != 0) && ((flags & PROPER_PAIR_FLAG) != 0);
+    }
+
+    public boolean isMapped() {
+        return (store.getFlags(row) & READ_UNMAPPED_FLAG) == 0;
+    }
+
+    public boolean isPaired() {
+        return (store.getFlags(row) & READ_PAIRED_FLAG) != 0;
+    }
+
+    public boolean isFirstOfPair() {
+        return isPaired() && (store.getFlags(row) & FIRST_OF_PAIR_FLAG) != 0;
+    }
+
+    public boolean isSecondOfPair() {
+        return isPaired() && (store.getFlags(row) & SECOND_OF_PAIR_FLAG) != 0;
+    }
+
+    public boolean isNegativeStrand() {
+        return (store.getFlags(row) & READ_STRAND_FLAG) != 0;
+    }
+
+    public boolean isDuplicate() {
+        return (store.getFlags(row) & DUPLICATE_READ_FLAG) != 0;
+    }
+
+    public boolean isPrimary() {
+        return (store.getFlags(row) & NOT_PRIMARY_ALIGNMENT_FLAG) == 0;
+    }
+
+    public boolean isSupplementary() {
+        return (store.getFlags(row) & SUPPLEMENTARY_ALIGNMENT_FLAG) != 0;
+    }
+
+    public boolean isVendorFailedRead() {
+        return (store.getFlags(row) & READ_FAILS_VENDOR_QUALITY_CHECK_FLAG) != 0;
+    }
+
+    public byte getBase(double position) {
+        int basePosition = (int) position;
+        for (AlignmentBlock block : getAlignmentBlocks()) {
+            if (block.contains(basePosition)) {
+                return block.getBase(basePosition - block.getStart());
+            }
+        }
+        return 0;
+    }
+
+    public byte getPhred(double position) {
+        int basePosition = (int) position;
+        for (AlignmentBlock block : getAlignmentBlocks()) {
+            if (block.contains(basePosition)) {
+                return block.getQuality(basePosition - block.getStart());
+            }
+        }
+        return 0;
+    }
+
+    public Object getAttribute(String key) {
+        // SAM alignment tag keys must be of length 2
+        return key.length() == 2 ? store.getAttribute(row, key) :
+                (key.equals("TEMPLATE_ORIENTATION") ? getPairOrientation() : null);
+    }
+
+    public void setMateSequence(String sequence) {
+        store.setMateSequence(row, sequence);
+    }
+
+    public String getPairOrientation() {
+        return store.getPairOrientation(row);
+    }
+
+    public Strand getFirstOfPairStrand() {
+        return store.getFirstOfPairStrand(row);
+    }
+
+    public Strand getSecondOfPairStrand() {
+        return store.getSecondOfPairStrand(row);
+    }
+
+    public Color getYcColor() {
+        return store.getYcColor(row);
+    }
+
+    public String getSample() {
+        SAMReadGroupRecord rg = store.getReadGroupRecord(row);
+        return rg == null ? null : rg.getSample();
+    }
+
+    public String getReadGroup() {
+        SAMReadGroupRecord rg = store.getReadGroupRecord(row);
+        return rg == null ? null : rg.getId();
+    }
+
+    public String getLibrary() {
+        SAMReadGroupRecord rg = store.getReadGroupRecord(row);
+        return rg == null ? null : rg.getLibrary();
+    }
+
+    public String getValueString(double position, int mouseX, WindowFunction windowFunction) {
+        String insertionString = getInsertionString(mouseX);
+        return insertionString != null ? insertionString : toPicardAlignment().getValueString(position, mouseX, windowFunction);
+    }
+
+    public String getClipboardString(double location, int mouseX) {
+        String insertionString = getInsertionString(mouseX);
+        return insertionString != null ? insertionString : toPicardAlignment().getClipboardString(location, mouseX);
+    }
+
+    /**
+     * Insertion pixel ranges are recorded on this view's blocks when rendered, so insertion popups are resolved here
+     * rather than on a decoded copy.
+     */
+    private String getInsertionString(int mouseX) {
+        for (AlignmentBlock block : getInsertions()) {
+            if (block.containsPixel(mouseX)) {
+                byte[] bases = block.getBases();
+                if (bases.length < 50) {
+                    return "Insertion (" + bases.length + " bases): " + new String(bases);
+                } else {
+                    int len = bases.length;
+                    return "Insertion (" + bases.length + " bases): " + new String(Arrays.copyOfRange(bases, 0, 25)) + "..." +
+                            new String(Arrays.copyOfRange(bases, len - 25, len));
+                }
+            }
+        }
+        return null;
+    }
+
+    public LocusScore copy() {
+        return this;
+    }
+
+    public void finish() {
+    }
+
+    @Override
+    public String toString() {
+        return getReadName() + " " + getChr() + ":" + (getAlignmentStart() + 1) + " " + getCigarString();
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.sam;
+
+/**
+ * An alignment block backed by a row of a {@link ColumnarAlignmentStore}.  Bases and qualities are read from the
+ * stored record; arrays are only materialized, and then cached, if {@link #getBases()} or {@link #getQualities()}
+ * is called (e.g. when bases are drawn).
+ */
+public class ColumnarAlignmentBlock implements AlignmentBlock {
+
+    private final ColumnarAlignmentStore store;
+    private final int row;
+    private final int start;
+    private final int readOffset;
+    private final int length;
+    private final boolean softClipped;
+    private final boolean basesAvailable;
+    private final boolean missingBases;
+    int padding = 0;
+    private byte[] bases;
+    private byte[] qualities;
+    private int pixelStart;
+    private int pixelEnd;
+
+    ColumnarAlignmentBlock(ColumnarAlignmentStore store, int row, int start, int readOffset, int length, boolean softClipped) {
+        this.store = store;
+        this.row = row;
+        this.start = start;
+        this.readOffset = readOffset;
+        this.length = length;
+        this.softClipped = softClipped;
+        int readLength = store.getReadLength(row);
+        this.missingBases = readLength == 0;
+        this.basesAvailable = readLength - readOffset >= length;
+    }
+
+    @Override
+    public boolean contains(int position) {
+        int offset = position - start;
+        return offset >= 0 && offset < getLength();
+    }
+
+    @Override
+    public int getLength() {
+        return length + padding;
+    }
+
+    @Override
+    public byte getBase(int offset) {
+        if (offset >= length) {
+            return 0;
+        } else if (missingBases) {
+            return '=';
+        } else if (!basesAvailable) {
+            return '?';
+        } else {
+            return store.getBase(row, readOffset + offset);
+        }
+    }
+
+    @Override
+    public byte[] getBases() {
+        if (bases == null) {
+            byte[] b = new byte[length];
+            for (int i = 0; i < length; i++) {
+                b[i] = getBase(i);
+            }
+            bases = b;
+        }
+        return bases;
+    }
+
+    @Override
+    public int getStart() {
+        return start;
+    }
+
+    @Override
+    public byte getQuality(int offset) {
+        return missingBases || !basesAvailable || offset >= length ? (byte) 126 : store.getQuality(row, readOffset + offset);
+    }
+
+    @Override
+    public byte[] getQualities() {
+        if (qualities == null) {
+            byte[] q = new byte[length];
+            for (int i = 0; i < length; i++) {
+                q[i] = getQuality(i);
+            }
+            qualities = q;
+        }
+        return qualities;
+    }
+
+    @Override
+    public int getEnd() {
+        return start + getLength();
+    }
+
+    @Override
+    public boolean isSoftClipped() {
+        return softClipped;
+    }
+
+    @Override
+    public boolean hasBases() {
+        return true;
+    }
+
+    @Override
+    public void setPixelRange(int s, int e) {
+        this.pixelStart = s;
+        this.pixelEnd = e;
+    }
+
+    @Override
+    public boolean containsPixel(int x) {
+        return x >= this.pixelStart && x <= this.pixelEnd;
+    }
+
+    @Override
+    public int getPadding() {
+        return padding;
+    }
+
+    @Override
+    public String toString() {
+        return "[block " + (softClipped ? "softClipped " : " ") + start + "-" + getEnd() + " " +
+                new String(getBases()) + "]";
+    }
+}
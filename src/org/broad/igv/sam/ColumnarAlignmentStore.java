@@ -0,0 +1,795 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.sam;
+
+import htsjdk.samtools.*;
+import org.apache.log4j.Logger;
+import org.broad.igv.feature.Strand;
+import org.broad.igv.prefs.Constants;
+import org.broad.igv.prefs.PreferencesManager;
+
+import java.awt.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+import java.util.List;
+
+/**
+ * Columnar storage for the alignments of a loaded interval.
+ * <p/>
+ * Scalar fields (positions, flags, mapping quality, mate position, pair orientation) are held in primitive
+ * arrays indexed by row.  The variable length part of each record -- read name, CIGAR, bases, qualities, and
+ * tags -- is kept in its BAM binary encoding in direct (off-heap) buffers.  Records read from a BAM file are
+ * copied from their undecoded binary form, other records are encoded.  Buffers grow geometrically from
+ * {@link #MIN_SEGMENT_SIZE} to {@link #SEGMENT_SIZE}, so small intervals do not reserve whole segments.  Rows are
+ * exposed as {@link ColumnarAlignment} flyweights, which decode what they need from the columns on demand.
+ * <p/>
+ * Only {@link PicardAlignment}s are stored, other alignment types are returned unchanged by {@link #add(Alignment)}.
+ */
+public class ColumnarAlignmentStore {
+
+    private static Logger log = Logger.getLogger(ColumnarAlignmentStore.class);
+
+    static final int MIN_SEGMENT_SIZE = 64 * 1024;
+    static final int SEGMENT_SIZE = 4 * 1024 * 1024;
+
+    // Offsets of fields in a BAM record, not including the leading block_size
+    private static final int FIXED_SIZE = 32;
+    private static final int L_READ_NAME = 8;
+    private static final int N_CIGAR_OP = 12;
+    private static final int L_SEQ = 16;
+    private static final int READ_NAME = 32;
+
+    private static final byte[] BAM_BASES = "=ACMGRSVTWYHKDBN".getBytes();
+    private static final char[] CIGAR_OPS = "MIDNSHP=X".toCharArray();
+
+    private static final byte STRAND_NONE = 0;
+    private static final byte STRAND_POSITIVE = 1;
+    private static final byte STRAND_NEGATIVE = 2;
+
+    private final SAMFileHeader header;
+    private final boolean showSoftClipped;
+
+    private int size = 0;
+
+    // Scalar columns
+    private int[] start;
+    private int[] end;
+    private int[] alignmentStart;
+    private int[] alignmentEnd;
+    private short[] chr;
+    private int[] flags;
+    private byte[] mapq;
+    private int[] insertSize;
+    private int[] mateStart;
+    private short[] mateChr;
+    private short[] readGroup;
+    private byte[] pairOrientation;
+    private byte[] pairStrands;
+
+    // Location of the binary record: segment index and offset within segment
+    private int[] segment;
+    private int[] offset;
+    private int[] length;
+
+    // Off-heap storage for the binary records
+    private List<ByteBuffer> segments = new ArrayList<>();
+    private ByteBuffer currentSegment;
+
+    // Lookup tables referenced by the short/byte columns
+    private List<String> chrNames = new ArrayList<>();
+    private Map<String, Short> chrIndex = new HashMap<>();
+    private List<SAMReadGroupRecord> readGroups = new ArrayList<>();
+    private Map<String, Short> readGroupIndex = new HashMap<>();
+    private List<String> orientations = new ArrayList<>();
+    private Map<String, Byte> orientationIndex = new HashMap<>();
+
+    // Sparse per-row values
+    private Map<Integer, String> mateSequences = new HashMap<>();
+    private Map<Integer, Color> ycColors = new HashMap<>();
+
+    private transient BAMRecordCodec encoder;
+    private transient ByteArrayOutputStream encodeBuffer;
+
+    public ColumnarAlignmentStore(SAMFileHeader header) {
+        this(header, 1024);
+    }
+
+    public ColumnarAlignmentStore(SAMFileHeader header, int initialCapacity) {
+        this.header = header;
+        this.showSoftClipped = PreferencesManager.getPreferences().getAsBoolean(Constants.SAM_SHOW_SOFT_CLIPPED);
+        allocateColumns(Math.max(16, initialCapacity));
+        orientationIndex.put("", (byte) 0);
+        orientations.add("");
+        readGroups.add(null);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Store the alignment, returning a flyweight view of the new row.  Alignments which cannot be stored
+     * are returned as is.
+     */
+    public Alignment add(Alignment alignment) {
+
+        if (!(alignment instanceof PicardAlignment)) {
+            return alignment;
+        }
+
+        PicardAlignment a = (PicardAlignment) alignment;
+        SAMRecord record = a.getRecord();
+        if (record.getHeader() == null) {
+            record.setHeader(header);
+        }
+
+        // The undecoded name, CIGAR, bases, qualities, and tags of a BAM record, null if modified or not from a BAM
+        byte[] variableBytes = record instanceof BAMRecord ? ((BAMRecord) record).getVariableBinaryRepresentation() : null;
+        byte[] bytes = null;
+        if (variableBytes == null) {
+            bytes = encode(record);
+            if (bytes == null) {
+                return alignment;
+            }
+        }
+
+        if (size == start.length) {
+            allocateColumns(size * 2);
+        }
+
+        int row = size++;
+        start[row] = a.getStart();
+        end[row] = a.getEnd();
+        alignmentStart[row] = a.getAlignmentStart();
+        alignmentEnd[row] = a.getAlignmentEnd();
+        chr[row] = getChrIndex(a.getChr());
+        flags[row] = record.getFlags();
+        mapq[row] = (byte) record.getMappingQuality();
+        insertSize[row] = record.getInferredInsertSize();
+
+        ReadMate mate = a.getMate();
+        if (mate != null) {
+            mateStart[row] = mate.getStart();
+            mateChr[row] = getChrIndex(mate.getChr());
+        } else {
+            mateStart[row] = -1;
+            mateChr[row] = -1;
+        }
+
+        readGroup[row] = getReadGroupIndex(a.getReadGroup());
+        pairOrientation[row] = getOrientationIndex(a.getPairOrientation());
+        pairStrands[row] = (byte) (encodeStrand(a.getFirstOfPairStrand()) | (encodeStrand(a.getSecondOfPairStrand()) << 2));
+        if (a.getYcColor() != null) {
+            ycColors.put(row, a.getYcColor());
+        }
+
+        if (variableBytes != null) {
+            writeRecord(row, record, variableBytes);
+        } else {
+            allocateRecord(row, bytes.length).put(bytes);
+        }
+
+        return new ColumnarAlignment(this, row);
+    }
+
+    /**
+     * Discard rows that are not referenced by {@code retained}, for example alignments removed by downsampling.
+     * The retained flyweights are updated to point to their new rows.
+     */
+    public void compact(List<Alignment> retained) {
+
+        List<ColumnarAlignment> rows = new ArrayList<>(retained.size());
+        for (Alignment a : retained) {
+            if (a instanceof ColumnarAlignment && ((ColumnarAlignment) a).store == this) {
+                rows.add((ColumnarAlignment) a);
+            }
+        }
+        if (rows.size() == size) {
+            return;
+        }
+
+        ColumnarAlignmentStore compacted = new ColumnarAlignmentStore(header, rows.size());
+        long retainedBytes = 0;
+        for (ColumnarAlignment a : rows) {
+            retainedBytes += length[a.row];
+        }
+        compacted.reserve(retainedBytes);
+        compacted.chrNames = chrNames;
+        compacted.chrIndex = chrIndex;
+        compacted.readGroups = readGroups;
+        compacted.readGroupIndex = readGroupIndex;
+        compacted.orientations = orientations;
+        compacted.orientationIndex = orientationIndex;
+
+        for (ColumnarAlignment a : rows) {
+            int oldRow = a.row;
+            int row = compacted.size++;
+            compacted.start[row] = start[oldRow];
+            compacted.end[row] = end[oldRow];
+            compacted.alignmentStart[row] = alignmentStart[oldRow];
+            compacted.alignmentEnd[row] = alignmentEnd[oldRow];
+            compacted.chr[row] = chr[oldRow];
+            compacted.flags[row] = flags[oldRow];
+            compacted.mapq[row] = mapq[oldRow];
+            compacted.insertSize[row] = insertSize[oldRow];
+            compacted.mateStart[row] = mateStart[oldRow];
+            compacted.mateChr[row] = mateChr[oldRow];
+            compacted.readGroup[row] = readGroup[oldRow];
+            compacted.pairOrientation[row] = pairOrientation[oldRow];
+            compacted.pairStrands[row] = pairStrands[oldRow];
+            if (mateSequences.containsKey(oldRow)) {
+                compacted.mateSequences.put(row, mateSequences.get(oldRow));
+            }
+            if (ycColors.containsKey(oldRow)) {
+                compacted.ycColors.put(row, ycColors.get(oldRow));
+            }
+            ByteBuffer record = segments.get(segment[oldRow]).duplicate();
+            record.position(offset[oldRow]).limit(offset[oldRow] + length[oldRow]);
+            compacted.allocateRecord(row, length[oldRow]).put(record);
+            a.row = row;
+            a.alignmentBlocks = null;   // Blocks reference the old row
+        }
+
+        // Adopt the compacted columns
+        this.size = compacted.size;
+        this.start = compacted.start;
+        this.end = compacted.end;
+        this.alignmentStart = compacted.alignmentStart;
+        this.alignmentEnd = compacted.alignmentEnd;
+        this.chr = compacted.chr;
+        this.flags = compacted.flags;
+        this.mapq = compacted.mapq;
+        this.insertSize = compacted.insertSize;
+        this.mateStart = compacted.mateStart;
+        this.mateChr = compacted.mateChr;
+        this.readGroup = compacted.readGroup;
+        this.pairOrientation = compacted.pairOrientation;
+        this.pairStrands = compacted.pairStrands;
+        this.segment = compacted.segment;
+        this.offset = compacted.offset;
+        this.length = compacted.length;
+        this.segments = compacted.segments;
+        this.currentSegment = compacted.currentSegment;
+        this.mateSequences = compacted.mateSequences;
+        this.ycColors = compacted.ycColors;
+    }
+
+    /**
+     * @return the number of bytes used by the off-heap record buffers
+     */
+    public long getOffHeapBytes() {
+        long total = 0;
+        for (ByteBuffer b : segments) {
+            total += b.capacity();
+        }
+        return total;
+    }
+
+    private void allocateColumns(int capacity) {
+        start = start == null ? new int[capacity] : Arrays.copyOf(start, capacity);
+        end = end == null ? new int[capacity] : Arrays.copyOf(end, capacity);
+        alignmentStart = alignmentStart == null ? new int[capacity] : Arrays.copyOf(alignmentStart, capacity);
+        alignmentEnd = alignmentEnd == null ? new int[capacity] : Arrays.copyOf(alignmentEnd, capacity);
+        chr = chr == null ? new short[capacity] : Arrays.copyOf(chr, capacity);
+        flags = flags == null ? new int[capacity] : Arrays.copyOf(flags, capacity);
+        mapq = mapq == null ? new byte[capacity] : Arrays.copyOf(mapq, capacity);
+        insertSize = insertSize == null ? new int[capacity] : Arrays.copyOf(insertSize, capacity);
+        mateStart = mateStart == null ? new int[capacity] : Arrays.copyOf(mateStart, capacity);
+        mateChr = mateChr == null ? new short[capacity] : Arrays.copyOf(mateChr, capacity);
+        readGroup = readGroup == null ? new short[capacity] : Arrays.copyOf(readGroup, capacity);
+        pairOrientation = pairOrientation == null ? new byte[capacity] : Arrays.copyOf(pairOrientation, capacity);
+        pairStrands = pairStrands == null ? new byte[capacity] : Arrays.copyOf(pairStrands, capacity);
+        segment = segment == null ? new int[capacity] : Arrays.copyOf(segment, capacity);
+        offset = offset == null ? new int[capacity] : Arrays.copyOf(offset, capacity);
+        length = length == null ? new int[capacity] : Arrays.copyOf(length, capacity);
+    }
+
+    /**
+     * Encode the record in BAM binary format, without the leading block_size field.
+     */
+    private byte[] encode(SAMRecord record) {
+        try {
+            if (encoder == null) {
+                encodeBuffer = new ByteArrayOutputStream(1024);
+                encoder = new BAMRecordCodec(header);
+                encoder.setOutputStream(encodeBuffer);
+            }
+            encodeBuffer.reset();
+            encoder.encode(record);
+            byte[] bytes = encodeBuffer.toByteArray();
+            return Arrays.copyOfRange(bytes, 4, bytes.length);
+        } catch (Exception e) {
+            log.error("Error encoding alignment " + record.getReadName(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Write the fixed fields of a BAM record from the record's properties, followed by its undecoded variable
+     * length fields.
+     */
+    private void writeRecord(int row, SAMRecord record, byte[] variableBytes) {
+        // Indexing bin as computed by SAMRecord.computeIndexingBin
+        int binStart = record.getAlignmentStart() - 1;
+        int binEnd = record.getAlignmentEnd();
+        if (binEnd <= 0) {
+            binEnd = binStart + 1;
+        }
+        int bin = GenomicIndexUtil.regionToBin(binStart, binEnd);
+        ByteBuffer buffer = allocateRecord(row, FIXED_SIZE + variableBytes.length);
+        buffer.putInt(record.getReferenceIndex());
+        buffer.putInt(record.getAlignmentStart() - 1);
+        buffer.putInt(bin << 16 | (record.getMappingQuality() & 0xff) << 8 | (record.getReadNameLength() + 1));
+        buffer.putInt(record.getFlags() << 16 | record.getCigarLength());
+        buffer.putInt(record.getReadLength());
+        buffer.putInt(record.getMateReferenceIndex());
+        buffer.putInt(record.getMateAlignmentStart() - 1);
+        buffer.putInt(record.getInferredInsertSize());
+        buffer.put(variableBytes);
+    }
+
+    /**
+     * Reserve {@code recordLength} bytes for the row's record, returning the buffer positioned to write it.
+     */
+    private ByteBuffer allocateRecord(int row, int recordLength) {
+        if (currentSegment == null || currentSegment.remaining() < recordLength) {
+            int capacity = currentSegment == null ? MIN_SEGMENT_SIZE : Math.min(SEGMENT_SIZE, 2 * currentSegment.capacity());
+            reserve(Math.max(capacity, recordLength));
+        }
+        segment[row] = segments.size() - 1;
+        offset[row] = currentSegment.position();
+        length[row] = recordLength;
+        return currentSegment;
+    }
+
+    /**
+     * Start a new segment with room for {@code bytes} bytes of records.
+     */
+    private void reserve(long bytes) {
+        if (bytes > Integer.MAX_VALUE) {
+            bytes = SEGMENT_SIZE;
+        }
+        currentSegment = ByteBuffer.allocateDirect((int) Math.max(1, bytes)).order(ByteOrder.LITTLE_ENDIAN);
+        segments.add(currentSegment);
+    }
+
+    private short getChrIndex(String chr) {
+        Short idx = chrIndex.get(chr);
+        if (idx == null) {
+            idx = (short) chrNames.size();
+            chrNames.add(chr);
+            chrIndex.put(chr, idx);
+        }
+        return idx;
+    }
+
+    private short getReadGroupIndex(String id) {
+        if (id == null) {
+            return 0;
+        }
+        Short idx = readGroupIndex.get(id);
+        if (idx == null) {
+            idx = (short) readGroups.size();
+            readGroups.add(header == null ? null : header.getReadGroup(id));
+            readGroupIndex.put(id, idx);
+        }
+        return idx;
+    }
+
+    private byte getOrientationIndex(String orientation) {
+        if (orientation == null) {
+            orientation = "";
+        }
+        Byte idx = orientationIndex.get(orientation);
+        if (idx == null) {
+            idx = (byte) orientations.size();
+            orientations.add(orientation);
+            orientationIndex.put(orientation, idx);
+        }
+        return idx;
+    }
+
+    private static int encodeStrand(Strand strand) {
+        return strand == Strand.POSITIVE ? STRAND_POSITIVE : (strand == Strand.NEGATIVE ? STRAND_NEGATIVE : STRAND_NONE);
+    }
+
+    private static Strand decodeStrand(int code) {
+        return code == STRAND_POSITIVE ? Strand.POSITIVE : (code == STRAND_NEGATIVE ? Strand.NEGATIVE : Strand.NONE);
+    }
+
+
+    // Row accessors, used by ColumnarAlignment
+
+    int getStart(int row) {
+        return start[row];
+    }
+
+    int getEnd(int row) {
+        return end[row];
+    }
+
+    void setStart(int row, int start) {
+        this.start[row] = start;
+    }
+
+    void setEnd(int row, int end) {
+        this.end[row] = end;
+    }
+
+    int getAlignmentStart(int row) {
+        return alignmentStart[row];
+    }
+
+    int getAlignmentEnd(int row) {
+        return alignmentEnd[row];
+    }
+
+    int getFlags(int row) {
+        return flags[row];
+    }
+
+    int getMappingQuality(int row) {
+        return mapq[row] & 0xff;
+    }
+
+    int getInferredInsertSize(int row) {
+        return insertSize[row];
+    }
+
+    ReadMate getMate(int row) {
+        if (mateChr[row] < 0) {
+            return null;
+        }
+        return new ReadMate(chrNames.get(mateChr[row]), mateStart[row],
+                (flags[row] & 0x20) != 0, (flags[row] & 0x8) != 0);
+    }
+
+    String getPairOrientation(int row) {
+        return orientations.get(pairOrientation[row]);
+    }
+
+    Strand getFirstOfPairStrand(int row) {
+        return decodeStrand(pairStrands[row] & 0x3);
+    }
+
+    Strand getSecondOfPairStrand(int row) {
+        return decodeStrand((pairStrands[row] >> 2) & 0x3);
+    }
+
+    SAMReadGroupRecord getReadGroupRecord(int row) {
+        return readGroups.get(readGroup[row]);
+    }
+
+    Color getYcColor(int row) {
+        return ycColors.isEmpty() ? null : ycColors.get(row);
+    }
+
+    String getMateSequence(int row) {
+        return mateSequences.isEmpty() ? null : mateSequences.get(row);
+    }
+
+    void setMateSequence(int row, String sequence) {
+        mateSequences.put(row, sequence);
+    }
+
+    String getChr(int row) {
+        return chrNames.get(chr[row]);
+    }
+
+    String getReadName(int row) {
+        ByteBuffer buffer = segments.get(segment[row]);
+        int pos = offset[row];
+        int nameLength = (buffer.get(pos + L_READ_NAME) & 0xff) - 1;   // Excluding terminating NUL
+        byte[] name = new byte[nameLength];
+        for (int i = 0; i < nameLength; i++) {
+            name[i] = buffer.get(pos + READ_NAME + i);
+        }
+        return new String(name);
+    }
+
+    int getReadLength(int row) {
+        return getRecordInt(row, L_SEQ);
+    }
+
+    int getCigarLength(int row) {
+        return getRecordShort(row, N_CIGAR_OP);
+    }
+
+    /**
+     * @return the CIGAR operation at {@code index}, as encoded in BAM (length << 4 | op)
+     */
+    int getCigarOp(int row, int index) {
+        return getRecordInt(row, cigarOffset(row) + 4 * index);
+    }
+
+    static char getCigarOperator(int op) {
+        return CIGAR_OPS[op & 0xf];
+    }
+
+    String getCigarString(int row) {
+        int nOps = getCigarLength(row);
+        if (nOps == 0) {
+            return "*";
+        }
+        StringBuilder buf = new StringBuilder(4 * nOps);
+        for (int i = 0; i < nOps; i++) {
+            int op = getCigarOp(row, i);
+            buf.append(op >>> 4).append(getCigarOperator(op));
+        }
+        return buf.toString();
+    }
+
+    /**
+     * @return the base at {@code readOffset}, as an upper case ascii character
+     */
+    byte getBase(int row, int readOffset) {
+        ByteBuffer buffer = segments.get(segment[row]);
+        int b = buffer.get(offset[row] + seqOffset(row) + (readOffset >> 1));
+        return BAM_BASES[(readOffset & 1) == 0 ? (b >> 4) & 0xf : b & 0xf];
+    }
+
+    /**
+     * @return the base quality at {@code readOffset}, or 126 if qualities are not recorded
+     */
+    byte getQuality(int row, int readOffset) {
+        ByteBuffer buffer = segments.get(segment[row]);
+        int qualOffset = offset[row] + qualOffset(row);
+        if (buffer.get(qualOffset) == (byte) 0xff) {
+            return (byte) 126;
+        }
+        return buffer.get(qualOffset + readOffset);
+    }
+
+    String getReadSequence(int row) {
+        int readLength = getReadLength(row);
+        if (readLength == 0) {
+            return "*";
+        }
+        byte[] bases = new byte[readLength];
+        for (int i = 0; i < readLength; i++) {
+            bases[i] = getBase(row, i);
+        }
+        return new String(bases);
+    }
+
+    Object getAttribute(int row, String key) {
+        int tagOffset = qualOffset(row) + getReadLength(row);
+        int tagLength = length[row] - tagOffset;
+        if (tagLength <= 0) {
+            return null;
+        }
+        ByteBuffer buffer = segments.get(segment[row]);
+        byte[] tags = new byte[tagLength];
+        for (int i = 0; i < tagLength; i++) {
+            tags[i] = buffer.get(offset[row] + tagOffset + i);
+        }
+        SAMBinaryTagAndValue values = BinaryTagCodec.readTags(tags, 0, tagLength, ValidationStringency.SILENT);
+        if (values == null) {
+            return null;
+        }
+        SAMBinaryTagAndValue value = values.find(SAMTagUtil.getSingleton().makeBinaryTag(key));
+        return value == null ? null : value.value;
+    }
+
+    /**
+     * Decode the stored record.  Used for infrequent operations that need the full record (popup text, export).
+     */
+    SAMRecord getRecord(int row) {
+        byte[] bytes = getRecordBytes(row);
+        byte[] block = new byte[bytes.length + 4];
+        ByteBuffer.wrap(block).order(ByteOrder.LITTLE_ENDIAN).putInt(bytes.length).put(bytes);
+        BAMRecordCodec decoder = new BAMRecordCodec(header);
+        decoder.setInputStream(new ByteArrayInputStream(block));
+        return decoder.decode();
+    }
+
+    /**
+     * Increment base, deletion, and insertion counts for the row directly from the binary record, without
+     * creating alignment blocks.  Follows the same rules as {@link BaseAlignmentCounts#incCounts(Alignment)}.
+     */
+    void incCounts(int row, BaseAlignmentCounts counts) {
+
+        final boolean isNegativeStrand = (flags[row] & 0x10) != 0;
+        final int nOps = getCigarLength(row);
+        final int readLength = getReadLength(row);
+        final ByteBuffer buffer = segments.get(segment[row]);
+        final int seqOffset = offset[row] + seqOffset(row);
+        final int qualOffset = offset[row] + qualOffset(row);
+        final boolean hasQualities = readLength > 0 && buffer.get(qualOffset) != (byte) 0xff;
+
+        if (nOps == 0) {
+            incBlockCounts(counts, buffer, seqOffset, qualOffset, readLength, hasQualities, start[row], 0, readLength,
+                    isNegativeStrand);
+            return;
+        }
+
+        int pos = start[row];
+        int readOffset = 0;
+        for (int i = 0; i < nOps; i++) {
+            int op = getCigarOp(row, i);
+            int nBases = op >>> 4;
+            switch (getCigarOperator(op)) {
+                case 'M':
+                case '=':
+                case 'X':
+                    if (pos + nBases >= counts.start && pos <= counts.end) {
+                        incBlockCounts(counts, buffer, seqOffset, qualOffset, readLength, hasQualities, pos, readOffset,
+                                nBases, isNegativeStrand);
+                    }
+                    pos += nBases;
+                    readOffset += nBases;
+                    break;
+                case 'S':
+                    // Soft clipped bases are not counted, but occupy reference positions if shown
+                    if (showSoftClipped) {
+                        pos += nBases;
+                    }
+                    readOffset += nBases;
+                    break;
+                case 'D':
+                    for (int j = 0; j < nBases; j++) {
+                        counts.incrementDeletion(pos + j, isNegativeStrand);
+                    }
+                    pos += nBases;
+                    break;
+                case 'N':
+                    pos += nBases;
+                    break;
+                case 'I':
+                    if (pos + nBases >= counts.start && pos <= counts.end) {
+                        counts.incrementInsertion(pos);
+                    }
+                    readOffset += nBases;
+                    break;
+                default:
+                    // H and P consume neither reference nor read
+            }
+        }
+    }
+
+    private static void incBlockCounts(BaseAlignmentCounts counts, ByteBuffer buffer, int seqOffset, int qualOffset,
+                                       int readLength, boolean hasQualities, int blockStart, int readOffset,
+                                       int nBases, boolean isNegativeStrand) {
+
+        // Bases and qualities are substituted for the whole block if the read is missing them, as in SAMAlignment
+        boolean basesAvailable = readLength - readOffset >= nBases;
+        boolean qualitiesAvailable = hasQualities && basesAvailable;
+        for (int j = 0; j < nBases; j++) {
+            int ro = readOffset + j;
+            byte base;
+            if (readLength == 0) {
+                base = '=';
+            } else if (!basesAvailable) {
+                base = '?';
+            } else {
+                int b = buffer.get(seqOffset + (ro >> 1));
+                base = BAM_BASES[(ro & 1) == 0 ? (b >> 4) & 0xf : b & 0xf];
+            }
+            byte q = qualitiesAvailable ? buffer.get(qualOffset + ro) : (byte) 126;
+            counts.incPositionCount(blockStart + j, base, q, isNegativeStrand);
+        }
+    }
+
+    /**
+     * Build alignment blocks, insertion blocks, and gaps for the row.  Follows the same rules as
+     * {@link SAMAlignment#createAlignmentBlocks(String, byte[], byte[])}, but blocks reference the stored record
+     * rather than copies of the bases and qualities.
+     */
+    void createAlignmentBlocks(ColumnarAlignment alignment) {
+
+        int row = alignment.row;
+        List<SAMAlignment.CigarOperator> operators = SAMAlignment.buildOperators(getCigarString(row));
+
+        if (operators.isEmpty()) {
+            alignment.alignmentBlocks = new AlignmentBlock[]{
+                    new ColumnarAlignmentBlock(this, row, start[row], 0, getReadLength(row), false)};
+            return;
+        }
+
+        List<AlignmentBlock> blocks = new ArrayList<>();
+        List<AlignmentBlock> insertions = new ArrayList<>();
+        List<Gap> gaps = null;
+
+        int softClippedBaseCount = 0;
+        for (SAMAlignment.CigarOperator op : operators) {
+            if (op.operator == SAMAlignment.HARD_CLIP) continue;
+            if (op.operator != SAMAlignment.SOFT_CLIP) break;
+            softClippedBaseCount += op.nBases;
+        }
+
+        int readOffset = showSoftClipped ? 0 : softClippedBaseCount;
+        int blockStart = start[row];
+        int padding = 0;
+        for (int i = 0; i < operators.size(); i++) {
+            SAMAlignment.CigarOperator op = operators.get(i);
+            char operator = op.operator;
+            if (operator == SAMAlignment.HARD_CLIP) {
+                continue;
+            }
+            if (operator == SAMAlignment.MATCH || operator == SAMAlignment.PERFECT_MATCH ||
+                    operator == SAMAlignment.MISMATCH || (showSoftClipped && operator == SAMAlignment.SOFT_CLIP)) {
+                blocks.add(new ColumnarAlignmentBlock(this, row, blockStart, readOffset, op.nBases,
+                        operator == SAMAlignment.SOFT_CLIP));
+                readOffset += op.nBases;
+                blockStart += op.nBases;
+            } else if (operator == SAMAlignment.DELETION) {
+                if (gaps == null) gaps = new ArrayList<>();
+                gaps.add(new Gap(blockStart, op.nBases, operator));
+                blockStart += op.nBases;
+            } else if (operator == SAMAlignment.SKIPPED_REGION) {
+                if (gaps == null) gaps = new ArrayList<>();
+                int flankingLeft = i > 0 ? operators.get(i - 1).nBases : 0;
+                int flankingRight = i < operators.size() - 1 ? operators.get(i + 1).nBases : 0;
+                gaps.add(new SpliceGap(blockStart, op.nBases, operator, flankingLeft, flankingRight));
+                blockStart += op.nBases;
+            } else if (operator == SAMAlignment.INSERTION) {
+                ColumnarAlignmentBlock block = new ColumnarAlignmentBlock(this, row, blockStart, readOffset, op.nBases, false);
+                block.padding = padding;
+                insertions.add(block);
+                readOffset += op.nBases;
+                padding = 0;
+            } else if (operator == SAMAlignment.PADDING) {
+                padding += op.nBases;
+            }
+        }
+
+        alignment.alignmentBlocks = blocks.toArray(new AlignmentBlock[blocks.size()]);
+        alignment.insertions = insertions.toArray(new AlignmentBlock[insertions.size()]);
+        alignment.gaps = gaps;
+    }
+
+    private int getRecordInt(int row, int fieldOffset) {
+        return segments.get(segment[row]).getInt(offset[row] + fieldOffset);
+    }
+
+    private int getRecordShort(int row, int fieldOffset) {
+        return segments.get(segment[row]).getShort(offset[row] + fieldOffset) & 0xffff;
+    }
+
+    private int cigarOffset(int row) {
+        return READ_NAME + (segments.get(segment[row]).get(offset[row] + L_READ_NAME) & 0xff);
+    }
+
+    private int seqOffset(int row) {
+        return cigarOffset(row) + 4 * getCigarLength(row);
+    }
+
+    private int qualOffset(int row) {
+        return seqOffset(row) + (getReadLength(row) + 1) / 2;
+    }
+
+    private byte[] getRecordBytes(int row) {
+        ByteBuffer buffer = segments.get(segment[row]);
+        byte[] bytes = new byte[length[row]];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(offset[row] + i);
+        }
+        return bytes;
+    }
+}
@@ -308,8 +308,7 @@ public class DenseAlignmentCounts extends BaseAlignmentCounts {
         }
     }
 
-    protected void incrementInsertion(AlignmentBlock insBlock) {
-        int pos = insBlock.getStart();
+    protected void incrementInsertion(int pos) {
         int offset = pos - start;
         // Insertions are between bases.  increment count at position just before insertion
         if (offset >= 0 && offset < ins.length) {
@@ -192,6 +192,8 @@ public class SAMWriter {
                 next = alignments.next();
                 if (next instanceof PicardAlignment && passLocFilter(next)) {
                     nextAlignment = (PicardAlignment) next;
+                } else if (next instanceof ColumnarAlignment && passLocFilter(next)) {
+                    nextAlignment = ((ColumnarAlignment) next).toPicardAlignment();
                 }
             }
         }
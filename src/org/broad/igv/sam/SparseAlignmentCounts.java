@@ -320,8 +320,7 @@ public class SparseAlignmentCounts extends BaseAlignmentCounts {
         }
     }
 
-    protected void incrementInsertion(AlignmentBlock insBlock) {
-        int pos = insBlock.getStart();
+    protected void incrementInsertion(int pos) {
         int idx1 = getIndex(pos);
         // Insertions are between bases.  increment count on either side
         increment(ins, idx1, 1);
@@ -60,10 +60,36 @@ public class SpliceJunctionHelper {
 
     private LoadOptions loadOptions;
 
+    // Only junctions starting in this range are recorded.  Used to split junctions between alignment tiles
+    private int minJunctionStart = Integer.MIN_VALUE;
+    private int maxJunctionStart = Integer.MAX_VALUE;
+
     public SpliceJunctionHelper(LoadOptions loadOptions) {
         this.loadOptions = loadOptions;
     }
 
+    /**
+     * Restrict recorded junctions to those with a start in [start, end).  Helpers for adjacent ranges then hold
+     * disjoint sets of junctions, see {@link #combine(LoadOptions, List)}.
+     */
+    void setJunctionStartRange(int start, int end) {
+        this.minJunctionStart = start;
+        this.maxJunctionStart = end;
+    }
+
+    /**
+     * Combine helpers for adjacent, non-overlapping, junction start ranges.
+     */
+    static SpliceJunctionHelper combine(LoadOptions loadOptions, List<SpliceJunctionHelper> helpers) {
+        SpliceJunctionHelper combined = new SpliceJunctionHelper(loadOptions);
+        for (SpliceJunctionHelper helper : helpers) {
+            combined.posStartEndJunctionsMap.putAll(helper.posStartEndJunctionsMap);
+            combined.negStartEndJunctionsMap.putAll(helper.negStartEndJunctionsMap);
+            combined.allSpliceJunctionFeatures.addAll(helper.allSpliceJunctionFeatures);
+        }
+        return combined;
+    }
+
     public List<SpliceJunctionFeature> getFilteredJunctions(SpliceJunctionTrack.StrandOption strandOption) {
 
         List<SpliceJunctionFeature> junctions;
@@ -128,6 +154,9 @@ public class SpliceJunctionHelper {
                                     spliceGap.getFlankingRight() >= loadOptions.minReadFlankingWidth)) {
 
                         int junctionStart = spliceGap.getStart();
+                        if (junctionStart < minJunctionStart || junctionStart >= maxJunctionStart) {
+                            continue;
+                        }
                         int junctionEnd = junctionStart + spliceGap.getnBases();
                         int flankingStart = junctionStart - spliceGap.getFlankingLeft();
                         int flankingEnd = junctionEnd + spliceGap.getFlankingRight();
@@ -0,0 +1,218 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.sam;
+
+import java.util.List;
+
+/**
+ * Coverage counts for an interval composed of contiguous, equal sized, alignment tiles.  Each position is
+ * delegated to the counts of the tile containing it, so the counts of cached tiles are reused rather
+ * than recomputed when the interval is extended.
+ */
+public class TiledAlignmentCounts implements AlignmentCounts {
+
+    private final AlignmentCounts[] tiles;
+    private final int start;
+    private final int end;
+    private final int tileSize;
+
+    /**
+     * @param tiles    counts for contiguous tiles, in order.  All tiles except the last have length {@code tileSize}
+     * @param tileSize
+     */
+    public TiledAlignmentCounts(List<AlignmentCounts> tiles, int tileSize) {
+        this.tiles = tiles.toArray(new AlignmentCounts[tiles.size()]);
+        this.tileSize = tileSize;
+        this.start = this.tiles[0].getStart();
+        this.end = this.tiles[this.tiles.length - 1].getEnd();
+    }
+
+    private AlignmentCounts getTile(int pos) {
+        if (pos < start || pos >= end) {
+            return null;
+        }
+        int idx = Math.min(tiles.length - 1, (pos - start) / tileSize);
+        return tiles[idx];
+    }
+
+    @Override
+    public String getChr() {
+        return tiles[0].getChr();
+    }
+
+    @Override
+    public String getContig() {
+        return tiles[0].getContig();
+    }
+
+    @Override
+    public int getStart() {
+        return start;
+    }
+
+    @Override
+    public int getEnd() {
+        return end;
+    }
+
+    /**
+     * Count the alignment in each tile it overlaps.  Tiles count only positions within their own bounds.
+     */
+    @Override
+    public void incCounts(Alignment alignment) {
+        int alignmentStart = Math.max(start, alignment.getStart());
+        int alignmentEnd = Math.min(end, alignment.getEnd());
+        if (alignmentStart >= alignmentEnd) {
+            return;
+        }
+        int first = (alignmentStart - start) / tileSize;
+        int last = Math.min(tiles.length - 1, (alignmentEnd - 1 - start) / tileSize);
+        for (int i = first; i <= last; i++) {
+            tiles[i].incCounts(alignment);
+        }
+    }
+
+    @Override
+    public int getTotalCount(int pos) {
+        AlignmentCounts t = getTile(pos);
+        return t == null ? 0 : t.getTotalCount(pos);
+    }
+
+    @Override
+    public int getTotalQuality(int pos) {
+        AlignmentCounts t = getTile(pos);
+        return t == null ? 0 : t.getTotalQuality(pos);
+    }
+
+    @Override
+    public int getCount(int pos, byte b) {
+        AlignmentCounts t = getTile(pos);
+        return t == null ? 0 : t.getCount(pos, b);
+    }
+
+    @Override
+    public int getNegCount(int pos, byte b) {
+        AlignmentCounts t = getTile(pos);
+        return t == null ? 0 : t.getNegCount(pos, b);
+    }
+
+    @Override
+    public int getPosCount(int pos, byte b) {
+        AlignmentCounts t = getTile(pos);
+        return t == null ? 0 : t.getPosCount(pos, b);
+    }
+
+    @Override
+    public int getDelCount(int pos) {
+        AlignmentCounts t = getTile(pos);
+        return t == null ? 0 : t.getDelCount(pos);
+    }
+
+    @Override
+    public int getInsCount(int pos) {
+        AlignmentCounts t = getTile(pos);
+        return t == null ? 0 : t.getInsCount(pos);
+    }
+
+    @Override
+    public int getQuality(int pos, byte b) {
+        AlignmentCounts t = getTile(pos);
+        return t == null ? 0 : t.getQuality(pos, b);
+    }
+
+    @Override
+    public int getNumberOfPoints() {
+        int nPoints = 0;
+        for (AlignmentCounts t : tiles) {
+            nPoints += t.getNumberOfPoints();
+        }
+        return nPoints;
+    }
+
+    @Override
+    public int getMaxCount(int origin, int end) {
+        int max = 1;
+        for (AlignmentCounts t : tiles) {
+            if (t.getEnd() > origin && t.getStart() < end) {
+                max = Math.max(max, t.getMaxCount(Math.max(origin, t.getStart()), Math.min(end, t.getEnd())));
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public String getValueStringAt(int pos) {
+        AlignmentCounts t = getTile(pos);
+        return t == null ? null : t.getValueStringAt(pos);
+    }
+
+    @Override
+    public boolean isConsensusMismatch(int pos, byte ref, String chr, float snpThreshold) {
+        AlignmentCounts t = getTile(pos);
+        return t != null && t.isConsensusMismatch(pos, ref, chr, snpThreshold);
+    }
+
+    @Override
+    public boolean isConsensusDeletion(int start, int width, float snpThreshold) {
+
+        // Computed here, rather than delegated, as deletions can span tiles
+        int end = start + width;
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            int totalCoverad = getTotalCount(i) + getDelCount(i);
+            if (getDelCount(i) >= snpThreshold * totalCoverad) count++;
+        }
+        return count >= 0.5 * width;
+    }
+
+    @Override
+    public boolean isConsensusInsertion(int pos, float snpThreshold) {
+        AlignmentCounts t = getTile(pos);
+        return t != null && t.isConsensusInsertion(pos, snpThreshold);
+    }
+
+    /**
+     * Tiled counts are not used in bisulfite mode
+     */
+    @Override
+    public BisulfiteCounts getBisulfiteCounts() {
+        return null;
+    }
+
+    @Override
+    public int getBucketSize() {
+        return tiles[0].getBucketSize();
+    }
+
+    @Override
+    public boolean hasBaseCounts() {
+        return tiles[0].hasBaseCounts();
+    }
+
+    @Override
+    public void finish() {
+    }
+}
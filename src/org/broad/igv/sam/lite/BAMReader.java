@@ -19,6 +19,7 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.zip.DataFormatException;
 
@@ -54,6 +55,9 @@ public class BAMReader implements AlignmentReader<Alignment> {
 
     BAMIndex bamIndex = null;
 
+    // Compressed and decompressed buffers, reused by each thread reading alignments
+    private final ThreadLocal<BGZFBlockDecoder> decoders = ThreadLocal.withInitial(BGZFBlockDecoder::new);
+
     Genome genome;
     Map<String, Integer> chrToIndex;
     private String[] indexToChr;
@@ -214,26 +218,10 @@ public class BAMReader implements AlignmentReader<Alignment> {
 
         List<Alignment> alignmentContainer = new ArrayList<>(10000);
 
-        long fetchMin = c.start.block;
-        long fetchMax = c.end.block + 65000; // Make sure we get the whole block.
-
-        SeekableStream ss = IGVSeekableStreamFactory.getInstance().getStreamFor(this.path);
-
-        ss.seek(fetchMin);
-
-        byte[] buffer = new byte[(int) (fetchMax - fetchMin + 1)];
-
-        try {
-            ss.readFully(buffer);
-        } catch (EOFException e) {
-            // Can happen with small files
+        try (SeekableStream ss = IGVSeekableStreamFactory.getInstance().getStreamFor(this.path)) {
+            readChunk(ss, c, chrId, start, end, alignmentContainer);
         }
 
-        byte[] unc = BGUnzip.blockUnzip(buffer);
-
-        decodeBamRecords(unc, c.start.offset, alignmentContainer, start, end, chrId); //, self.filter);
-
-
         return alignmentContainer;
     }
 
@@ -260,51 +248,58 @@ public class BAMReader implements AlignmentReader<Alignment> {
                 return alignmentContainer;
             }
 
-            for (BAMIndex.Chunk c : chunks) {
-
-                long fetchMin = c.start.block;
-                long fetchMax = c.end.block + 65000; // Make sure we get the whole block.
-
-                SeekableStream ss = IGVSeekableStreamFactory.getInstance().getStreamFor(this.path);
-
-                ss.seek(fetchMin);
-
-                byte[] buffer = new byte[(int) (fetchMax - fetchMin + 1)];
-
-                try {
-                    ss.readFully(buffer);
-                } catch (EOFException e) {
-                    // Can happen with small files
+            try (SeekableStream ss = IGVSeekableStreamFactory.getInstance().getStreamFor(this.path)) {
+                for (BAMIndex.Chunk c : chunks) {
+                    readChunk(ss, c, chrId, bpStart, bpEnd, alignmentContainer);
                 }
-
-                byte[] unc = BGUnzip.blockUnzip(buffer);
-
-                decodeBamRecords(unc, c.start.offset, alignmentContainer, bpStart, bpEnd, chrId); //, self.filter);
-
-
             }
             return alignmentContainer;
         }
     }
 
-    void decodeBamRecords(byte[] ba, int offset, List<Alignment> alignmentContainer, int min, int max, int chrId) {  //, filter){
+    /**
+     * Read and decompress the blocks of a chunk, and decode the alignments overlapping [bpStart, bpEnd].  The
+     * compressed and decompressed buffers are reused by the calling thread.
+     */
+    private void readChunk(SeekableStream ss, BAMIndex.Chunk c, int chrId, int bpStart, int bpEnd,
+                           List<Alignment> alignmentContainer) throws IOException {
 
+        long fetchMin = c.start.block;
+        long fetchMax = c.end.block + MAX_GZIP_BLOCK_SIZE; // Make sure we get the whole block.
 
-        while (true) {
+        BGZFBlockDecoder decoder = decoders.get();
+        byte[] buffer = decoder.getInputBuffer((int) (fetchMax - fetchMin));
 
-            if (offset >= ba.length) {
-                return;
+        // Short reads can happen with small files, the partial last block is ignored
+        ss.seek(fetchMin);
+        int nBytes = 0;
+        int len = (int) (fetchMax - fetchMin);
+        while (nBytes < len) {
+            int n = ss.read(buffer, nBytes, len - nBytes);
+            if (n < 0) {
+                break;
             }
+            nBytes += n;
+        }
 
-            int blockSize = readInt(ba, offset);
-            int blockEnd = offset + blockSize + 4;
+        int uncLength = decoder.decode(buffer, nBytes, true);
 
-            if (blockEnd > ba.length) {
-                return;
-            }
+        BAMRecordCursor cursor = new BAMRecordCursor(decoder.getBuffer(), c.start.offset, uncLength);
+        decodeBamRecords(cursor, alignmentContainer, bpStart, bpEnd, chrId); //, self.filter);
+    }
 
-            int refID = readInt(ba, offset + 4);
-            int pos = readInt(ba, offset + 8);
+    /**
+     * Decode the records at the cursor overlapping [min, max] on chromosome chrId.  Fields are read from the
+     * decompressed buffer in place; only the parts retained by the alignment are copied, as the buffer is reused.
+     */
+    void decodeBamRecords(BAMRecordCursor cursor, List<Alignment> alignmentContainer, int min, int max, int chrId) {  //, filter){
+
+        final byte[] ba = cursor.getBytes();
+
+        while (cursor.next()) {
+
+            int refID = cursor.getRefID();
+            int pos = cursor.getPos();
 
             if (refID < 0) {
                 return;   // unmapped reads
@@ -314,104 +309,76 @@ public class BAMReader implements AlignmentReader<Alignment> {
                 continue;   // to left of start, not sure this is possible
             }
 
-            int bmn = readInt(ba, offset + 12);
-            int bin = (bmn & 0xffff0000) >> 16;
-            int mq = (bmn & 0xff00) >> 8;
-            int nl = bmn & 0xff;
-
-            int flag_nc = readInt(ba, offset + 16);
-            int flag = (flag_nc & 0xffff0000) >> 16;
-            int nc = flag_nc & 0xffff;
-
-
-            int lseq = readInt(ba, offset + 20);
+            int nc = cursor.getCigarCount();
+            int cigarOffset = cursor.getCigarOffset();
 
-            int mateRefID = readInt(ba, offset + 24);
-            int matePos = readInt(ba, offset + 28);
-
-
-            byte[] readNameBytes = Arrays.copyOfRange(ba, offset + 36, offset + 36 + nl);
-            String readName = new String(readNameBytes);
-
-            int p = offset + 36 + nl;
-            byte[] cigarBytes = Arrays.copyOfRange(ba, p, p + 4 * nc);
-            p += 4 * nc;
-
-            CigarOperator[] cigarArray = new CigarOperator[nc];
             int lengthOnRef = 0;
             for (int c = 0; c < nc; ++c) {
-                int cigop = readInt(cigarBytes, c);
-                int opLen = (cigop >> 4);
+                int cigop = readInt(ba, cigarOffset + 4 * c);
                 char opLtr = CIGAR_DECODER[cigop & 0xf];
                 if (opLtr == 'M' || opLtr == 'X' || opLtr == 'D' || opLtr == 'N' || opLtr == '=')
-                    lengthOnRef += opLen;
-                cigarArray[c] = new CigarOperator(opLen, opLtr);
+                    lengthOnRef += (cigop >>> 4);
             }
 
-
             if (pos + lengthOnRef < min) {
-                offset = blockEnd;
                 continue;  // Record out-of-range "to the left", skip to next one
             }
 
-            int seqSize = (lseq + 1) >> 1;
-            byte[] seqBytes = Arrays.copyOfRange(ba, p, p + seqSize);
-            byte[] sequence = new byte[lseq];
-
-            for (int j = 0; j < seqSize; ++j) {
-                byte sb = seqBytes[j];
-                sequence[2 * j] = (byte) (SECRET_DECODER[(sb & 0xf0) >> 4]);
-                if ((2 * j + 1) < lseq) sequence[2 * j + 1] += SECRET_DECODER[(sb & 0x0f)];
+            CigarOperator[] cigarArray = new CigarOperator[nc];
+            for (int c = 0; c < nc; ++c) {
+                int cigop = readInt(ba, cigarOffset + 4 * c);
+                cigarArray[c] = new CigarOperator(cigop >>> 4, CIGAR_DECODER[cigop & 0xf]);
             }
 
+            int flag = cursor.getFlag();
+            int lseq = cursor.getSequenceLength();
+            int seqOffset = cursor.getSequenceOffset();
+            byte[] sequence = new byte[lseq];
+            for (int j = 0; j < lseq; ++j) {
+                int sb = ba[seqOffset + (j >> 1)];
+                sequence[j] = (byte) SECRET_DECODER[(j & 1) == 0 ? (sb & 0xf0) >> 4 : sb & 0x0f];
+            }
 
-            p += seqSize;
-
-
+            int qualityOffset = cursor.getQualityOffset();
             byte[] qualities;
             if (lseq == 1 && sequence[0] == '*') {
                 qualities = new byte[]{Byte.MAX_VALUE}; // TODO == how to represent this?
             } else {
-                qualities = Arrays.copyOfRange(ba, p, p + lseq);
+                qualities = Arrays.copyOfRange(ba, qualityOffset, qualityOffset + lseq);
             }
-            p += lseq;
-
 
             ReadMate mate = null;
             boolean isPaired = (flag & PAIRED_FLAG) != 0;
             if (isPaired) {
+                int mateRefID = cursor.getMateRefID();
                 boolean mateIsMapped = (flag & MATE_IS_MAPPED_FLAG) != 0;
                 String mateChr = mateRefID > 0 ? this.indexToChr[mateRefID] : "";
                 boolean mateIsNegativeStrand = ((flag & MATE_STRAND_FLAG) != 0);
-                mate = new ReadMate(mateChr, matePos, mateIsNegativeStrand, mateIsMapped);
+                mate = new ReadMate(mateChr, cursor.getMatePos(), mateIsNegativeStrand, mateIsMapped);
             }
 
-
-            byte[] tagBytes = Arrays.copyOfRange(ba, p, blockEnd);
-
-
             if (pos + lengthOnRef >= min && pos <= max) {   // && pass filter
 
                 BAMAlignment alignment = new BAMAlignment();
                 alignment.start = pos;
                 alignment.flags = flag;
-                alignment.fragmentLength = readInt(ba, offset + 32);
-                alignment.cigarBytes = cigarBytes;
+                alignment.fragmentLength = cursor.getTemplateLength();
+                alignment.cigarBytes = Arrays.copyOfRange(ba, cigarOffset, cigarOffset + 4 * nc);
                 alignment.lengthOnRef = lengthOnRef;
                 alignment.sequence = sequence;
-                alignment.mq = mq;
-                alignment.readName = readName;
+                alignment.mq = cursor.getMappingQuality();
+                // The stored name includes a terminating NUL
+                alignment.readName = new String(ba, cursor.getReadNameOffset(), Math.max(0, cursor.getReadNameLength() - 1),
+                        StandardCharsets.US_ASCII);
                 alignment.chr = this.indexToChr[refID];
                 alignment.qualities = qualities;
                 alignment.mate = mate;
-                alignment.tagBytes = tagBytes;   // Decode these on demand
+                alignment.tagBytes = Arrays.copyOfRange(ba, cursor.getTagOffset(), cursor.getEnd());   // Decode these on demand
 
                 makeBlocks(cigarArray, alignment);
 
                 alignmentContainer.add(alignment);
             }
-
-            offset = blockEnd;
         }
     }
 
@@ -422,10 +389,8 @@ public class BAMReader implements AlignmentReader<Alignment> {
         int len = (int) bamIndex.firstAlignmentBlock + MAX_GZIP_BLOCK_SIZE;   // Insure we get the complete compressed block containing the header
 
         //LittleEndianInputStream parser = new LittleEndianInputStream(new BufferedInputStream(ParsingUtils.openInputStream(indexURL)));
-        SeekableStream ss = IGVSeekableStreamFactory.getInstance().getStreamFor(this.path);
-
         byte[] buffer = new byte[len];
-        try {
+        try (SeekableStream ss = IGVSeekableStreamFactory.getInstance().getStreamFor(this.path)) {
             ss.readFully(buffer);
         } catch (EOFException e) {
             // This can happen with small files
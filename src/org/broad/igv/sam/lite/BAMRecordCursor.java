@@ -0,0 +1,129 @@
+package org.broad.igv.sam.lite;
+
+/**
+ * A cursor over the BAM records in a buffer of decompressed data.  Fields of the current record are read
+ * in place, nothing is copied.  Records that extend past the end of the buffer are not returned.
+ * <p/>
+ * Record layout (SAM specification section 4.2), offsets relative to the start of the record:
+ * <pre>
+ *  0 block_size   4 refID   8 pos   12 bin_mq_nl   16 flag_nc   20 l_seq   24 next_refID   28 next_pos   32 tlen
+ * 36 read_name, cigar, seq, qual, tags
+ * </pre>
+ */
+public class BAMRecordCursor {
+
+    private final byte[] bytes;
+    private final int limit;
+    private int offset = -1;
+    private int nextOffset;
+
+    /**
+     * @param bytes  decompressed data
+     * @param offset offset of the first record
+     * @param limit  end of the valid data
+     */
+    public BAMRecordCursor(byte[] bytes, int offset, int limit) {
+        this.bytes = bytes;
+        this.nextOffset = offset;
+        this.limit = limit;
+    }
+
+    /**
+     * Advance to the next record.
+     *
+     * @return false if there are no more complete records
+     */
+    public boolean next() {
+        if (nextOffset + 4 > limit) {
+            return false;
+        }
+        int end = nextOffset + 4 + BAMReader.readInt(bytes, nextOffset);
+        if (end > limit || end <= nextOffset) {
+            return false;
+        }
+        offset = nextOffset;
+        nextOffset = end;
+        return true;
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return offset of the current record in the buffer
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return offset of the end of the current record
+     */
+    public int getEnd() {
+        return nextOffset;
+    }
+
+    public int getRefID() {
+        return BAMReader.readInt(bytes, offset + 4);
+    }
+
+    public int getPos() {
+        return BAMReader.readInt(bytes, offset + 8);
+    }
+
+    public int getMappingQuality() {
+        return bytes[offset + 13] & 0xff;
+    }
+
+    /**
+     * @return length of the read name, including the terminating NUL
+     */
+    public int getReadNameLength() {
+        return bytes[offset + 12] & 0xff;
+    }
+
+    public int getFlag() {
+        return (bytes[offset + 18] & 0xff) | ((bytes[offset + 19] & 0xff) << 8);
+    }
+
+    public int getCigarCount() {
+        return (bytes[offset + 16] & 0xff) | ((bytes[offset + 17] & 0xff) << 8);
+    }
+
+    public int getSequenceLength() {
+        return BAMReader.readInt(bytes, offset + 20);
+    }
+
+    public int getMateRefID() {
+        return BAMReader.readInt(bytes, offset + 24);
+    }
+
+    public int getMatePos() {
+        return BAMReader.readInt(bytes, offset + 28);
+    }
+
+    public int getTemplateLength() {
+        return BAMReader.readInt(bytes, offset + 32);
+    }
+
+    public int getReadNameOffset() {
+        return offset + 36;
+    }
+
+    public int getCigarOffset() {
+        return getReadNameOffset() + getReadNameLength();
+    }
+
+    public int getSequenceOffset() {
+        return getCigarOffset() + 4 * getCigarCount();
+    }
+
+    public int getQualityOffset() {
+        return getSequenceOffset() + ((getSequenceLength() + 1) >> 1);
+    }
+
+    public int getTagOffset() {
+        return getQualityOffset() + getSequenceLength();
+    }
+}
@@ -0,0 +1,226 @@
+package org.broad.igv.sam.lite;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decompresses a series of bgzipped blocks into a buffer which is reused from call to call.
+ * <p/>
+ * The block headers are scanned first, giving the compressed and uncompressed size of every block, so each block
+ * is inflated directly to its place in the output with no intermediate copies.  Blocks are independent, so those
+ * of a large range can be inflated in parallel.  Inflaters are held per thread and reused.
+ * <p/>
+ * An instance is not thread safe, use one per thread.
+ */
+public class BGZFBlockDecoder {
+
+    private static Logger log = Logger.getLogger(BGZFBlockDecoder.class);
+
+    public static final int BGZIP_HEADER_LENGTH = 18;
+    private static final int BGZIP_FOOTER_LENGTH = 8;
+
+    // Minimum number of blocks per task when inflating in parallel
+    static final int MIN_BLOCKS_PER_TASK = 8;
+
+    private static final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    private static ExecutorService inflateExecutor;
+
+    private byte[] inputBuffer = new byte[0];
+    private byte[] buffer = new byte[0];
+    private int length;
+
+    // Block layout of the current input, reused
+    private int[] inputOffsets = new int[16];
+    private int[] inputLengths = new int[16];
+    private int[] outputOffsets = new int[17];
+
+    private static synchronized ExecutorService getInflateExecutor() {
+        if (inflateExecutor == null) {
+            int nThreads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+            inflateExecutor = Executors.newFixedThreadPool(nThreads, r -> {
+                Thread t = new Thread(r, "bgzf-inflater");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return inflateExecutor;
+    }
+
+    /**
+     * Return an array of at least {@code capacity} bytes for reading compressed data.  The same array is returned
+     * by later calls unless a larger one is needed.
+     */
+    public byte[] getInputBuffer(int capacity) {
+        if (inputBuffer.length < capacity) {
+            inputBuffer = new byte[capacity];
+        }
+        return inputBuffer;
+    }
+
+    /**
+     * @return the decompressed bytes of the last call to {@link #decode}, valid up to {@link #getLength()}.  The
+     * array is overwritten by the next call.
+     */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Decompress the complete blocks in {@code data[0, dataLength)}.  A partial block at the end, as read when a
+     * range extends past the last block of interest, is ignored, as is everything from the first block that
+     * fails to inflate.
+     *
+     * @param parallel inflate the blocks of a large range in parallel
+     * @return the number of decompressed bytes
+     */
+    public int decode(byte[] data, int dataLength, boolean parallel) throws IOException {
+
+        int nBlocks = scanBlocks(data, dataLength);
+        int totalLength = outputOffsets[nBlocks];
+        if (buffer.length < totalLength) {
+            buffer = new byte[Math.max(totalLength, buffer.length + (buffer.length >> 1))];
+        }
+
+        // Contiguous runs of blocks, the first is inflated on this thread
+        int nTasks = parallel ? Math.min(Runtime.getRuntime().availableProcessors(), nBlocks / MIN_BLOCKS_PER_TASK) : 1;
+        int blocksPerTask = nTasks <= 1 ? nBlocks : (nBlocks + nTasks - 1) / nTasks;
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int from = blocksPerTask; from < nBlocks; from += blocksPerTask) {
+            final int start = from;
+            final int end = Math.min(nBlocks, from + blocksPerTask);
+            futures.add(getInflateExecutor().submit(() -> inflateBlocks(data, start, end)));
+        }
+
+        // The output ends at the first block, in file order, which failed to inflate
+        int firstFailed = inflateBlocks(data, 0, Math.min(nBlocks, blocksPerTask));
+        boolean failed = firstFailed < Math.min(nBlocks, blocksPerTask);
+        for (int t = 0; t < futures.size(); t++) {
+            int taskEnd = Math.min(nBlocks, (t + 2) * blocksPerTask);
+            int taskFailed;
+            try {
+                taskFailed = futures.get(t).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while decompressing", e);
+            } catch (ExecutionException e) {
+                throw new IOException("Error decompressing", e.getCause());
+            }
+            if (!failed) {
+                firstFailed = taskFailed;
+                failed = taskFailed < taskEnd;
+            }
+        }
+
+        length = outputOffsets[firstFailed];
+        return length;
+    }
+
+    /**
+     * Record the offsets and sizes of the complete blocks in the input.
+     *
+     * @return the number of complete blocks
+     */
+    private int scanBlocks(byte[] data, int dataLength) throws IOException {
+
+        int nBlocks = 0;
+        int ptr = 0;
+        outputOffsets[0] = 0;
+        while (ptr + BGZIP_HEADER_LENGTH <= dataLength) {
+
+            if ((data[ptr] & 0xff) != 31 || (data[ptr + 1] & 0xff) != 139) {
+                if (nBlocks == 0) {
+                    throw new IOException("Invalid bgzip block header at " + ptr);
+                }
+                break;
+            }
+
+            int xlen = unpackInt16(data, ptr + 10);
+            int bsize = blockSize(data, ptr, xlen, dataLength);
+            if (bsize < 0 || ptr + bsize > dataLength) {
+                break;   // Partial block
+            }
+
+            if (nBlocks + 1 >= outputOffsets.length) {
+                int capacity = 2 * outputOffsets.length;
+                inputOffsets = Arrays.copyOf(inputOffsets, capacity);
+                inputLengths = Arrays.copyOf(inputLengths, capacity);
+                outputOffsets = Arrays.copyOf(outputOffsets, capacity + 1);
+            }
+            int cdataOffset = ptr + 12 + xlen;
+            inputOffsets[nBlocks] = cdataOffset;
+            inputLengths[nBlocks] = ptr + bsize - BGZIP_FOOTER_LENGTH - cdataOffset;
+            outputOffsets[nBlocks + 1] = outputOffsets[nBlocks] + unpackInt32(data, ptr + bsize - 4);
+            nBlocks++;
+
+            ptr += bsize;
+        }
+        return nBlocks;
+    }
+
+    /**
+     * Return the total block size from the BC extra subfield, or -1 if the extra field is incomplete.
+     */
+    private static int blockSize(byte[] data, int ptr, int xlen, int dataLength) throws IOException {
+        int p = ptr + 12;
+        int end = p + xlen;
+        if (end > dataLength) {
+            return -1;
+        }
+        while (p + 4 <= end) {
+            int slen = unpackInt16(data, p + 2);
+            if (data[p] == 'B' && data[p + 1] == 'C' && slen == 2) {
+                return unpackInt16(data, p + 4) + 1;
+            }
+            p += 4 + slen;
+        }
+        throw new IOException("Missing BC field in bgzip block header at " + ptr);
+    }
+
+    /**
+     * Inflate blocks [from, to) into the buffer.
+     *
+     * @return the index of the first block that failed to inflate, or {@code to} if all succeeded
+     */
+    private int inflateBlocks(byte[] data, int from, int to) {
+        Inflater inflater = inflaters.get();
+        for (int i = from; i < to; i++) {
+            int expected = outputOffsets[i + 1] - outputOffsets[i];
+            inflater.reset();
+            inflater.setInput(data, inputOffsets[i], inputLengths[i]);
+            try {
+                if (inflater.inflate(buffer, outputOffsets[i], expected) != expected) {
+                    log.warn("Unexpected uncompressed size of bgzip block " + i);
+                    return i;
+                }
+            } catch (DataFormatException e) {
+                log.warn("Error inflating bgzip block " + i + ": " + e.getMessage());
+                return i;
+            }
+        }
+        return to;
+    }
+
+    static int unpackInt16(final byte[] buffer, final int offset) {
+        return ((buffer[offset] & 0xFF) |
+                ((buffer[offset + 1] & 0xFF) << 8));
+    }
+
+    static int unpackInt32(final byte[] buffer, final int offset) {
+        return ((buffer[offset] & 0xFF) |
+                ((buffer[offset + 1] & 0xFF) << 8) |
+                ((buffer[offset + 2] & 0xFF) << 16) |
+                ((buffer[offset + 3] & 0xFF) << 24));
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.sam.reader;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.util.CloseableIterator;
+import org.apache.log4j.Logger;
+import org.broad.igv.prefs.Constants;
+import org.broad.igv.prefs.PreferencesManager;
+import org.broad.igv.sam.Alignment;
+import org.broad.igv.util.ResourceLocator;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An indexed alignment reader that splits a query into sub-ranges and decodes them concurrently.
+ * <p/>
+ * Sub-range boundaries are aligned to the 16 kb windows of the BAI/CSI linear index, so each sub-query
+ * resolves to its own compact set of index chunks.  Every shard is read by its own underlying reader, since
+ * htsjdk readers support only a single open iterator.  A record is assigned to the shard containing its
+ * alignment start (records starting before the query start go to the first shard), and shards are returned
+ * in order, so the merged iterator yields exactly the same sequence of records as a single sequential query.
+ * <p/>
+ * Shards of all readers are loaded on a shared pool of SAM.PARALLEL_LOAD_THREADS threads, sized when first used.
+ * Each query has its own cancellation flag, set by {@link #cancelQuery()} or by closing its iterator, so starting
+ * a query doesn't revive one that was canceled.
+ */
+public class ShardedAlignmentReader implements AlignmentReader<Alignment> {
+
+    private static Logger log = Logger.getLogger(ShardedAlignmentReader.class);
+
+    /**
+     * Size of a BAI linear index window (2^14).  Shard boundaries are multiples of this value.
+     */
+    static final int LINEAR_INDEX_WINDOW = 1 << 14;
+
+    private static ExecutorService threadExecutor;
+
+    private final ResourceLocator locator;
+    private final AlignmentReader<? extends Alignment> reader;
+    private final int nThreads;
+    private final BlockingQueue<AlignmentReader> shardReaders;
+    private final List<AlignmentReader> allShardReaders;
+    private final Set<AtomicBoolean> activeQueries = ConcurrentHashMap.newKeySet();
+
+    public ShardedAlignmentReader(ResourceLocator locator, AlignmentReader<? extends Alignment> reader, int nThreads) {
+        this.locator = locator;
+        this.reader = reader;
+        this.nThreads = Math.max(1, nThreads);
+        this.shardReaders = new LinkedBlockingQueue<>();
+        this.allShardReaders = Collections.synchronizedList(new ArrayList<>());
+    }
+
+    /**
+     * Sharding requires an index, and the ability to open additional readers on the same resource.
+     */
+    public static boolean supports(ResourceLocator locator, AlignmentReader reader) {
+        return reader instanceof BAMReader && reader.hasIndex() && !"alist".equals(locator.getType());
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (threadExecutor == null) {
+            int poolSize = Math.max(1, PreferencesManager.getPreferences().getAsInt(Constants.SAM_PARALLEL_LOAD_THREADS));
+            threadExecutor = Executors.newFixedThreadPool(poolSize, r -> {
+                Thread t = new Thread(r, "alignment-shard-loader");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return threadExecutor;
+    }
+
+    public void close() throws IOException {
+        reader.close();
+        synchronized (allShardReaders) {
+            for (AlignmentReader r : allShardReaders) {
+                r.close();
+            }
+            allShardReaders.clear();
+        }
+        shardReaders.clear();
+    }
+
+    public List<String> getSequenceNames() throws IOException {
+        return reader.getSequenceNames();
+    }
+
+    public SAMFileHeader getFileHeader() {
+        return reader.getFileHeader();
+    }
+
+    public Set<String> getPlatforms() {
+        return reader.getPlatforms();
+    }
+
+    public CloseableIterator<Alignment> iterator() {
+        return (CloseableIterator<Alignment>) reader.iterator();
+    }
+
+    public boolean hasIndex() {
+        return true;
+    }
+
+    @Override
+    public void cancelQuery() {
+        for (AtomicBoolean canceled : activeQueries) {
+            canceled.set(true);
+        }
+        activeQueries.clear();
+        reader.cancelQuery();
+    }
+
+    public CloseableIterator<Alignment> query(String sequence, int start, int end, boolean contained) throws IOException {
+
+        int[] boundaries = getShardBoundaries(start, end, nThreads);
+        if (contained || boundaries.length <= 2) {
+            return (CloseableIterator<Alignment>) reader.query(sequence, start, end, contained);
+        }
+
+        AtomicBoolean canceled = new AtomicBoolean();
+        activeQueries.add(canceled);
+
+        ExecutorService executor = getExecutor();
+        List<Future<List<Alignment>>> shards = new ArrayList<>(boundaries.length - 1);
+        for (int i = 0; i < boundaries.length - 1; i++) {
+            final int shardStart = boundaries[i];
+            final int shardEnd = boundaries[i + 1];
+            final boolean first = (i == 0);
+            shards.add(executor.submit(() -> loadShard(sequence, shardStart, shardEnd, first, contained, canceled)));
+        }
+        return new ShardIterator(shards, canceled);
+    }
+
+    /**
+     * Return shard boundaries for the range [start, end).  Interior boundaries fall on linear index windows,
+     * the first and last boundaries are the range start and end.
+     */
+    static int[] getShardBoundaries(int start, int end, int nThreads) {
+
+        int length = end - start;
+        int windows = (length + LINEAR_INDEX_WINDOW - 1) / LINEAR_INDEX_WINDOW;
+        int windowsPerShard = Math.max(1, (windows + nThreads - 1) / nThreads);
+        int shardSize = windowsPerShard * LINEAR_INDEX_WINDOW;
+
+        List<Integer> boundaries = new ArrayList<>();
+        boundaries.add(start);
+        int b = ((start / shardSize) + 1) * shardSize;
+        while (b < end) {
+            boundaries.add(b);
+            b += shardSize;
+        }
+        boundaries.add(end);
+
+        int[] result = new int[boundaries.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = boundaries.get(i);
+        }
+        return result;
+    }
+
+    private List<Alignment> loadShard(String sequence, int start, int end, boolean first, boolean contained,
+                                      AtomicBoolean canceled) throws IOException {
+
+        if (canceled.get()) {
+            return Collections.emptyList();
+        }
+
+        AlignmentReader shardReader = shardReaders.poll();
+        if (shardReader == null) {
+            shardReader = AlignmentReaderFactory.getReader(locator);
+            allShardReaders.add(shardReader);
+        }
+
+        List<Alignment> alignments = new ArrayList<>();
+        CloseableIterator<? extends Alignment> iter = null;
+        try {
+            iter = shardReader.query(sequence, start, end, contained);
+            while (iter.hasNext() && !canceled.get()) {
+                Alignment a = iter.next();
+                int alignmentStart = a.getAlignmentStart();
+                if (alignmentStart >= end) {
+                    break;
+                }
+                if (first || alignmentStart >= start) {
+                    alignments.add(a);
+                }
+            }
+        } finally {
+            if (iter != null) {
+                iter.close();
+            }
+            shardReaders.offer(shardReader);
+        }
+        return alignments;
+    }
+
+
+    /**
+     * Iterates over shard results in coordinate order, blocking on each shard as needed.
+     */
+    private class ShardIterator implements CloseableIterator<Alignment> {
+
+        private final Iterator<Future<List<Alignment>>> shardIter;
+        private final List<Future<List<Alignment>>> shards;
+        private final AtomicBoolean canceled;
+        private Iterator<Alignment> current;
+
+        ShardIterator(List<Future<List<Alignment>>> shards, AtomicBoolean canceled) {
+            this.shards = shards;
+            this.canceled = canceled;
+            this.shardIter = shards.iterator();
+            this.current = Collections.emptyIterator();
+        }
+
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                if (canceled.get() || !shardIter.hasNext()) {
+                    activeQueries.remove(canceled);
+                    return false;
+                }
+                try {
+                    current = shardIter.next().get().iterator();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new RuntimeException(cause);
+                }
+            }
+            return true;
+        }
+
+        public Alignment next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+
+        public void close() {
+            canceled.set(true);
+            activeQueries.remove(canceled);
+            for (Future<List<Alignment>> f : shards) {
+                if (!f.isDone()) {
+                    f.cancel(false);
+                }
+            }
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("Remove not supported");
+        }
+    }
+}
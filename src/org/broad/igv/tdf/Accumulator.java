@@ -29,10 +29,9 @@
  */
 package org.broad.igv.tdf;
 
-import org.apache.commons.math.stat.StatUtils;
 import org.apache.log4j.Logger;
 import org.broad.igv.track.WindowFunction;
-import org.broad.igv.util.collections.DownsampledDoubleArrayList;
+import org.broad.igv.util.collections.QuantileSketch;
 
 import java.util.HashSet;
 import java.util.Set;
@@ -40,7 +39,7 @@ import java.util.Set;
 /**
  * Accumulator for a single window function.
  * <p/>
- * Estimating percentiles -- weighted average of multiple estimates
+ * Percentiles are estimated with a streaming quantile sketch, exact up to MAX_VALUE_COUNT values.
  *
  * @author jrobinso
  */
@@ -57,7 +56,7 @@ public class Accumulator {
     int nPts = 0;
     float value = Float.NaN;
 
-    DownsampledDoubleArrayList valueList;  // List used to accumulate values for percentile calculations
+    QuantileSketch valueList;  // Sketch used to accumulate values for percentile calculations
 
 
     // Optional -- keep some representative data and probe names for popup text
@@ -78,7 +77,7 @@ public class Accumulator {
     public Accumulator(WindowFunction windowFunction) {
         this.windowFunction = windowFunction;
         if (PERCENTILE_WINDOW_FUNCTIONS.contains(windowFunction)) {
-            valueList = new DownsampledDoubleArrayList(100, MAX_VALUE_COUNT);
+            valueList = new QuantileSketch(MAX_VALUE_COUNT);
         }
     }
 
@@ -132,19 +131,8 @@ public class Accumulator {
         if (windowFunction == WindowFunction.mean) {
             value = Float.isNaN(sum) ? Float.NaN : sum / basesCovered;
         } else if (valueList != null) {
-            if (valueList.size() == 0) {
-                value = Float.NaN;
-            } else if (valueList.size() == 1) {
-                value = (float) valueList.get(0);
-            } else {
-                double[] valueArray = valueList.toArray();
-                double p = this.getPercentile(windowFunction);
-                if (p > 0) {
-                    value = (float) StatUtils.percentile(valueArray, p);
-                } else {
-                    value = Float.NaN;
-                }
-            }
+            double p = this.getPercentile(windowFunction);
+            value = p > 0 ? (float) valueList.getPercentile(p) : Float.NaN;
 
         }
 
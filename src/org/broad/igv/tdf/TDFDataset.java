@@ -30,7 +30,6 @@
 package org.broad.igv.tdf;
 
 import org.broad.igv.util.StringUtils;
-import org.broad.igv.util.collections.LRUCache;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -55,7 +54,6 @@ public class TDFDataset extends TDFEntity {
     long[] tilePositions;  // File position in TDF file
     int[] tileSizes;       // Tile size in bytes
     int nTiles;
-    LRUCache<String, TDFTile> cache = new LRUCache(20);
     // TODO -- refactor this dependency out
     TDFReader reader;
 
@@ -118,15 +116,12 @@ public class TDFDataset extends TDFEntity {
 
     // TODO -- this uses an implied linear index.  Abstract index or replace
     // with general interval index
-    // TODO -- gather all non-cached tiles and read in one chunk.  See BAM
-    // alignment reader class
     public List<TDFTile> getTiles(int startLocation, int endLocation) {
 
         List<TDFTile> tiles = new ArrayList();
         int startTile = (int) (startLocation / tileWidth);
         int endTile = (int) (endLocation / tileWidth);
-        for (int t = startTile; t <= endTile; t++) {
-            TDFTile tile = getTile(t);
+        for (TDFTile tile : reader.getTiles(this, startTile, endTile, true)) {
             if (tile != null && tile.getSize() > 0) {
                 tiles.add(tile);
             }
@@ -135,10 +130,12 @@ public class TDFDataset extends TDFEntity {
 
     }
 
+    /**
+     * Return all non-empty tiles.  These are not added to the reader's tile cache.
+     */
     public List<TDFTile> getTiles() {
         List<TDFTile> tiles = new ArrayList<TDFTile>();
-        for (int t = 0; t < nTiles; t++) {
-            TDFTile tile = getTile(t);
+        for (TDFTile tile : reader.getTiles(this, 0, nTiles - 1, false)) {
             if (tile != null) {
                 tiles.add(tile);
             }
@@ -146,22 +143,15 @@ public class TDFDataset extends TDFEntity {
         return tiles;
     }
 
-    // TDFTile computeTile(TDFDataset ds, int t, List<LocusScore> scores, String chr)
-    synchronized TDFTile getTile(int t) {
-        String key = getName() + "_" + t;
-
-        TDFTile tile = null;
-        if (!cache.containsKey(key)) {
-            tile = reader.readTile(this, t);
-            cache.put(key, tile);
-        } else {
-            tile = cache.get(key);
-        }
-        return tile;
+    TDFTile getTile(int t) {
+        List<TDFTile> tiles = reader.getTiles(this, t, t, true);
+        return tiles.isEmpty() ? null : tiles.get(0);
     }
 
     public void clearCache() {
-        cache.clear();
+        if (reader != null) {
+            reader.clearTileCache(this);
+        }
     }
 
 
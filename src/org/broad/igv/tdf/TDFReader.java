@@ -37,18 +37,30 @@ import org.broad.igv.feature.genome.Genome;
 import org.broad.igv.track.TrackType;
 import org.broad.igv.track.WindowFunction;
 import org.broad.igv.util.CompressionUtils;
+import org.broad.igv.util.FileUtils;
 import org.broad.igv.util.ResourceLocator;
 import org.broad.igv.util.StringUtils;
 import org.broad.igv.util.collections.LRUCache;
 import org.broad.igv.util.stream.IGVSeekableStreamFactory;
+import org.broad.igv.util.stream.MappedSeekableStream;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
+ * Reader for TDF files.  Tile reads are safe to issue from multiple threads concurrently.  Local files are read
+ * from a memory mapping, or with positional reads on a shared channel if mapping is disabled.  Other resources
+ * are read through a small pool of streams, each guarded by its own lock.  Decoded tiles are held in a
+ * reader-wide LRU cache keyed by dataset name and tile number.
+ *
  * @author jrobinso
  */
 public class TDFReader {
@@ -56,7 +68,26 @@ public class TDFReader {
     static final Logger log = Logger.getLogger(TDFReader.class);
     public static final int GZIP_FLAG = 0x1;
 
-    private SeekableStream seekableStream = null;
+    /**
+     * Number of independent streams (lock stripes) used for resources that don't support positional reads.
+     */
+    static final int STREAM_STRIPES = 4;
+
+    /**
+     * Maximum number of decoded tiles held in the tile cache.
+     */
+    static final int TILE_CACHE_SIZE = 200;
+
+    /**
+     * Maximum number of bytes fetched in a single read when loading adjacent tiles.
+     */
+    static final int MAX_BATCH_BYTES = 4000000;
+
+    private MappedSeekableStream mappedStream;
+    private FileChannel fileChannel;
+    private SeekableStream[] streams;
+    private ReentrantLock[] streamLocks;
+    private final AtomicInteger nextStripe = new AtomicInteger();
     private int version;
     private Map<String, IndexEntry> datasetIndex;
     private Map<String, IndexEntry> groupIndex;
@@ -66,6 +97,7 @@ public class TDFReader {
     private String genomeId;
     LRUCache<String, TDFGroup> groupCache = new LRUCache(20);
     LRUCache<String, TDFDataset> datasetCache = new LRUCache(20);
+    LRUCache<String, TDFTile> tileCache = new LRUCache(TILE_CACHE_SIZE);
     TDFTile wgTile;
 
     Map<WindowFunction, Double> valueCache = new HashMap();
@@ -75,7 +107,9 @@ public class TDFReader {
     boolean compressed = false;
 
     Set<String> chrNames;
-    private final CompressionUtils compressionUtils;
+
+    // CompressionUtils holds a single Inflater, one instance per thread lets tiles decompress in parallel
+    private final ThreadLocal<CompressionUtils> compressionUtils = ThreadLocal.withInitial(CompressionUtils::new);
 
     //private String path;
 
@@ -92,7 +126,7 @@ public class TDFReader {
         this.locator = locator;
         try {
             log.debug("Getting stream");
-            seekableStream = IGVSeekableStreamFactory.getInstance().getStreamFor(locator.getPath());
+            openStreams();
             log.debug("Reading header");
             readHeader();
             log.debug("Done reading header");
@@ -101,15 +135,47 @@ public class TDFReader {
             log.error("Error loading file: " + locator.getPath(), ex);
             throw new DataLoadException("Error loading file: " + ex.toString(), locator.getPath());
         }
-        compressionUtils = new CompressionUtils();
+    }
+
+    private void openStreams() throws IOException {
+        String path = locator.getPath();
+        File file = new File(path);
+        if (!FileUtils.isRemote(path) && file.isFile()) {
+            SeekableStream stream = IGVSeekableStreamFactory.getInstance().getStreamFor(path);
+            if (stream instanceof MappedSeekableStream) {
+                mappedStream = (MappedSeekableStream) stream;
+            } else {
+                stream.close();
+                fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            }
+        } else {
+            streams = new SeekableStream[STREAM_STRIPES];
+            streamLocks = new ReentrantLock[STREAM_STRIPES];
+            for (int i = 0; i < STREAM_STRIPES; i++) {
+                streamLocks[i] = new ReentrantLock();
+            }
+            // Additional stripes are opened on first use
+            streams[0] = IGVSeekableStreamFactory.getInstance().getStreamFor(path);
+        }
     }
 
     public void close() {
         try {
-            seekableStream.close();
+            if (mappedStream != null) {
+                mappedStream.close();
+            } else if (fileChannel != null) {
+                fileChannel.close();
+            } else {
+                for (SeekableStream stream : streams) {
+                    if (stream != null) {
+                        stream.close();
+                    }
+                }
+            }
         } catch (IOException e) {
             log.error("Error closing reader for: " + getPath(), e);
         }
+        tileCache.clear();
     }
 
     public String getPath() {
@@ -243,7 +309,16 @@ public class TDFReader {
         return ds;
     }
 
-    public synchronized TDFDataset getDataset(String name) {
+    public TDFDataset getDataset(String name) {
+
+        TDFDataset ds = datasetCache.get(name);
+        if (ds != null) {
+            return ds;
+        }
+        return loadDataset(name);
+    }
+
+    private synchronized TDFDataset loadDataset(String name) {
 
         if (datasetCache.containsKey(name)) {
             return datasetCache.get(name);
@@ -315,6 +390,9 @@ public class TDFReader {
 
     // TODO -- move to dataset class
 
+    /**
+     * Read and decode a single tile, bypassing the tile cache.
+     */
     public TDFTile readTile(TDFDataset ds, int tileNumber) {
 
         try {
@@ -336,12 +414,7 @@ public class TDFReader {
             //byte[] buffer = new byte[nBytes];
             //readFully(buffer);
             byte[] buffer = readBytes(position, nBytes);
-            if (compressed) {
-                buffer = compressionUtils.decompress(buffer);
-
-            }
-
-            return TileFactory.createTile(buffer, trackNames.length);
+            return decodeTile(buffer);
         } catch (IOException ex) {
             String tileName = ds.getName() + "[" + tileNumber + "]";
             log.error("Error reading data tile: " + tileName, ex);
@@ -349,6 +422,108 @@ public class TDFReader {
         }
     }
 
+    /**
+     * Return tiles startTile through endTile (inclusive) of the dataset.  Empty tiles are returned as null.
+     * <p/>
+     * Tiles not found in the tile cache are loaded in runs: tiles which are adjacent in the file are fetched
+     * with a single read, up to MAX_BATCH_BYTES, and then decoded individually.  Uncompressed tiles of mapped
+     * files are decoded directly from the mapping.
+     *
+     * @param cache if true, tiles are taken from and added to the tile cache
+     */
+    List<TDFTile> getTiles(TDFDataset ds, int startTile, int endTile, boolean cache) {
+
+        endTile = Math.min(endTile, ds.tilePositions.length - 1);
+        if (endTile < startTile) {
+            return Collections.emptyList();
+        }
+
+        int n = endTile - startTile + 1;
+        TDFTile[] tiles = new TDFTile[n];
+        boolean[] loaded = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            int t = startTile + i;
+            if (ds.tilePositions[t] < 0) {
+                loaded[i] = true;  // Empty tile
+            } else if (cache) {
+                TDFTile tile = tileCache.get(getTileKey(ds, t));
+                if (tile != null) {
+                    tiles[i] = tile;
+                    loaded[i] = true;
+                }
+            }
+        }
+
+        int i = 0;
+        while (i < n) {
+            if (loaded[i]) {
+                i++;
+                continue;
+            }
+
+            // Extend the run while the next missing tile immediately follows in the file
+            long runStart = ds.tilePositions[startTile + i];
+            long runEnd = runStart + ds.tileSizes[startTile + i];
+            int j = i + 1;
+            while (j < n && !loaded[j]) {
+                int t = startTile + j;
+                long next = ds.tilePositions[t];
+                if (next != runEnd || next + ds.tileSizes[t] - runStart > MAX_BATCH_BYTES) {
+                    break;
+                }
+                runEnd = next + ds.tileSizes[t];
+                j++;
+            }
+
+            try {
+                boolean zeroCopy = mappedStream != null && !compressed;
+                byte[] bytes = zeroCopy ? null : readBytes(runStart, (int) (runEnd - runStart));
+                for (int k = i; k < j; k++) {
+                    int t = startTile + k;
+                    TDFTile tile;
+                    if (zeroCopy) {
+                        tile = TileFactory.createTile(mappedStream.slice(ds.tilePositions[t], ds.tileSizes[t]), trackNames.length);
+                    } else {
+                        int offset = (int) (ds.tilePositions[t] - runStart);
+                        byte[] buffer = (j - i == 1) ? bytes : Arrays.copyOfRange(bytes, offset, offset + ds.tileSizes[t]);
+                        tile = decodeTile(buffer);
+                    }
+                    tiles[k] = tile;
+                    if (cache && tile != null) {
+                        tileCache.put(getTileKey(ds, t), tile);
+                    }
+                }
+            } catch (IOException ex) {
+                String tileName = ds.getName() + "[" + (startTile + i) + "-" + (startTile + j - 1) + "]";
+                log.error("Error reading data tiles: " + tileName, ex);
+                throw new RuntimeException("System error occured while reading tiles: " + tileName);
+            }
+            i = j;
+        }
+
+        return Arrays.asList(tiles);
+    }
+
+    /**
+     * Remove all tiles of the dataset from the tile cache.
+     */
+    void clearTileCache(TDFDataset ds) {
+        for (int t = 0; t < ds.tilePositions.length; t++) {
+            tileCache.remove(getTileKey(ds, t));
+        }
+    }
+
+    private static String getTileKey(TDFDataset ds, int tileNumber) {
+        return ds.getName() + "_" + tileNumber;
+    }
+
+    private TDFTile decodeTile(byte[] buffer) throws IOException {
+        if (compressed) {
+            buffer = compressionUtils.get().decompress(buffer);
+        }
+        return TileFactory.createTile(buffer, trackNames.length);
+    }
+
     /**
      * @return the version
      */
@@ -432,13 +607,56 @@ public class TDFReader {
     }
 
 
-    public synchronized byte[] readBytes(long position, int nBytes) throws IOException {
-        seekableStream.seek(position);
+    public byte[] readBytes(long position, int nBytes) throws IOException {
         byte[] buffer = new byte[nBytes];
-        int read = seekableStream.read(buffer, 0, nBytes);
+        if (mappedStream != null) {
+            mappedStream.read(position, buffer, 0, nBytes);
+        } else if (fileChannel != null) {
+            ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+            while (byteBuffer.hasRemaining()) {
+                if (fileChannel.read(byteBuffer, position + byteBuffer.position()) < 0) {
+                    break;
+                }
+            }
+        } else {
+            int stripe = lockStripe();
+            try {
+                SeekableStream stream = streams[stripe];
+                if (stream == null) {
+                    stream = IGVSeekableStreamFactory.getInstance().getStreamFor(locator.getPath());
+                    streams[stripe] = stream;
+                }
+                stream.seek(position);
+                int read = 0;
+                while (read < nBytes) {
+                    int n = stream.read(buffer, read, nBytes - read);
+                    if (n < 0) {
+                        break;
+                    }
+                    read += n;
+                }
+            } finally {
+                streamLocks[stripe].unlock();
+            }
+        }
         return buffer;
     }
 
+    /**
+     * Lock and return the index of a free stream stripe, or wait on one if all are busy.
+     */
+    private int lockStripe() {
+        int start = (nextStripe.getAndIncrement() & Integer.MAX_VALUE) % STREAM_STRIPES;
+        for (int i = 0; i < STREAM_STRIPES; i++) {
+            int stripe = (start + i) % STREAM_STRIPES;
+            if (streamLocks[stripe].tryLock()) {
+                return stripe;
+            }
+        }
+        streamLocks[start].lock();
+        return start;
+    }
+
     /**
      * @return the windowFunctions
      */
@@ -66,7 +66,9 @@ public class TDFWriter {
     Map<String, IndexEntry> groupIndex = new LinkedHashMap();
     long indexPositionPosition;
     boolean compressed;
-    private final CompressionUtils compressionUtils;
+
+    // Compression is done outside the write lock, each writing thread has its own instance
+    private final ThreadLocal<CompressionUtils> compressionUtils = ThreadLocal.withInitial(CompressionUtils::new);
 
     public TDFWriter(File f,
                      String genomeId,
@@ -101,8 +103,6 @@ public class TDFWriter {
             log.error("Error opening output stream to file: " + file, ex);
             throw new DataLoadException("Error creating file", "" + file);
         }
-
-        compressionUtils = new CompressionUtils();
     }
 
     private void writeHeader(String genomeId,
@@ -167,7 +167,7 @@ public class TDFWriter {
     /**
      * Write out the group and dataset index and close the underlying file.
      */
-    public void closeFile() {
+    public synchronized void closeFile() {
 
         try {
             writeDatasets();
@@ -222,7 +222,7 @@ public class TDFWriter {
         return group;
     }
 
-    public TDFDataset createDataset(String name, TDFDataset.DataType dataType,
+    public synchronized TDFDataset createDataset(String name, TDFDataset.DataType dataType,
                                     int tileWidth, int nTiles) {
 
         if (datasetCache.containsKey(name)) {
@@ -237,17 +237,22 @@ public class TDFWriter {
     // Note this will only work for "fixed step" format.  Others need location arrays
     // Tile layout
 
+    /**
+     * Write a tile.  Tiles can be written from multiple threads, they are serialized and compressed by the calling
+     * thread and only the write to the file is synchronized.
+     */
     public void writeTile(String dsId, int tileNumber, TDFTile tile) throws IOException {
 
-        TDFDataset dataset = datasetCache.get(dsId);
+        TDFDataset dataset;
+        synchronized (this) {
+            dataset = datasetCache.get(dsId);
+        }
         if (dataset == null) {
             throw new java.lang.NoSuchFieldError("Dataset: " + dsId + " doese not exist.  " +
                     "Call createDataset first");
         }
-        long pos = bytesWritten;
 
         if (tileNumber < dataset.tilePositions.length) {
-            dataset.tilePositions[tileNumber] = pos;
 
             // Write the tile contents to a byte buffer first,  so we can optionally gzip it
 
@@ -257,13 +262,14 @@ public class TDFWriter {
 
             byte[] bytes = buffer.getBytes();
             if (compressed) {
-                bytes = compressionUtils.compress(bytes);
+                bytes = compressionUtils.get().compress(bytes);
             }
 
-            write(bytes);
-            int nBytes = bytes.length;
-
-            dataset.tileSizes[tileNumber] = nBytes;
+            synchronized (this) {
+                dataset.tilePositions[tileNumber] = bytesWritten;
+                write(bytes);
+                dataset.tileSizes[tileNumber] = bytes.length;
+            }
         } else {
             // The occasional tile number == tile array size is expected, but tile
             // numbers larger than that are not
@@ -31,6 +31,7 @@ import org.broad.igv.feature.Chromosome;
 import org.broad.igv.feature.Locus;
 import org.broad.igv.feature.Strand;
 import org.broad.igv.feature.genome.Genome;
+import org.broad.igv.feature.genome.GenomeManager;
 import org.broad.igv.sam.*;
 import org.broad.igv.sam.reader.AlignmentReader;
 import org.broad.igv.sam.reader.AlignmentReaderFactory;
@@ -38,10 +39,15 @@ import org.broad.igv.tools.parsers.DataConsumer;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Class to compute coverage on an alignment or feature file.  This class is designed to be instantiated and executed
  * from a single thread.
+ * <p/>
+ * If more than one thread is requested and the file is indexed, chromosomes are counted concurrently by a pool of
+ * workers, each with its own reader.  Each worker spools its windows to a temporary file, and the files are passed
+ * to the consumer in file order, so the output is identical to that of a sequential count.
  */
 public class CoverageCounter {
 
@@ -148,23 +154,33 @@ public class CoverageCounter {
     private Locus queryInterval;
 
     /**
-     * Data buffer to pass data to the "consumer" (preprocessor).
+     * Template for the data buffers passed to the "consumer" (preprocessor).  Sized to the number of output columns.
      */
     private float[] buffer;
 
-    private final static Set<Byte> nucleotidesKeep = new HashSet<Byte>();
     public static final byte DEL = 126;
     public static final byte INS = 127;
     private final static byte[] nucleotides = new byte[]{'A', 'C', 'G', 'T', 'N', DEL, INS};
 
+    /**
+     * Index of each byte in the nucleotides array, -1 for bytes which are not counted
+     */
+    private final static int[] nucleotideIndex = new int[256];
+
     /**
      * Whether to write wig data to standard out (stdout)
      */
     private boolean writeStdOut;
 
+    /**
+     * Number of threads used to count chromosomes concurrently.  Only used for indexed files.
+     */
+    private int nThreads = 1;
+
     static {
-        for (byte b : nucleotides) {
-            nucleotidesKeep.add(b);
+        Arrays.fill(nucleotideIndex, -1);
+        for (int i = 0; i < nucleotides.length; i++) {
+            nucleotideIndex[nucleotides[i] & 0xff] = i;
         }
     }
 
@@ -213,6 +229,10 @@ public class CoverageCounter {
         this.postExtFactor = postExtFactor;
     }
 
+    public void setThreads(int nThreads) {
+        this.nThreads = Math.max(1, nThreads);
+    }
+
     /**
      * Take additional optional command line arguments and parse them
      *
@@ -271,8 +291,6 @@ public class CoverageCounter {
 
     /**
      * Parse and "count" the alignment file.  The main method.
-     * <p/>
-     * This method is not thread safe due to the use of the member variable "buffer".
      *
      * @throws IOException
      */
@@ -289,40 +307,38 @@ public class CoverageCounter {
         String lastChr = "";
         ReadCounter counter = null;
 
-        WigWriter wigWriter = null;
-        if (wigFile != null || writeStdOut) {
-            wigWriter = new WigWriter(wigFile, windowSize);
-        }
+        final WigWriter wigWriter = (wigFile != null || writeStdOut) ? new WigWriter(wigFile, windowSize) : null;
+        WindowSink sink = (chr, start, end, data) -> {
+            consumer.addData(chr, start, end, data, null);
+            if (wigWriter != null) {
+                wigWriter.addData(chr, start, end, data);
+            }
+        };
 
         try {
 
-            if (queryInterval == null) {
-                reader = AlignmentReaderFactory.getReader(alignmentFile, false);
-                iter = reader.iterator();
-            } else {
-                reader = AlignmentReaderFactory.getReader(alignmentFile, true);
-                iter = reader.query(queryInterval.getChr(), queryInterval.getStart() - 1, queryInterval.getEnd(), false);
+            if (queryInterval == null && nThreads > 1) {
+                reader = getIndexedReader();
             }
 
-            while (iter != null && iter.hasNext()) {
-                Alignment alignment = iter.next();
-                if (passFilter(alignment)) {
-                    //Sort into the read strand or first-in-pair strand,
-                    //depending on input flag. Note that this can
-                    //be very unreliable depending on data
-                    Strand strand;
-                    if (firstInPair) {
-                        strand = alignment.getFirstOfPairStrand();
-                    } else if (secondInPair) {
-                        strand = alignment.getSecondOfPairStrand();
-                    } else {
-                        strand = alignment.getReadStrand();
-                    }
-                    if (strand.equals(Strand.NONE)) {
-                        //TODO move this into passFilter, or move passFilter here
+            if (reader != null) {
+                totalCount = countByChromosome(reader.getSequenceNames(), tolerance, sink);
+            } else {
+
+                if (queryInterval == null) {
+                    reader = AlignmentReaderFactory.getReader(alignmentFile, false);
+                    iter = reader.iterator();
+                } else {
+                    reader = AlignmentReaderFactory.getReader(alignmentFile, true);
+                    iter = reader.query(queryInterval.getChr(), queryInterval.getStart() - 1, queryInterval.getEnd(), false);
+                }
+
+                while (iter != null && iter.hasNext()) {
+                    Alignment alignment = iter.next();
+                    Strand strand = getCountStrand(alignment);
+                    if (strand == null) {
                         continue;
                     }
-                    boolean readNegStrand = alignment.isNegativeStrand();
 
                     totalCount++;
 
@@ -331,152 +347,299 @@ public class CoverageCounter {
                     // Close all counters with position < alignment.getStart()
                     if (alignmentChr.equals(lastChr)) {
                         if (counter != null) {
-                            counter.closeBucketsBefore(alignment.getAlignmentStart() - tolerance, wigWriter);
+                            counter.closeBucketsBefore(alignment.getAlignmentStart() - tolerance, sink);
                         }
                     } else {  // New chromosome
                         if (counter != null) {
-                            counter.closeBucketsBefore(Integer.MAX_VALUE, wigWriter);
+                            counter.closeBucketsBefore(Integer.MAX_VALUE, sink);
                         }
                         counter = new ReadCounter(alignmentChr);
                         lastChr = alignmentChr;
                     }
 
-                    AlignmentBlock[] blocks = alignment.getAlignmentBlocks();
-
-                    if (blocks != null && !pairedCoverage) {
-                        for (AlignmentBlock block : blocks) {
-
-                            if (!block.isSoftClipped()) {
-
-                                int blockStart = block.getStart();
-                                int blockEnd = block.getEnd();
-
-
-                                int adjustedStart = block.getStart();
-                                int adjustedEnd = block.getEnd();
-
-
-                                if (preExtFactor > 0) {
-                                    if (readNegStrand) {
-                                        adjustedEnd = blockEnd + preExtFactor;
-                                    } else {
-                                        adjustedStart = Math.max(0, blockStart - preExtFactor);
-                                    }
-                                }
-
-                                // If both postExtFactor and extFactor are specified, postExtFactor takes precedence
-                                if (postExtFactor > 0) {
-                                    if (readNegStrand) {
-                                        adjustedStart = Math.max(0, blockEnd - postExtFactor);
-                                    } else {
-                                        adjustedEnd = blockStart + postExtFactor;
-                                    }
-
-                                } else if (extFactor > 0) {
-                                    // Standard extension option -- extend read on 3' end
-                                    if (readNegStrand) {
-                                        adjustedStart = Math.max(0, adjustedStart - extFactor);
-                                    } else {
-                                        adjustedEnd += extFactor;
-                                    }
-                                }
-
-
-                                if (queryInterval != null) {
-                                    adjustedStart = Math.max(queryInterval.getStart() - 1, adjustedStart);
-                                    adjustedEnd = Math.min(queryInterval.getEnd(), adjustedEnd);
-                                }
-
-                                byte[] bases = block.getBases();
-                                for (int pos = adjustedStart; pos < adjustedEnd; pos++) {
-                                    byte base = 0;
-                                    int baseIdx = pos - blockStart;
-                                    if (bases != null && baseIdx >= 0 && baseIdx < bases.length) {
-                                        base = bases[baseIdx];
-                                    }
-                                    //int idx = pos - blockStart;
-                                    //byte quality = (idx >= 0 && idx < block.qualities.length) ?
-                                    //block.qualities[pos - blockStart] : (byte) 0;
-                                    counter.incrementCount(pos, base, strand);
-                                }
-                            }
-                        }
+                    countAlignment(alignment, strand, counter);
+                }
+            }
+            consumer.setAttribute("totalCount", String.valueOf(totalCount));
+            consumer.parsingComplete();
 
-                        final AlignmentBlock[] insertions = alignment.getInsertions();
-                        if (insertions != null) {
-                            for (AlignmentBlock insBlock : insertions) {
-                                int pos = insBlock.getStart();
-                                if (queryInterval == null || (pos >= queryInterval.getStart() && pos <= queryInterval.getEnd()))
-                                    counter.incrementInsertion(pos, strand);
-                            }
-                        }
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
 
-                        // Count deletions
-                        List<Gap> gaps = alignment.getGaps();
-                        if (gaps != null) {
-                            for (Gap gap : gaps) {
-                                if (gap.getType() == SAMAlignment.DELETION) {
-                                    int adjustedStart = gap.getStart();
-                                    int adjustedEnd = gap.getStart() + gap.getnBases();
-                                    if (queryInterval != null) {
-                                        adjustedStart = Math.max(queryInterval.getStart() - 1, adjustedStart);
-                                        adjustedEnd = Math.min(queryInterval.getEnd(), adjustedEnd);
-                                    }
-                                    for (int pos = adjustedStart; pos < adjustedEnd; pos++) {
-                                        counter.incrementDeletion(pos, strand);
-                                    }
-                                }
-                            }
-                        }
+            if (counter != null) {
+                counter.closeBucketsBefore(Integer.MAX_VALUE, sink);
+            }
+            if (iter != null) {
+                iter.close();
+            }
+            if (reader != null) {
+                reader.close();
+            }
+            if (wigWriter != null) {
+                wigWriter.close();
+            }
+
+        }
+    }
+
+    /**
+     * Return the strand the alignment is counted on, or null if the alignment is filtered.
+     */
+    private Strand getCountStrand(Alignment alignment) {
+        if (!passFilter(alignment)) {
+            return null;
+        }
+        //Sort into the read strand or first-in-pair strand,
+        //depending on input flag. Note that this can
+        //be very unreliable depending on data
+        Strand strand;
+        if (firstInPair) {
+            strand = alignment.getFirstOfPairStrand();
+        } else if (secondInPair) {
+            strand = alignment.getSecondOfPairStrand();
+        } else {
+            strand = alignment.getReadStrand();
+        }
+        //TODO move this into passFilter, or move passFilter here
+        return strand.equals(Strand.NONE) ? null : strand;
+    }
 
+    private void countAlignment(Alignment alignment, Strand strand, ReadCounter counter) {
 
-                    } else {
-                        int adjustedStart = alignment.getAlignmentStart();
-                        int adjustedEnd = pairedCoverage ?
-                                adjustedStart + Math.abs(alignment.getInferredInsertSize()) :
-                                alignment.getAlignmentEnd();
+        boolean readNegStrand = alignment.isNegativeStrand();
 
+        AlignmentBlock[] blocks = alignment.getAlignmentBlocks();
+
+        if (blocks != null && !pairedCoverage) {
+            for (AlignmentBlock block : blocks) {
+
+                if (!block.isSoftClipped()) {
+
+                    int blockStart = block.getStart();
+                    int blockEnd = block.getEnd();
+
+
+                    int adjustedStart = block.getStart();
+                    int adjustedEnd = block.getEnd();
+
+
+                    if (preExtFactor > 0) {
+                        if (readNegStrand) {
+                            adjustedEnd = blockEnd + preExtFactor;
+                        } else {
+                            adjustedStart = Math.max(0, blockStart - preExtFactor);
+                        }
+                    }
+
+                    // If both postExtFactor and extFactor are specified, postExtFactor takes precedence
+                    if (postExtFactor > 0) {
+                        if (readNegStrand) {
+                            adjustedStart = Math.max(0, blockEnd - postExtFactor);
+                        } else {
+                            adjustedEnd = blockStart + postExtFactor;
+                        }
+
+                    } else if (extFactor > 0) {
+                        // Standard extension option -- extend read on 3' end
                         if (readNegStrand) {
                             adjustedStart = Math.max(0, adjustedStart - extFactor);
                         } else {
                             adjustedEnd += extFactor;
                         }
+                    }
+
+
+                    if (queryInterval != null) {
+                        adjustedStart = Math.max(queryInterval.getStart() - 1, adjustedStart);
+                        adjustedEnd = Math.min(queryInterval.getEnd(), adjustedEnd);
+                    }
+
+                    byte[] bases = block.getBases();
+                    for (int pos = adjustedStart; pos < adjustedEnd; pos++) {
+                        byte base = 0;
+                        int baseIdx = pos - blockStart;
+                        if (bases != null && baseIdx >= 0 && baseIdx < bases.length) {
+                            base = bases[baseIdx];
+                        }
+                        //int idx = pos - blockStart;
+                        //byte quality = (idx >= 0 && idx < block.qualities.length) ?
+                        //block.qualities[pos - blockStart] : (byte) 0;
+                        counter.incrementCount(pos, base, strand);
+                    }
+                }
+            }
 
+            final AlignmentBlock[] insertions = alignment.getInsertions();
+            if (insertions != null) {
+                for (AlignmentBlock insBlock : insertions) {
+                    int pos = insBlock.getStart();
+                    if (queryInterval == null || (pos >= queryInterval.getStart() && pos <= queryInterval.getEnd()))
+                        counter.incrementInsertion(pos, strand);
+                }
+            }
+
+            // Count deletions
+            List<Gap> gaps = alignment.getGaps();
+            if (gaps != null) {
+                for (Gap gap : gaps) {
+                    if (gap.getType() == SAMAlignment.DELETION) {
+                        int adjustedStart = gap.getStart();
+                        int adjustedEnd = gap.getStart() + gap.getnBases();
                         if (queryInterval != null) {
                             adjustedStart = Math.max(queryInterval.getStart() - 1, adjustedStart);
                             adjustedEnd = Math.min(queryInterval.getEnd(), adjustedEnd);
                         }
-
-
                         for (int pos = adjustedStart; pos < adjustedEnd; pos++) {
-                            counter.incrementCount(pos, (byte) 'N', strand);
+                            counter.incrementDeletion(pos, strand);
                         }
                     }
-
                 }
+            }
+
+
+        } else {
+            int adjustedStart = alignment.getAlignmentStart();
+            int adjustedEnd = pairedCoverage ?
+                    adjustedStart + Math.abs(alignment.getInferredInsertSize()) :
+                    alignment.getAlignmentEnd();
 
+            if (readNegStrand) {
+                adjustedStart = Math.max(0, adjustedStart - extFactor);
+            } else {
+                adjustedEnd += extFactor;
             }
-            consumer.setAttribute("totalCount", String.valueOf(totalCount));
-            consumer.parsingComplete();
 
+            if (queryInterval != null) {
+                adjustedStart = Math.max(queryInterval.getStart() - 1, adjustedStart);
+                adjustedEnd = Math.min(queryInterval.getEnd(), adjustedEnd);
+            }
+
+
+            for (int pos = adjustedStart; pos < adjustedEnd; pos++) {
+                counter.incrementCount(pos, (byte) 'N', strand);
+            }
+        }
+    }
+
+    /**
+     * Return an indexed reader for the alignment file, or null if the file is not indexed.
+     */
+    private AlignmentReader getIndexedReader() {
+        try {
+            AlignmentReader reader = AlignmentReaderFactory.getReader(alignmentFile, true);
+            if (reader.hasIndex()) {
+                return reader;
+            }
+            reader.close();
         } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
+            log.info("No index found for " + alignmentFile + ", counting with a single thread");
+        }
+        return null;
+    }
 
-            if (counter != null) {
-                counter.closeBucketsBefore(Integer.MAX_VALUE, wigWriter);
+    /**
+     * Count each chromosome on a pool of worker threads, passing the windows of each chromosome to the sink in
+     * sequence order.  The number of chromosomes in progress is bounded so finished, but not yet consumed,
+     * chromosomes don't accumulate.
+     *
+     * @return the total number of alignments counted
+     */
+    private int countByChromosome(List<String> chromosomes, int tolerance, WindowSink sink) throws Exception {
+
+        ExecutorService executor = Executors.newFixedThreadPool(nThreads, r -> {
+            Thread t = new Thread(r, "igvtools-count");
+            t.setDaemon(true);
+            return t;
+        });
+        BlockingQueue<AlignmentReader> readers = new LinkedBlockingQueue<>();
+        Deque<Future<ChromosomeCount>> pending = new ArrayDeque<>();
+        Iterator<String> chrIter = chromosomes.iterator();
+        int count = 0;
+
+        try {
+            while (pending.size() < 2 * nThreads && chrIter.hasNext()) {
+                final String chr = chrIter.next();
+                pending.add(executor.submit(() -> countChromosome(chr, tolerance, readers)));
             }
-            if (iter != null) {
-                iter.close();
+            while (!pending.isEmpty()) {
+                ChromosomeCount chrCount;
+                try {
+                    chrCount = pending.removeFirst().get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw cause instanceof Exception ? (Exception) cause : new RuntimeException(cause);
+                }
+                chrCount.replay(sink);
+                count += chrCount.alignmentCount;
+
+                if (chrIter.hasNext()) {
+                    final String chr = chrIter.next();
+                    pending.add(executor.submit(() -> countChromosome(chr, tolerance, readers)));
+                }
             }
-            if (reader != null) {
-                reader.close();
+        } finally {
+            executor.shutdownNow();
+            for (Future<ChromosomeCount> f : pending) {
+                if (f.isDone() && !f.isCancelled()) {
+                    try {
+                        f.get().delete();
+                    } catch (Exception e) {
+                        // Already reported
+                    }
+                }
             }
-            if (wigWriter != null) {
-                wigWriter.close();
+            for (AlignmentReader r : readers) {
+                r.close();
             }
+        }
+        return count;
+    }
+
+    /**
+     * Count the alignments of one sequence of the file.  Windows are output under the canonical chromosome name,
+     * as the alignments report it, so output matches the sequential count when chromosome aliases apply.
+     *
+     * @param sequenceName the sequence name in the file header
+     */
+    private ChromosomeCount countChromosome(String sequenceName, int tolerance, BlockingQueue<AlignmentReader> readers) throws IOException {
 
+        AlignmentReader reader = readers.poll();
+        if (reader == null) {
+            reader = AlignmentReaderFactory.getReader(alignmentFile, true);
+        }
+
+        Genome currentGenome = GenomeManager.getInstance().getCurrentGenome();
+        String chr = currentGenome == null ? sequenceName : currentGenome.getCanonicalChrName(sequenceName);
+
+        ChromosomeCount chrCount = new ChromosomeCount(chr);
+        CloseableIterator<Alignment> iter = null;
+        try {
+            ReadCounter counter = new ReadCounter(chr);
+            iter = reader.query(sequenceName, 0, Integer.MAX_VALUE, false);
+            while (iter.hasNext()) {
+                Alignment alignment = iter.next();
+                Strand strand = getCountStrand(alignment);
+                if (strand == null) {
+                    continue;
+                }
+                chrCount.alignmentCount++;
+                counter.closeBucketsBefore(alignment.getAlignmentStart() - tolerance, chrCount);
+                countAlignment(alignment, strand, counter);
+            }
+            counter.closeBucketsBefore(Integer.MAX_VALUE, chrCount);
+        } catch (RuntimeException | IOException e) {
+            chrCount.close();
+            chrCount.delete();
+            throw e;
+        } finally {
+            if (iter != null) {
+                iter.close();
+            }
+            readers.offer(reader);
         }
+        chrCount.close();
+        return chrCount;
     }
 
 
@@ -520,16 +683,128 @@ public class CoverageCounter {
         this.writeStdOut = writeStdOut;
     }
 
+    /**
+     * Receives windows, in order, as they are closed by a ReadCounter.
+     */
+    interface WindowSink {
+        void addData(String chr, int start, int end, float[] data);
+    }
+
+    /**
+     * The windows of a single chromosome counted by a worker thread.  Windows are spooled to a temporary file
+     * until the chromosome's turn to be passed to the consumer.
+     */
+    class ChromosomeCount implements WindowSink {
+
+        final String chr;
+        final File file;
+        final DataOutputStream dos;
+        int nWindows = 0;
+        int alignmentCount = 0;
+
+        ChromosomeCount(String chr) throws IOException {
+            this.chr = chr;
+            file = File.createTempFile("igvtools_count", ".bin");
+            file.deleteOnExit();
+            dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        }
+
+        public void addData(String chr, int start, int end, float[] data) {
+            try {
+                dos.writeInt(start);
+                dos.writeInt(end);
+                for (float f : data) {
+                    dos.writeFloat(f);
+                }
+                nWindows++;
+            } catch (IOException e) {
+                throw new RuntimeException("Error writing temporary file " + file.getAbsolutePath(), e);
+            }
+        }
+
+        void close() throws IOException {
+            dos.close();
+        }
+
+        void replay(WindowSink sink) throws IOException {
+            float[] data = new float[buffer.length];
+            try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                for (int i = 0; i < nWindows; i++) {
+                    int start = dis.readInt();
+                    int end = dis.readInt();
+                    for (int j = 0; j < data.length; j++) {
+                        data[j] = dis.readFloat();
+                    }
+                    sink.addData(chr, start, end, data);
+                }
+            } finally {
+                delete();
+            }
+        }
+
+        void delete() {
+            file.delete();
+        }
+    }
+
+    /**
+     * Counts for the open windows of a chromosome.
+     * <p/>
+     * Windows are held in a ring buffer of primitive arrays indexed by window number modulo the capacity, which
+     * grows as needed to span the open windows.  Windows are closed in order as the read position advances and
+     * their slots reused, so counting allocates nothing per read or per position.
+     */
     class ReadCounter {
 
+        static final int INITIAL_CAPACITY = 64;
+
         String chr;
+
         /**
-         * Map of window index -> counter
+         * Length of the chromosome, or -1 if unknown.  Windows are truncated at the chromosome end.
          */
-        TreeMap<Integer, Counter> counts = new TreeMap<Integer, Counter>();
+        final int chrLength;
+
+        /**
+         * Number of count columns per window, the nucleotides for each strand.  Zero if bases are not counted.
+         */
+        final int baseColumns;
+
+        int capacity;
+        int[] totalCounts;
+        int[] strandCounts;
+        int[] baseCounts;
+
+        /**
+         * Whether a window has been visited.  Only visited windows are output, even if their counts are zero.
+         */
+        boolean[] visited;
+
+        /**
+         * Range of open window indices, empty if lastWindow < firstWindow
+         */
+        int firstWindow = 0;
+        int lastWindow = -1;
+
+        /**
+         * Data buffer to pass window values to the sink.  One per counter, as counters may run concurrently.
+         */
+        float[] buffer = new float[CoverageCounter.this.buffer.length];
 
         ReadCounter(String chr) {
             this.chr = chr;
+            Chromosome chromosome = genome == null ? null : genome.getChromosome(chr);
+            this.chrLength = chromosome == null ? -1 : chromosome.getLength();
+            this.baseColumns = outputBases ? NUM_STRANDS * nucleotides.length : 0;
+            allocate(INITIAL_CAPACITY);
+        }
+
+        private void allocate(int capacity) {
+            this.capacity = capacity;
+            totalCounts = new int[capacity];
+            visited = new boolean[capacity];
+            strandCounts = outputSeparate ? new int[capacity * NUM_STRANDS] : null;
+            baseCounts = outputBases ? new int[capacity * baseColumns] : null;
         }
 
         /**
@@ -538,42 +813,93 @@ public class CoverageCounter {
          * @param strand   - which strand to increment count. Should be POSITIVE or NEGATIVE
          */
         void incrementCount(int position, byte base, Strand strand) {
-            final Counter counter = getCounterForPosition(position);
-            int strandNum = strand.equals(Strand.POSITIVE) ? 0 : 1;
-            counter.increment(base, strandNum);
+            final int slot = getSlotForPosition(position);
+            final int strandNum = strand == Strand.POSITIVE ? 0 : 1;
+            if (outputBases) {
+                incrementNucleotide(slot, base, strandNum);
+            }
+            if (outputSeparate) {
+                strandCounts[slot * NUM_STRANDS + strandNum]++;
+            }
+            totalCounts[slot]++;
         }
 
         void incrementDeletion(int position, Strand strand) {
-            final Counter counter = getCounterForPosition(position);
-            int strandNum = strand.equals(Strand.POSITIVE) ? 0 : 1;
+            final int slot = getSlotForPosition(position);
             if (outputBases) {
-                counter.incrementNucleotide(DEL, strandNum);
+                incrementNucleotide(slot, DEL, strand == Strand.POSITIVE ? 0 : 1);
             }
         }
 
         void incrementInsertion(int position, Strand strand) {
             // Insertions are between 2 bases, we increment the counter for the position preceding the insertion
-            final Counter counter = getCounterForPosition(position-1);
-            int strandNum = strand.equals(Strand.POSITIVE) ? 0 : 1;
+            final int slot = getSlotForPosition(position - 1);
             if (outputBases) {
-                counter.incrementNucleotide(INS, strandNum);
+                incrementNucleotide(slot, INS, strand == Strand.POSITIVE ? 0 : 1);
             }
-
         }
 
-
-        private Counter getCounterForPosition(int position) {
-            int idx = position / windowSize;
-            return getCounter(idx);
+        /**
+         * Increment the nucleotide counts.  Bytes other than A, C, G, T, N, deletion and insertion are not output,
+         * and so not counted.
+         */
+        private void incrementNucleotide(int slot, byte base, int strandNum) {
+            int baseIdx = nucleotideIndex[base & 0xff];
+            if (baseIdx >= 0) {
+                baseCounts[slot * baseColumns + strandNum * nucleotides.length + baseIdx]++;
+            }
         }
 
-        private Counter getCounter(int idx) {
-            if (!counts.containsKey(idx)) {
-                counts.put(idx, new Counter());
+        /**
+         * Return the ring buffer slot for the window containing the position, opening the window if needed.
+         */
+        private int getSlotForPosition(int position) {
+            final int idx = position / windowSize;
+            if (lastWindow < firstWindow) {
+                firstWindow = idx;
+                lastWindow = idx;
+            } else if (idx > lastWindow) {
+                ensureCapacity(idx - firstWindow + 1);
+                lastWindow = idx;
+            } else if (idx < firstWindow) {
+                // Only possible if the input is not sorted.  The window is output again on the next close.
+                ensureCapacity(lastWindow - idx + 1);
+                firstWindow = idx;
             }
-            return counts.get(idx);
+            final int slot = idx & (capacity - 1);
+            visited[slot] = true;
+            return slot;
         }
 
+        private void ensureCapacity(int nWindows) {
+            if (nWindows <= capacity) {
+                return;
+            }
+            int newCapacity = capacity;
+            while (newCapacity < nWindows) {
+                newCapacity <<= 1;
+            }
+
+            int[] oldTotals = totalCounts;
+            int[] oldStrands = strandCounts;
+            int[] oldBases = baseCounts;
+            boolean[] oldVisited = visited;
+            int oldCapacity = capacity;
+            allocate(newCapacity);
+
+            for (int idx = firstWindow; idx <= lastWindow; idx++) {
+                int from = idx & (oldCapacity - 1);
+                int to = idx & (newCapacity - 1);
+                totalCounts[to] = oldTotals[from];
+                visited[to] = oldVisited[from];
+                if (outputSeparate) {
+                    System.arraycopy(oldStrands, from * NUM_STRANDS, strandCounts, to * NUM_STRANDS, NUM_STRANDS);
+                }
+                if (outputBases) {
+                    System.arraycopy(oldBases, from * baseColumns, baseCounts, to * baseColumns, baseColumns);
+                }
+            }
+        }
 
         /**
          * Close (finalize) all buckets before the given position.  Called when we are sure this position will not be
@@ -581,178 +907,89 @@ public class CoverageCounter {
          *
          * @param position - genomic position
          */
-        void closeBucketsBefore(int position, WigWriter wigWriter) {
-            List<Integer> bucketsToClose = new ArrayList<Integer>();
+        void closeBucketsBefore(int position, WindowSink sink) {
 
             int bucket = position / windowSize;
-            for (Map.Entry<Integer, Counter> entry : counts.entrySet()) {
-                if (entry.getKey() < bucket) {
+            int last = Math.min(lastWindow, bucket - 1);
 
+            for (int idx = firstWindow; idx <= last; idx++) {
+                int slot = idx & (capacity - 1);
+                if (visited[slot]) {
                     // Divide total count by window size.  This is the average count per
                     // base over the window,  so for example 30x coverage remains 30x irrespective of window size.
-                    int bucketStartPosition = entry.getKey() * windowSize;
+                    int bucketStartPosition = idx * windowSize;
                     int bucketEndPosition = bucketStartPosition + windowSize;
-
-                    if (genome != null) {
-                        Chromosome chromosome = genome.getChromosome(chr);
-                        if (chromosome != null) {
-                            bucketEndPosition = Math.min(bucketEndPosition, chromosome.getLength());
-                        }
+                    if (chrLength >= 0) {
+                        bucketEndPosition = Math.min(bucketEndPosition, chrLength);
                     }
                     int bucketSize = bucketEndPosition - bucketStartPosition;
 
-                    final Counter counter = entry.getValue();
-
-                    int col = 0;
-
-                    //Not outputting base info, just totals
-                    if (!outputBases) {
-                        if (outputSeparate) {
-                            //Output strand specific information, if applicable
-                            for (int strandNum : output_strands) {
-                                buffer[col] = ((float) counter.getCount(strandNum)) / bucketSize;
-                                col++;
-                            }
-
-                        } else {
-                            buffer[col] = ((float) counter.getTotalCounts()) / bucketSize;
-                            col++;
-                        }
-
-                        //Output counts of each base
-                    } else {
-                        if (outputSeparate) {
-                            for (int strandNum : output_strands) {
-                                for (byte base : nucleotides) {
-                                    buffer[col] = ((float) counter.getBaseCount(base, strandNum)) / bucketSize;
-                                    col++;
-                                }
-                            }
-                        } else {
-                            for (byte base : nucleotides) {
-                                buffer[col] = ((float) counter.getBaseCount(base)) / bucketSize;
-                                col++;
-                            }
-                        }
-                    }
-
-
-                    consumer.addData(chr, bucketStartPosition, bucketEndPosition, buffer, null);
-
-                    if (wigWriter != null) {
-                        wigWriter.addData(chr, bucketStartPosition, bucketEndPosition, buffer);
-                    }
-
-
-                    bucketsToClose.add(entry.getKey());
+                    fillBuffer(slot, bucketSize);
+                    sink.addData(chr, bucketStartPosition, bucketEndPosition, buffer);
                 }
+                clear(slot);
             }
 
-            for (Integer key : bucketsToClose) {
-                counts.remove(key);
+            if (last >= firstWindow) {
+                firstWindow = last + 1;
             }
-
-
         }
 
-    }
-
-
-    /**
-     * Class for counting nucleotides and strands over an interval.
-     */
+        private void fillBuffer(int slot, int bucketSize) {
+            int col = 0;
 
-    class Counter {
-        /**
-         * The total number of counts on this Counter. Will
-         * be the sum of baseCount over the second index.
-         */
-        int[] strandCount;
-        int totalCount = 0;
-        //int qualityCount = 0;
-
-        //String chr;
-        //int start;
-        //int end;
-        //byte[] ref;
-        /**
-         * The number of times a particular base has been encountered (ie # of reads of that base)
-         */
-        //int[][] baseCount = new int[NUM_STRANDS][];
-
-        private Map<Byte, Integer>[] baseTypeCounts;
-
-        Counter() {
-            //this.chr = chr;
-            //this.start = start;
-            //this.end = end;
+            //Not outputting base info, just totals
+            if (!outputBases) {
+                if (outputSeparate) {
+                    //Output strand specific information, if applicable
+                    for (int strandNum : output_strands) {
+                        buffer[col] = ((float) strandCounts[slot * NUM_STRANDS + strandNum]) / bucketSize;
+                        col++;
+                    }
 
-            if (outputBases) {
-                baseTypeCounts = new HashMap[NUM_STRANDS];
-                for (int ii = 0; ii < NUM_STRANDS; ii++) {
-                    baseTypeCounts[ii] = new HashMap<Byte, Integer>();
+                } else {
+                    buffer[col] = ((float) totalCounts[slot]) / bucketSize;
+                    col++;
                 }
-            }
 
-            if (outputSeparate) {
-                strandCount = new int[NUM_STRANDS];
+                //Output counts of each base
+            } else {
+                int offset = slot * baseColumns;
+                if (outputSeparate) {
+                    for (int strandNum : output_strands) {
+                        for (int b = 0; b < nucleotides.length; b++) {
+                            buffer[col] = ((float) baseCounts[offset + strandNum * nucleotides.length + b]) / bucketSize;
+                            col++;
+                        }
+                    }
+                } else {
+                    for (int b = 0; b < nucleotides.length; b++) {
+                        int count = 0;
+                        for (int strandNum = 0; strandNum < NUM_STRANDS; strandNum++) {
+                            count += baseCounts[offset + strandNum * nucleotides.length + b];
+                        }
+                        buffer[col] = ((float) count) / bucketSize;
+                        col++;
+                    }
+                }
             }
         }
 
-
-        int getCount(int strand) {
-            return strandCount[strand];
-        }
-
-        public int getTotalCounts() {
-            return totalCount;
-        }
-
-        void increment(byte base, int strand) {
-
-            if (outputBases) {
-                incrementNucleotide(base, strand);
-            }
-
+        private void clear(int slot) {
+            visited[slot] = false;
+            totalCounts[slot] = 0;
             if (outputSeparate) {
-                this.strandCount[strand]++;
-            }
-
-            this.totalCount++;
-        }
-
-        /**
-         * Increment the nucleotide counts.
-         *
-         * @param base   65, 67, 71, 84, 78, 126, 127
-         *               aka A, C, G, T, N, deletion, insertion.
-         *               Anything else is stored as 0
-         * @param strand index of strand, 0 for positive and 1 for negative
-         */
-        private void incrementNucleotide(byte base, int strand) {
-            Map<Byte, Integer> btc = baseTypeCounts[strand];
-            if (!nucleotidesKeep.contains(base)) {
-                base = 0;
+                for (int i = slot * NUM_STRANDS; i < (slot + 1) * NUM_STRANDS; i++) {
+                    strandCounts[i] = 0;
+                }
             }
-
-            int orig = 0;
-            if (btc.containsKey(base)) {
-                orig = btc.get(base);
+            if (outputBases) {
+                for (int i = slot * baseColumns; i < (slot + 1) * baseColumns; i++) {
+                    baseCounts[i] = 0;
+                }
             }
-            btc.put(base, orig + 1);
         }
 
-        public int getBaseCount(byte base, int strand) {
-            return baseTypeCounts[strand].containsKey(base) ? baseTypeCounts[strand].get(base) : 0;
-        }
-
-        public int getBaseCount(byte base) {
-            int count = 0;
-            for (int strand = 0; strand < NUM_STRANDS; strand++) {
-                count += getBaseCount(base, strand);
-            }
-            return count;
-        }
     }
 
 
@@ -170,6 +170,7 @@ public class IgvTools {
     private static CmdLineParser.Option minMapQualityOpt = null;
     private static CmdLineParser.Option includeDupsOpt = null;
     private static CmdLineParser.Option pairedCoverageOpt = null;
+    private static CmdLineParser.Option threadsOption = null;
 
     // options for index
     private static CmdLineParser.Option indexTypeOption = null;
@@ -183,6 +184,11 @@ public class IgvTools {
     // Trackline
     private static CmdLineParser.Option colorOption = null;
 
+    /**
+     * Number of threads used by the count command
+     */
+    private int countThreads = 1;
+
     /**
      * The general usage string
      */
@@ -373,6 +379,7 @@ public class IgvTools {
                     int minMapQuality = (Integer) parser.getOptionValue(minMapQualityOpt, 0);
 
                     int windowSizeValue = (Integer) parser.getOptionValue(windowSizeOption, WINDOW_SIZE);
+                    countThreads = (Integer) parser.getOptionValue(threadsOption, 1);
                     doCount(ifile, ofile, genomeId, maxZoomValue, wfList, windowSizeValue, extFactorValue,
                             preFactorValue, posFactorValue,
                             trackLine, queryString, minMapQuality, countFlags);
@@ -582,6 +589,7 @@ public class IgvTools {
                 minMapQualityOpt = parser.addIntegerOption("minMapQuality");
                 includeDupsOpt = parser.addBooleanOption("includeDuplicates");
                 pairedCoverageOpt = parser.addBooleanOption("pairs");
+                threadsOption = parser.addIntegerOption("threads");
 
                 // Trackline
                 colorOption = parser.addStringOption("color");
@@ -712,8 +720,9 @@ public class IgvTools {
 
         // Convert to tdf
         File outputFile = new File(ofile);
+        Preprocessor p = null;
         try {
-            Preprocessor p = new Preprocessor(outputFile, genome, windowFunctions, nLines, null);
+            p = new Preprocessor(outputFile, genome, windowFunctions, nLines, null);
             if (inputFileOrDir.isDirectory() || inputFileOrDir.getName().endsWith(".list")) {
                 p.setSizeEstimate(0);
                 List<File> files = getFilesFromDirOrList(inputFileOrDir);
@@ -731,6 +740,9 @@ public class IgvTools {
                 outputFile.delete();
             }
         } finally {
+            if (p != null) {
+                p.abort();
+            }
             if (deleteme != null && deleteme.exists()) {
                 deleteme.delete();
             }
@@ -804,6 +816,14 @@ public class IgvTools {
         return tmp.endsWith(".gct") || tmp.endsWith(".tab") || tmp.equals("mage-tab");
     }
 
+    /**
+     * Set the number of threads used by {@link #doCount}.  Chromosomes of indexed alignment files are counted
+     * concurrently, the output is the same for any number of threads.
+     */
+    public void setCountThreads(int countThreads) {
+        this.countThreads = countThreads;
+    }
+
     /**
      * Compute coverage or density of an alignment or feature file.
      *
@@ -862,9 +882,10 @@ public class IgvTools {
             tdfFile = new File(tdfFile.getAbsolutePath() + ".tdf");
         }
 
+        Preprocessor p = null;
         try {
 
-            Preprocessor p = new Preprocessor(tdfFile, genome, windowFunctions, -1, null);
+            p = new Preprocessor(tdfFile, genome, windowFunctions, -1, null);
 
             p.setSkipZeroes(true);
 
@@ -873,6 +894,7 @@ public class IgvTools {
             counter.setWriteStdOut(wigStdOut);
             counter.setPreExtFactor(preExtFactorValue);
             counter.setPosExtFactor(postExtFactorValue);
+            counter.setThreads(countThreads);
 
             String prefix = FilenameUtils.getName(ifile);
             String[] tracknames = counter.getTrackNames(prefix + " ");
@@ -893,6 +915,10 @@ public class IgvTools {
             if (tdfFile != null && wigFile.exists()) {
                 wigFile.delete();
             }
+        } finally {
+            if (p != null) {
+                p.abort();
+            }
         }
 
         userMessageWriter.flush();
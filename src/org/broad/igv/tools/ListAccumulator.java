@@ -29,15 +29,15 @@
  */
 package org.broad.igv.tools;
 
-import org.broad.igv.util.collections.DoubleArrayList;
-import org.apache.commons.math.stat.StatUtils;
 import org.apache.log4j.Logger;
 import org.broad.igv.track.WindowFunction;
+import org.broad.igv.util.collections.QuantileSketch;
 
 import java.util.*;
 
 /**
- * Estimating percentiles -- weighted average of multiple estimates
+ * Accumulates values for a set of window functions.  Percentiles are estimated with a streaming quantile sketch,
+ * and are exact up to MAX_VALUE_COUNT values.
  *
  * @author jrobinso
  */
@@ -60,8 +60,7 @@ public class ListAccumulator {
 
     List<WindowFunction> windowFunctions;
     List<WindowFunction> quantileFunctions;
-    Map<WindowFunction, List<PercentileValue>> percentiles = new HashMap();
-    DoubleArrayList values = null;
+    QuantileSketch values = null;
     float sum = 0.0f;
     int basesCovered = 0;
     int nPts = 0;
@@ -83,7 +82,7 @@ public class ListAccumulator {
             if (PERCENTILE_WINDOW_FUNCTIONS.contains(wf)) {
                 quantileFunctions.add(wf);
                 if (values == null) {
-                    values = new DoubleArrayList();
+                    values = new QuantileSketch(MAX_VALUE_COUNT);
                 }
             }
         }
@@ -98,10 +97,6 @@ public class ListAccumulator {
             nPts++;
             if (values != null) {
                 values.add(v);
-                if (values.size() > MAX_VALUE_COUNT) {
-                    computePercentiles();
-                    values.clear();
-                }
             }
         }
     }
@@ -121,27 +116,17 @@ public class ListAccumulator {
                     setValue(wf, mean);
                 }
             } else {
-                if (values.size() > 1) {
-                    computePercentiles();
-                }
                 for (WindowFunction wf : quantileFunctions) {
-
-                    List<PercentileValue> pList = percentiles.get(wf);
                     float v = Float.NaN; // <= Default,
-                    if (pList != null && pList.size() > 0) {
-                        double weightedSum = 0;
-                        double sumOfWeights = 0;
-                        for (PercentileValue pv : pList) {
-                            double weight = (double) pv.nPoints / nPts;
-                            sumOfWeights += weight;
-                            weightedSum += weight * pv.value;
+                    if (values.getCount() > 1) {
+                        v = (float) values.getPercentile(getPercentile(wf));
+                        if (Float.isInfinite(v)) {
+                            log.error("Infinite percentile (" + wf + ")");
+                            v = Float.NaN;
                         }
-                        v = (float) (weightedSum / sumOfWeights);
                     }
                     setValue(wf, v);
-
                 }
-
             }
         }
         values = null;
@@ -149,29 +134,6 @@ public class ListAccumulator {
 
     }
 
-    private void computePercentiles() {
-        if (values != null) {
-            double[] valueArray = values.toArray();
-            for (WindowFunction wf : quantileFunctions) {
-                double p = this.getPercentile(wf);
-                if (p > 0) {
-                    float v = (float) StatUtils.percentile(valueArray, p);
-                    if (Float.isInfinite(v)) {
-                        log.error("Infinite percentile (" + wf + ")");
-                    } else {
-                        List<PercentileValue> pList = percentiles.get(wf);
-                        if (pList == null) {
-                            pList = new ArrayList();
-                            percentiles.put(wf, pList);
-                        }
-                        pList.add(new PercentileValue(valueArray.length, v));
-                    }
-                }
-            }
-        }
-
-    }
-
     private void setValue(WindowFunction wf, float value) {
         switch (wf) {
             case mean:
@@ -252,15 +214,4 @@ public class ListAccumulator {
         }
     }
 
-
-    class PercentileValue {
-        int nPoints;
-        double value;
-
-        PercentileValue(int nPoints, double value) {
-            this.nPoints = nPoints;
-            this.value = value;
-        }
-    }
-
 }
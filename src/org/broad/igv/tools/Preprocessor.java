@@ -43,8 +43,16 @@ import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 /**
+ * Computes the raw and zoom level datasets of a TDF file from a sorted stream of data.
+ * <p/>
+ * The raw dataset is built on the calling thread.  Each zoom level, and the whole genome view, is built by its own
+ * pipeline stage on a separate thread.  Data is passed to the stages in batches through bounded queues, so the
+ * summarizing of all zoom levels proceeds concurrently while the input is parsed.
+ *
  * @author jrobinso
  */
 public class Preprocessor implements DataConsumer {
@@ -76,6 +84,11 @@ public class Preprocessor implements DataConsumer {
     Set<String> visitedChromosomes = new HashSet();
     Map<String, String> attributes = new HashMap();
 
+    static final int BATCH_SIZE = 1000;
+    static final int QUEUE_CAPACITY = 4;
+    List<Stage> stages;
+    Batch batch;
+
     List<WindowFunction> allDataFunctions = Arrays.asList(
             WindowFunction.mean,
             WindowFunction.median,
@@ -205,23 +218,19 @@ public class Preprocessor implements DataConsumer {
         // Add to raw data
         rawData.addData(start, end, data, name);
 
-        // Zoom levels
-        for (Zoom zl : zoomLevels) {
-            zl.addData(start, end, data);
-        }
-
         // Whole genome
         long offset = genome.getCumulativeOffset(chr);
         int gStart = (int) ((offset + start) / 1000);
         int gEnd = Math.max(gStart + 1, (int) ((offset + end) / 1000));
 
-
         // Don't include "chrM" in the whole genome view or stats
-        if (genomeZoom != null && !(chr.equals("chrM") || chr.equals("M") || chr.equals("MT"))) {
-            genomeZoom.addData(gStart, gEnd, data);
-            for (int i = 0; i < data.length; i++) {
-                allDataStats.add(gEnd - gStart, data[i]);
-            }
+        boolean inGenome = genomeZoom != null && !(chr.equals("chrM") || chr.equals("M") || chr.equals("MT"));
+
+        // Zoom levels and whole genome are computed by the pipeline stages
+        batch.add(start, end, data, gStart, gEnd, inGenome);
+        if (batch.size == BATCH_SIZE) {
+            dispatch(batch);
+            batch = new Batch(zoomLevels, false);
         }
 
         lastStartPosition = start;
@@ -253,10 +262,10 @@ public class Preprocessor implements DataConsumer {
             chromosomes.add(chr);
 
             log.info("Processing chromosome " + chr);
-            if (zoomLevels != null) {
-                for (Zoom zl : zoomLevels) {
-                    zl.close();
-                }
+
+            // Zoom levels of the previous chromosome are closed by the stages when they see the new levels
+            if (batch != null && batch.size > 0) {
+                dispatch(batch);
             }
             if (rawData != null) {
                 rawData.close();
@@ -270,6 +279,7 @@ public class Preprocessor implements DataConsumer {
             }
 
             rawData = new Raw(chr, currentChrLength, 100000);
+            batch = new Batch(zoomLevels, false);
         }
         lastStartPosition = 0;
 
@@ -313,15 +323,12 @@ public class Preprocessor implements DataConsumer {
             writer.getRootGroup().setAttribute(entry.getKey(), entry.getValue());
         }
 
-        if (zoomLevels != null) {
-            for (Zoom zl : zoomLevels) {
-                zl.close();
-            }
-        }
-
-        if (genomeZoom != null) {
-            genomeZoom.close();
+        // Close the zoom levels and whole genome view, and wait for the stages to finish
+        if (batch != null && batch.size > 0) {
+            dispatch(batch);
         }
+        batch = null;
+        stopStages();
 
         if (rawData == null) {
             // TODO -- delete .tdf file?
@@ -377,6 +384,212 @@ public class Preprocessor implements DataConsumer {
     }
 
 
+    /**
+     * Pass a batch to all stages, starting them with the first batch.  Blocks if any stage is more than
+     * QUEUE_CAPACITY batches behind.
+     */
+    private void dispatch(Batch b) {
+        if (stages == null) {
+            stages = new ArrayList<>();
+            for (int z = 0; z <= getNZoom(); z++) {
+                stages.add(new Stage(z));
+            }
+            if (genomeZoom != null) {
+                stages.add(new Stage(-1));
+            }
+            for (Stage stage : stages) {
+                stage.start();
+            }
+        }
+        for (Stage stage : stages) {
+            stage.put(b);
+        }
+        for (Stage stage : stages) {
+            if (stage.error != null) {
+                stopStages();
+            }
+        }
+    }
+
+    /**
+     * Stop the pipeline stages without completing the zoom levels, for example if parsing fails.  Does nothing
+     * if the stages have finished.
+     */
+    public void abort() {
+        batch = null;
+        if (stages == null) {
+            return;
+        }
+        List<Stage> stopping = stages;
+        stages = null;
+        for (Stage stage : stopping) {
+            stage.interrupt();
+        }
+        for (Stage stage : stopping) {
+            try {
+                stage.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Send the final batch to all stages, wait for them to complete, and rethrow the first error of any stage.
+     */
+    private void stopStages() {
+        if (stages == null) {
+            return;
+        }
+        List<Stage> stopping = stages;
+        stages = null;
+
+        Batch last = new Batch(null, true);
+        for (Stage stage : stopping) {
+            stage.put(last);
+        }
+        for (Stage stage : stopping) {
+            try {
+                stage.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new PreprocessingException("Interrupted");
+            }
+        }
+        for (Stage stage : stopping) {
+            Throwable error = stage.error;
+            if (error instanceof PreprocessingException) {
+                throw (PreprocessingException) error;
+            } else if (error != null) {
+                log.error("Error computing zoom levels", error);
+                throw new PreprocessingException("Error computing zoom levels: " + error.getMessage());
+            }
+        }
+    }
+
+    /**
+     * A batch of data points of a single chromosome, with the zoom levels of that chromosome.  Data is copied as
+     * callers may reuse the data array.
+     */
+    class Batch {
+        final Zoom[] zoomLevels;
+        final boolean last;
+        int size = 0;
+        int[] starts;
+        int[] ends;
+        float[] data;
+        int[] gStarts;
+        int[] gEnds;
+        boolean[] inGenome;
+
+        Batch(Zoom[] zoomLevels, boolean last) {
+            this.zoomLevels = zoomLevels;
+            this.last = last;
+            if (!last) {
+                starts = new int[BATCH_SIZE];
+                ends = new int[BATCH_SIZE];
+                data = new float[BATCH_SIZE * nTracks];
+                gStarts = new int[BATCH_SIZE];
+                gEnds = new int[BATCH_SIZE];
+                inGenome = new boolean[BATCH_SIZE];
+            }
+        }
+
+        void add(int start, int end, float[] values, int gStart, int gEnd, boolean includeInGenome) {
+            starts[size] = start;
+            ends[size] = end;
+            System.arraycopy(values, 0, data, size * nTracks, nTracks);
+            gStarts[size] = gStart;
+            gEnds[size] = gEnd;
+            inGenome[size] = includeInGenome;
+            size++;
+        }
+    }
+
+    /**
+     * Pipeline stage computing a single zoom level, or the whole genome view and statistics if level < 0.
+     */
+    class Stage extends Thread {
+
+        final int level;
+        final BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        final float[] values = new float[nTracks];
+        Zoom zoom;
+        volatile Throwable error;
+
+        Stage(int level) {
+            super(level < 0 ? "Preprocessor genome" : "Preprocessor z" + level);
+            this.level = level;
+            setDaemon(true);
+        }
+
+        void put(Batch b) {
+            try {
+                queue.put(b);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new PreprocessingException("Interrupted");
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Batch b;
+                try {
+                    b = queue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                // After an error batches are discarded until the last one, so the producer never blocks
+                if (error == null) {
+                    try {
+                        process(b);
+                    } catch (Throwable t) {
+                        error = t;
+                    }
+                }
+                if (b.last) {
+                    return;
+                }
+            }
+        }
+
+        private void process(Batch b) {
+            if (level < 0) {
+                if (b.last) {
+                    genomeZoom.close();
+                    return;
+                }
+                for (int i = 0; i < b.size; i++) {
+                    if (b.inGenome[i]) {
+                        System.arraycopy(b.data, i * nTracks, values, 0, nTracks);
+                        genomeZoom.addData(b.gStarts[i], b.gEnds[i], values);
+                        for (int t = 0; t < nTracks; t++) {
+                            allDataStats.add(b.gEnds[i] - b.gStarts[i], values[t]);
+                        }
+                    }
+                }
+            } else {
+                Zoom z = b.last ? null : b.zoomLevels[level];
+                if (z != zoom) {
+                    if (zoom != null) {
+                        zoom.close();
+                    }
+                    zoom = z;
+                }
+                if (zoom == null) {
+                    return;
+                }
+                for (int i = 0; i < b.size; i++) {
+                    System.arraycopy(b.data, i * nTracks, values, 0, nTracks);
+                    zoom.addData(b.starts[i], b.ends[i], values);
+                }
+            }
+        }
+    }
+
     /**
      * Class representing a tile of raw (as opposed to summarized) data.
      */
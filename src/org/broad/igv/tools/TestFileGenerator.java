@@ -30,6 +30,7 @@
 package org.broad.igv.tools;
 
 import org.apache.log4j.Logger;
+import org.broad.igv.feature.Chromosome;
 import org.broad.igv.util.HttpUtils;
 import htsjdk.tribble.readers.AsciiLineReader;
 
@@ -186,6 +187,17 @@ public class TestFileGenerator {
         }
     }
 
+    /**
+     * @return the chromosomes of generated files, for defining a genome
+     */
+    public static List<Chromosome> getChromosomes() {
+        List<Chromosome> chromosomes = new ArrayList(chromosome.length);
+        for (int i = 0; i < chromosome.length; i++) {
+            chromosomes.add(new Chromosome(i, chromosome[i], chromSize[i]));
+        }
+        return chromosomes;
+    }
+
     static List<String> getExpressionProbes() {
         String urlString = "http://www.broadinstitute.org/igv/resources/probes/affy/affy_human_mappings.txt.gz";
         AsciiLineReader bufReader = null;
@@ -42,8 +42,10 @@ import org.broad.igv.feature.genome.Genome;
 import org.broad.igv.feature.genome.GenomeManager;
 import org.broad.igv.prefs.Constants;
 import org.broad.igv.prefs.PreferencesManager;
+import org.broad.igv.renderer.DataRange;
 import org.broad.igv.renderer.DataRenderer;
 import org.broad.igv.renderer.GraphicUtils;
+import org.broad.igv.renderer.HeatmapRenderer;
 import org.broad.igv.renderer.Renderer;
 import org.broad.igv.renderer.XYPlotRenderer;
 import org.broad.igv.session.IGVSessionReader;
@@ -144,6 +146,61 @@ public abstract class DataTrack extends AbstractTrack implements ScalableTrack,
     }
 
 
+    /**
+     * Load several frames, with a single query for each run of frames on the same chromosome at the same zoom
+     * whose loci are close together.  Loci are close if the gap between them is no larger than the span already
+     * queried, so at most as much data is read in between as for the frames themselves.
+     */
+    @Override
+    public synchronized void loadFrames(List<ReferenceFrame> frames) {
+
+        List<ReferenceFrame> group = new ArrayList<>();
+        String groupChr = null;
+        int groupStart = 0;
+        int groupEnd = 0;
+        int groupZoom = 0;
+        for (ReferenceFrame frame : frames) {
+            if (isReadyToPaint(frame)) continue;
+
+            String chr = frame.getChrName();
+            int start = (int) frame.getOrigin();
+            int end = (int) frame.getEnd() + 1;
+            int zoom = frame.getZoom();
+            boolean adjacent = group.size() > 0 && chr.equals(groupChr) && zoom == groupZoom &&
+                    start - groupEnd <= Math.max(groupEnd - groupStart, end - start);
+            if (adjacent) {
+                groupStart = Math.min(groupStart, start);
+                groupEnd = Math.max(groupEnd, end);
+            } else {
+                loadGroup(group, groupChr, groupStart, groupEnd, groupZoom);
+                group.clear();
+                groupChr = chr;
+                groupStart = start;
+                groupEnd = end;
+                groupZoom = zoom;
+            }
+            group.add(frame);
+        }
+        loadGroup(group, groupChr, groupStart, groupEnd, groupZoom);
+    }
+
+    private void loadGroup(List<ReferenceFrame> group, String chr, int start, int end, int zoom) {
+        if (group.isEmpty()) {
+            return;
+        }
+        if (group.size() == 1) {
+            load(group.get(0));
+            return;
+        }
+        Genome genome = GenomeManager.getInstance().getCurrentGenome();
+        String queryChr = genome == null ? chr : genome.getCanonicalChrName(chr);
+        LoadedDataInterval<List<LocusScore>> interval = getSummaryScores(queryChr, start, end, zoom);
+        for (ReferenceFrame frame : group) {
+            loadedIntervalCache.put(frame.getName(), interval);
+        }
+    }
+
+
     public void render(RenderContext context, Rectangle rect) {
 
         List<LocusScore> inViewScores = getInViewScores(context.getReferenceFrame());
@@ -158,6 +215,44 @@ public abstract class DataTrack extends AbstractTrack implements ScalableTrack,
     }
 
 
+    /**
+     * Return true if the data can be drawn in independent horizontal tiles by {@link #renderTile}, with the axis
+     * and border drawn over the whole track by {@link #renderTileDecorations}.  Tiles are cached by the data panel.
+     */
+    public boolean isTileable(RenderContext context) {
+        return !context.isMerged() && !Globals.CHR_ALL.equals(context.getChr());
+    }
+
+    /**
+     * Render the data of the context's frame, which spans a single tile.
+     */
+    public void renderTile(RenderContext context, Rectangle rect) {
+        List<LocusScore> inViewScores = getInViewScores(context.getReferenceFrame());
+        synchronized (inViewScores) {
+            getRenderer().renderScores(this, inViewScores, context, rect);
+        }
+    }
+
+    /**
+     * Render the axis and border over the whole track, after its tiles are drawn.
+     */
+    public void renderTileDecorations(RenderContext context, Rectangle rect) {
+        getRenderer().renderAxis(this, context, rect);
+        getRenderer().renderBorder(this, context, rect);
+    }
+
+    /**
+     * Return a hash of the options that affect how the data is drawn, part of the key of cached tiles.
+     */
+    public int getRenderStateHash() {
+        DataRange range = getDataRange();
+        return Objects.hash(getRenderer().getClass(), getColor(), getAltColor(), getWindowFunction(),
+                getRenderer() instanceof HeatmapRenderer ? getColorScale() : null,
+                range.getType(), range.getMinimum(), range.getBaseline(), range.getMaximum(),
+                range.isFlipAxis(), range.isDrawBaseline());
+    }
+
+
     public void overlay(RenderContext context, Rectangle rect) {
 
         List<LocusScore> inViewScores = getInViewScores(context.getReferenceFrame());
@@ -26,7 +26,9 @@
 package org.broad.igv.track;
 
 import org.apache.log4j.Logger;
+import org.broad.igv.Globals;
 import org.broad.igv.feature.*;
+import org.broad.igv.feature.tribble.ParallelFeatureDecoder;
 import htsjdk.tribble.Feature;
 
 import java.io.IOException;
@@ -42,6 +44,12 @@ public class GFFFeatureSource implements org.broad.igv.track.FeatureSource {
 
     private FeatureSource wrappedSource;
 
+    /**
+     * Combined features by chromosome, if the wrapped source holds all features in memory.  Null otherwise, the
+     * features are then combined as they are queried.
+     */
+    private Map<String, SortedFeatures> combinedFeatures;
+
     public static boolean isGFF(String path) {
         String lowpath = path.toLowerCase();
         if (lowpath.endsWith(".gz")) {
@@ -57,6 +65,29 @@ public class GFFFeatureSource implements org.broad.igv.track.FeatureSource {
 
     public GFFFeatureSource(FeatureSource wrappedSource) throws IOException {
         this.wrappedSource = wrappedSource;
+        if (wrappedSource instanceof TribbleFeatureSource.NonIndexedFeatureSource) {
+            Map<String, List<Feature>> featureMap =
+                    new LinkedHashMap<>(((TribbleFeatureSource.NonIndexedFeatureSource) wrappedSource).getFeatureMap());
+            featureMap.remove(Globals.CHR_ALL);
+            combinedFeatures = new HashMap<>();
+            for (Map.Entry<String, List<Feature>> entry : combineByChromosome(featureMap).entrySet()) {
+                combinedFeatures.put(entry.getKey(), new SortedFeatures(entry.getValue()));
+            }
+        }
+    }
+
+    /**
+     * Combine the parts of the features of each chromosome.  Chromosomes are independent, and are combined in
+     * parallel.
+     *
+     * @param featureMap features by chromosome, as decoded
+     * @return combined features by chromosome, in the order of the input map
+     */
+    public static Map<String, List<Feature>> combineByChromosome(Map<String, List<Feature>> featureMap) throws IOException {
+        return ParallelFeatureDecoder.invokeAll(featureMap.keySet(), chr -> {
+            List<Feature> parts = featureMap.get(chr);
+            return new GFFCombiner(parts.size()).addFeatures(parts.iterator()).combineFeatures();
+        });
     }
 
     @Override
@@ -67,6 +98,14 @@ public class GFFFeatureSource implements org.broad.igv.track.FeatureSource {
     @Override
     public Iterator<Feature> getFeatures(String chr, int start, int end) throws IOException {
 
+        if (combinedFeatures != null && !chr.equals(Globals.CHR_ALL)) {
+            SortedFeatures features = combinedFeatures.get(chr);
+            if (features == null) {
+                return Collections.<Feature>emptyList().iterator();
+            }
+            return features.getOverlapping(start, end).iterator();
+        }
+
         Iterator<Feature> rawIter = wrappedSource.getFeatures(chr, start, end);
         GFFCombiner combiner = (new GFFCombiner()).addFeatures(rawIter);
 
@@ -89,6 +128,57 @@ public class GFFFeatureSource implements org.broad.igv.track.FeatureSource {
         wrappedSource.setFeatureWindowSize(size);
     }
 
+    /**
+     * Combined features of a chromosome sorted by start, with the running maximum of their ends, so the features
+     * overlapping a query are found by binary search.
+     */
+    static class SortedFeatures {
+
+        private final List<Feature> features;
+        private final int[] maxEnds;    // maxEnds[i] = max end of features[0..i]
+
+        SortedFeatures(List<Feature> features) {
+            this.features = features;
+            FeatureUtils.sortFeatureList(features);
+            maxEnds = new int[features.size()];
+            int maxEnd = Integer.MIN_VALUE;
+            for (int i = 0; i < maxEnds.length; i++) {
+                maxEnd = Math.max(maxEnd, features.get(i).getEnd());
+                maxEnds[i] = maxEnd;
+            }
+        }
+
+        /**
+         * @return the features with start <= end and end > start, in start order
+         */
+        List<Feature> getOverlapping(int start, int end) {
+
+            // First feature which, or some feature before which, ends after the query start
+            int lo = 0;
+            int hi = maxEnds.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (maxEnds[mid] > start) {
+                    hi = mid;
+                } else {
+                    lo = mid + 1;
+                }
+            }
+
+            List<Feature> overlapping = new ArrayList<>();
+            for (int i = lo; i < features.size(); i++) {
+                Feature f = features.get(i);
+                if (f.getStart() > end) {
+                    break;
+                }
+                if (f.getEnd() > start) {
+                    overlapping.add(f);
+                }
+            }
+            return overlapping;
+        }
+    }
+
     /**
      * The GFF spec is available at http://www.sequenceontology.org/gff3.shtml
      * <p/>
@@ -109,7 +199,10 @@ public class GFFFeatureSource implements org.broad.igv.track.FeatureSource {
         List<BasicFeature> gffMrnaParts;
 
         public GFFCombiner() {
-            int numElements = 10000;
+            this(10000);
+        }
+
+        public GFFCombiner(int numElements) {
             igvFeatures = new ArrayList<Feature>(numElements);
             gffFeatures = new HashMap<String, GFFFeature>(numElements);
             gffExons = new ArrayList<BasicFeature>(numElements);
@@ -148,6 +148,11 @@ public class MergedTracks extends DataTrack implements ScalableTrack {
         }
     }
 
+    @Override
+    public boolean isTileable(RenderContext context) {
+        return false;
+    }
+
     @Override
     public int getHeight() {
         int height = super.getHeight();
@@ -242,6 +242,9 @@ public class SequenceTrack extends AbstractTrack implements IGVEventObserver {
 
         SeqCache cache = new SeqCache(start, seq, aa1, aa2, aa3, aa4, aa5, aa6);
         loadedIntervalCache.put(referenceFrame.getName(), new LoadedDataInterval<>(chr, start, end, cache));
+
+        // Tiles on either side, so panning doesn't wait on the sequence source
+        genome.prefetchSequence(referenceFrame);
     }
 
     /**
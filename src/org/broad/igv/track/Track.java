@@ -78,6 +78,20 @@ public interface Track extends Persistable{
      */
     void load(ReferenceFrame frame);
 
+    /**
+     * Load required resources to paint several reference frames, e.g. the frames of a gene list, in one pass.
+     * Tracks which can answer nearby loci with a single query override this.
+     *
+     * @param frames frames sorted by locus
+     */
+    default void loadFrames(List<ReferenceFrame> frames) {
+        for (ReferenceFrame frame : frames) {
+            if (!isReadyToPaint(frame)) {
+                load(frame);
+            }
+        }
+    }
+
     /**
      * Return true if a track can be filtered by sample annotation.
      *
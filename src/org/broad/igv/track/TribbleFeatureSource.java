@@ -26,6 +26,7 @@
 package org.broad.igv.track;
 
 import htsjdk.tribble.AbstractFeatureReader;
+import org.apache.log4j.Logger;
 import org.broad.igv.Globals;
 import org.broad.igv.data.AbstractDataSource;
 import org.broad.igv.data.DataTile;
@@ -33,20 +34,28 @@ import org.broad.igv.feature.BasicFeature;
 import org.broad.igv.feature.*;
 import org.broad.igv.feature.genome.Genome;
 import org.broad.igv.feature.tribble.*;
+import org.broad.igv.prefs.Constants;
+import org.broad.igv.prefs.PreferencesManager;
 import org.broad.igv.ui.IGV;
 import org.broad.igv.ui.panel.ReferenceFrame;
 import org.broad.igv.ui.util.IndexCreatorDialog;
 import org.broad.igv.util.FileUtils;
+import org.broad.igv.util.ParsingUtils;
 import org.broad.igv.util.ResourceLocator;
 import org.broad.igv.util.RuntimeUtils;
 import org.broad.igv.util.collections.CollUtils;
 import org.broad.igv.variant.VariantTrack;
 import htsjdk.tribble.*;
 import htsjdk.tribble.index.Index;
+import htsjdk.tribble.readers.AsciiLineReader;
+import htsjdk.tribble.readers.AsciiLineReaderIterator;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * @author jrobinso
@@ -278,12 +287,29 @@ abstract public class TribbleFeatureSource implements org.broad.igv.track.Featur
     }
 
 
+    /**
+     * A source holding all features of a file in memory, used when there is no index.
+     * <p/>
+     * A snapshot of the parsed features is saved in the IGV cache directory (see {@link FeatureSnapshot}), and
+     * used in place of the file while the file is unchanged.  Features are then decoded from the snapshot one
+     * chromosome at a time: on first request, or in the background so that feature names become searchable.
+     */
     static class NonIndexedFeatureSource extends TribbleFeatureSource {
 
+        private static Logger log = Logger.getLogger(NonIndexedFeatureSource.class);
+
+        // Smallest file worth a snapshot.  Not final so that tests can snapshot small files.
+        static long snapshotMinFileSize = 1000000;
+
+        private static ExecutorService snapshotExecutor;
+
         /**
-         * Map containing all features.  Used only when there is no index.
+         * Map containing all features, by chromosome.  Chromosomes of a snapshot are added as they are decoded.
          */
-        Map<String, List<Feature>> featureMap;
+        private final Map<String, List<Feature>> featureMap;
+
+        private FeatureSnapshot snapshot;
+        private volatile boolean disposed;
 
         CoverageDataSource coverageData;
 
@@ -291,29 +317,43 @@ abstract public class TribbleFeatureSource implements org.broad.igv.track.Featur
 
             super(locator, basicReader, codec, genome, false);
 
-            featureMap = new HashMap<String, List<Feature>>(25);
-            Iterator<Feature> iter = null;
+            featureMap = new ConcurrentHashMap<String, List<Feature>>(25);
 
-            try {
-                iter = reader.iterator();
-                while (iter.hasNext()) {
-                    Feature f = iter.next();
-                    if (f == null) continue;
-
-                    String seqName = f.getChr();
-                    String igvChr = genome == null ? seqName : genome.getCanonicalChrName(seqName);
+            String path = locator.getPath();
+            String codecName = codec.getClass().getName();
+            File snapshotFile = isSnapshotEnabled(locator, genome) ? FeatureSnapshot.getSnapshotFile(path, genome.getId()) : null;
+            if (snapshotFile != null) {
+                snapshot = FeatureSnapshot.open(snapshotFile, path, genome.getId(), codecName);
+                if (snapshot != null) {
+                    loadSnapshot();
+                    return;
+                }
+            }
 
-                    List<Feature> featureList = featureMap.get(igvChr);
-                    if (featureList == null) {
-                        featureList = new ArrayList();
-                        featureMap.put(igvChr, featureList);
-                    }
-                    featureList.add(f);
-                    if (f instanceof NamedFeature) FeatureDB.addFeature((NamedFeature) f, genome);
+            // Recorded before parsing, so a snapshot of a file changed meanwhile is never used
+            File file = new File(path);
+            long fileLength = file.length();
+            long lastModified = file.lastModified();
+
+            if (ParallelFeatureDecoder.canDecodeInParallel(codec)) {
+                // Decode on several threads, the features arrive here in file order
+                try (AsciiLineReader lineReader = ParsingUtils.openAsciiReader(locator)) {
+                    ParallelFeatureDecoder.decode(new AsciiLineReaderIterator(lineReader),
+                            () -> (AsciiFeatureCodec) CodecFactory.getCodec(locator, genome),
+                            f -> addFeature(f, genome));
                 }
-            } finally {
-                if (iter instanceof CloseableTribbleIterator) {
-                    ((CloseableTribbleIterator) iter).close();
+            } else {
+                Iterator<Feature> iter = null;
+                try {
+                    iter = reader.iterator();
+                    while (iter.hasNext()) {
+                        Feature f = iter.next();
+                        if (f != null) addFeature(f, genome);
+                    }
+                } finally {
+                    if (iter instanceof CloseableTribbleIterator) {
+                        ((CloseableTribbleIterator) iter).close();
+                    }
                 }
             }
 
@@ -326,14 +366,122 @@ abstract public class TribbleFeatureSource implements org.broad.igv.track.Featur
                 coverageData.computeGenomeCoverage();
                 sampleGenomeFeatures();
             }
+
+            if (snapshotFile != null && FeatureSnapshot.isSupported(featureMap.values())) {
+                DataTile genomeCoverage = coverageData.dataCache.get(Globals.CHR_ALL);
+                double dataMax = coverageData.dataMax;
+                getSnapshotExecutor().execute(() -> {
+                    if (disposed) return;
+                    try {
+                        FeatureSnapshot.write(snapshotFile, path, genome.getId(), codecName, fileLength, lastModified,
+                                featureMap, genomeCoverage, dataMax);
+                    } catch (IOException e) {
+                        log.error("Error writing feature snapshot for " + path, e);
+                    }
+                    long maxBytes = PreferencesManager.getPreferences().getAsInt(Constants.FEATURE_SNAPSHOT_CACHE_MB) * 1000000L;
+                    FeatureSnapshot.evict(snapshotFile.getParentFile(), maxBytes);
+                });
+            }
+        }
+
+        private static boolean isSnapshotEnabled(ResourceLocator locator, Genome genome) {
+            return genome != null && locator.isLocal() && !FileUtils.isRemote(locator.getPath()) &&
+                    new File(locator.getPath()).length() >= snapshotMinFileSize &&
+                    PreferencesManager.getPreferences().getAsBoolean(Constants.FEATURE_SNAPSHOTS);
+        }
+
+        /**
+         * Initialize from the snapshot.  Only the whole genome features are decoded now, the remaining chromosomes
+         * are decoded in the background.
+         */
+        private void loadSnapshot() {
+
+            coverageData = new CoverageDataSource(genome);
+            if (snapshot.getGenomeCoverage() != null) {
+                coverageData.dataCache.put(Globals.CHR_ALL, snapshot.getGenomeCoverage());
+                coverageData.dataMax = snapshot.getDataMax();
+            }
+            List<Feature> chrAllFeatures = snapshot.readFeatures(Globals.CHR_ALL);
+            if (chrAllFeatures != null) {
+                featureMap.put(Globals.CHR_ALL, chrAllFeatures);
+            }
+
+            getSnapshotExecutor().execute(() -> {
+                for (String chr : snapshot.getChromosomes()) {
+                    if (disposed) break;
+                    getFeatureList(chr);
+                }
+            });
+        }
+
+        private static synchronized ExecutorService getSnapshotExecutor() {
+            if (snapshotExecutor == null) {
+                snapshotExecutor = Executors.newSingleThreadExecutor(r -> {
+                    Thread t = new Thread(r, "feature-snapshot");
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
+            return snapshotExecutor;
+        }
+
+        /**
+         * Return the features of a chromosome, decoding them from the snapshot if they have not been yet.
+         *
+         * @return the features, or null if there are none
+         */
+        private List<Feature> getFeatureList(String chr) {
+            List<Feature> features = featureMap.get(chr);
+            if (features == null && snapshot != null && snapshot.hasChromosome(chr)) {
+                synchronized (this) {
+                    features = featureMap.get(chr);
+                    if (features == null && !disposed) {
+                        features = snapshot.readFeatures(chr);
+                        for (Feature f : features) {
+                            if (f instanceof NamedFeature) FeatureDB.addFeature((NamedFeature) f, genome);
+                        }
+                        featureMap.put(chr, features);
+                    }
+                }
+            }
+            return features;
+        }
+
+        /**
+         * @return all features by chromosome, decoding any not yet decoded from the snapshot
+         */
+        Map<String, List<Feature>> getFeatureMap() {
+            if (snapshot != null) {
+                for (String chr : snapshot.getChromosomes()) {
+                    getFeatureList(chr);
+                }
+            }
+            return featureMap;
+        }
+
+        private void addFeature(Feature f, Genome genome) {
+
+            String seqName = f.getChr();
+            String igvChr = genome == null ? seqName : genome.getCanonicalChrName(seqName);
+
+            List<Feature> featureList = featureMap.get(igvChr);
+            if (featureList == null) {
+                featureList = new ArrayList();
+                featureMap.put(igvChr, featureList);
+            }
+            featureList.add(f);
+            if (f instanceof NamedFeature) FeatureDB.addFeature((NamedFeature) f, genome);
         }
 
         @Override
         public void dispose() {
             super.dispose();
-            for(List<Feature> featureList : featureMap.values()) {
-                for(Feature f : featureList) {
-                    if(f instanceof NamedFeature) FeatureDB.removeFeature((NamedFeature) f, genome);
+            synchronized (this) {
+                disposed = true;
+                for (List<Feature> featureList : featureMap.values()) {
+                    for (Feature f : featureList) {
+                        if (f instanceof NamedFeature) FeatureDB.removeFeature((NamedFeature) f, genome);
+                    }
                 }
             }
         }
@@ -356,7 +504,7 @@ abstract public class TribbleFeatureSource implements org.broad.igv.track.Featur
 
         @Override
         public Iterator getFeatures(String chr, int start, int end) throws IOException {
-            List<Feature> features = featureMap.get(chr);
+            List<Feature> features = getFeatureList(chr);
             if (features == null) {
                 return Collections.<Feature>emptyList().iterator();
             }
@@ -367,7 +515,7 @@ abstract public class TribbleFeatureSource implements org.broad.igv.track.Featur
 
         @Override
         protected Collection<String> getSequenceNames() {
-            return featureMap.keySet();
+            return snapshot != null ? snapshot.getChromosomes() : featureMap.keySet();
         }
 
         @Override
@@ -466,7 +614,7 @@ abstract public class TribbleFeatureSource implements org.broad.igv.track.Featur
                     ends[i] = starts[i] + windowSize;
                 }
                 float[] values = new float[nBins];
-                List<Feature> features = featureMap.get(chr);
+                List<Feature> features = getFeatureList(chr);
                 if (features != null) {
                     for (Feature f : features) {
                         int startBin = f.getStart() / windowSize;
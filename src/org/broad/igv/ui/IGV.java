@@ -1862,6 +1862,8 @@ public class IGV implements IGVEventObserver {
             if (t instanceof IGVEventObserver) {
                 IGVEventBus.getInstance().unsubscribe((IGVEventObserver) t);
             }
+            LoadScheduler.getInstance().cancel(t);
+            TrackTileCache.getInstance().remove(t);
         }
 
         if(dispose) {
@@ -39,6 +39,8 @@ import org.broad.igv.Globals;
 import org.broad.igv.feature.RegionOfInterest;
 import org.broad.igv.prefs.Constants;
 import org.broad.igv.prefs.PreferencesManager;
+import org.broad.igv.track.DataTrack;
+import org.broad.igv.track.MergedTracks;
 import org.broad.igv.track.RenderContext;
 import org.broad.igv.track.Track;
 import org.broad.igv.track.TrackClickEvent;
@@ -50,6 +52,7 @@ import org.broad.igv.ui.WaitCursorManager;
 import org.broad.igv.event.DataLoadedEvent;
 import org.broad.igv.event.IGVEventObserver;
 import org.broad.igv.ui.util.DataPanelTool;
+import org.broad.igv.util.LoadScheduler;
 
 import javax.swing.*;
 import javax.swing.event.MouseInputAdapter;
@@ -58,12 +61,11 @@ import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferedImage;
 import java.text.DecimalFormat;
 import java.util.*;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
 /**
@@ -77,9 +79,6 @@ public class DataPanel extends JComponent implements Paintable, IGVEventObserver
 
     private static Logger log = Logger.getLogger(DataPanel.class);
 
-    // Thread pool for loading data
-    private static final ExecutorService threadExecutor = Executors.newFixedThreadPool(5);
-
     private boolean isWaitingForToolTipText = false;
 
     private DataPanelTool defaultTool;
@@ -90,7 +89,12 @@ public class DataPanel extends JComponent implements Paintable, IGVEventObserver
     private DataPanelPainter painter;
     private String tooltipText = "";
 
-    private  boolean loadInProgress = false;
+    // Locus of the load in progress, null if none
+    private volatile String loadLocus;
+
+    // Image of the visible rectangle rendered by the container for the next paint, see renderImage
+    private BufferedImage preparedImage;
+    private Rectangle preparedRect;
 
     public DataPanel(ReferenceFrame frame, DataPanelContainer parent) {
         init();
@@ -152,9 +156,10 @@ public class DataPanel extends JComponent implements Paintable, IGVEventObserver
             long t0 = System.currentTimeMillis();
 
             if (!allTracksLoaded()) {
-                if (!loadInProgress) {
-                    loadInProgress = true;
-                    load();
+                String locus = frame.getFormattedLocusString();
+                if (!locus.equals(loadLocus)) {
+                    loadLocus = locus;
+                    load(locus);
                 }
                 if(!Globals.isBatch()) return;
             }
@@ -172,7 +177,11 @@ public class DataPanel extends JComponent implements Paintable, IGVEventObserver
 
             computeMousableRegions(groups, trackWidth);
 
-            painter.paint(groups, context, trackWidth, getBackground(), damageRect);
+            if (preparedImage != null && visibleRect.equals(preparedRect)) {
+                graphics2D.drawImage(preparedImage, visibleRect.x, visibleRect.y, null);
+            } else {
+                painter.paint(groups, context, trackWidth, getBackground(), damageRect);
+            }
 
             // If there is a partial ROI in progress draw it first
             if (currentTool instanceof RegionOfInterestTool) {
@@ -191,11 +200,42 @@ public class DataPanel extends JComponent implements Paintable, IGVEventObserver
             PanTool.repaintTime(dt);
 
         } finally {
+            preparedImage = null;
+            preparedRect = null;
+            if (context != null) {
+                context.dispose();
+            }
+        }
+    }
 
+    /**
+     * Render the tracks in the visible rectangle into an image.  Called off the event dispatch thread by the
+     * container, which renders the panels of all frames in parallel before painting them.
+     */
+    BufferedImage renderImage(Rectangle visibleRect) {
+        BufferedImage image = new BufferedImage(visibleRect.width, visibleRect.height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        RenderContext context = null;
+        try {
+            g.translate(-visibleRect.x, -visibleRect.y);
+            g.setClip(visibleRect);
+            context = new RenderContext(this, g, frame, visibleRect);
+            painter.paint(parent.getTrackGroups(), context, getWidth(), getBackground(), visibleRect);
+        } finally {
             if (context != null) {
                 context.dispose();
             }
+            g.dispose();
         }
+        return image;
+    }
+
+    /**
+     * Set the image to be drawn by the next paint, if the visible rectangle is then unchanged.
+     */
+    void setPreparedImage(BufferedImage image, Rectangle visibleRect) {
+        this.preparedImage = image;
+        this.preparedRect = visibleRect;
     }
 
 
@@ -207,6 +247,20 @@ public class DataPanel extends JComponent implements Paintable, IGVEventObserver
     }
 
 
+    /**
+     * Return true if the panel can be rendered off the event dispatch thread, see {@link #renderImage}.  Only data
+     * tracks, which draw through their tile path, qualify.  Other renderers fill shared color tables lazily, and
+     * must paint on the event dispatch thread.
+     */
+    boolean isConcurrentlyRenderable() {
+        if (Globals.CHR_ALL.equals(frame.getChrName())) {
+            return false;
+        }
+        return visibleTracks().stream().
+                allMatch(track -> track instanceof DataTrack && !(track instanceof MergedTracks));
+    }
+
+
     public List<Track> visibleTracks() {
         return parent.getTrackGroups().stream().
                 filter(TrackGroup::isVisible).
@@ -214,41 +268,75 @@ public class DataPanel extends JComponent implements Paintable, IGVEventObserver
                 collect(Collectors.toList());
     }
 
-    private void load() {
+    /**
+     * Load the tracks not ready to paint.  Tracks in view are loaded first, then those scrolled out of view, and
+     * frames are loaded left to right.  Loads queued for a previous locus of the frame are cancelled.
+     * <p/>
+     * In gene list mode each track is loaded for all unready frames in one pass, sorted by locus.  The data panels
+     * of the other frames request the same pass, and share it.
+     */
+    private void load(String locus) {
 
         ReferenceFrame frame = getFrame();
-        Collection<Track> trackList = visibleTracks();
-        List<CompletableFuture> futures = new ArrayList(trackList.size());
+        LoadScheduler scheduler = Globals.isBatch() ? null : LoadScheduler.getInstance();
+        if (scheduler != null) {
+            scheduler.cancelObsolete(frame);
+        }
+
+        Rectangle visibleRect = getVisibleRect();
+        boolean geneListMode = FrameManager.isGeneListMode();
+        int frameIndex = geneListMode ? 0 : Math.max(0, FrameManager.getFrames().indexOf(frame));
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
         boolean batchLoaded = false;
-        for (Track track : trackList) {
+        int trackY = 0;
+        for (Track track : visibleTracks()) {
+            int trackHeight = track.getHeight();
             if (track.isReadyToPaint(frame) == false) {
-                final Runnable runnable = () -> {
+                if (Globals.isBatch()) {
                     track.load(frame);
-                };
-
-                if(Globals.isBatch()) {
-                    runnable.run();
                     batchLoaded = true;
                 } else {
-                    futures.add(CompletableFuture.runAsync(runnable, threadExecutor));
+                    boolean inView = trackY < visibleRect.getMaxY() && trackY + trackHeight > visibleRect.y;
+                    int priority = (inView ? LoadScheduler.PRIORITY_VISIBLE : LoadScheduler.PRIORITY_ADJACENT) + frameIndex;
+                    futures.add(geneListMode ?
+                            scheduler.scheduleLoad(track, getUnreadyFrames(track), priority) :
+                            scheduler.scheduleLoad(track, frame, priority));
                 }
             }
+            trackY += trackHeight;
         }
 
         if (futures.size() > 0 || batchLoaded) {
             final CompletableFuture[] futureArray = futures.toArray(new CompletableFuture[futures.size()]);
             WaitCursorManager.CursorToken token = WaitCursorManager.showWaitCursor();
-            CompletableFuture.allOf(futureArray).thenRun(() -> {
-
-                //log.info("Call repaint " + dataPanel.hashCode() + " " + dataPanel.allTracksLoaded());
-                loadInProgress = false;
+            // Completes exceptionally if a load is superseded, repaint regardless to load the current locus
+            CompletableFuture.allOf(futureArray).whenComplete((result, e) -> {
+                if (locus.equals(loadLocus)) {
+                    loadLocus = null;
+                }
                 WaitCursorManager.removeWaitCursor(token);
-                repaint();
-
+                // In gene list mode repaint all frames together, so they are rendered in parallel
+                if (geneListMode) {
+                    parent.repaint();
+                } else {
+                    repaint();
+                }
             });
+        } else {
+            loadLocus = null;
         }
     }
 
+    /**
+     * @return the visible frames for which the track is not ready to paint, sorted by locus
+     */
+    private static List<ReferenceFrame> getUnreadyFrames(Track track) {
+        return FrameManager.getFrames().stream().
+                filter(f -> f.isVisible() && !track.isReadyToPaint(f)).
+                sorted(Comparator.comparing(ReferenceFrame::getChrName).thenComparingDouble(ReferenceFrame::getOrigin)).
+                collect(Collectors.toList());
+    }
+
     /**
      * TODO -- move this to a "layout" command, to layout tracks and assign positions
      */
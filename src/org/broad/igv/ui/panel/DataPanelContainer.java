@@ -33,6 +33,7 @@ import org.broad.igv.ui.IGV;
 import org.broad.igv.ui.MessageCollection;
 import org.broad.igv.ui.util.MessageUtils;
 import org.broad.igv.util.HttpUtils;
+import org.broad.igv.util.LoadScheduler;
 import org.broad.igv.util.ResourceLocator;
 import org.broad.igv.ui.FontManager;
 import org.broad.igv.Globals;
@@ -42,9 +43,12 @@ import java.awt.*;
 import java.awt.datatransfer.DataFlavor;
 import java.awt.datatransfer.Transferable;
 import java.awt.dnd.*;
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * @author jrobinso
@@ -146,7 +150,16 @@ public class DataPanelContainer extends TrackPanelComponent implements Paintable
 
         autoscale();
 
+        Collection<DataPanel> rendered = FrameManager.isGeneListMode() && !Globals.isBatch() ?
+                renderDataPanels(g.getClipBounds()) :
+                Collections.emptyList();
+
         super.paintChildren(g);
+
+        // Images are only valid for this paint
+        for (DataPanel dp : rendered) {
+            dp.setPreparedImage(null, null);
+        }
         if (IGV.getInstance().isRulerEnabled()) {
             int start = MouseInfo.getPointerInfo().getLocation().x - getLocationOnScreen().x;
             g.setColor(Color.BLACK);
@@ -166,6 +179,49 @@ public class DataPanelContainer extends TrackPanelComponent implements Paintable
     }
 
 
+    /**
+     * Render the data panels of all frames in parallel, off the event dispatch thread, before they are painted.
+     * Panels with tracks still loading are skipped, they start their loads when painted.  So are panels with
+     * tracks whose renderers are not thread safe, they are painted on the event dispatch thread.
+     *
+     * @return the panels rendered
+     */
+    private Collection<DataPanel> renderDataPanels(Rectangle clipBounds) {
+
+        Map<DataPanel, Rectangle> panels = new LinkedHashMap<>();
+        for (Component c : getComponents()) {
+            if (c instanceof DataPanel) {
+                DataPanel dp = (DataPanel) c;
+                Rectangle visibleRect = dp.getVisibleRect();
+                boolean painted = clipBounds == null || clipBounds.intersects(dp.getBounds());
+                if (painted && !visibleRect.isEmpty() && dp.allTracksLoaded() && dp.isConcurrentlyRenderable()) {
+                    panels.put(dp, visibleRect);
+                }
+            }
+        }
+        if (panels.size() < 2) {
+            return Collections.emptyList();
+        }
+
+        Executor executor = LoadScheduler.getInstance().getCpuExecutor();
+        Map<DataPanel, CompletableFuture<BufferedImage>> images = new LinkedHashMap<>();
+        for (Map.Entry<DataPanel, Rectangle> entry : panels.entrySet()) {
+            images.put(entry.getKey(),
+                    CompletableFuture.supplyAsync(() -> entry.getKey().renderImage(entry.getValue()), executor));
+        }
+        for (Map.Entry<DataPanel, CompletableFuture<BufferedImage>> entry : images.entrySet()) {
+            DataPanel dp = entry.getKey();
+            try {
+                dp.setPreparedImage(entry.getValue().get(), panels.get(dp));
+            } catch (Exception e) {
+                // The panel paints itself
+                log.error("Error rendering " + dp.getFrame().getName(), e);
+            }
+        }
+        return panels.keySet();
+    }
+
+
     private class FileDropTargetListener implements DropTargetListener {
 
         private TrackPanel panel;
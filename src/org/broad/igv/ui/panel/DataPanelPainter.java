@@ -34,6 +34,7 @@ package org.broad.igv.ui.panel;
 //~--- non-JDK imports --------------------------------------------------------
 
 import org.apache.log4j.Logger;
+import org.broad.igv.Globals;
 import org.broad.igv.sam.AlignmentTrack;
 import org.broad.igv.sam.InsertionManager;
 import org.broad.igv.sam.InsertionMarker;
@@ -99,7 +100,10 @@ public class DataPanelPainter {
                 referenceFrame.origin = start;
             }
         } else {
-            paintFrame(groups, context, width, visibleRect);
+            // Data tracks are drawn from cached tiles when painting on screen
+            TrackTileCache tileCache = context.getPanel() != null && !Globals.isBatch() ?
+                    TrackTileCache.getInstance() : null;
+            paintFrame(groups, context, width, visibleRect, tileCache);
         }
 
     }
@@ -114,12 +118,13 @@ public class DataPanelPainter {
         dG.setClip(dRect);
         context.translateX = px;
 
-        paintFrame(groups, context, w, dRect);
+        paintFrame(groups, context, w, dRect, null);
 
     }
 
 
-    private void paintFrame(Collection<TrackGroup> groups, RenderContext dContext, int width, Rectangle dRect) {
+    private void paintFrame(Collection<TrackGroup> groups, RenderContext dContext, int width, Rectangle dRect,
+                            TrackTileCache tileCache) {
         int trackX = 0;
         int trackY = 0;
 
@@ -162,7 +167,7 @@ public class DataPanelPainter {
 
                         if (track.isVisible()) {
                             Rectangle rect = new Rectangle(trackX, trackY, width, trackHeight);
-                            draw(track, rect, dContext);
+                            draw(track, rect, dContext, tileCache);
                             trackY += trackHeight;
                         }
                     }
@@ -224,13 +229,19 @@ public class DataPanelPainter {
     }
 
 
-    final private void draw(Track track, Rectangle rect, RenderContext context) {
-
-        track.render(context, rect);
+    final private void draw(Track track, Rectangle rect, RenderContext context, TrackTileCache tileCache) {
 
         // Get overlays
 
         List<Track> overlayTracks = IGV.getInstance().getOverlayTracks(track);
+
+        // Tiles hold the track alone, so overlaid tracks are drawn directly
+        boolean drawn = tileCache != null && track instanceof DataTrack && overlayTracks == null &&
+                tileCache.draw((DataTrack) track, rect, context);
+        if (!drawn) {
+            track.render(context, rect);
+        }
+
         if (overlayTracks != null) {
             for (Track overlayTrack : overlayTracks) {
 
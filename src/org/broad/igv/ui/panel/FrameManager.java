@@ -25,6 +25,7 @@
 
 package org.broad.igv.ui.panel;
 
+import org.broad.igv.Globals;
 import org.broad.igv.feature.Locus;
 import org.broad.igv.feature.genome.Genome;
 import org.broad.igv.lists.GeneList;
@@ -38,6 +39,7 @@ import org.broad.igv.event.GenomeChangeEvent;
 import org.broad.igv.event.IGVEventBus;
 import org.broad.igv.event.IGVEventObserver;
 import org.broad.igv.ui.util.MessageUtils;
+import org.broad.igv.util.LoadScheduler;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -90,7 +92,7 @@ public class FrameManager implements IGVEventObserver {
 
 
     public static void setToDefaultFrame(String searchString) {
-        frames.clear();
+        clearFrames();
         if (searchString != null) {
             Locus locus = getLocus(searchString, 0);
             if (locus != null) {
@@ -103,6 +105,18 @@ public class FrameManager implements IGVEventObserver {
         IGVEventBus.getInstance().post(new ChangeEvent(frames));
     }
 
+    /**
+     * Remove all frames, cancelling their queued track loads.
+     */
+    private static void clearFrames() {
+        if (!Globals.isBatch()) {
+            for (ReferenceFrame frame : frames) {
+                LoadScheduler.getInstance().cancel(frame);
+            }
+        }
+        frames.clear();
+    }
+
     private static boolean addNewFrame(String searchString) {
         boolean locusAdded = false;
         Locus locus = getLocus(searchString);
@@ -115,7 +129,7 @@ public class FrameManager implements IGVEventObserver {
     }
 
     public static void resetFrames(GeneList gl) {
-        frames.clear();
+        clearFrames();
 
         if (gl == null) {
             frames.add(getDefaultFrame());
@@ -0,0 +1,272 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.ui.panel;
+
+import org.broad.igv.event.*;
+import org.broad.igv.prefs.Constants;
+import org.broad.igv.prefs.PreferencesChangeEvent;
+import org.broad.igv.prefs.PreferencesManager;
+import org.broad.igv.track.DataTrack;
+import org.broad.igv.track.RenderContext;
+import org.broad.igv.track.Track;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A least-recently-used cache of data track images, rendered off screen in tiles of a fixed pixel width.
+ * <p/>
+ * Tiles are aligned to a grid of the whole chromosome at the current scale, so a pan draws the tiles already
+ * rendered and renders only those newly exposed, and repaints that do not change the view (tooltips, region of
+ * interest overlays) draw cached tiles only.  A tile is keyed by track, frame, chromosome, scale, tile index,
+ * track height and the track's render options; it is cached only if the track's data covering it is loaded.
+ * The cache is bounded by the size of the images, and cleared on preference, genome, track group and refresh
+ * events.  The tiles of a removed track are dropped by {@link #remove(Track)}, so the cache does not keep the track
+ * reachable.
+ */
+public class TrackTileCache implements IGVEventObserver {
+
+    static final int TILE_WIDTH = 256;
+
+    // Tracks taller than this are drawn directly
+    static final int MAX_TILE_HEIGHT = 1000;
+
+    private static TrackTileCache instance;
+
+    private final LinkedHashMap<TileKey, BufferedImage> tiles = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes = 0;
+    private long hitCount = 0;
+    private long missCount = 0;
+
+    public static synchronized TrackTileCache getInstance() {
+        if (instance == null) {
+            instance = new TrackTileCache();
+            IGVEventBus bus = IGVEventBus.getInstance();
+            bus.subscribe(PreferencesChangeEvent.class, instance);
+            bus.subscribe(GenomeChangeEvent.class, instance);
+            bus.subscribe(TrackGroupEvent.class, instance);
+            bus.subscribe(RefreshEvent.class, instance);
+        }
+        return instance;
+    }
+
+    TrackTileCache() {
+    }
+
+    @Override
+    public void receiveEvent(Object event) {
+        clear();
+    }
+
+    private static long getMaxBytes() {
+        return PreferencesManager.getPreferences().getAsInt(Constants.CHART_TILE_CACHE_MB) * 1000000L;
+    }
+
+    /**
+     * Draw a data track from cached tiles, rendering any missing tiles, then draw its axis and border.
+     *
+     * @return false if the track cannot be drawn in tiles, in which case nothing is drawn
+     */
+    public boolean draw(DataTrack track, Rectangle rect, RenderContext context) {
+
+        long maxBytes = getMaxBytes();
+        if (maxBytes <= 0 || rect.height <= 0 || rect.height > MAX_TILE_HEIGHT || !track.isTileable(context)) {
+            return false;
+        }
+
+        ReferenceFrame frame = context.getReferenceFrame();
+        double scale = frame.getScale();
+        double originPixel = frame.getOrigin() / scale;
+        Rectangle visibleRect = context.getVisibleRect();
+        int x0 = visibleRect == null ? rect.x : Math.max(rect.x, visibleRect.x);
+        int x1 = visibleRect == null ? rect.x + rect.width : Math.min(rect.x + rect.width, visibleRect.x + visibleRect.width);
+        if (x1 <= x0) {
+            return true;
+        }
+
+        long firstTile = (long) Math.floor((originPixel + x0 - rect.x) / TILE_WIDTH);
+        long lastTile = (long) Math.floor((originPixel + x1 - 1 - rect.x) / TILE_WIDTH);
+        int renderStateHash = track.getRenderStateHash();
+
+        Graphics2D graphics = context.getGraphics();
+        for (long tileIndex = firstTile; tileIndex <= lastTile; tileIndex++) {
+            TileKey key = new TileKey(track, frame.getName(), frame.getChrName(), scale, tileIndex, rect.height,
+                    renderStateHash);
+            BufferedImage image = get(key);
+            if (image == null) {
+                ReferenceFrame tileFrame = getTileFrame(frame, tileIndex);
+                image = renderTile(track, context, tileFrame, rect.height);
+                if (track.isReadyToPaint(tileFrame)) {
+                    put(key, image, maxBytes);
+                }
+            }
+            int x = rect.x + (int) Math.round(tileIndex * TILE_WIDTH - originPixel);
+            graphics.drawImage(image, x, rect.y, null);
+        }
+
+        track.renderTileDecorations(context, rect);
+        return true;
+    }
+
+    /**
+     * @return a copy of the frame spanning a tile
+     */
+    private static ReferenceFrame getTileFrame(ReferenceFrame frame, long tileIndex) {
+        ReferenceFrame tileFrame = new ReferenceFrame(frame);
+        tileFrame.origin = tileIndex * TILE_WIDTH * frame.getScale();
+        tileFrame.widthInPixels = TILE_WIDTH;
+        return tileFrame;
+    }
+
+    private static BufferedImage renderTile(DataTrack track, RenderContext context, ReferenceFrame tileFrame, int height) {
+        BufferedImage image = new BufferedImage(TILE_WIDTH, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        Rectangle tileRect = new Rectangle(0, 0, TILE_WIDTH, height);
+        RenderContext tileContext = new RenderContext(context.getPanel(), g, tileFrame, tileRect);
+        try {
+            track.renderTile(tileContext, tileRect);
+        } finally {
+            tileContext.dispose();
+            g.dispose();
+        }
+        return image;
+    }
+
+    private synchronized BufferedImage get(TileKey key) {
+        BufferedImage image = tiles.get(key);
+        if (image == null) {
+            missCount++;
+        } else {
+            hitCount++;
+        }
+        return image;
+    }
+
+    /**
+     * Add a tile, then remove least recently used tiles until the cache is within its budget.
+     */
+    private synchronized void put(TileKey key, BufferedImage image, long maxBytes) {
+        BufferedImage previous = tiles.put(key, image);
+        if (previous != null) {
+            cachedBytes -= weight(previous);
+        }
+        cachedBytes += weight(image);
+
+        Iterator<Map.Entry<TileKey, BufferedImage>> iter = tiles.entrySet().iterator();
+        while (cachedBytes > maxBytes && iter.hasNext()) {
+            Map.Entry<TileKey, BufferedImage> entry = iter.next();
+            if (entry.getValue() != image) {
+                cachedBytes -= weight(entry.getValue());
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Remove the tiles of a track, e.g. when it is deleted.
+     */
+    public synchronized void remove(Track track) {
+        Iterator<Map.Entry<TileKey, BufferedImage>> iter = tiles.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<TileKey, BufferedImage> entry = iter.next();
+            if (entry.getKey().track == track) {
+                cachedBytes -= weight(entry.getValue());
+                iter.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        tiles.clear();
+        cachedBytes = 0;
+    }
+
+    public synchronized int size() {
+        return tiles.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "tiles=" + tiles.size() + " bytes=" + cachedBytes + " hits=" + hitCount + " misses=" + missCount;
+    }
+
+    private static long weight(BufferedImage image) {
+        return 4L * image.getWidth() * image.getHeight();
+    }
+
+    private static class TileKey {
+
+        final DataTrack track;
+        final String frameName;
+        final String chr;
+        final double scale;
+        final long tileIndex;
+        final int height;
+        final int renderStateHash;
+
+        TileKey(DataTrack track, String frameName, String chr, double scale, long tileIndex, int height,
+                int renderStateHash) {
+            this.track = track;
+            this.frameName = frameName;
+            this.chr = chr;
+            this.scale = scale;
+            this.tileIndex = tileIndex;
+            this.height = height;
+            this.renderStateHash = renderStateHash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof TileKey)) return false;
+            TileKey that = (TileKey) o;
+            return track == that.track &&
+                    tileIndex == that.tileIndex &&
+                    height == that.height &&
+                    renderStateHash == that.renderStateHash &&
+                    Double.compare(scale, that.scale) == 0 &&
+                    Objects.equals(frameName, that.frameName) &&
+                    Objects.equals(chr, that.chr);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(track), frameName, chr, scale, tileIndex, height, renderStateHash);
+        }
+    }
+}
@@ -0,0 +1,382 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.util;
+
+import org.apache.log4j.Logger;
+import org.broad.igv.prefs.Constants;
+import org.broad.igv.prefs.PreferencesManager;
+import org.broad.igv.track.Track;
+import org.broad.igv.ui.panel.ReferenceFrame;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Schedules track loads and other long running work.
+ * <p/>
+ * Track loads run on a pool of {@link Constants#LOAD_THREADS} threads taking tasks in priority order, then
+ * submission order.  Long running user tasks have their own pool in {@link LongRunningTask}, so they can't
+ * occupy the load threads.  CPU bound work, such as rendering, runs on a
+ * separate pool of one thread per processor so it is not starved by slow reads.
+ * <p/>
+ * A track load is identified by its track and reference frames.  A load requested while an identical one (same
+ * track, frames and loci) is pending shares it.  A load for a new locus replaces a queued load for the old one,
+ * and {@link #cancelObsolete(ReferenceFrame)} drops every queued load of a frame whose locus has since changed, so
+ * jumping quickly between loci does not accumulate obsolete work.  Loads already running are not interrupted.
+ */
+public class LoadScheduler {
+
+    private static Logger log = Logger.getLogger(LoadScheduler.class);
+
+    // Priorities, lower runs first.  PRIORITY_USER is for short I/O tasks which should run ahead of track loads.
+    public static final int PRIORITY_USER = 0;
+    public static final int PRIORITY_VISIBLE = 10000;
+    public static final int PRIORITY_ADJACENT = 20000;
+
+    private static LoadScheduler instance;
+
+    private final ThreadPoolExecutor ioExecutor;
+    private final ExecutorService cpuExecutor;
+    private final Map<LoadKey, Task> pendingLoads = new HashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Statistics statistics = new Statistics();
+
+    public static synchronized LoadScheduler getInstance() {
+        if (instance == null) {
+            instance = new LoadScheduler(
+                    Math.max(1, PreferencesManager.getPreferences().getAsInt(Constants.LOAD_THREADS)),
+                    Runtime.getRuntime().availableProcessors());
+        }
+        return instance;
+    }
+
+    LoadScheduler(int ioThreads, int cpuThreads) {
+        ioExecutor = new ThreadPoolExecutor(ioThreads, ioThreads, 60, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(), threadFactory("load"));
+        ioExecutor.allowCoreThreadTimeOut(true);
+        cpuExecutor = Executors.newFixedThreadPool(cpuThreads, threadFactory("render"));
+    }
+
+    private static ThreadFactory threadFactory(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /**
+     * Load a track for a reference frame at the frame's current locus.
+     *
+     * @return a future completed when the load is done, or cancelled if it is superseded before it starts
+     */
+    public CompletableFuture<Void> scheduleLoad(Track track, ReferenceFrame frame, int priority) {
+        return scheduleLoad(track, Collections.singletonList(frame), priority);
+    }
+
+    /**
+     * Load a track for several reference frames in one pass, see {@link Track#loadFrames(List)}.
+     *
+     * @param frames frames sorted by locus
+     * @return a future completed when the load is done, or cancelled if it is superseded before it starts
+     */
+    public CompletableFuture<Void> scheduleLoad(Track track, List<ReferenceFrame> frames, int priority) {
+
+        LoadKey key = new LoadKey(track, new ArrayList<>(frames));
+        List<String> loci = getLocusKeys(frames);
+        Task task;
+        synchronized (pendingLoads) {
+            Task pending = pendingLoads.get(key);
+            if (pending != null) {
+                if (pending.loci.equals(loci)) {
+                    statistics.coalesced.incrementAndGet();
+                    return pending.completion;
+                }
+                cancel(pending);
+            }
+            Callable<Object> load = key.frames.size() == 1 ?
+                    () -> {
+                        track.load(key.frames.get(0));
+                        return null;
+                    } :
+                    () -> {
+                        track.loadFrames(key.frames);
+                        return null;
+                    };
+            task = new Task(load, priority, key, loci);
+            pendingLoads.put(key, task);
+        }
+        execute(task);
+        return task.completion;
+    }
+
+    /**
+     * Run a task on the I/O pool.
+     */
+    public Future<?> submit(Callable<?> callable, int priority) {
+        Task task = new Task(callable, priority, null, null);
+        execute(task);
+        return task;
+    }
+
+    /**
+     * @return the executor for CPU bound work
+     */
+    public Executor getCpuExecutor() {
+        return cpuExecutor;
+    }
+
+    private void execute(Task task) {
+        statistics.submitted.incrementAndGet();
+        ioExecutor.execute(task);
+    }
+
+    /**
+     * Cancel the queued loads of a frame made for a locus other than its current one.
+     */
+    public void cancelObsolete(ReferenceFrame frame) {
+        String locus = getLocusKey(frame);
+        cancelIf(key -> key.frames.contains(frame),
+                task -> !task.loci.get(task.key.frames.indexOf(frame)).equals(locus));
+    }
+
+    /**
+     * Cancel all queued loads of a frame, e.g. when it is removed.
+     */
+    public void cancel(ReferenceFrame frame) {
+        cancelIf(key -> key.frames.contains(frame), task -> true);
+    }
+
+    /**
+     * Cancel all queued loads of a track, e.g. when it is removed.
+     */
+    public void cancel(Track track) {
+        cancelIf(key -> key.track == track, task -> true);
+    }
+
+    private void cancelIf(Predicate<LoadKey> keyFilter, Predicate<Task> taskFilter) {
+        List<Task> tasks = new ArrayList<>();
+        synchronized (pendingLoads) {
+            for (Map.Entry<LoadKey, Task> entry : pendingLoads.entrySet()) {
+                if (keyFilter.test(entry.getKey()) && taskFilter.test(entry.getValue())) {
+                    tasks.add(entry.getValue());
+                }
+            }
+        }
+        tasks.forEach(this::cancel);
+    }
+
+    /**
+     * Cancel a task if it has not started, and remove it from the queue.  A task is claimed by whichever of
+     * run() and cancel() comes first, so a task that has started is never reported as cancelled.
+     */
+    private void cancel(Task task) {
+        if (task.claimed.compareAndSet(false, true)) {
+            task.cancel(false);
+            ioExecutor.remove(task);
+        }
+    }
+
+    private static List<String> getLocusKeys(List<ReferenceFrame> frames) {
+        List<String> loci = new ArrayList<>(frames.size());
+        for (ReferenceFrame frame : frames) {
+            loci.add(getLocusKey(frame));
+        }
+        return loci;
+    }
+
+    private static String getLocusKey(ReferenceFrame frame) {
+        return frame.getChrName() + ":" + frame.getOrigin() + "-" + frame.getEnd();
+    }
+
+    public int getQueueDepth() {
+        return ioExecutor.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return ioExecutor.getActiveCount();
+    }
+
+    public Statistics getStatistics() {
+        return statistics;
+    }
+
+    @Override
+    public String toString() {
+        return "queued=" + getQueueDepth() + " active=" + getActiveCount() + " " + statistics;
+    }
+
+    private static final class LoadKey {
+
+        final Track track;
+        final List<ReferenceFrame> frames;
+
+        LoadKey(Track track, List<ReferenceFrame> frames) {
+            this.track = track;
+            this.frames = frames;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof LoadKey)) return false;
+            LoadKey other = (LoadKey) o;
+            if (track != other.track || frames.size() != other.frames.size()) return false;
+            for (int i = 0; i < frames.size(); i++) {
+                if (frames.get(i) != other.frames.get(i)) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = System.identityHashCode(track);
+            for (ReferenceFrame frame : frames) {
+                h = 31 * h + System.identityHashCode(frame);
+            }
+            return h;
+        }
+    }
+
+    private final class Task extends FutureTask<Object> implements Comparable<Task> {
+
+        final int priority;
+        final long order = sequence.incrementAndGet();
+        final LoadKey key;          // null unless a track load
+        final List<String> loci;    // loci of the key's frames when the load was requested
+        final CompletableFuture<Void> completion = new CompletableFuture<>();
+        final long queuedNanos = System.nanoTime();
+        final AtomicBoolean claimed = new AtomicBoolean();
+        volatile long startNanos;
+
+        Task(Callable<?> callable, int priority, LoadKey key, List<String> loci) {
+            super((Callable<Object>) callable);
+            this.priority = priority;
+            this.key = key;
+            this.loci = loci;
+        }
+
+        @Override
+        public void run() {
+            if (!claimed.compareAndSet(false, true)) {
+                return;    // Cancelled
+            }
+            startNanos = System.nanoTime();
+            statistics.queueNanos.addAndGet(startNanos - queuedNanos);
+            super.run();
+        }
+
+        @Override
+        protected void done() {
+            if (key != null) {
+                synchronized (pendingLoads) {
+                    pendingLoads.remove(key, this);
+                }
+            }
+            if (isCancelled()) {
+                statistics.cancelled.incrementAndGet();
+                completion.cancel(false);
+                return;
+            }
+            statistics.runNanos.addAndGet(System.nanoTime() - startNanos);
+            try {
+                get();
+                statistics.completed.incrementAndGet();
+                completion.complete(null);
+            } catch (InterruptedException e) {
+                completion.completeExceptionally(e);
+            } catch (ExecutionException e) {
+                statistics.failed.incrementAndGet();
+                log.error("Error loading " + (key == null ? "" : key.track.getName()), e.getCause());
+                completion.completeExceptionally(e.getCause());
+            }
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            int c = Integer.compare(priority, other.priority);
+            return c != 0 ? c : Long.compare(order, other.order);
+        }
+    }
+
+    public static class Statistics {
+
+        private final AtomicLong submitted = new AtomicLong();
+        private final AtomicLong coalesced = new AtomicLong();
+        private final AtomicLong cancelled = new AtomicLong();
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong queueNanos = new AtomicLong();
+        private final AtomicLong runNanos = new AtomicLong();
+
+        public long getSubmittedCount() {
+            return submitted.get();
+        }
+
+        public long getCoalescedCount() {
+            return coalesced.get();
+        }
+
+        public long getCancelledCount() {
+            return cancelled.get();
+        }
+
+        public long getCompletedCount() {
+            return completed.get();
+        }
+
+        public long getFailedCount() {
+            return failed.get();
+        }
+
+        /**
+         * @return mean time from submission to start of the tasks run so far
+         */
+        public double getMeanQueueMillis() {
+            long n = completed.get() + failed.get();
+            return n == 0 ? 0 : queueNanos.get() / 1.0e6 / n;
+        }
+
+        /**
+         * @return mean run time of the tasks run so far
+         */
+        public double getMeanRunMillis() {
+            long n = completed.get() + failed.get();
+            return n == 0 ? 0 : runNanos.get() / 1.0e6 / n;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("submitted=%d coalesced=%d cancelled=%d completed=%d failed=%d queueMs=%.1f runMs=%.1f",
+                    getSubmittedCount(), getCoalescedCount(), getCancelledCount(), getCompletedCount(),
+                    getFailedCount(), getMeanQueueMillis(), getMeanRunMillis());
+        }
+    }
+}
@@ -44,6 +44,7 @@ public class LongRunningTask implements Callable {
 
     private static Logger log = Logger.getLogger(LongRunningTask.class);
 
+    // Separate from the track load pool, so long user tasks can't starve track loads
     private static final ExecutorService threadExecutor = Executors.newFixedThreadPool(5);
 
     Runnable runnable;
@@ -0,0 +1,290 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable interval index over primitive arrays, an alternative to {@link IntervalTree} for data that does not
+ * change once loaded.
+ * <p/>
+ * Intervals are sorted by start and the sorted array is treated as an implicit binary search tree, in the manner
+ * of cgranges: the node at index i of level k has children i - 2^(k-1) and i + 2^(k-1), and stores the maximum end
+ * of its subtree.  There are no node objects, and a query touches only a few contiguous ranges of the arrays.
+ * <p/>
+ * As for {@link Interval} bounds are inclusive, an interval overlaps a query if start <= query end and
+ * end >= query start.  Queries report intervals in order of start.  Instances are safe for concurrent queries.
+ */
+public class StaticIntervalIndex<T> {
+
+    // Subtrees at or below this level are scanned linearly
+    private static final int SCAN_LEVEL = 3;
+
+    private final int size;
+    private final int[] starts;
+    private final int[] ends;
+    private final int[] maxEnds;
+    private final Object[] values;
+    private final int maxLevel;
+
+    /**
+     * Receives the intervals overlapping a query.
+     */
+    public interface OverlapConsumer<T> {
+        void accept(int start, int end, T value);
+    }
+
+    private StaticIntervalIndex(int size, int[] starts, int[] ends, Object[] values) {
+        this.size = size;
+        this.starts = starts;
+        this.ends = ends;
+        this.values = values;
+        this.maxEnds = new int[size];
+        this.maxLevel = indexLevels();
+    }
+
+    public static <T> Builder<T> builder() {
+        return new Builder<>(16);
+    }
+
+    public static <T> Builder<T> builder(int capacity) {
+        return new Builder<>(capacity);
+    }
+
+    /**
+     * Compute the subtree maximum ends, returning the level of the root.
+     */
+    private int indexLevels() {
+        if (size == 0) {
+            return -1;
+        }
+        int lastIndex = 0;
+        int last = 0;
+        for (int i = 0; i < size; i += 2) {
+            lastIndex = i;
+            last = maxEnds[i] = ends[i];
+        }
+        int k = 1;
+        for (; 1 << k <= size; k++) {
+            int x = 1 << (k - 1);
+            int i0 = (x << 1) - 1;
+            int step = x << 2;
+            for (int i = i0; i < size; i += step) {
+                int left = maxEnds[i - x];
+                int right = i + x < size ? maxEnds[i + x] : last;
+                maxEnds[i] = Math.max(ends[i], Math.max(left, right));
+            }
+            // The last node of this level may be missing children past the end of the array
+            lastIndex = ((lastIndex >> k) & 1) != 0 ? lastIndex - x : lastIndex + x;
+            if (lastIndex < size && maxEnds[lastIndex] > last) {
+                last = maxEnds[lastIndex];
+            }
+        }
+        return k - 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getStart(int index) {
+        return starts[index];
+    }
+
+    public int getEnd(int index) {
+        return ends[index];
+    }
+
+    @SuppressWarnings("unchecked")
+    public T getValue(int index) {
+        return (T) values[index];
+    }
+
+    /**
+     * Return the values of all intervals overlapping [start, end].
+     */
+    public List<T> findOverlapping(int start, int end) {
+        if (size == 0) {
+            return Collections.emptyList();
+        }
+        List<T> results = new ArrayList<>();
+        findOverlapping(start, end, (s, e, value) -> results.add(value));
+        return results;
+    }
+
+    /**
+     * Pass each interval overlapping [start, end] to the consumer, without allocating a result list.
+     *
+     * @return the number of overlapping intervals
+     */
+    public int findOverlapping(int start, int end, OverlapConsumer<? super T> consumer) {
+
+        if (size == 0) {
+            return 0;
+        }
+
+        // Stack of (node, level, visited) triples.  A path from the root holds at most two entries per level.
+        int[] stack = new int[3 * 2 * (maxLevel + 2)];
+        int top = 0;
+        stack[top++] = (1 << maxLevel) - 1;
+        stack[top++] = maxLevel;
+        stack[top++] = 0;
+
+        int count = 0;
+        while (top > 0) {
+            int visited = stack[--top];
+            int k = stack[--top];
+            int x = stack[--top];
+            if (k <= SCAN_LEVEL) {
+                // Small subtree, scan it
+                int i0 = x >> k << k;
+                int i1 = Math.min(i0 + (1 << (k + 1)) - 1, size);
+                for (int i = i0; i < i1 && starts[i] <= end; i++) {
+                    if (ends[i] >= start) {
+                        accept(consumer, i);
+                        count++;
+                    }
+                }
+            } else if (visited == 0) {
+                // Revisit this node after its left subtree
+                int y = x - (1 << (k - 1));
+                stack[top++] = x;
+                stack[top++] = k;
+                stack[top++] = 1;
+                if (y >= size || maxEnds[y] >= start) {
+                    stack[top++] = y;
+                    stack[top++] = k - 1;
+                    stack[top++] = 0;
+                }
+            } else if (x < size && starts[x] <= end) {
+                if (ends[x] >= start) {
+                    accept(consumer, x);
+                    count++;
+                }
+                stack[top++] = x + (1 << (k - 1));
+                stack[top++] = k - 1;
+                stack[top++] = 0;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of intervals overlapping [start, end]
+     */
+    public int countOverlapping(int start, int end) {
+        return findOverlapping(start, end, (s, e, value) -> {
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private void accept(OverlapConsumer<? super T> consumer, int index) {
+        consumer.accept(starts[index], ends[index], (T) values[index]);
+    }
+
+    /**
+     * Collects intervals in any order and builds the index in one pass.
+     */
+    public static class Builder<T> {
+
+        private int size;
+        private int[] starts;
+        private int[] ends;
+        private Object[] values;
+
+        private Builder(int capacity) {
+            capacity = Math.max(capacity, 1);
+            starts = new int[capacity];
+            ends = new int[capacity];
+            values = new Object[capacity];
+        }
+
+        public Builder<T> add(int start, int end, T value) {
+            if (start > end) {
+                throw new IllegalArgumentException("Interval start " + start + " is after end " + end);
+            }
+            if (size == starts.length) {
+                int capacity = 2 * size;
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+            starts[size] = start;
+            ends[size] = end;
+            values[size] = value;
+            size++;
+            return this;
+        }
+
+        public Builder<T> add(Interval<T> interval) {
+            return add(interval.getLow(), interval.getHigh(), interval.getValue());
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Build the index.  The builder should not be used afterwards.
+         */
+        public StaticIntervalIndex<T> build() {
+
+            boolean sorted = true;
+            for (int i = 1; i < size && sorted; i++) {
+                sorted = starts[i] >= starts[i - 1];
+            }
+
+            int[] s;
+            int[] e;
+            Object[] v;
+            if (sorted) {
+                s = Arrays.copyOf(starts, size);
+                e = Arrays.copyOf(ends, size);
+                v = Arrays.copyOf(values, size);
+            } else {
+                // Sort by start, ties in insertion order, with the original index packed in the low bits
+                long[] keys = new long[size];
+                for (int i = 0; i < size; i++) {
+                    keys[i] = ((long) starts[i] << 32) | i;
+                }
+                Arrays.sort(keys);
+                s = new int[size];
+                e = new int[size];
+                v = new Object[size];
+                for (int i = 0; i < size; i++) {
+                    int idx = (int) keys[i];
+                    s[i] = starts[idx];
+                    e[i] = ends[idx];
+                    v[i] = values[idx];
+                }
+            }
+            return new StaticIntervalIndex<>(size, s, e, v);
+        }
+    }
+}
@@ -38,8 +38,7 @@ import java.net.URLEncoder;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Created by IntelliJ IDEA.
@@ -50,21 +49,22 @@ import java.util.WeakHashMap;
  */
 public class StringUtils {
 
-    private static Map<String, String> internedStrings = new WeakHashMap<String, String>();
+    private static ConcurrentHashMap<String, String> internedStrings = new ConcurrentHashMap<String, String>();
 
     /**
      * Creates or retrieves an interned copy of {@code string}. This way,
      * we only keep one reference to strings of the same value.
-     * Backed by a WeakHashMap
+     * Backed by a ConcurrentHashMap, as strings are interned by features parsed on several threads
      *
      * @param string
      * @return
      */
     public static String intern(String string) {
-        if (!internedStrings.containsKey(string)) {
-            internedStrings.put(string, string);
+        if (string == null) {
+            return null;
         }
-        return internedStrings.get(string);
+        String interned = internedStrings.putIfAbsent(string, string);
+        return interned == null ? string : interned;
     }
 
 
@@ -44,6 +44,7 @@ public class LRUCache<K, V> {
 
     public LRUCache(int max) {
         this.maxEntries = new AtomicInteger(max);
+        createMap();
     }
 
     public void setMaxEntries(int max) {
@@ -75,6 +76,10 @@ public class LRUCache<K, V> {
         return getMap().get(key);
     }
 
+    public V remove(Object key) {
+        return getMap().remove(key);
+    }
+
     public boolean containsKey(Object o) {
         return getMap().containsKey(o);
     }
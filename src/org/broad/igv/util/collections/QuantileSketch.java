@@ -0,0 +1,206 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.util.collections;
+
+import org.apache.commons.math.stat.StatUtils;
+
+import java.util.Arrays;
+
+/**
+ * Streaming estimate of the percentiles of a sequence of values in bounded memory.
+ * <p/>
+ * Values are held in levels of "compactors" (Karnin, Lang & Liberty, 2016).  Items in level h represent 2^h of the
+ * original values.  When a level fills it is sorted and every other item is promoted to the next level, halving its
+ * size.  The top level holds up to k items and lower levels geometrically fewer, so about 3k values are held in
+ * total regardless of how many are added.  Until the first compaction all values are retained and percentiles are
+ * exact, identical to {@link StatUtils#percentile(double[], double)}.
+ */
+public class QuantileSketch {
+
+    public static final int DEFAULT_K = 2000;
+    private static final int MIN_CAPACITY = 8;
+
+    private final int k;
+    private float[][] levels;
+    private int[] sizes;
+    private int nLevels;
+    private long count;
+    private boolean compacted;
+
+    /**
+     * Alternates the half of each compacted level that is kept, so the rounding errors of successive compactions
+     * cancel.  Deterministic, so results are reproducible.
+     */
+    private int compactionParity;
+
+    public QuantileSketch() {
+        this(DEFAULT_K);
+    }
+
+    /**
+     * @param k maximum number of items held in the top level, and the number of values held before the first
+     *          compaction.  Rank error is roughly proportional to 1/k.
+     */
+    public QuantileSketch(int k) {
+        this.k = Math.max(MIN_CAPACITY, k);
+        levels = new float[4][];
+        sizes = new int[4];
+        levels[0] = new float[16];
+        nLevels = 1;
+    }
+
+    public void add(float v) {
+        append(0, v);
+        count++;
+        if (sizes[0] > capacity(0)) {
+            compress();
+        }
+    }
+
+    /**
+     * @return the number of values added
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return true if the sketch is exact, that is all values added are retained
+     */
+    public boolean isExact() {
+        return !compacted;
+    }
+
+    /**
+     * Return an estimate of the p-th percentile of the values added.
+     *
+     * @param p percentile, 0 < p <= 100
+     * @return the estimate, or NaN if no values have been added
+     */
+    public double getPercentile(double p) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        if (!compacted) {
+            double[] values = new double[sizes[0]];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = levels[0][i];
+            }
+            return StatUtils.percentile(values, p);
+        }
+
+        // Items sorted by value, each weighted by 2^level
+        int n = 0;
+        for (int h = 0; h < nLevels; h++) {
+            n += sizes[h];
+        }
+        final float[] values = new float[n];
+        final long[] weights = new long[n];
+        int idx = 0;
+        for (int h = 0; h < nLevels; h++) {
+            for (int i = 0; i < sizes[h]; i++) {
+                values[idx] = levels[h][i];
+                weights[idx] = 1L << h;
+                idx++;
+            }
+        }
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Float.compare(values[a], values[b]));
+
+        long totalWeight = 0;
+        for (long w : weights) {
+            totalWeight += w;
+        }
+        double target = (p / 100) * totalWeight;
+        long cumulative = 0;
+        for (int i : order) {
+            cumulative += weights[i];
+            if (cumulative >= target) {
+                return values[i];
+            }
+        }
+        return values[order[n - 1]];
+    }
+
+    private int capacity(int level) {
+        int depth = nLevels - 1 - level;
+        return Math.max(MIN_CAPACITY, (int) Math.ceil(k * Math.pow(2.0 / 3, depth)));
+    }
+
+    private void append(int level, float v) {
+        float[] items = levels[level];
+        if (sizes[level] == items.length) {
+            levels[level] = items = Arrays.copyOf(items, Math.max(16, 2 * items.length));
+        }
+        items[sizes[level]++] = v;
+    }
+
+    /**
+     * Compact each level over capacity, from the bottom up.
+     */
+    private void compress() {
+        for (int h = 0; h < nLevels; h++) {
+            if (sizes[h] > capacity(h)) {
+                if (h + 1 == nLevels) {
+                    addLevel();
+                }
+                compact(h);
+            }
+        }
+    }
+
+    private void addLevel() {
+        if (nLevels == levels.length) {
+            levels = Arrays.copyOf(levels, 2 * nLevels);
+            sizes = Arrays.copyOf(sizes, 2 * nLevels);
+        }
+        levels[nLevels] = new float[16];
+        sizes[nLevels] = 0;
+        nLevels++;
+    }
+
+    private void compact(int level) {
+        float[] items = levels[level];
+        int n = sizes[level];
+        Arrays.sort(items, 0, n);
+
+        // An odd item out is left in this level
+        int keep = n & 1;
+        int offset = compactionParity;
+        compactionParity ^= 1;
+        for (int i = offset; i < n - keep; i += 2) {
+            append(level + 1, items[i]);
+        }
+        if (keep == 1) {
+            items[0] = items[n - 1];
+        }
+        sizes[level] = keep;
+        compacted = true;
+    }
+}
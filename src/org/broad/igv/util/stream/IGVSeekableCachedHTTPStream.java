@@ -0,0 +1,412 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.util.stream;
+
+import htsjdk.samtools.seekablestream.SeekableStream;
+import org.apache.log4j.Logger;
+import org.broad.igv.ga4gh.OAuthUtils;
+import org.broad.igv.prefs.Constants;
+import org.broad.igv.prefs.PreferencesManager;
+import org.broad.igv.util.HttpUtils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A seekable http stream which reads through a {@link RemoteBlockCache}.
+ * <p/>
+ * Reads are resolved to fixed-size blocks.  Blocks not found in the cache are fetched with as few Range requests
+ * as possible: runs of missing blocks separated by only a few cached blocks are coalesced into a single request.
+ * When consecutive reads are sequential the request for the last missing block is extended to read ahead, the
+ * read-ahead doubling with each sequential read up to MAX_READ_AHEAD blocks.
+ * <p/>
+ * The resource ETag and length are taken from the first Range response, so no additional requests are made.
+ * Only 206 (Partial Content) responses are cached.  Blocks are written to disk only for resources with an ETag,
+ * which the response does not mark "no-store" or "private", and whose url carries no credentials -- user info,
+ * a query string such as a signed url's, or a GenomeSpace token -- unless IO.REMOTE_DISK_CACHE_AUTHENTICATED is set.
+ */
+public class IGVSeekableCachedHTTPStream extends SeekableStream {
+
+    private static Logger log = Logger.getLogger(IGVSeekableCachedHTTPStream.class);
+
+    static final int DEFAULT_BLOCK_SIZE = 64000;
+
+    /**
+     * Maximum number of cached blocks between two missing blocks that are fetched in a single request.
+     */
+    static final int MAX_GAP_BLOCKS = 2;
+
+    /**
+     * Maximum number of blocks read ahead of a sequential read.
+     */
+    static final int MAX_READ_AHEAD = 16;
+
+    private final URL url;
+    private final RemoteBlockCache cache;
+    private final int blockSize;
+    private final boolean diskCacheAllowed;
+
+    private String resourceKey;
+    private boolean persistent;
+    private long contentLength = -1;
+    private long position = 0;
+
+    private boolean lastResponsePartial;
+
+    private long lastBlockRead = -1;
+    private int readAhead = 0;
+
+    public IGVSeekableCachedHTTPStream(URL url) {
+        this(url, RemoteBlockCache.getInstance(), DEFAULT_BLOCK_SIZE);
+    }
+
+    IGVSeekableCachedHTTPStream(URL url, RemoteBlockCache cache, int blockSize) {
+        this.url = url;
+        this.cache = cache;
+        this.blockSize = blockSize;
+        this.diskCacheAllowed = !isAuthenticated(url) ||
+                PreferencesManager.getPreferences().getAsBoolean(Constants.REMOTE_DISK_CACHE_AUTHENTICATED);
+        this.resourceKey = cache.getResourceKey(url.toExternalForm());
+        this.persistent = resourceKey != null && !resourceKey.equals(url.toExternalForm());
+    }
+
+    /**
+     * Return true if requests for the url carry credentials.
+     */
+    static boolean isAuthenticated(URL url) {
+        return url.getUserInfo() != null || url.getQuery() != null || url.getHost().equals(OAuthUtils.GS_HOST);
+    }
+
+    @Override
+    public long length() {
+        return contentLength;
+    }
+
+    @Override
+    public long position() {
+        return position;
+    }
+
+    @Override
+    public void seek(long position) {
+        this.position = position;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long bytesToSkip = contentLength < 0 ? n : Math.max(0, Math.min(n, contentLength - position));
+        position += bytesToSkip;
+        return bytesToSkip;
+    }
+
+    @Override
+    public boolean eof() throws IOException {
+        return contentLength > 0 && position >= contentLength;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] tmp = new byte[1];
+        int n = read(tmp, 0, 1);
+        return n < 0 ? -1 : (int) tmp[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int len) throws IOException {
+
+        if (offset < 0 || len < 0 || (offset + len) > buffer.length) {
+            throw new IndexOutOfBoundsException("Offset=" + offset + ",len=" + len + ",buflen=" + buffer.length);
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (contentLength >= 0 && position >= contentLength) {
+            return -1;
+        }
+
+        long firstBlock = position / blockSize;
+        long lastBlock = (position + len - 1) / blockSize;
+        if (contentLength >= 0) {
+            lastBlock = Math.min(lastBlock, (contentLength - 1) / blockSize);
+        }
+
+        // Sequential access is a read starting in, or just after, the last block of the previous read
+        if (lastBlockRead >= 0 && (firstBlock == lastBlockRead || firstBlock == lastBlockRead + 1)) {
+            readAhead = Math.min(MAX_READ_AHEAD, Math.max(1, readAhead * 2));
+        } else {
+            readAhead = 0;
+        }
+        lastBlockRead = lastBlock;
+
+        byte[][] blocks = getBlocks(firstBlock, lastBlock);
+
+        int n = 0;
+        for (int i = 0; i < blocks.length && n < len; i++) {
+            byte[] block = blocks[i];
+            if (block == null) {
+                break;
+            }
+            long blockStart = (firstBlock + i) * blockSize;
+            int blockOffset = (int) Math.max(0, position + n - blockStart);
+            int count = Math.min(len - n, block.length - blockOffset);
+            if (count <= 0) {
+                break;
+            }
+            System.arraycopy(block, blockOffset, buffer, offset + n, count);
+            n += count;
+            if (block.length < blockSize) {
+                break;  // Last block of the resource
+            }
+        }
+
+        if (n == 0) {
+            return -1;
+        }
+        position += n;
+        return n;
+    }
+
+    /**
+     * Return blocks firstBlock through lastBlock, fetching missing blocks.  Elements are null past the end of
+     * the resource.
+     */
+    private byte[][] getBlocks(long firstBlock, long lastBlock) throws IOException {
+
+        int nBlocks = (int) (lastBlock - firstBlock + 1);
+        byte[][] blocks = new byte[nBlocks][];
+        if (resourceKey != null) {
+            for (int i = 0; i < nBlocks; i++) {
+                blocks[i] = cache.get(resourceKey, persistent, firstBlock + i);
+                if (blocks[i] != null && blocks[i].length < blockSize) {
+                    // Final block of the resource, nothing to fetch beyond it
+                    contentLength = (firstBlock + i) * blockSize + blocks[i].length;
+                    nBlocks = i + 1;
+                    break;
+                }
+            }
+        }
+
+        int i = 0;
+        while (i < nBlocks) {
+            if (blocks[i] != null) {
+                i++;
+                continue;
+            }
+
+            // Extend the request over following missing blocks, bridging small gaps of cached blocks
+            int j = i;
+            int k = i + 1;
+            while (k < nBlocks && k - j - 1 <= MAX_GAP_BLOCKS) {
+                if (blocks[k] == null) {
+                    j = k;
+                }
+                k++;
+            }
+
+            long requestStart = firstBlock + i;
+            long requestEnd = firstBlock + j;
+            if (j == nBlocks - 1) {
+                requestEnd += readAhead;
+            }
+
+            Map<Long, byte[]> fetched = fetchBlocks(requestStart, requestEnd);
+            for (int b = i; b <= j; b++) {
+                byte[] block = fetched.get(firstBlock + b);
+                if (block != null) {
+                    blocks[b] = block;
+                }
+            }
+            i = j + 1;
+        }
+        return blocks;
+    }
+
+    /**
+     * Fetch blocks startBlock through endBlock (inclusive) with a single Range request and add them to the cache.
+     */
+    private Map<Long, byte[]> fetchBlocks(long startBlock, long endBlock) throws IOException {
+
+        long start = startBlock * blockSize;
+        long end = (endBlock + 1) * blockSize - 1;
+        if (contentLength >= 0) {
+            end = Math.min(end, contentLength - 1);
+        }
+
+        byte[] bytes = fetchRange(start, end);
+        boolean cacheable = bytes.length == 0 || lastResponsePartial;
+
+        Map<Long, byte[]> blocks = new HashMap<>();
+        for (long b = startBlock; b <= endBlock; b++) {
+            int from = (int) ((b - startBlock) * blockSize);
+            if (from >= bytes.length) {
+                break;
+            }
+            int to = Math.min(bytes.length, from + blockSize);
+            byte[] block = new byte[to - from];
+            System.arraycopy(bytes, from, block, 0, block.length);
+
+            // Only complete blocks, or the final block of the resource, are cached
+            if (cacheable && (block.length == blockSize || (contentLength >= 0 && start + to == contentLength))) {
+                cache.put(resourceKey, persistent, b, block);
+            }
+            blocks.put(b, block);
+        }
+        return blocks;
+    }
+
+    private byte[] fetchRange(long start, long end) throws IOException {
+        int attempts = 0;
+        while (true) {
+            try {
+                return _fetchRange(start, end);
+            } catch (SocketException e) {
+                if (++attempts >= 3) {
+                    throw e;
+                }
+                log.error("Socket exception. Trying again.", e);
+            }
+        }
+    }
+
+    private byte[] _fetchRange(long start, long end) throws IOException {
+
+        if (log.isTraceEnabled()) {
+            log.trace("Fetching range " + start + " to " + end + " of " + url);
+        }
+
+        Map<String, String> params = new HashMap<>();
+        params.put("Range", "bytes=" + start + "-" + end);
+
+        HttpURLConnection conn;
+        try {
+            conn = HttpUtils.getInstance().openConnection(url, params);
+        } catch (HttpUtils.UnsatisfiableRangeException e) {
+            return handleUnsatisfiableRange(start);
+        } catch (IOException e) {
+            if (e.getMessage() != null && e.getMessage().contains("416")) {
+                return handleUnsatisfiableRange(start);
+            }
+            throw e;
+        }
+
+        // Any other response, e.g. a 200 with the whole resource, can't be trusted to hold the requested range
+        lastResponsePartial = conn.getResponseCode() == HttpURLConnection.HTTP_PARTIAL;
+        if (!lastResponsePartial) {
+            log.warn("Range request not honored, response code " + conn.getResponseCode() + ": " + url);
+        }
+
+        if (resourceKey == null && lastResponsePartial) {
+            // Without an ETag blocks are cached in memory only
+            String cacheControl = conn.getHeaderField("Cache-Control");
+            boolean noStore = cacheControl != null &&
+                    (cacheControl.contains("no-store") || cacheControl.contains("private"));
+            String etag = diskCacheAllowed && !noStore ? conn.getHeaderField("ETag") : null;
+            resourceKey = cache.setResourceKey(url.toExternalForm(), etag);
+            persistent = !resourceKey.equals(url.toExternalForm());
+        }
+        if (contentLength < 0 && lastResponsePartial) {
+            contentLength = parseContentLength(conn.getHeaderField("Content-Range"));
+        }
+
+        int len = (int) (end - start + 1);
+        byte[] bytes = new byte[len];
+        int n = 0;
+        try (InputStream is = conn.getInputStream()) {
+            // Any other successful response holds the whole resource, starting at byte 0
+            if (!lastResponsePartial) {
+                long skipped = 0;
+                while (skipped < start) {
+                    long count = is.skip(start - skipped);
+                    if (count <= 0) {
+                        break;
+                    }
+                    skipped += count;
+                }
+            }
+            while (n < len) {
+                int count = is.read(bytes, n, len - n);
+                if (count < 0) {
+                    break;
+                }
+                n += count;
+            }
+        } catch (EOFException e) {
+            // Treat as end of resource
+        }
+
+        if (n < len) {
+            if (contentLength < 0) {
+                contentLength = start + n;
+            }
+            byte[] tmp = new byte[n];
+            System.arraycopy(bytes, 0, tmp, 0, n);
+            bytes = tmp;
+        }
+        return bytes;
+    }
+
+    private byte[] handleUnsatisfiableRange(long start) {
+        if (contentLength < 0) {
+            contentLength = start;
+        }
+        return new byte[0];
+    }
+
+    /**
+     * Parse the total length from a Content-Range header, e.g. "bytes 0-999/12345".
+     *
+     * @return the length, or -1 if it is not specified
+     */
+    static long parseContentLength(String contentRange) {
+        if (contentRange != null) {
+            int idx = contentRange.lastIndexOf('/');
+            if (idx > 0) {
+                try {
+                    return Long.parseLong(contentRange.substring(idx + 1).trim());
+                } catch (NumberFormatException e) {
+                    // "*" -- length unknown
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Nothing to do, blocks are retained by the cache
+    }
+
+    @Override
+    public String getSource() {
+        return url.toExternalForm();
+    }
+}
@@ -28,6 +28,8 @@ package org.broad.igv.util.stream;
 import htsjdk.samtools.seekablestream.ISeekableStreamFactory;
 import htsjdk.samtools.seekablestream.SeekableFileStream;
 import htsjdk.samtools.seekablestream.SeekableStream;
+import org.broad.igv.prefs.Constants;
+import org.broad.igv.prefs.PreferencesManager;
 import org.broad.igv.util.HttpUtils;
 
 import java.io.File;
@@ -65,7 +67,11 @@ public class IGVSeekableStreamFactory implements ISeekableStreamFactory {
                 final URL url = new URL(path);
                 boolean useByteRange = HttpUtils.getInstance().useByteRange(url);
                 if (useByteRange) {
-                    is = new IGVSeekableHTTPStream(url);
+                    if (PreferencesManager.getPreferences().getAsBoolean(Constants.REMOTE_BLOCK_CACHE)) {
+                        is = new IGVSeekableCachedHTTPStream(url);
+                    } else {
+                        is = new IGVSeekableHTTPStream(url);
+                    }
                 } else {
                     is = new SeekableServiceStream(url);
                 }
@@ -73,7 +79,13 @@ public class IGVSeekableStreamFactory implements ISeekableStreamFactory {
                 final URL url = new URL(path);
                 is = new IGVSeekableFTPStream(url);
             } else {
-                is = new SeekableFileStream(new File(path));
+                File file = new File(path);
+                if (PreferencesManager.getPreferences().getAsBoolean(Constants.MAPPED_LOCAL_FILES) &&
+                        MappedSeekableStream.isMappable(file)) {
+                    is = new MappedSeekableStream(file);
+                } else {
+                    is = new SeekableFileStream(file);
+                }
             }
             return is;
         }
@@ -83,7 +95,13 @@ public class IGVSeekableStreamFactory implements ISeekableStreamFactory {
         return getBufferedStream(stream, IGVSeekableBufferedStream.DEFAULT_BUFFER_SIZE);
     }
 
+    /**
+     * Wrap the stream in a buffer.  Mapped streams are returned as is, buffering them would only add a copy.
+     */
     public SeekableStream getBufferedStream(SeekableStream stream, int bufferSize){
+        if (stream instanceof MappedSeekableStream) {
+            return stream;
+        }
         return new IGVSeekableBufferedStream(stream, bufferSize);
     }
 
@@ -0,0 +1,289 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.util.stream;
+
+import htsjdk.samtools.seekablestream.SeekableStream;
+import org.broad.igv.Globals;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A seekable stream over a memory-mapped local file.
+ * <p/>
+ * The file is mapped read-only in segments of at most 1 GB, so files larger than 2 GB are supported.  The
+ * {@code SeekableStream} methods share a single position and are synchronized.  The positional methods,
+ * {@link #read(long, byte[], int, int)}, {@link #readFully(long, byte[], int, int)} and {@link #slice(long, int)},
+ * don't touch the stream position and can be called from any number of threads concurrently.
+ * <p/>
+ * Only the indexed, read-only binary formats listed in {@link #MAPPED_EXTENSIONS} are mapped, see
+ * {@link #isMappable(File)}.  Reading a mapped page that is no longer in the file raises SIGBUS, which can crash
+ * the JVM, so every read first checks the range against the current size of the file and throws an
+ * {@code IOException} if the file has been truncated.
+ */
+public class MappedSeekableStream extends SeekableStream {
+
+    static final int DEFAULT_SEGMENT_SIZE = 1 << 30;
+
+    static final String[] MAPPED_EXTENSIONS = {".tdf", ".bw", ".bigwig", ".bb", ".bigbed", ".fa", ".fasta", ".fna"};
+
+    private static final AtomicLong mappedBytes = new AtomicLong();
+    private static final AtomicInteger openCount = new AtomicInteger();
+
+    private final File file;
+    private final long length;
+    private final int segmentSize;
+    private final FileChannel channel;
+    private volatile MappedByteBuffer[] segments;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private long position = 0;
+
+    public MappedSeekableStream(File file) throws IOException {
+        this(file, DEFAULT_SEGMENT_SIZE);
+    }
+
+    MappedSeekableStream(File file, int segmentSize) throws IOException {
+        this.file = file;
+        this.segmentSize = segmentSize;
+
+        // The channel is kept open to check the size of the file before reads
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            length = channel.size();
+            int nSegments = (int) ((length + segmentSize - 1) / segmentSize);
+            segments = new MappedByteBuffer[nSegments];
+            for (int i = 0; i < nSegments; i++) {
+                long offset = (long) i * segmentSize;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(segmentSize, length - offset));
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        mappedBytes.addAndGet(length);
+        openCount.incrementAndGet();
+    }
+
+    /**
+     * Return true if the file can be mapped: a local file in one of the {@link #MAPPED_EXTENSIONS} formats.  Files
+     * are not mapped on Windows, which prevents a mapped file from being deleted or replaced until the mapping is
+     * garbage collected.
+     */
+    public static boolean isMappable(File file) {
+        if (Globals.IS_WINDOWS || !file.isFile()) {
+            return false;
+        }
+        String name = file.getName().toLowerCase();
+        for (String ext : MAPPED_EXTENSIONS) {
+            if (name.endsWith(ext)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the total number of bytes currently mapped by open streams
+     */
+    public static long getMappedBytes() {
+        return mappedBytes.get();
+    }
+
+    /**
+     * @return the number of open mapped streams
+     */
+    public static int getOpenCount() {
+        return openCount.get();
+    }
+
+    /**
+     * Copy up to {@code len} bytes starting at file position {@code pos} into the array.  The stream position is
+     * not changed.
+     *
+     * @return the number of bytes copied, or -1 if {@code pos} is at or past the end of the file
+     */
+    public int read(long pos, byte[] b, int off, int len) throws IOException {
+        if (pos >= length) {
+            return -1;
+        }
+        len = (int) Math.min(len, length - pos);
+        checkAvailable(pos, len);
+        int copied = 0;
+        while (copied < len) {
+            long p = pos + copied;
+            ByteBuffer segment = getSegment(p);
+            int segmentOffset = (int) (p % segmentSize);
+            int n = Math.min(len - copied, segment.limit() - segmentOffset);
+            segment.position(segmentOffset);
+            segment.get(b, off + copied, n);
+            copied += n;
+        }
+        return copied;
+    }
+
+    /**
+     * Copy exactly {@code len} bytes starting at file position {@code pos}.  The stream position is not changed.
+     */
+    public void readFully(long pos, byte[] b, int off, int len) throws IOException {
+        if (read(pos, b, off, len) != len) {
+            throw new EOFException("Attempt to read past end of file: " + file.getPath());
+        }
+    }
+
+    /**
+     * Return the byte at file position {@code pos}.  The stream position is not changed, and nothing is allocated.
+     */
+    public byte get(long pos) throws IOException {
+        if (pos < 0 || pos >= length) {
+            throw new EOFException("Attempt to read past end of file: " + file.getPath());
+        }
+        MappedByteBuffer[] segments = this.segments;
+        if (segments == null) {
+            throw new IOException("Stream is closed: " + file.getPath());
+        }
+        checkAvailable(pos, 1);
+        // Absolute gets don't touch the buffer state, so the shared segment is safe to use from any thread
+        return segments[(int) (pos / segmentSize)].get((int) (pos % segmentSize));
+    }
+
+    /**
+     * Return a read-only buffer over {@code len} bytes starting at file position {@code pos}.  If the range lies
+     * within a single mapped segment the buffer is a view of the mapping and no bytes are copied.  The buffer
+     * has big-endian byte order.  The range is checked against the size of the file when the view is created,
+     * the view should not be held.
+     */
+    public ByteBuffer slice(long pos, int len) throws IOException {
+        if (pos < 0 || pos + len > length) {
+            throw new EOFException("Attempt to read past end of file: " + file.getPath());
+        }
+        checkAvailable(pos, len);
+        int segmentOffset = (int) (pos % segmentSize);
+        ByteBuffer segment = getSegment(pos);
+        if (segmentOffset + len <= segment.limit()) {
+            segment.position(segmentOffset);
+            segment.limit(segmentOffset + len);
+            return segment.slice().asReadOnlyBuffer();
+        } else {
+            byte[] bytes = new byte[len];
+            readFully(pos, bytes, 0, len);
+            return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+        }
+    }
+
+    /**
+     * Return a private view of the segment containing {@code pos}, so concurrent readers don't share buffer state.
+     */
+    private ByteBuffer getSegment(long pos) throws IOException {
+        MappedByteBuffer[] segments = this.segments;
+        if (segments == null) {
+            throw new IOException("Stream is closed: " + file.getPath());
+        }
+        return segments[(int) (pos / segmentSize)].duplicate();
+    }
+
+    /**
+     * Throw an IOException if the range is no longer in the file.  The size is that of the mapped file, even if
+     * it has since been replaced at its path.
+     */
+    private void checkAvailable(long pos, int len) throws IOException {
+        if (pos + len > channel.size()) {
+            throw new IOException("File truncated while mapped: " + file.getPath());
+        }
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        return position;
+    }
+
+    @Override
+    public synchronized void seek(long position) throws IOException {
+        this.position = position;
+    }
+
+    @Override
+    public synchronized long skip(long n) throws IOException {
+        long skipped = Math.max(0, Math.min(n, length - position));
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public synchronized int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int n = read(position, b, off, len);
+        if (n > 0) {
+            position += n;
+        }
+        return n;
+    }
+
+    @Override
+    public synchronized int read() throws IOException {
+        if (position >= length) {
+            return -1;
+        }
+        int b = get(position) & 0xff;
+        position++;
+        return b;
+    }
+
+    @Override
+    public synchronized boolean eof() throws IOException {
+        return position >= length;
+    }
+
+    @Override
+    public String getSource() {
+        return file.getAbsolutePath();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed.compareAndSet(false, true)) {
+            // Mapped memory is released when the buffers are garbage collected
+            segments = null;
+            mappedBytes.addAndGet(-length);
+            openCount.decrementAndGet();
+            channel.close();
+        }
+    }
+}
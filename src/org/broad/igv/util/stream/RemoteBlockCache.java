@@ -0,0 +1,269 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.util.stream;
+
+import org.apache.log4j.Logger;
+import org.broad.igv.DirectoryManager;
+import org.broad.igv.prefs.Constants;
+import org.broad.igv.prefs.IGVPreferences;
+import org.broad.igv.prefs.PreferencesManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of fixed-size blocks of remote resources, shared by all {@link IGVSeekableCachedHTTPStream} instances.
+ * <p/>
+ * Blocks are held in memory in an LRU map bounded by total bytes.  Blocks of resources with an ETag are also
+ * written to a directory under the IGV cache directory, keyed by url and ETag, so they survive restarts and are
+ * invalidated when the resource changes.  The disk cache is bounded by total bytes, oldest files are removed first.
+ */
+public class RemoteBlockCache {
+
+    private static Logger log = Logger.getLogger(RemoteBlockCache.class);
+
+    private static RemoteBlockCache instance;
+
+    private final long maxMemoryBytes;
+    private final File diskDirectory;
+    private final long maxDiskBytes;
+
+    private final LinkedHashMap<String, byte[]> memoryCache = new LinkedHashMap<>(256, 0.75f, true);
+    private long memoryBytes = 0;
+    private final AtomicLong diskBytes = new AtomicLong(-1);
+
+    // Resource keys (url + ETag) learned during this session
+    private final Map<String, String> resourceKeys = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public static synchronized RemoteBlockCache getInstance() {
+        if (instance == null) {
+            IGVPreferences prefs = PreferencesManager.getPreferences();
+            long memoryBytes = prefs.getAsInt(Constants.REMOTE_MEMORY_CACHE_MB) * 1000000L;
+            long diskBytes = prefs.getAsInt(Constants.REMOTE_DISK_CACHE_MB) * 1000000L;
+            File cacheDirectory = DirectoryManager.getCacheDirectory();
+            File blockDirectory = (cacheDirectory == null || diskBytes <= 0) ? null : new File(cacheDirectory, "blocks");
+            instance = new RemoteBlockCache(memoryBytes, blockDirectory, diskBytes);
+        }
+        return instance;
+    }
+
+    RemoteBlockCache(long maxMemoryBytes, File diskDirectory, long maxDiskBytes) {
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.maxDiskBytes = maxDiskBytes;
+        if (diskDirectory != null && !diskDirectory.exists() && !diskDirectory.mkdirs()) {
+            log.error("Could not create block cache directory: " + diskDirectory.getAbsolutePath());
+            diskDirectory = null;
+        }
+        this.diskDirectory = diskDirectory;
+    }
+
+    /**
+     * Return the cache key for the url, if its ETag has been seen in this session.
+     */
+    String getResourceKey(String url) {
+        return resourceKeys.get(url);
+    }
+
+    /**
+     * Record the ETag of a url.  A null ETag means blocks of the url are cached in memory only.
+     *
+     * @return the cache key of the resource
+     */
+    String setResourceKey(String url, String etag) {
+        String key = etag == null ? url : url + "#" + etag;
+        String previous = resourceKeys.put(url, key);
+        if (previous != null && !previous.equals(key)) {
+            log.info("Remote resource has changed: " + url);
+        }
+        return key;
+    }
+
+    /**
+     * @return the block, or null if it is not cached
+     */
+    byte[] get(String resourceKey, boolean persistent, long blockNumber) {
+        String key = resourceKey + "/" + blockNumber;
+        synchronized (memoryCache) {
+            byte[] block = memoryCache.get(key);
+            if (block != null) {
+                hits.incrementAndGet();
+                return block;
+            }
+        }
+        if (persistent && diskDirectory != null) {
+            File file = getBlockFile(resourceKey, blockNumber);
+            if (file.exists()) {
+                try {
+                    byte[] block = Files.readAllBytes(file.toPath());
+                    file.setLastModified(System.currentTimeMillis());
+                    putMemory(key, block);
+                    diskHits.incrementAndGet();
+                    return block;
+                } catch (IOException e) {
+                    log.error("Error reading cached block: " + file.getAbsolutePath(), e);
+                }
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    void put(String resourceKey, boolean persistent, long blockNumber, byte[] block) {
+        putMemory(resourceKey + "/" + blockNumber, block);
+        if (persistent && diskDirectory != null) {
+            writeBlock(getBlockFile(resourceKey, blockNumber), block);
+        }
+    }
+
+    private void putMemory(String key, byte[] block) {
+        synchronized (memoryCache) {
+            byte[] previous = memoryCache.put(key, block);
+            if (previous != null) {
+                memoryBytes -= previous.length;
+            }
+            memoryBytes += block.length;
+            Iterator<byte[]> iter = memoryCache.values().iterator();
+            while (memoryBytes > maxMemoryBytes && iter.hasNext()) {
+                memoryBytes -= iter.next().length;
+                iter.remove();
+            }
+        }
+    }
+
+    private void writeBlock(File file, byte[] block) {
+        if (diskBytes.get() < 0) {
+            initDiskBytes();
+        }
+        try {
+            // Write to a temporary file first, so concurrent readers never see a partial block
+            File tmp = File.createTempFile("block", ".tmp", diskDirectory);
+            Files.write(tmp.toPath(), block);
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (diskBytes.addAndGet(block.length) > maxDiskBytes) {
+                trimDisk();
+            }
+        } catch (IOException e) {
+            log.error("Error writing cached block: " + file.getAbsolutePath(), e);
+        }
+    }
+
+    private synchronized void initDiskBytes() {
+        if (diskBytes.get() < 0) {
+            long total = 0;
+            File[] files = diskDirectory.listFiles(f -> !f.getName().endsWith(".tmp"));
+            if (files != null) {
+                for (File f : files) {
+                    total += f.length();
+                }
+            }
+            diskBytes.set(total);
+        }
+    }
+
+    /**
+     * Remove the least recently used block files until the disk cache is at 90% of its budget.
+     */
+    private synchronized void trimDisk() {
+        if (diskBytes.get() <= maxDiskBytes) {
+            return;
+        }
+        File[] files = diskDirectory.listFiles(f -> !f.getName().endsWith(".tmp"));
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        long target = (long) (maxDiskBytes * 0.9);
+        long total = 0;
+        for (File f : files) {
+            total += f.length();
+        }
+        for (File f : files) {
+            if (total <= target) {
+                break;
+            }
+            long len = f.length();
+            if (f.delete()) {
+                total -= len;
+            }
+        }
+        diskBytes.set(total);
+    }
+
+    private File getBlockFile(String resourceKey, long blockNumber) {
+        return new File(diskDirectory, md5(resourceKey) + "_" + blockNumber);
+    }
+
+    private static String md5(String s) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(s.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void clear() {
+        synchronized (memoryCache) {
+            memoryCache.clear();
+            memoryBytes = 0;
+        }
+        resourceKeys.clear();
+    }
+
+    public long getMemoryBytes() {
+        synchronized (memoryCache) {
+            return memoryBytes;
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.variant;
+
+import htsjdk.variant.variantcontext.GenotypesContext;
+import org.broad.igv.variant.vcf.VCFVariant;
+
+import java.util.*;
+
+/**
+ * The genotypes of a window of variants, one row per variant and one column per sample, held as primitive arrays.
+ * <p/>
+ * Genotype types are coded in a byte, read depth (DP) and genotype quality (GQ) in ints.  A row is decoded when
+ * first accessed, so the genotypes of variants never drawn are never decoded.  Rows of VCF variants are decoded
+ * from the htsjdk genotypes by index when the columns follow the file's sample order, without creating
+ * {@link Genotype} objects.
+ */
+public class GenotypeMatrix {
+
+    // Genotype types, in the order of VariantRenderer.getGenotypeColor
+    public static final byte NO_CALL = 0;
+    public static final byte HOM_REF = 1;
+    public static final byte HOM_VAR = 2;
+    public static final byte HET = 3;
+    public static final byte OTHER = 4;
+    public static final byte MISSING = 5;   // no genotype for the sample
+
+    private final List<String> samples;
+    private final Map<String, Integer> columns;
+    private final List<? extends Variant> variants;
+    private final Map<Variant, Integer> rowIndex;
+    private final Row[] rows;
+
+    /**
+     * @param samples  sample names, the columns.  Decoding is fastest in the order of the file's samples.
+     * @param variants the variants, the rows
+     */
+    public GenotypeMatrix(List<String> samples, List<? extends Variant> variants) {
+        this.samples = new ArrayList<>(samples);
+        this.columns = new HashMap<>(samples.size() * 2);
+        for (int i = 0; i < samples.size(); i++) {
+            columns.put(samples.get(i), i);
+        }
+        this.variants = variants;
+        this.rowIndex = new IdentityHashMap<>(variants.size());
+        for (int i = 0; i < variants.size(); i++) {
+            rowIndex.put(variants.get(i), i);
+        }
+        this.rows = new Row[variants.size()];
+    }
+
+    public List<String> getSamples() {
+        return Collections.unmodifiableList(samples);
+    }
+
+    public int getRowCount() {
+        return rows.length;
+    }
+
+    /**
+     * @return the row of the variant, -1 if it is not in the matrix
+     */
+    public int getRow(Variant variant) {
+        Integer row = rowIndex.get(variant);
+        return row == null ? -1 : row;
+    }
+
+    /**
+     * @return the column of the sample, -1 if it is not in the matrix
+     */
+    public int getColumn(String sample) {
+        Integer column = columns.get(sample);
+        return column == null ? -1 : column;
+    }
+
+    /**
+     * @return the columns of the samples, -1 for samples not in the matrix
+     */
+    public int[] getColumns(List<String> samples) {
+        int[] result = new int[samples.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = getColumn(samples.get(i));
+        }
+        return result;
+    }
+
+    public byte getType(int row, int column) {
+        return column < 0 ? MISSING : getRowData(row).types[column];
+    }
+
+    /**
+     * @return the read depth (DP), -1 if not recorded
+     */
+    public int getDepth(int row, int column) {
+        int[] depths = getRowData(row).depths;
+        return depths == null || column < 0 ? -1 : depths[column];
+    }
+
+    /**
+     * @return the genotype quality (GQ), -1 if not recorded
+     */
+    public int getQuality(int row, int column) {
+        int[] qualities = getRowData(row).qualities;
+        return qualities == null || column < 0 ? -1 : qualities[column];
+    }
+
+    private synchronized Row getRowData(int row) {
+        Row data = rows[row];
+        if (data == null) {
+            Variant variant = variants.get(row);
+            data = variant instanceof VCFVariant ?
+                    decode(((VCFVariant) variant).getGenotypes()) :
+                    decode(variant);
+            rows[row] = data;
+        }
+        return data;
+    }
+
+    private Row decode(GenotypesContext genotypes) {
+        Row row = new Row(samples.size());
+        for (int c = 0; c < samples.size(); c++) {
+            htsjdk.variant.variantcontext.Genotype genotype = null;
+            if (c < genotypes.size()) {
+                genotype = genotypes.get(c);
+            }
+            if (genotype == null || !genotype.getSampleName().equals(samples.get(c))) {
+                genotype = genotypes.get(samples.get(c));
+            }
+            if (genotype == null) {
+                row.types[c] = MISSING;
+            } else {
+                row.types[c] = getType(genotype);
+                row.setDepth(c, genotype.hasDP() ? genotype.getDP() : -1);
+                row.setQuality(c, genotype.hasGQ() ? genotype.getGQ() : -1);
+            }
+        }
+        return row;
+    }
+
+    private Row decode(Variant variant) {
+        Row row = new Row(samples.size());
+        for (int c = 0; c < samples.size(); c++) {
+            Genotype genotype = variant.getGenotype(samples.get(c));
+            if (genotype == null) {
+                row.types[c] = MISSING;
+            } else {
+                row.types[c] = getType(genotype);
+                double depth = genotype.getAttributeAsDouble("DP");
+                row.setDepth(c, Double.isNaN(depth) ? -1 : (int) depth);
+                row.setQuality(c, (int) genotype.getPhredScaledQual());
+            }
+        }
+        return row;
+    }
+
+    public static byte getType(Genotype genotype) {
+        if (genotype.isNoCall()) {
+            return NO_CALL;
+        } else if (genotype.isHomRef()) {
+            return HOM_REF;
+        } else if (genotype.isHomVar()) {
+            return HOM_VAR;
+        } else if (genotype.isHet()) {
+            return HET;
+        }
+        return OTHER;
+    }
+
+    static byte getType(htsjdk.variant.variantcontext.Genotype genotype) {
+        if (genotype.isNoCall()) {
+            return NO_CALL;
+        } else if (genotype.isHomRef()) {
+            return HOM_REF;
+        } else if (genotype.isHomVar()) {
+            return HOM_VAR;
+        } else if (genotype.isHet()) {
+            return HET;
+        }
+        return OTHER;
+    }
+
+    /**
+     * The genotypes of a variant.  The depth and quality arrays are only allocated if some sample has a value.
+     */
+    private static class Row {
+
+        final byte[] types;
+        int[] depths;
+        int[] qualities;
+
+        Row(int sampleCount) {
+            types = new byte[sampleCount];
+        }
+
+        void setDepth(int column, int depth) {
+            if (depth >= 0 && depths == null) {
+                depths = newArray();
+            }
+            if (depths != null) {
+                depths[column] = depth;
+            }
+        }
+
+        void setQuality(int column, int quality) {
+            if (quality >= 0 && qualities == null) {
+                qualities = newArray();
+            }
+            if (qualities != null) {
+                qualities[column] = quality;
+            }
+        }
+
+        private int[] newArray() {
+            int[] array = new int[types.length];
+            Arrays.fill(array, -1);
+            return array;
+        }
+    }
+}
@@ -216,7 +216,7 @@ public class VariantMenu extends IGVPopupMenu {
         if (variant != null) {
             item.addActionListener(new ActionListener() {
                 public void actionPerformed(ActionEvent evt) {
-                    GenotypeComparator compare = new GenotypeComparator(variant);
+                    GenotypeComparator compare = new GenotypeComparator(track.getGenotypeMatrix(variant));
                     genotypeSortingDirection = !genotypeSortingDirection;
                     track.sortSamples(compare);
                     IGV.getInstance().getContentPane().repaint();
@@ -268,7 +268,7 @@ public class VariantMenu extends IGVPopupMenu {
         if (variant != null) {
             item.addActionListener(new ActionListener() {
                 public void actionPerformed(ActionEvent evt) {
-                    DepthComparator compare = new DepthComparator(variant);
+                    DepthComparator compare = new DepthComparator(track.getGenotypeMatrix(variant));
                     depthSortingDirection = !depthSortingDirection;
                     track.sortSamples(compare);
                     IGV.getInstance().getContentPane().repaint();
@@ -286,7 +286,7 @@ public class VariantMenu extends IGVPopupMenu {
             if (quality > -1) {
                 item.addActionListener(new ActionListener() {
                     public void actionPerformed(ActionEvent evt) {
-                        QualityComparator compare = new QualityComparator(variant);
+                        QualityComparator compare = new QualityComparator(track.getGenotypeMatrix(variant));
                         qualitySortingDirection = !qualitySortingDirection;
                         track.sortSamples(compare);
                         IGV.getInstance().getContentPane().repaint();
@@ -377,18 +377,21 @@ public class VariantMenu extends IGVPopupMenu {
     }
 
 
+    /**
+     * Compares samples by their genotype of a single variant.
+     */
     static class GenotypeComparator implements Comparator<String> {
 
-        Variant variant;
+        GenotypeMatrix matrix;
 
-        GenotypeComparator(Variant variant) {
-            this.variant = variant;
+        GenotypeComparator(GenotypeMatrix matrix) {
+            this.matrix = matrix;
         }
 
         public int compare(String e1, String e2) {
 
-            int genotype1 = classifyGenotype(variant.getGenotype(e1));
-            int genotype2 = classifyGenotype(variant.getGenotype(e2));
+            int genotype1 = classifyGenotype(matrix.getType(0, matrix.getColumn(e1)));
+            int genotype2 = classifyGenotype(matrix.getType(0, matrix.getColumn(e2)));
 
             if (genotype2 == genotype1) {
                 return 0;
@@ -400,54 +403,60 @@ public class VariantMenu extends IGVPopupMenu {
         }
 
 
-        private int classifyGenotype(Genotype genotype) {
+        private int classifyGenotype(byte type) {
 
-            if (genotype.isNoCall()) {
-                return genotypeSortingDirection ? 1 : 10;
-            } else if (genotype.isHomVar()) {
-                return 4;
-            } else if (genotype.isHet()) {
-                return 3;
-            } else if (genotype.isHomRef()) {
-                return genotypeSortingDirection ? 2 : 9;
+            switch (type) {
+                case GenotypeMatrix.NO_CALL:
+                    return genotypeSortingDirection ? 1 : 10;
+                case GenotypeMatrix.HOM_VAR:
+                    return 4;
+                case GenotypeMatrix.HET:
+                    return 3;
+                case GenotypeMatrix.HOM_REF:
+                    return genotypeSortingDirection ? 2 : 9;
+                default:
+                    return -1; //Unknown
             }
-            return -1; //Unknown
         }
     }
 
 
     static class DepthComparator implements Comparator<String> {
 
-        Variant variant;
+        GenotypeMatrix matrix;
 
-        DepthComparator(Variant variant) {
-            this.variant = variant;
+        DepthComparator(GenotypeMatrix matrix) {
+            this.matrix = matrix;
         }
 
         public int compare(String s1, String s2) {
 
-
-            double readDepth1 = variant.getGenotype(s1).getAttributeAsDouble("DP");
-            double readDepth2 = variant.getGenotype(s2).getAttributeAsDouble("DP");
+            double readDepth1 = getDepth(s1);
+            double readDepth2 = getDepth(s2);
 
             int sign = depthSortingDirection ? -1 : 1;
             return sign * Double.compare(readDepth1, readDepth2);
 
         }
+
+        private double getDepth(String sample) {
+            int depth = matrix.getDepth(0, matrix.getColumn(sample));
+            return depth < 0 ? Double.NaN : depth;
+        }
     }
 
     static class QualityComparator implements Comparator<String> {
 
-        Variant variant;
+        GenotypeMatrix matrix;
 
-        QualityComparator(Variant variant) {
-            this.variant = variant;
+        QualityComparator(GenotypeMatrix matrix) {
+            this.matrix = matrix;
         }
 
         public int compare(String s1, String s2) {
 
-            double qual1 = variant.getGenotype(s1).getPhredScaledQual();
-            double qual2 = variant.getGenotype(s2).getPhredScaledQual();
+            double qual1 = matrix.getQuality(0, matrix.getColumn(s1));
+            double qual2 = matrix.getQuality(0, matrix.getColumn(s2));
 
             int sign = qualitySortingDirection ? -1 : 1;
             return sign * Double.compare(qual1, qual2);
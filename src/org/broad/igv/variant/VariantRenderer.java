@@ -95,7 +95,7 @@ public class VariantRenderer { //extends FeatureRenderer {
     /**
      * Check colors against user prefs and update if neccessary
      */
-    private void updateColors() {
+    void updateColors() {
 
         final IGVPreferences prefMgr = PreferencesManager.getPreferences();
 
@@ -295,6 +295,49 @@ public class VariantRenderer { //extends FeatureRenderer {
         }
     }
 
+    /**
+     * Render the genotype of a sample from a genotype matrix.  Equivalent to {@link #renderGenotypeBandSNP}, without
+     * creating a Genotype, except when coloring by methylation rate which needs the genotype attributes.  Colors
+     * are not checked against the preferences, call {@link #updateColors()} once before rendering the genotypes.
+     *
+     * @param matrix the genotypes of the variants being rendered
+     * @param row    the variant's row in the matrix
+     * @param column the sample's column in the matrix
+     */
+    public void renderGenotypeBand(GenotypeMatrix matrix, int row, int column, Variant variant, RenderContext context,
+                                   Rectangle bandRectangle, int pX0, int dX,
+                                   VariantTrack.ColorMode coloring, boolean hideFiltered) {
+
+        if (coloring == VariantTrack.ColorMode.METHYLATION_RATE || row < 0) {
+            String sample = column < 0 ? null : matrix.getSamples().get(column);
+            renderGenotypeBandSNP(variant, context, bandRectangle, pX0, dX, sample, coloring, hideFiltered);
+            return;
+        }
+
+        byte type = matrix.getType(row, column);
+        if (type == GenotypeMatrix.MISSING) {
+            log.error("Genotype not found for sample " + (column < 0 ? null : matrix.getSamples().get(column)));
+            return;
+        }
+
+        boolean isFiltered = variant.isFiltered() && hideFiltered;
+        Color color = coloring == VariantTrack.ColorMode.GENOTYPE ? getGenotypeColor(type, isFiltered) : colorNoCall;
+
+        int pY = (int) bandRectangle.getY();
+        int dY = (int) bandRectangle.getHeight();
+        int y0 = track.getDisplayMode() == Track.DisplayMode.EXPANDED ? pY + 1 : pY;
+        int h = Math.max(1, track.getDisplayMode() == Track.DisplayMode.EXPANDED ? dY - 2 : dY);
+
+        Graphics2D g = (Graphics2D) context.getGraphics2D("GENOTYPE");
+        g.setColor(color);
+        if (coloring == VariantTrack.ColorMode.GENOTYPE) {
+            g.fillRect(pX0, y0, dX, h);
+        } else {
+            g.fillRect(pX0, y0, (dX / 2), h);
+            g.fillRect(pX0 + (dX / 2), y0, (dX / 2), h);
+        }
+    }
+
     private Color convertMethylationRateToColor(float mr) {
         Color color;
         /*
@@ -319,16 +362,25 @@ public class VariantRenderer { //extends FeatureRenderer {
     }
 
     public Color getGenotypeColor(Genotype genotype, boolean isFiltered) {
-        if (genotype.isNoCall()) {
-            return isFiltered ? colorNoCallAlpha : colorNoCall;
-        } else if (genotype.isHomRef()) {
-            return isFiltered ? colorHomRefAlpha : colorHomRef;
-        } else if (genotype.isHomVar()) {
-            return isFiltered ? colorHomVarAlpha : colorHomVar;
-        } else if (genotype.isHet()) {
-            return isFiltered ? colorHetAlpha : colorHet;
+        return getGenotypeColor(GenotypeMatrix.getType(genotype), isFiltered);
+    }
+
+    /**
+     * @param type a {@link GenotypeMatrix} genotype type
+     */
+    public Color getGenotypeColor(byte type, boolean isFiltered) {
+        switch (type) {
+            case GenotypeMatrix.NO_CALL:
+                return isFiltered ? colorNoCallAlpha : colorNoCall;
+            case GenotypeMatrix.HOM_REF:
+                return isFiltered ? colorHomRefAlpha : colorHomRef;
+            case GenotypeMatrix.HOM_VAR:
+                return isFiltered ? colorHomVarAlpha : colorHomVar;
+            case GenotypeMatrix.HET:
+                return isFiltered ? colorHetAlpha : colorHet;
+            default:
+                return Color.white;
         }
-        return Color.white;
     }
 
     private void drawCenteredText(Graphics2D g, char[] chars, int x, int y,
@@ -183,6 +183,17 @@ public class VariantTrack extends FeatureTrack implements IGVEventObserver {
      */
     Map<String, String> alignmentFiles;
 
+    /**
+     * Samples in file order, the columns of genotype matrices
+     */
+    private List<String> fileSamples;
+
+    /**
+     * Genotypes of the packed features rendered, decoded as rows are drawn
+     */
+    private final Map<PackedFeatures, GenotypeMatrix> genotypeMatrices =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
     public void setRenderer(VariantRenderer renderer) {
         this.renderer = renderer;
     }
@@ -214,6 +225,7 @@ public class VariantTrack extends FeatureTrack implements IGVEventObserver {
                 ColorMode.ALLELE_FRACTION;
 
         this.allSamples = samples;
+        this.fileSamples = new ArrayList<>(samples);
 
         // this handles the new attribute grouping mechanism:
         setupGroupsFromAttributes();
@@ -471,6 +483,17 @@ public class VariantTrack extends FeatureTrack implements IGVEventObserver {
 
         List<PackedFeatures.FeatureRow> rows = packedFeatures.getRows();
 
+        GenotypeMatrix matrix = getGenotypeMatrix(packedFeatures);
+        List<int[]> sampleColumns = new ArrayList<>();
+        if (grouped) {
+            for (List<String> samples : samplesByGroups.values()) {
+                sampleColumns.add(matrix.getColumns(samples));
+            }
+        } else {
+            sampleColumns.add(matrix.getColumns(allSamples));
+        }
+        renderer.updateColors();
+
         int overallFeatureRectHeight = getVariantsHeight();
         int overallSampleRectHeight = trackRectangle.height - overallFeatureRectHeight;
         Rectangle overallSampleRect = new Rectangle(trackRectangle.x, top + overallFeatureRectHeight, trackRectangle.width, overallSampleRectHeight);
@@ -529,7 +552,8 @@ public class VariantTrack extends FeatureTrack implements IGVEventObserver {
                         lastEndX = x + w - 1;
                     }
 
-                    renderSamples(g2D, visibleRectangle, variant, context, overallSampleRect, x, w);
+                    renderSamples(visibleRectangle, variant, context, overallSampleRect, x, w,
+                            matrix, sampleColumns);
                     boolean isSelected = selectedVariant != null && selectedVariant == variant;
                     if (isSelected) {
                         Graphics2D selectionGraphics = context.getGraphic2DForColor(Color.black);
@@ -566,29 +590,44 @@ public class VariantTrack extends FeatureTrack implements IGVEventObserver {
         }
     }
 
-    private void renderSamples(Graphics2D g2D, Rectangle visibleRectangle, Variant variant, RenderContext context, Rectangle overallSampleRect, int x, int w) {
+    private void renderSamples(Rectangle visibleRectangle, Variant variant, RenderContext context,
+                               Rectangle overallSampleRect, int x, int w,
+                               GenotypeMatrix matrix, List<int[]> sampleColumns) {
 
+        int row = matrix.getRow(variant);
         Rectangle tmpRect = new Rectangle(overallSampleRect);
         tmpRect.height = getGenotypeBandHeight();
-        if (grouped) {
-            for (Map.Entry<String, List<String>> entry : samplesByGroups.entrySet()) {
-                for (String sample : entry.getValue()) {
-                    if (overallSampleRect.intersects(visibleRectangle)) {
-                        renderer.renderGenotypeBandSNP(variant, context, tmpRect, x, w, sample, coloring, hideFiltered);
-                    }
-                    tmpRect.y += tmpRect.height;
+        for (int[] columns : sampleColumns) {
+            for (int column : columns) {
+                if (tmpRect.intersects(visibleRectangle)) {
+                    renderer.renderGenotypeBand(matrix, row, column, variant, context, tmpRect, x, w, coloring, hideFiltered);
                 }
+                tmpRect.y += tmpRect.height;
+            }
+            if (grouped) {
                 tmpRect.y += GROUP_BORDER_WIDTH;
             }
-        } else {
+        }
+    }
 
-            for (String sample : allSamples) {
+    /**
+     * Return a genotype matrix of a single variant, e.g. to sort samples by their genotypes.
+     */
+    GenotypeMatrix getGenotypeMatrix(Variant variant) {
+        return new GenotypeMatrix(fileSamples, Collections.singletonList(variant));
+    }
 
-                if (tmpRect.intersects(visibleRectangle)) {
-                    renderer.renderGenotypeBandSNP(variant, context, tmpRect, x, w, sample, coloring, hideFiltered);
-                }
-                tmpRect.y += tmpRect.height;
+    /**
+     * Return the genotype matrix of packed features, with a column per sample in file order.
+     */
+    GenotypeMatrix getGenotypeMatrix(PackedFeatures packedFeatures) {
+        synchronized (genotypeMatrices) {
+            GenotypeMatrix matrix = genotypeMatrices.get(packedFeatures);
+            if (matrix == null) {
+                matrix = new GenotypeMatrix(fileSamples, (List<Variant>) packedFeatures.getFeatures());
+                genotypeMatrices.put(packedFeatures, matrix);
             }
+            return matrix;
         }
     }
 
@@ -0,0 +1,426 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.variant.vcf;
+
+import htsjdk.tribble.FeatureCodec;
+import htsjdk.tribble.readers.PositionalBufferedStream;
+import htsjdk.variant.bcf2.BCF2Utils;
+import htsjdk.variant.variantcontext.GenotypesContext;
+import htsjdk.variant.variantcontext.LazyGenotypesContext;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFContigHeaderLine;
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFHeaderLineType;
+import htsjdk.variant.vcf.VCFInfoHeaderLine;
+import org.broad.igv.variant.Allele;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+
+/**
+ * A variant read from a BCF2 record, holding the raw record bytes.
+ * <p/>
+ * The site fields (position, alleles, ID, QUAL and FILTER) are parsed from the shared block when the record is
+ * read.  INFO fields are parsed on first use, e.g. for the allele frequency color mode or a popup, and the htsjdk
+ * {@link VariantContext} with the per-sample FORMAT fields only when the genotypes are needed.  Values are
+ * decoded as htsjdk's BCF2Codec does, so the variant is indistinguishable from one wrapping the codec's context.
+ */
+public class BCF2Variant extends VCFVariant {
+
+    // BCF2 typed value types
+    private static final int TYPE_MISSING = 0;
+    private static final int TYPE_INT8 = 1;
+    private static final int TYPE_INT16 = 2;
+    private static final int TYPE_INT32 = 3;
+    private static final int TYPE_FLOAT = 5;
+    private static final int TYPE_CHAR = 7;
+
+    private static final int FLOAT_MISSING = 0x7F800001;
+    private static final int FLOAT_END_OF_VECTOR = 0x7F800002;
+
+    private final Decoder decoder;
+    private final byte[] shared;
+    private final byte[] indiv;
+
+    private final int pos;          // 0-based
+    private final int referenceLength;
+    private final float qual;
+    private final String id;
+    private final String reference;
+    private final String[] alternates;
+    private final Set<String> filters;
+    private final int infoOffset;
+    private final int infoCount;
+
+    private Map<String, Object> attributes;
+    private String type;
+    private int start = -1;
+
+    /**
+     * @param decoder the file's decoder
+     * @param shared  the record's shared (site) block
+     * @param indiv   the record's individual (genotype) block
+     * @param chr     the canonical chromosome name
+     */
+    public BCF2Variant(Decoder decoder, byte[] shared, byte[] indiv, String chr) {
+        super(chr);
+        this.decoder = decoder;
+        this.shared = shared;
+        this.indiv = indiv;
+
+        ByteBuffer buffer = ByteBuffer.wrap(shared).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.getInt();    // CHROM, see Decoder.getContig
+        pos = buffer.getInt();
+        referenceLength = buffer.getInt();
+        qual = buffer.getFloat();
+        int nAlleleInfo = buffer.getInt();
+        buffer.getInt();    // n_fmt_sample
+        int alleleCount = nAlleleInfo >>> 16;
+        infoCount = nAlleleInfo & 0xffff;
+
+        String idString = readString(buffer);
+        id = idString == null ? "." : idString;
+
+        reference = alleleCount > 0 ? readString(buffer) : null;
+        // An empty alternate allele, written for a VCF "." ALT, is no allele
+        List<String> alts = new ArrayList<>(Math.max(0, alleleCount - 1));
+        for (int i = 1; i < alleleCount; i++) {
+            String alt = readString(buffer);
+            if (alt != null) alts.add(alt);
+        }
+        alternates = alts.toArray(new String[alts.size()]);
+
+        // PASS, or no filters at all, reads as unfiltered
+        Set<String> filterSet = null;
+        for (Object index : readValues(buffer)) {
+            String filter = decoder.dictionary.get((Integer) index);
+            if (!filter.equals("PASS")) {
+                if (filterSet == null) filterSet = new LinkedHashSet<>();
+                filterSet.add(filter);
+            }
+        }
+        filters = filterSet == null ? Collections.<String>emptySet() : Collections.unmodifiableSet(filterSet);
+        infoOffset = buffer.position();
+    }
+
+    @Override
+    public String getID() {
+        return id;
+    }
+
+    @Override
+    public boolean isFiltered() {
+        return !filters.isEmpty();
+    }
+
+    @Override
+    public Collection<String> getFilters() {
+        return filters;
+    }
+
+    @Override
+    public String getReference() {
+        return reference + "*";
+    }
+
+    @Override
+    public List<Allele> getAlternateAlleles() {
+        if (alternateAlleles == null) {
+            List<Allele> tmp = new ArrayList<Allele>(alternates.length);
+            for (String alt : alternates) {
+                tmp.add(new VCFAllele(alt.getBytes()));
+            }
+            alternateAlleles = tmp;
+        }
+        return alternateAlleles;
+    }
+
+    @Override
+    public double getPhredScaledQual() {
+        // A missing QUAL reads as htsjdk's "no error estimate"
+        return Float.floatToRawIntBits(qual) == FLOAT_MISSING ? -10.0 : qual;
+    }
+
+    /**
+     * Computed as htsjdk does for plain base alleles, from the full context otherwise.
+     */
+    @Override
+    public String getType() {
+        if (type == null) {
+            VariantContext.Type t = getSiteType();
+            type = t == null ? super.getType() : t.toString();
+        }
+        return type;
+    }
+
+    private VariantContext.Type getSiteType() {
+        if (!isBases(reference)) {
+            return null;
+        }
+        if (alternates.length == 0) {
+            return VariantContext.Type.NO_VARIATION;
+        }
+        VariantContext.Type siteType = null;
+        for (String alt : alternates) {
+            if (!isBases(alt)) {
+                return null;
+            }
+            VariantContext.Type altType = alt.length() != reference.length() ? VariantContext.Type.INDEL :
+                    alt.length() == 1 ? VariantContext.Type.SNP : VariantContext.Type.MNP;
+            if (siteType == null) {
+                siteType = altType;
+            } else if (siteType != altType) {
+                return VariantContext.Type.MIXED;
+            }
+        }
+        return siteType;
+    }
+
+    private static boolean isBases(String allele) {
+        if (allele == null || allele.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < allele.length(); i++) {
+            switch (allele.charAt(i)) {
+                case 'A': case 'C': case 'G': case 'T': case 'N':
+                case 'a': case 'c': case 'g': case 't': case 'n':
+                    break;
+                default:
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int getStart() {
+        if (start < 0) {
+            String t = getType();
+            int prefixLength = t.equals("INDEL") || t.equals("MIXED") ?
+                    findCommonPrefixLength(reference, getAlternateAlleles()) : 0;
+            start = pos + prefixLength;
+        }
+        return start;
+    }
+
+    @Override
+    public int getEnd() {
+        return pos + referenceLength;
+    }
+
+    @Override
+    public String getPositionString() {
+        return referenceLength == 1 ? String.valueOf(pos + 1) : String.format("%d-%d", pos + 1, pos + referenceLength);
+    }
+
+    @Override
+    public String getAttributeAsString(String key) {
+        // As htsjdk formats attributes, lists in brackets
+        Object x = getAttributes().get(key);
+        return x == null ? null : String.valueOf(x);
+    }
+
+    @Override
+    public synchronized Map<String, Object> getAttributes() {
+        if (attributes == null) {
+            attributes = decodeInfo();
+        }
+        return attributes;
+    }
+
+    private Map<String, Object> decodeInfo() {
+        if (infoCount == 0) {
+            return Collections.emptyMap();
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(shared).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(infoOffset);
+        Map<String, Object> info = new HashMap<>(infoCount * 2);
+        for (int i = 0; i < infoCount; i++) {
+            String key = decoder.dictionary.get(((Number) readSingleValue(buffer)).intValue());
+            Object value = readValue(buffer);
+            VCFInfoHeaderLine headerLine = decoder.header.getInfoHeaderLine(key);
+            if (headerLine != null && headerLine.getType() == VCFHeaderLineType.Flag) {
+                value = Boolean.TRUE;
+            }
+            info.put(key, value);
+        }
+        return Collections.unmodifiableMap(info);
+    }
+
+    /**
+     * Decode the full record, including the genotypes, on first use.
+     */
+    @Override
+    public synchronized VariantContext getVariantContext() {
+        if (variantContext == null) {
+            variantContext = decoder.decode(shared, indiv);
+        }
+        return variantContext;
+    }
+
+    /**
+     * Read a typed string, null if empty
+     */
+    private static String readString(ByteBuffer buffer) {
+        Object value = readValue(buffer);
+        return value == null ? null : value.toString();
+    }
+
+    /**
+     * Read a typed value with the size given by the type descriptor.  Missing values are skipped, as by htsjdk.
+     *
+     * @return null, a single value, a list of values, or a string
+     */
+    private static Object readValue(ByteBuffer buffer) {
+        int descriptor = buffer.get() & 0xff;
+        int type = descriptor & 0x0f;
+        int size = descriptor >> 4;
+        if (size == 15) {
+            size = ((Number) readSingleValue(buffer)).intValue();
+        }
+        if (size == 0 || type == TYPE_MISSING) {
+            return null;
+        }
+        if (type == TYPE_CHAR) {
+            return readChars(buffer, size);
+        }
+        if (size == 1) {
+            return readPrimitive(buffer, type);
+        }
+        List<Object> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Object value = readPrimitive(buffer, type);
+            if (value != null) values.add(value);
+        }
+        return values.isEmpty() ? null : values;
+    }
+
+    private static List<Object> readValues(ByteBuffer buffer) {
+        Object value = readValue(buffer);
+        return value == null ? Collections.emptyList() :
+                value instanceof List ? (List<Object>) value : Collections.singletonList(value);
+    }
+
+    private static Object readSingleValue(ByteBuffer buffer) {
+        int type = buffer.get() & 0x0f;
+        return readPrimitive(buffer, type);
+    }
+
+    private static Object readPrimitive(ByteBuffer buffer, int type) {
+        switch (type) {
+            case TYPE_INT8: {
+                byte v = buffer.get();
+                return v == Byte.MIN_VALUE || v == Byte.MIN_VALUE + 1 ? null : Integer.valueOf(v);
+            }
+            case TYPE_INT16: {
+                short v = buffer.getShort();
+                return v == Short.MIN_VALUE || v == Short.MIN_VALUE + 1 ? null : Integer.valueOf(v);
+            }
+            case TYPE_INT32: {
+                int v = buffer.getInt();
+                return v == Integer.MIN_VALUE || v == Integer.MIN_VALUE + 1 ? null : Integer.valueOf(v);
+            }
+            case TYPE_FLOAT: {
+                int bits = buffer.getInt();
+                return bits == FLOAT_MISSING || bits == FLOAT_END_OF_VECTOR ? null :
+                        Double.valueOf(Float.intBitsToFloat(bits));
+            }
+            default:
+                throw new IllegalArgumentException("Unexpected BCF2 type: " + type);
+        }
+    }
+
+    private static Object readChars(ByteBuffer buffer, int size) {
+        int offset = buffer.position();
+        buffer.position(offset + size);
+        int length = 0;
+        while (length < size && buffer.array()[offset + length] != 0) {
+            length++;
+        }
+        if (length == 0) {
+            return null;
+        }
+        String s = new String(buffer.array(), offset, length);
+        return BCF2Utils.isCollapsedString(s) ? BCF2Utils.explodeStringList(s) : s;
+    }
+
+    /**
+     * The header dictionaries of a BCF2 file, and the htsjdk codec used to decode full records.
+     */
+    public static class Decoder {
+
+        private final FeatureCodec<VariantContext, PositionalBufferedStream> codec;
+        private final VCFHeader header;
+        private final List<String> contigs;
+        private final List<String> dictionary;
+
+        /**
+         * @param codec  the htsjdk BCF2 codec, which has read the file header
+         * @param header the file header
+         */
+        public Decoder(FeatureCodec<VariantContext, PositionalBufferedStream> codec, VCFHeader header) {
+            this.codec = codec;
+            this.header = header;
+            this.contigs = new ArrayList<>();
+            for (VCFContigHeaderLine contig : header.getContigLines()) {
+                contigs.add(contig.getID());
+            }
+            this.dictionary = BCF2Utils.makeDictionary(header);
+        }
+
+        /**
+         * @return the contig of a record's shared block
+         */
+        public String getContig(byte[] shared) {
+            int index = ByteBuffer.wrap(shared).order(ByteOrder.LITTLE_ENDIAN).getInt(0);
+            return contigs.get(index);
+        }
+
+        VariantContext decode(byte[] shared, byte[] indiv) {
+            ByteBuffer record = ByteBuffer.allocate(8 + shared.length + indiv.length).order(ByteOrder.LITTLE_ENDIAN);
+            record.putInt(shared.length).putInt(indiv.length).put(shared).put(indiv);
+            // Buffer just the record, the default buffer is much larger
+            PositionalBufferedStream stream =
+                    new PositionalBufferedStream(new ByteArrayInputStream(record.array()), record.capacity());
+            try {
+                synchronized (codec) {
+                    VariantContext vc = codec.decode(stream);
+                    // The codec's genotype decoder is shared, decode the genotypes while holding it
+                    GenotypesContext genotypes = vc.getGenotypes();
+                    if (genotypes instanceof LazyGenotypesContext) {
+                        ((LazyGenotypesContext) genotypes).decode();
+                    }
+                    return vc;
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Error decoding BCF2 record", e);
+            }
+        }
+    }
+}
@@ -30,6 +30,8 @@ import org.broad.igv.variant.Allele;
 import org.broad.igv.variant.Genotype;
 import org.broad.igv.variant.Variant;
 import org.broad.igv.variant.VariantTrack;
+import htsjdk.variant.variantcontext.GenotypesContext;
+import htsjdk.variant.variantcontext.LazyGenotypesContext;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.variantcontext.VariantContextBuilder;
 
@@ -43,7 +45,7 @@ public class VCFVariant implements Variant {
 
     private static Logger log = Logger.getLogger(Variant.class);
 
-    VariantContext variantContext;
+    VariantContext variantContext;     // null until getVariantContext() for subclasses decoding lazily
     List<Allele> alternateAlleles;
     // private ZygosityCount zygosityCount;
 
@@ -53,26 +55,49 @@ public class VCFVariant implements Variant {
     private double methylationRate = Double.NaN;  // <= signals unknown / not applicable
     private double coveredSampleFraction = Double.NaN;
 
-    Map<String, VCFGenotype> genotypeMap;
+    // Created on first use, most variants are only rendered, from a GenotypeMatrix
+    private Map<String, VCFGenotype> genotypeMap;
 
     private int start = -1;
     private int totalAlleleCount = 0;
+    private boolean alleleAttributesParsed = false;
+
+    // Held while decoding lazily parsed genotypes, see getGenotypes()
+    private final Object genotypeLock;
+    private GenotypesContext genotypes;
 
     public VCFVariant(VariantContext variantContext, String chr) {
+        this(variantContext, chr, null);
+    }
+
+    /**
+     * @param genotypeLock lock held while decoding the genotypes, if they are parsed lazily by a codec whose
+     *                     parser state is shared by its records.  Null if the genotypes need no lock.
+     */
+    public VCFVariant(VariantContext variantContext, String chr, Object genotypeLock) {
         this.variantContext = variantContext;
         this.chr = chr;
-        init();
+        this.genotypeLock = genotypeLock;
     }
 
-    private void init() {
+    /**
+     * Constructor for subclasses which create the variant context on demand, see {@link #getVariantContext()}.
+     */
+    protected VCFVariant(String chr) {
+        this.chr = chr;
+        this.genotypeLock = null;
+    }
+
+    /**
+     * Parse the allele frequency and count attributes, on first use so that they are only parsed for variants
+     * rendered.
+     */
+    private synchronized void parseAlleleAttributes() {
 
-        // Copy the genotype map.  Calls to variantContext.getGenotype() are expensive
-        genotypeMap = new HashMap<String, VCFGenotype>();
-        for (String sample : getSampleNames()) {
-            htsjdk.variant.variantcontext.Genotype genotype = variantContext.getGenotype(sample);
-            VCFGenotype vcfGenotype = genotype == null ? null : new VCFGenotype(genotype);
-            genotypeMap.put(sample, vcfGenotype);
+        if (alleleAttributesParsed) {
+            return;
         }
+        alleleAttributesParsed = true;
 
 //        zygosityCount = new ZygosityCount();
 //        for (String sample : getSampleNames()) {
@@ -84,7 +109,8 @@ public class VCFVariant implements Variant {
         String[] alleleFreqKeys = {"AF", "GMAF"};
         try {
             for (String alleleFreqKey : alleleFreqKeys) {
-                afString = variantContext.getAttributeAsString(alleleFreqKey, "-1");
+                afString = getAttributeAsString(alleleFreqKey);
+                if (afString == null) afString = "-1";
                 alleleFreqs = parseDoubleArrayString(afString);
                 if (alleleFreqs[0] >= 0) break;
             }
@@ -94,7 +120,7 @@ public class VCFVariant implements Variant {
         }
 
         String acKey = "AC";
-        String acString = variantContext.getAttributeAsString(acKey, null);
+        String acString = getAttributeAsString(acKey);
         if (acString != null) {
             try {
                 alleleCounts = parseIntArrayString(acString);
@@ -104,7 +130,7 @@ public class VCFVariant implements Variant {
         }
 
         String anKey = "AN";
-        String anString = variantContext.getAttributeAsString(anKey, null);
+        String anString = getAttributeAsString(anKey);
         if(anString != null) {
             try {
                 totalAlleleCount = Integer.parseInt(anString);
@@ -168,24 +194,24 @@ public class VCFVariant implements Variant {
 
 
     public String getID() {
-        return variantContext.getID();
+        return getVariantContext().getID();
     }
 
     public boolean isFiltered() {
-        return variantContext.isFiltered();
+        return getVariantContext().isFiltered();
     }
 
     public String getAttributeAsString(String key) {
-        return variantContext.getAttributeAsString(key, null);
+        return getVariantContext().getAttributeAsString(key, null);
     }
 
     public String getReference() {
-        return variantContext.getReference().toString();
+        return getVariantContext().getReference().toString();
     }
 
     public List<Allele> getAlternateAlleles() {
         if (alternateAlleles == null) {
-            List<htsjdk.variant.variantcontext.Allele> tmp = variantContext.getAlternateAlleles();
+            List<htsjdk.variant.variantcontext.Allele> tmp = getVariantContext().getAlternateAlleles();
             alternateAlleles = new ArrayList<Allele>(tmp.size());
             for (htsjdk.variant.variantcontext.Allele a : tmp) {
                 alternateAlleles.add(new VCFAllele(a.getBases()));
@@ -195,11 +221,11 @@ public class VCFVariant implements Variant {
     }
 
     public double getPhredScaledQual() {
-        return variantContext.getPhredScaledQual();
+        return getVariantContext().getPhredScaledQual();
     }
 
     public String getType() {
-        return variantContext.getType().toString();
+        return getVariantContext().getType().toString();
     }
 
 
@@ -208,6 +234,7 @@ public class VCFVariant implements Variant {
      * no annotation (unknown allele frequency).
      */
     public double[] getAlleleFreqs() {
+        parseAlleleAttributes();
         return alleleFreqs;
     }
 
@@ -227,14 +254,17 @@ public class VCFVariant implements Variant {
 
     @Override
     public int[] getAlleleCounts() {
+        parseAlleleAttributes();
         return alleleCounts;
     }
 
     public int getTotalAlleleCount() {
+        parseAlleleAttributes();
         return totalAlleleCount;
     }
 
     public double getAlleleFraction() {
+        parseAlleleAttributes();
         if(alleleCounts != null && alleleCounts.length > 0 && totalAlleleCount > 0) {
             double ac = 0;
             for(int i=0; i<alleleCounts.length; i++) {
@@ -267,20 +297,56 @@ public class VCFVariant implements Variant {
     }
 
     public Collection<String> getSampleNames() {
-        return variantContext.getSampleNames();
+        return getGenotypes().getSampleNames();
+    }
+
+    /**
+     * Return the genotypes, decoding them on first use if they are parsed lazily.  Genotypes which cannot be
+     * parsed are logged and treated as missing, so a malformed line does not fail rendering.
+     */
+    public synchronized GenotypesContext getGenotypes() {
+        if (genotypes == null) {
+            GenotypesContext gc = getVariantContext().getGenotypes();
+            if (gc instanceof LazyGenotypesContext) {
+                try {
+                    if (genotypeLock == null) {
+                        ((LazyGenotypesContext) gc).decode();
+                    } else {
+                        synchronized (genotypeLock) {
+                            ((LazyGenotypesContext) gc).decode();
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    log.error("Error parsing genotypes at " + getChr() + ":" + getPositionString(), e);
+                    gc = GenotypesContext.NO_GENOTYPES;
+                }
+            }
+            genotypes = gc;
+        }
+        return genotypes;
     }
 
     public Map<String, Object> getAttributes() {
-        return variantContext.getAttributes();
+        return getVariantContext().getAttributes();
     }
 
     @Override
-    public Genotype getGenotype(String sample) {
+    public synchronized Genotype getGenotype(String sample) {
+        if (genotypeMap == null) {
+            // Copy the genotype map.  Calls to variantContext.getGenotype() are expensive
+            genotypeMap = new HashMap<String, VCFGenotype>();
+            GenotypesContext gc = getGenotypes();
+            for (String s : gc.getSampleNames()) {
+                htsjdk.variant.variantcontext.Genotype genotype = gc.get(s);
+                VCFGenotype vcfGenotype = genotype == null ? null : new VCFGenotype(genotype);
+                genotypeMap.put(s, vcfGenotype);
+            }
+        }
         return genotypeMap.get(sample);
     }
 
     public Collection<String> getFilters() {
-        return variantContext.getFilters();
+        return getVariantContext().getFilters();
     }
 
     @Override
@@ -303,7 +369,7 @@ public class VCFVariant implements Variant {
 
     @Override
     public int getEnd() {
-        return variantContext.getEnd();
+        return getVariantContext().getEnd();
     }
 
     @Override
@@ -313,19 +379,23 @@ public class VCFVariant implements Variant {
 
     @Override
     public String getPositionString() {
-        if (variantContext.getStart() == variantContext.getEnd()) {
-            return String.valueOf(variantContext.getStart());
+        if (getVariantContext().getStart() == getVariantContext().getEnd()) {
+            return String.valueOf(getVariantContext().getStart());
         } else {
-            return String.format("%d-%d", variantContext.getStart(), variantContext.getEnd());
+            return String.format("%d-%d", getVariantContext().getStart(), getVariantContext().getEnd());
         }
 
     }
 
 
     public String getSource() {
-        return variantContext.getSource();
+        return getVariantContext().getSource();
     }
 
+    /**
+     * @return the htsjdk variant context, with all INFO and genotype fields.  Genotypes may be parsed lazily,
+     * access them through {@link #getGenotypes()}.
+     */
     public VariantContext getVariantContext() {
         return variantContext;
     }
@@ -353,10 +423,10 @@ public class VCFVariant implements Variant {
     private void calcStart() {
         int prefixLength = 0;
 
-        if (variantContext.getType() == VariantContext.Type.INDEL || variantContext.getType() == VariantContext.Type.MIXED) {
+        if (getVariantContext().getType() == VariantContext.Type.INDEL || getVariantContext().getType() == VariantContext.Type.MIXED) {
             prefixLength = findCommonPrefixLength();
         }
-        this.start = (variantContext.getStart() - 1) + prefixLength;
+        this.start = (getVariantContext().getStart() - 1) + prefixLength;
     }
 
     /**
@@ -366,12 +436,15 @@ public class VCFVariant implements Variant {
      * @return
      */
     private int findCommonPrefixLength() {
-        String ref = variantContext.getReference().getDisplayString();
+        return findCommonPrefixLength(getVariantContext().getReference().getDisplayString(), getAlternateAlleles());
+    }
+
+    protected static int findCommonPrefixLength(String ref, List<Allele> alternateAlleles) {
         int prefixLength = 0;
         boolean foundmisMatch = false;
         for (int refPos = 0; refPos < ref.length(); refPos++) {
             char refChar = ref.charAt(refPos);
-            for (Allele var : getAlternateAlleles()) {
+            for (Allele var : alternateAlleles) {
                 byte[] varBases = var.getBases();
                 if (refPos >= varBases.length || varBases[refPos] != refChar) {
                     foundmisMatch = true;
@@ -0,0 +1,104 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.bbfile;
+
+import org.broad.igv.Globals;
+import org.broad.igv.util.TestUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Iterating the data of a bigWig file, whole chromosomes and random 100 kb windows.
+ * <p/>
+ * IGV has no bigWig writer, so the variable step test file in test/data is used.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BBFileReaderBenchmark {
+
+    static final String PATH = TestUtils.DATA_DIR + "wig/dummy_var_sample.bigwig";
+    static final int N_WINDOWS = 100;
+    static final int WINDOW_SIZE = 100000;
+
+    BBFileReader reader;
+    List<String> chromosomes;
+    String[] windowChrs;
+    int[] windowStarts;
+
+    @Setup
+    public void setup() throws Exception {
+        Globals.setHeadless(true);
+        reader = new BBFileReader(PATH);
+        chromosomes = reader.getChromosomeNames();
+
+        // Windows within the extent of each chromosome's data
+        Random random = new Random(1);
+        windowChrs = new String[N_WINDOWS];
+        windowStarts = new int[N_WINDOWS];
+        for (int i = 0; i < N_WINDOWS; i++) {
+            String chr = chromosomes.get(random.nextInt(chromosomes.size()));
+            BigWigIterator iter = reader.getBigWigIterator(chr, 0, chr, Integer.MAX_VALUE, false);
+            int start = iter.hasNext() ? iter.next().getStartBase() : 0;
+            windowChrs[i] = chr;
+            windowStarts[i] = start + random.nextInt(10 * WINDOW_SIZE);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        reader.close();
+    }
+
+    @Benchmark
+    public void chromosomes(Blackhole bh) {
+        for (String chr : chromosomes) {
+            BigWigIterator iter = reader.getBigWigIterator(chr, 0, chr, Integer.MAX_VALUE, false);
+            while (iter.hasNext()) {
+                bh.consume(iter.next());
+            }
+        }
+    }
+
+    @Benchmark
+    public void windows(Blackhole bh) {
+        for (int i = 0; i < N_WINDOWS; i++) {
+            String chr = windowChrs[i];
+            int start = windowStarts[i];
+            BigWigIterator iter = reader.getBigWigIterator(chr, start, chr, start + WINDOW_SIZE, false);
+            while (iter.hasNext()) {
+                bh.consume(iter.next());
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.feature.genome.fasta;
+
+import org.broad.igv.Globals;
+import org.broad.igv.feature.Chromosome;
+import org.broad.igv.tools.TestFileGenerator;
+import org.broad.igv.util.FileUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Random sequence queries against an indexed fasta file of random bases.
+ * <p/>
+ * The file has the chromosomes of {@link TestFileGenerator}, scaled down 100 fold, with 60 bases per line.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FastaIndexedSequenceBenchmark {
+
+    static final int SCALE = 100;
+    static final int LINE_LENGTH = 60;
+    static final int N_QUERIES = 100;
+
+    @Param({"100", "10000", "1000000"})
+    int queryWidth;
+
+    File dir;
+    FastaIndexedSequence sequence;
+    String[] queryChrs;
+    int[] queryStarts;
+
+    @Setup
+    public void setup() throws Exception {
+        Globals.setHeadless(true);
+        dir = Files.createTempDirectory("igv-benchmark").toFile();
+        File fasta = new File(dir, "synthetic.fa");
+        List<Chromosome> chromosomes = TestFileGenerator.getChromosomes();
+
+        Random random = new Random(1);
+        byte[] bases = {'A', 'C', 'G', 'T', 'a', 'c', 'g', 't', 'N'};
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(fasta))) {
+            byte[] line = new byte[LINE_LENGTH + 1];
+            line[LINE_LENGTH] = '\n';
+            for (Chromosome chr : chromosomes) {
+                os.write((">" + chr.getName() + "\n").getBytes());
+                int length = chr.getLength() / SCALE;
+                for (int pos = 0; pos < length; pos += LINE_LENGTH) {
+                    int n = Math.min(LINE_LENGTH, length - pos);
+                    for (int i = 0; i < n; i++) {
+                        line[i] = bases[random.nextInt(bases.length)];
+                    }
+                    line[n] = '\n';
+                    os.write(line, 0, n + 1);
+                }
+            }
+        }
+        FastaUtils.createIndexFile(fasta.getAbsolutePath(), fasta.getAbsolutePath() + ".fai");
+        sequence = new FastaIndexedSequence(fasta.getAbsolutePath());
+
+        queryChrs = new String[N_QUERIES];
+        queryStarts = new int[N_QUERIES];
+        for (int i = 0; i < N_QUERIES; i++) {
+            Chromosome chr = chromosomes.get(random.nextInt(chromosomes.size() - 1));   // Not chrM
+            int length = chr.getLength() / SCALE;
+            queryChrs[i] = chr.getName();
+            queryStarts[i] = random.nextInt(Math.max(1, length - queryWidth));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        FileUtils.deleteDir(dir);
+    }
+
+    @Benchmark
+    public void getSequence(Blackhole bh) {
+        for (int i = 0; i < N_QUERIES; i++) {
+            bh.consume(sequence.getSequence(queryChrs[i], queryStarts[i], queryStarts[i] + queryWidth, false));
+        }
+    }
+}
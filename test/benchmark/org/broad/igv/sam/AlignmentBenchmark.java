@@ -0,0 +1,116 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.sam;
+
+import org.broad.igv.Globals;
+import org.broad.igv.sam.reader.AlignmentReader;
+import org.broad.igv.sam.reader.AlignmentReaderFactory;
+import org.broad.igv.util.FileUtils;
+import org.broad.igv.util.ResourceLocator;
+import org.openjdk.jmh.annotations.*;
+import util.AlignmentFileGenerator;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading, counting and packing alignments of a 100 kb window of a synthetic bam file.
+ * <p/>
+ * The bam file is generated by {@link AlignmentFileGenerator#generateBamFile} at the given depth, so loadTile
+ * measures decoding and filtering as well as counting.  incCounts and packAlignments are measured separately on
+ * the alignments of a single loaded tile.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AlignmentBenchmark {
+
+    static final String CHR = "chr1";
+    static final int CHR_LENGTH = 1000000;
+    static final int READ_LENGTH = 100;
+    static final int START = 400000;
+    static final int END = 500000;
+
+    @Param({"30", "300"})
+    int depth;
+
+    File dir;
+    AlignmentTileLoader loader;
+    AlignmentDataManager.DownsampleOptions downsampleOptions;
+    List<Alignment> alignments;
+    AlignmentInterval interval;
+    AlignmentTrack.RenderOptions renderOptions;
+
+    @Setup
+    public void setup() throws Exception {
+        Globals.setHeadless(true);
+        dir = Files.createTempDirectory("igv-benchmark").toFile();
+        File bam = new File(dir, "synthetic.bam");
+        AlignmentFileGenerator.generateBamFile(bam, CHR, CHR_LENGTH, depth, READ_LENGTH, 1);
+
+        AlignmentReader reader = AlignmentReaderFactory.getReader(new ResourceLocator(bam.getAbsolutePath()));
+        loader = new AlignmentTileLoader(reader);
+
+        // No downsampling, every alignment in the window is retained
+        downsampleOptions = new AlignmentDataManager.DownsampleOptions(false, 50, 100);
+
+        AlignmentTileLoader.AlignmentTile tile = loadTile();
+        alignments = tile.getAlignments();
+        interval = new AlignmentInterval(CHR, START, END, alignments, tile.getCounts(), null, null);
+        renderOptions = new AlignmentTrack.RenderOptions();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        loader.close();
+        FileUtils.deleteDir(dir);
+    }
+
+    @Benchmark
+    public AlignmentTileLoader.AlignmentTile loadTile() {
+        return loader.loadTile(CHR, START, END, null, downsampleOptions, null, null, null, true);
+    }
+
+    @Benchmark
+    public AlignmentCounts incCounts() {
+        DenseAlignmentCounts counts = new DenseAlignmentCounts(START, END, null);
+        for (Alignment alignment : alignments) {
+            counts.incCounts(alignment);
+        }
+        counts.finish();
+        return counts;
+    }
+
+    @Benchmark
+    public PackedAlignments packAlignments() {
+        return new AlignmentPacker().packAlignments(interval, renderOptions);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.tdf;
+
+import org.broad.igv.Globals;
+import org.broad.igv.feature.genome.Genome;
+import org.broad.igv.tools.Preprocessor;
+import org.broad.igv.tools.TestFileGenerator;
+import org.broad.igv.track.WindowFunction;
+import org.broad.igv.util.FileUtils;
+import org.broad.igv.util.ResourceLocator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading and decoding every tile of a dataset of a synthetic TDF file, bypassing the tile cache.
+ * <p/>
+ * The file is converted from a .igv file of 10 samples generated by {@link TestFileGenerator}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TDFReaderBenchmark {
+
+    static final int N_ROWS = 500000;
+    static final int N_SAMPLES = 10;
+
+    @Param({"/chr1/raw", "/chr1/z4/mean", "/chr1/z7/mean"})
+    String datasetName;
+
+    File dir;
+    TDFReader reader;
+    TDFDataset dataset;
+
+    @Setup
+    public void setup() throws Exception {
+        Globals.setHeadless(true);
+        dir = Files.createTempDirectory("igv-benchmark").toFile();
+        File igvFile = new File(dir, "synthetic.igv");
+        File tdfFile = new File(dir, "synthetic.tdf");
+        TestFileGenerator.generateTestFile(igvFile.getAbsolutePath(), true, N_ROWS, N_SAMPLES);
+
+        Genome genome = new Genome("synthetic", TestFileGenerator.getChromosomes());
+        Preprocessor preprocessor = new Preprocessor(tdfFile, genome, Arrays.asList(WindowFunction.mean), -1, null);
+        preprocessor.preprocess(igvFile, 7, null);
+        preprocessor.finish();
+
+        reader = new TDFReader(new ResourceLocator(tdfFile.getAbsolutePath()));
+        dataset = reader.getDataset(datasetName);
+    }
+
+    @TearDown
+    public void tearDown() {
+        reader.close();
+        FileUtils.deleteDir(dir);
+    }
+
+    @Benchmark
+    public void readTile(Blackhole bh) {
+        for (int t = 0; t < dataset.tilePositions.length; t++) {
+            bh.consume(reader.readTile(dataset, t));
+        }
+    }
+}
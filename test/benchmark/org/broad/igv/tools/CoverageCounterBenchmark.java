@@ -0,0 +1,238 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.tools;
+
+import org.broad.igv.feature.Strand;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the ring buffer window counter of {@link CoverageCounter} with the map based counter it replaced.
+ * <p/>
+ * Both count the same synthetic stream of sorted 100 base reads at a fixed depth, closing windows as the read
+ * position advances, as {@link CoverageCounter#parse()} does.  Run with -prof gc to compare allocation rates.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CoverageCounterBenchmark {
+
+    static final int READ_LENGTH = 100;
+    static final int N_READS = 20000;
+    static final int DEPTH = 50;
+    static final byte[] BASES = {'A', 'C', 'G', 'T', 'N', 'a'};
+
+    @Param({"1", "25"})
+    int windowSize;
+
+    @Param({"0", "9"})    // 0 = totals, 9 = CoverageCounter.BASES + CoverageCounter.STRANDS_BY_READ
+    int countFlags;
+
+    int[] starts;
+    byte[] readBases;
+    Strand[] strands;
+    CoverageCounter coverageCounter;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1);
+        starts = new int[N_READS];
+        readBases = new byte[N_READS * READ_LENGTH];
+        strands = new Strand[N_READS];
+        int step = Math.max(1, READ_LENGTH / DEPTH);
+        for (int i = 0; i < N_READS; i++) {
+            starts[i] = 10000 + i * step + random.nextInt(step);
+            strands[i] = random.nextBoolean() ? Strand.POSITIVE : Strand.NEGATIVE;
+        }
+        Arrays.sort(starts);
+        for (int i = 0; i < readBases.length; i++) {
+            readBases[i] = BASES[random.nextInt(BASES.length)];
+        }
+        coverageCounter = new CoverageCounter("benchmark.bam", null, windowSize, 0, null, null, null, 0, countFlags);
+    }
+
+    @Benchmark
+    public void ringBuffer(Blackhole bh) {
+        CoverageCounter.WindowSink sink = (chr, start, end, data) -> bh.consume(data);
+        CoverageCounter.ReadCounter counter = coverageCounter.new ReadCounter("chr1");
+        for (int i = 0; i < N_READS; i++) {
+            int start = starts[i];
+            counter.closeBucketsBefore(start - 2 * windowSize, sink);
+            for (int j = 0; j < READ_LENGTH; j++) {
+                counter.incrementCount(start + j, readBases[i * READ_LENGTH + j], strands[i]);
+            }
+            counter.incrementDeletion(start + READ_LENGTH / 2, strands[i]);
+        }
+        counter.closeBucketsBefore(Integer.MAX_VALUE, sink);
+    }
+
+    @Benchmark
+    public void treeMap(Blackhole bh) {
+        MapReadCounter counter = new MapReadCounter(windowSize, countFlags, bh);
+        for (int i = 0; i < N_READS; i++) {
+            int start = starts[i];
+            counter.closeBucketsBefore(start - 2 * windowSize);
+            for (int j = 0; j < READ_LENGTH; j++) {
+                counter.incrementCount(start + j, readBases[i * READ_LENGTH + j], strands[i]);
+            }
+            counter.incrementDeletion(start + READ_LENGTH / 2, strands[i]);
+        }
+        counter.closeBucketsBefore(Integer.MAX_VALUE);
+    }
+
+    /**
+     * The previous implementation, a Counter object per window in a TreeMap with boxed per base counts.
+     */
+    static class MapReadCounter {
+
+        static final byte[] nucleotides = {'A', 'C', 'G', 'T', 'N', CoverageCounter.DEL, CoverageCounter.INS};
+        static final Set<Byte> nucleotidesKeep = new HashSet<>();
+
+        static {
+            for (byte b : nucleotides) {
+                nucleotidesKeep.add(b);
+            }
+        }
+
+        final int windowSize;
+        final boolean outputBases;
+        final boolean outputSeparate;
+        final Blackhole bh;
+        final float[] buffer;
+        TreeMap<Integer, Counter> counts = new TreeMap<>();
+
+        MapReadCounter(int windowSize, int countFlags, Blackhole bh) {
+            this.windowSize = windowSize;
+            this.outputBases = (countFlags & CoverageCounter.BASES) > 0;
+            this.outputSeparate = (countFlags & CoverageCounter.STRANDS_BY_READ) > 0;
+            this.bh = bh;
+            this.buffer = new float[(outputBases ? nucleotides.length : 1) * (outputSeparate ? 2 : 1)];
+        }
+
+        void incrementCount(int position, byte base, Strand strand) {
+            getCounter(position / windowSize).increment(base, strand.equals(Strand.POSITIVE) ? 0 : 1);
+        }
+
+        void incrementDeletion(int position, Strand strand) {
+            final Counter counter = getCounter(position / windowSize);
+            if (outputBases) {
+                counter.incrementNucleotide(CoverageCounter.DEL, strand.equals(Strand.POSITIVE) ? 0 : 1);
+            }
+        }
+
+        private Counter getCounter(int idx) {
+            if (!counts.containsKey(idx)) {
+                counts.put(idx, new Counter());
+            }
+            return counts.get(idx);
+        }
+
+        void closeBucketsBefore(int position) {
+            List<Integer> bucketsToClose = new ArrayList<>();
+            int bucket = position / windowSize;
+            for (Map.Entry<Integer, Counter> entry : counts.entrySet()) {
+                if (entry.getKey() < bucket) {
+                    final Counter counter = entry.getValue();
+                    int col = 0;
+                    if (!outputBases) {
+                        if (outputSeparate) {
+                            for (int strandNum = 0; strandNum < 2; strandNum++) {
+                                buffer[col++] = ((float) counter.strandCount[strandNum]) / windowSize;
+                            }
+                        } else {
+                            buffer[col] = ((float) counter.totalCount) / windowSize;
+                        }
+                    } else if (outputSeparate) {
+                        for (int strandNum = 0; strandNum < 2; strandNum++) {
+                            for (byte base : nucleotides) {
+                                buffer[col++] = ((float) counter.getBaseCount(base, strandNum)) / windowSize;
+                            }
+                        }
+                    } else {
+                        for (byte base : nucleotides) {
+                            buffer[col++] = ((float) (counter.getBaseCount(base, 0) + counter.getBaseCount(base, 1))) / windowSize;
+                        }
+                    }
+                    bh.consume(buffer);
+                    bucketsToClose.add(entry.getKey());
+                }
+            }
+            for (Integer key : bucketsToClose) {
+                counts.remove(key);
+            }
+        }
+
+        class Counter {
+            int[] strandCount;
+            int totalCount = 0;
+            private Map<Byte, Integer>[] baseTypeCounts;
+
+            Counter() {
+                if (outputBases) {
+                    baseTypeCounts = new HashMap[2];
+                    for (int ii = 0; ii < 2; ii++) {
+                        baseTypeCounts[ii] = new HashMap<>();
+                    }
+                }
+                if (outputSeparate) {
+                    strandCount = new int[2];
+                }
+            }
+
+            void increment(byte base, int strand) {
+                if (outputBases) {
+                    incrementNucleotide(base, strand);
+                }
+                if (outputSeparate) {
+                    this.strandCount[strand]++;
+                }
+                this.totalCount++;
+            }
+
+            void incrementNucleotide(byte base, int strand) {
+                Map<Byte, Integer> btc = baseTypeCounts[strand];
+                if (!nucleotidesKeep.contains(base)) {
+                    base = 0;
+                }
+                int orig = 0;
+                if (btc.containsKey(base)) {
+                    orig = btc.get(base);
+                }
+                btc.put(base, orig + 1);
+            }
+
+            int getBaseCount(byte base, int strand) {
+                return baseTypeCounts[strand].containsKey(base) ? baseTypeCounts[strand].get(base) : 0;
+            }
+        }
+    }
+}
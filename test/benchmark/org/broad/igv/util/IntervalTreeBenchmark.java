@@ -0,0 +1,135 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.util;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overlap queries against an interval tree of random intervals, resembling features of a 250 Mb chromosome.
+ * The red-black trees ({@link IntervalTree} and {@link org.broad.igv.util.index.IntervalTree}) are compared with
+ * a {@link StaticIntervalIndex} over the same intervals, both for building and for queries.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IntervalTreeBenchmark {
+
+    static final int CHR_LENGTH = 250000000;
+    static final int N_QUERIES = 1000;
+
+    @Param({"10000", "1000000"})
+    int nIntervals;
+
+    @Param({"1000", "100000"})
+    int queryWidth;
+
+    int[] starts;
+    int[] ends;
+    IntervalTree<Integer> tree;
+    org.broad.igv.util.index.IntervalTree indexTree;
+    StaticIntervalIndex<Integer> staticIndex;
+    int[] queryStarts;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1);
+        starts = new int[nIntervals];
+        ends = new int[nIntervals];
+        for (int i = 0; i < nIntervals; i++) {
+            starts[i] = random.nextInt(CHR_LENGTH);
+            ends[i] = starts[i] + 100 + random.nextInt(10000);
+        }
+        tree = buildTree();
+        indexTree = buildIndexTree();
+        staticIndex = buildStaticIndex();
+        queryStarts = new int[N_QUERIES];
+        for (int i = 0; i < N_QUERIES; i++) {
+            queryStarts[i] = random.nextInt(CHR_LENGTH - queryWidth);
+        }
+    }
+
+    @Benchmark
+    public void findOverlapping(Blackhole bh) {
+        for (int start : queryStarts) {
+            bh.consume(tree.findOverlapping(start, start + queryWidth));
+        }
+    }
+
+    @Benchmark
+    public void findOverlappingIndexTree(Blackhole bh) {
+        for (int start : queryStarts) {
+            bh.consume(indexTree.findOverlapping(start, start + queryWidth));
+        }
+    }
+
+    @Benchmark
+    public void findOverlappingStatic(Blackhole bh) {
+        for (int start : queryStarts) {
+            bh.consume(staticIndex.findOverlapping(start, start + queryWidth));
+        }
+    }
+
+    @Benchmark
+    public void visitOverlappingStatic(Blackhole bh) {
+        for (int start : queryStarts) {
+            bh.consume(staticIndex.findOverlapping(start, start + queryWidth, (s, e, value) -> bh.consume(value)));
+        }
+    }
+
+    @Benchmark
+    public IntervalTree<Integer> buildTree() {
+        IntervalTree<Integer> tree = new IntervalTree<>();
+        for (int i = 0; i < nIntervals; i++) {
+            tree.insert(new Interval<>(starts[i], ends[i], i));
+        }
+        return tree;
+    }
+
+    @Benchmark
+    public org.broad.igv.util.index.IntervalTree buildIndexTree() {
+        org.broad.igv.util.index.IntervalTree tree = new org.broad.igv.util.index.IntervalTree();
+        for (int i = 0; i < nIntervals; i++) {
+            tree.insert(new org.broad.igv.util.index.Interval(starts[i], ends[i], i));
+        }
+        return tree;
+    }
+
+    @Benchmark
+    public StaticIntervalIndex<Integer> buildStaticIndex() {
+        StaticIntervalIndex.Builder<Integer> builder = StaticIntervalIndex.builder(nIntervals);
+        for (int i = 0; i < nIntervals; i++) {
+            builder.add(starts[i], ends[i], i);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.util;
+
+import org.broad.igv.Globals;
+import org.broad.igv.tools.TestFileGenerator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tokenizing the lines of a synthetic .igv file of 10 samples, with the idioms used by IGV parsers.  Each benchmark
+ * splits every line and parses the start position.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParsingUtilsBenchmark {
+
+    static final int N_ROWS = 100000;
+    static final int N_SAMPLES = 10;
+
+    List<String> lines;
+    String[] tokens;
+
+    @Setup
+    public void setup() throws Exception {
+        Globals.setHeadless(true);
+        File dir = Files.createTempDirectory("igv-benchmark").toFile();
+        File igvFile = new File(dir, "synthetic.igv");
+        TestFileGenerator.generateTestFile(igvFile.getAbsolutePath(), true, N_ROWS, N_SAMPLES);
+
+        lines = new ArrayList<>(N_ROWS);
+        try (BufferedReader reader = ParsingUtils.openBufferedReader(igvFile.getAbsolutePath())) {
+            reader.readLine();  // Header
+            String nextLine;
+            while ((nextLine = reader.readLine()) != null) {
+                lines.add(nextLine);
+            }
+        }
+        FileUtils.deleteDir(dir);
+        tokens = new String[N_SAMPLES + 10];
+    }
+
+    @Benchmark
+    public void tabPattern(Blackhole bh) {
+        for (String line : lines) {
+            String[] tokens = ParsingUtils.TAB_PATTERN.split(line);
+            bh.consume(ParsingUtils.parseInt(tokens[1]));
+            bh.consume(tokens);
+        }
+    }
+
+    @Benchmark
+    public void whitespacePattern(Blackhole bh) {
+        for (String line : lines) {
+            String[] tokens = ParsingUtils.WHITESPACE_PATTERN.split(line);
+            bh.consume(ParsingUtils.parseInt(tokens[1]));
+            bh.consume(tokens);
+        }
+    }
+
+    @Benchmark
+    public void singleTabMultiSpacePattern(Blackhole bh) {
+        for (String line : lines) {
+            String[] tokens = Globals.singleTabMultiSpacePattern.split(line);
+            bh.consume(ParsingUtils.parseInt(tokens[1]));
+            bh.consume(tokens);
+        }
+    }
+
+    @Benchmark
+    public void htsjdkSplit(Blackhole bh) {
+        for (String line : lines) {
+            int n = htsjdk.tribble.util.ParsingUtils.split(line, tokens, '\t');
+            bh.consume(Integer.parseInt(tokens[1]));
+            bh.consume(n);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.variant;
+
+import htsjdk.tribble.readers.PositionalBufferedStream;
+import htsjdk.variant.bcf2.BCF2Codec;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.GenotypeBuilder;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import htsjdk.variant.variantcontext.writer.Options;
+import htsjdk.variant.variantcontext.writer.VariantContextWriter;
+import htsjdk.variant.variantcontext.writer.VariantContextWriterBuilder;
+import htsjdk.variant.vcf.*;
+import org.broad.igv.Globals;
+import org.broad.igv.feature.tribble.BCF2WrapperCodec;
+import org.broad.igv.util.FileUtils;
+import org.broad.igv.variant.vcf.VCFVariant;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading a synthetic multi-sample BCF file, through the htsjdk codec and through the BCF2 site view.
+ * <p/>
+ * The file has {@link #N_VARIANTS} biallelic SNPs with AF, AC, AN and DP INFO fields, and GT, DP, GQ and AD for
+ * each sample.  readSites accesses what site-only rendering needs: position, alleles, filters and allele
+ * frequency.  readGenotypes also decodes every genotype, as drawing the genotype band does.  The *Codec variants
+ * read the same through htsjdk's BCF2Codec.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VariantBenchmark {
+
+    static final String CHR = "chr1";
+    static final int N_VARIANTS = 5000;
+
+    @Param({"100", "1000"})
+    int sampleCount;
+
+    File dir;
+    File bcf;
+
+    @Setup
+    public void setup() throws Exception {
+        Globals.setHeadless(true);
+        dir = Files.createTempDirectory("igv-benchmark").toFile();
+        bcf = new File(dir, "synthetic.bcf");
+        generateBcfFile(bcf, sampleCount);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        FileUtils.deleteDir(dir);
+    }
+
+    @Benchmark
+    public void readSitesCodec(Blackhole bh) throws Exception {
+        BCF2Codec codec = new BCF2Codec();
+        try (PositionalBufferedStream stream = openStream()) {
+            codec.readHeader(stream);
+            while (!stream.isDone()) {
+                VariantContext vc = codec.decode(stream);
+                accessSite(new VCFVariant(vc, vc.getContig()), bh);
+            }
+        }
+    }
+
+    @Benchmark
+    public void readGenotypesCodec(Blackhole bh) throws Exception {
+        BCF2Codec codec = new BCF2Codec();
+        try (PositionalBufferedStream stream = openStream()) {
+            codec.readHeader(stream);
+            while (!stream.isDone()) {
+                VariantContext vc = codec.decode(stream);
+                accessSite(new VCFVariant(vc, vc.getContig()), bh);
+                for (Genotype genotype : vc.getGenotypes()) {
+                    bh.consume(genotype.getType());
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void readSites(Blackhole bh) throws Exception {
+        BCF2WrapperCodec codec = new BCF2WrapperCodec(new BCF2Codec(), null);
+        try (PositionalBufferedStream stream = openStream()) {
+            codec.readHeader(stream);
+            while (!codec.isDone(stream)) {
+                accessSite(codec.decode(stream), bh);
+            }
+        }
+    }
+
+    @Benchmark
+    public void readGenotypes(Blackhole bh) throws Exception {
+        BCF2WrapperCodec codec = new BCF2WrapperCodec(new BCF2Codec(), null);
+        try (PositionalBufferedStream stream = openStream()) {
+            codec.readHeader(stream);
+            while (!codec.isDone(stream)) {
+                VCFVariant variant = codec.decode(stream);
+                accessSite(variant, bh);
+                for (Genotype genotype : variant.getVariantContext().getGenotypes()) {
+                    bh.consume(genotype.getType());
+                }
+            }
+        }
+    }
+
+    private PositionalBufferedStream openStream() throws Exception {
+        return new PositionalBufferedStream(new BufferedInputStream(new FileInputStream(bcf)));
+    }
+
+    private static void accessSite(Variant variant, Blackhole bh) {
+        bh.consume(variant.getStart());
+        bh.consume(variant.getEnd());
+        bh.consume(variant.getAlternateAlleles());
+        bh.consume(variant.isFiltered());
+        bh.consume(variant.getAlleleFreqs());
+    }
+
+    static void generateBcfFile(File file, int sampleCount) {
+
+        List<String> samples = new ArrayList<>(sampleCount);
+        for (int i = 0; i < sampleCount; i++) {
+            samples.add("sample" + i);
+        }
+
+        Set<VCFHeaderLine> headerLines = new LinkedHashSet<>();
+        Map<String, String> contig = new LinkedHashMap<>();
+        contig.put("ID", CHR);
+        contig.put("length", String.valueOf(10 * N_VARIANTS + 1000));
+        headerLines.add(new VCFContigHeaderLine(contig, 0));
+        headerLines.add(new VCFInfoHeaderLine("AF", VCFHeaderLineCount.A, VCFHeaderLineType.Float, "Allele frequency"));
+        headerLines.add(new VCFInfoHeaderLine("AC", VCFHeaderLineCount.A, VCFHeaderLineType.Integer, "Allele count"));
+        headerLines.add(new VCFInfoHeaderLine("AN", 1, VCFHeaderLineType.Integer, "Total allele count"));
+        headerLines.add(new VCFInfoHeaderLine("DP", 1, VCFHeaderLineType.Integer, "Total depth"));
+        headerLines.add(VCFStandardHeaderLines.getFormatLine("GT"));
+        headerLines.add(VCFStandardHeaderLines.getFormatLine("DP"));
+        headerLines.add(VCFStandardHeaderLines.getFormatLine("GQ"));
+        headerLines.add(VCFStandardHeaderLines.getFormatLine("AD"));
+        VCFHeader header = new VCFHeader(headerLines, samples);
+
+        String bases = "ACGT";
+        Random random = new Random(1);
+        VariantContextWriter writer = new VariantContextWriterBuilder()
+                .setOutputFile(file)
+                .setOutputFileType(VariantContextWriterBuilder.OutputType.BCF)
+                .unsetOption(Options.INDEX_ON_THE_FLY)
+                .build();
+        writer.writeHeader(header);
+        for (int i = 0; i < N_VARIANTS; i++) {
+            int position = 1000 + 10 * i;
+            int r = random.nextInt(4);
+            Allele ref = Allele.create(bases.substring(r, r + 1), true);
+            Allele alt = Allele.create(bases.substring((r + 1) % 4, (r + 1) % 4 + 1), false);
+
+            List<Genotype> genotypes = new ArrayList<>(sampleCount);
+            int ac = 0;
+            int dp = 0;
+            for (String sample : samples) {
+                int altCount = random.nextInt(3);
+                ac += altCount;
+                int depth = 10 + random.nextInt(30);
+                dp += depth;
+                int altDepth = depth * altCount / 2;
+                genotypes.add(new GenotypeBuilder(sample, Arrays.asList(altCount > 1 ? alt : ref, altCount > 0 ? alt : ref))
+                        .DP(depth)
+                        .GQ(random.nextInt(100))
+                        .AD(new int[]{depth - altDepth, altDepth})
+                        .make());
+            }
+            int an = 2 * sampleCount;
+            writer.add(new VariantContextBuilder("synthetic", CHR, position, position, Arrays.asList(ref, alt))
+                    .log10PError(-random.nextInt(100) / 10.0)
+                    .attribute("AF", (double) ac / an)
+                    .attribute("AC", ac)
+                    .attribute("AN", an)
+                    .attribute("DP", dp)
+                    .genotypes(genotypes)
+                    .make());
+        }
+        writer.close();
+    }
+}
@@ -25,10 +25,19 @@
 
 package org.broad.igv.bbfile;
 
+import htsjdk.samtools.seekablestream.SeekableStream;
 import org.broad.igv.util.TestUtils;
+import org.broad.igv.util.stream.IGVSeekableStreamFactory;
 import org.junit.Test;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.Assert.*;
 
@@ -72,5 +81,141 @@ public class BBFileReaderTest {
 
     }
 
+    /**
+     * Concurrent queries on a shared reader return the same data as sequential ones, and repeated queries are
+     * served from the data block cache.
+     */
+    @Test
+    public void testConcurrentBigWig() throws Exception {
+
+        String path = TestUtils.DATA_DIR + "wig/dummy_var_sample.bigwig";
+        BBFileReader bbReader = new BBFileReader(path);
+        List<String> chromosomes = bbReader.getChromosomeNames();
 
+        List<String> expected = new ArrayList<>();
+        for (String chr : chromosomes) {
+            expected.add(readWig(bbReader, chr));
+        }
+        BBDataBlockCache blockCache = bbReader.getDataBlockCache();
+        long misses = blockCache.getMissCount();
+        assertTrue(misses > 0);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int repeat = 0; repeat < 5; repeat++) {
+                List<Future<String>> results = new ArrayList<>();
+                for (String chr : chromosomes) {
+                    results.add(executor.submit(() -> readWig(bbReader, chr)));
+                }
+                for (int i = 0; i < chromosomes.size(); i++) {
+                    assertEquals(expected.get(i), results.get(i).get());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(misses, blockCache.getMissCount());
+        assertTrue(blockCache.getHitCount() > 0);
+
+        bbReader.close();
+    }
+
+    /**
+     * Leaf hits resolved from the bulk-read index, and from its sidecar, are those of the tree search.
+     */
+    @Test
+    public void testBulkIndex() throws Exception {
+
+        String[] paths = {TestUtils.DATA_DIR + "wig/dummy_var_sample.bigwig",
+                TestUtils.DATA_DIR + "wig/test_fixedStep.bigwig",
+                TestUtils.DATA_DIR + "bb/chr21.refseq.bb"};
+
+        for (String path : paths) {
+            File sidecar = File.createTempFile("test", BBFileIndex.SIDECAR_EXTENSION);
+            sidecar.delete();
+            sidecar.deleteOnExit();
+
+            BBFileReader treeReader = new BBFileReader(path, false, null);
+            BBFileReader indexReader = new BBFileReader(path, true, sidecar);
+            assertTrue(sidecar.exists());
+            BBFileReader sidecarReader = new BBFileReader(path, true, sidecar);
+
+            RPTree tree = treeReader.getChromosomeDataTree();
+            RPChromosomeRegion bounds = tree.getChromosomeBounds();
+            Random random = new Random(1);
+            for (int i = 0; i < 1000; i++) {
+                int chr = bounds.getStartChromID() + random.nextInt(bounds.getEndChromID() - bounds.getStartChromID() + 1);
+                int maxBase = chr == bounds.getEndChromID() ? bounds.getEndBase() : 100000000;
+                int start = random.nextInt(maxBase + 1);
+                int end = start + random.nextInt(i % 2 == 0 ? 1000 : 10000000);
+                RPChromosomeRegion region = new RPChromosomeRegion(chr, start, chr, end);
+
+                List<String> expected = toStrings(tree.getChromosomeDataHits(region, false));
+                assertEquals(expected, toStrings(indexReader.getChromosomeDataTree().getChromosomeDataHits(region, false)));
+                assertEquals(expected, toStrings(sidecarReader.getChromosomeDataTree().getChromosomeDataHits(region, false)));
+            }
+            assertEquals(treeReader.getChromosomeNames(), indexReader.getChromosomeNames());
+            assertEquals(treeReader.getChromosomeNames(), sidecarReader.getChromosomeNames());
+
+            treeReader.close();
+            indexReader.close();
+            sidecarReader.close();
+        }
+    }
+
+    /**
+     * R+ trees larger than the bulk read limit are not indexed, and are left to be read node by node.
+     */
+    @Test
+    public void testBulkIndexSizeLimit() throws Exception {
+
+        String path = TestUtils.DATA_DIR + "wig/dummy_var_sample.bigwig";
+        BBFileReader reader = new BBFileReader(path, false, null);
+        BBFileHeader header = reader.getBBFileHeader();
+        try (SeekableStream fis = IGVSeekableStreamFactory.getInstance().getStreamFor(path)) {
+
+            BBFileIndex index = BBFileIndex.read(fis, header, BBFileIndex.MAX_LOCAL_DATA_TREE_SIZE);
+            assertNotNull(index.getLeafIndex());
+            assertTrue(index.getLeafIndex().getLeafCount() > 0);
+
+            index = BBFileIndex.read(fis, header, RPTreeLeafIndex.HEADER_SIZE);
+            assertNull(index.getLeafIndex());
+            assertNull(index.getChromosomeDataTree(fis, header.isLowToHigh(), header.getUncompressBuffSize()));
+
+            // The sidecar records the absence of a leaf index
+            File sidecar = File.createTempFile("test", BBFileIndex.SIDECAR_EXTENSION);
+            sidecar.deleteOnExit();
+            index.writeSidecar(sidecar);
+            BBFileIndex sidecarIndex = BBFileIndex.readSidecar(sidecar, fis, header);
+            assertNotNull(sidecarIndex);
+            assertNull(sidecarIndex.getLeafIndex());
+        }
+        reader.close();
+    }
+
+    @Test
+    public void testNoRemoteSidecar() throws Exception {
+        assertNull(BBFileIndex.getSidecarFile("http://example.com/test.bigwig"));
+    }
+
+    private static List<String> toStrings(List<RPTreeLeafNodeItem> items) {
+        List<String> strings = new ArrayList<>();
+        for (RPTreeLeafNodeItem item : items) {
+            RPChromosomeRegion r = item.getChromosomeBounds();
+            strings.add(r.getStartChromID() + ":" + r.getStartBase() + "-" + r.getEndChromID() + ":" + r.getEndBase() +
+                    "@" + item.getDataOffset() + "+" + item.geDataSize());
+        }
+        return strings;
+    }
+
+    private static String readWig(BBFileReader bbReader, String chr) {
+        StringBuilder buffer = new StringBuilder();
+        BigWigIterator iter = bbReader.getBigWigIterator(chr, 0, chr, Integer.MAX_VALUE, false);
+        while (iter.hasNext()) {
+            WigItem item = iter.next();
+            buffer.append(item.getStartBase()).append('-').append(item.getEndBase()).append(':')
+                    .append(item.getWigValue()).append('\n');
+        }
+        return buffer.toString();
+    }
 }
@@ -0,0 +1,175 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.feature;
+
+import htsjdk.tribble.Feature;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class AbstractCacherTest {
+
+    /**
+     * A cacher over features at every 100 bp, counting raw queries.  Raw queries can be held until released.
+     */
+    static class TestCacher extends AbstractCacher {
+
+        final AtomicInteger queryCount = new AtomicInteger();
+        final CountDownLatch queryStarted = new CountDownLatch(1);
+        volatile CountDownLatch release;
+        volatile int failBefore = -1;    // raw queries starting before this position throw
+
+        TestCacher(int binCount, int binSize, long maxFeatures) {
+            super(binCount, binSize, maxFeatures);
+        }
+
+        @Override
+        protected Iterator<Feature> queryRaw(String chr, int start, int end) throws IOException {
+            queryCount.incrementAndGet();
+            queryStarted.countDown();
+            try {
+                if (release != null) {
+                    release.await();
+                }
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            if (start < failBefore) {
+                throw new IOException("Test failure");
+            }
+            List<Feature> features = new ArrayList<>();
+            for (int pos = (start / 100) * 100; pos < end; pos += 100) {
+                features.add(new BasicFeature(chr, pos, pos + 50));
+            }
+            return features.iterator();
+        }
+    }
+
+    @Test
+    public void testQuery() throws Exception {
+        TestCacher cacher = new TestCacher(10, 1000, AbstractCacher.DEFAULT_MAX_FEATURES);
+
+        assertEquals(11, count(cacher.queryCached("chr1", 1000, 2000)));
+        assertEquals(1, cacher.queryCount.get());
+
+        // Cached
+        assertEquals(6, count(cacher.queryCached("chr1", 1500, 2000)));
+        assertEquals(1, cacher.queryCount.get());
+        assertEquals(2, cacher.getStatistics().getMissCount());
+        assertEquals(2, cacher.getStatistics().getHitCount());
+
+        // Partly cached, only the new bin is loaded
+        assertEquals(21, count(cacher.queryCached("chr1", 1000, 3000)));
+        assertEquals(2, cacher.queryCount.get());
+    }
+
+    @Test
+    public void testConcurrentQueriesShareLoad() throws Exception {
+
+        TestCacher cacher = new TestCacher(10, 1000, AbstractCacher.DEFAULT_MAX_FEATURES);
+        cacher.release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Integer> first = executor.submit(() -> count(cacher.queryCached("chr1", 0, 999)));
+            cacher.queryStarted.await();
+            Future<Integer> second = executor.submit(() -> count(cacher.queryCached("chr1", 0, 999)));
+
+            // The second query waits for the first one's load
+            while (cacher.getStatistics().getSharedLoadCount() == 0) {
+                Thread.sleep(10);
+            }
+            cacher.release.countDown();
+
+            assertEquals(10, (int) first.get());
+            assertEquals(10, (int) second.get());
+            assertEquals(1, cacher.queryCount.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailedLoadReleasesClaimedBins() throws Exception {
+
+        TestCacher cacher = new TestCacher(10, 1000, AbstractCacher.DEFAULT_MAX_FEATURES);
+
+        // Bin 1 is cached, so a query of bins 0-2 loads two runs, bin 0 and bin 2.  Loading bin 0 fails.
+        count(cacher.queryCached("chr1", 1000, 1999));
+        cacher.failBefore = 1000;
+        try {
+            count(cacher.queryCached("chr1", 0, 2999));
+            fail("Expected the load to fail");
+        } catch (RuntimeException e) {
+            // expected
+        }
+        cacher.failBefore = -1;
+
+        // Bin 2 was claimed by the failed query, it is loaded again rather than waited for
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> query = executor.submit(() -> count(cacher.queryCached("chr1", 2000, 2999)));
+            assertEquals(10, (int) query.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testEvictionByFeatureCount() throws Exception {
+
+        // A single stripe.  Each bin holds 10 features, weighing 11 with the bin itself.
+        TestCacher cacher = new TestCacher(10, 1000, 30);
+        for (int i = 0; i < 5; i++) {
+            count(cacher.queryCached("chr1", i * 1000, i * 1000 + 999));
+        }
+        assertEquals(5, cacher.queryCount.get());
+        assertEquals(3, cacher.getStatistics().getEvictionCount());
+        assertEquals(22, cacher.getCachedFeatureCount());
+
+        // The most recent bin is cached, the first is not
+        count(cacher.queryCached("chr1", 4000, 4999));
+        assertEquals(5, cacher.queryCount.get());
+        count(cacher.queryCached("chr1", 0, 999));
+        assertEquals(6, cacher.queryCount.get());
+    }
+
+    private static int count(Iterator<Feature> iter) {
+        int n = 0;
+        while (iter.hasNext()) {
+            iter.next();
+            n++;
+        }
+        return n;
+    }
+}
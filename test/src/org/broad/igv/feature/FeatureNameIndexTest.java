@@ -0,0 +1,167 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.feature;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class FeatureNameIndexTest {
+
+    // Longest first
+    private static final Comparator<NamedFeature> LONGEST_FIRST =
+            (f1, f2) -> (f2.getEnd() - f2.getStart()) - (f1.getEnd() - f1.getStart());
+
+    private static BasicFeature feature(String name, int start, int end) {
+        BasicFeature f = new BasicFeature("chr1", start, end);
+        f.setName(name);
+        return f;
+    }
+
+    @Test
+    public void testAddAndGet() {
+
+        FeatureNameIndex index = new FeatureNameIndex(LONGEST_FIRST, 3);
+        assertTrue(index.add("EGFR", feature("EGFR", 0, 100)));
+        assertTrue(index.add("EGFR", feature("EGFR", 0, 300)));
+        assertTrue(index.add("EGFR", feature("EGFR", 0, 200)));
+        assertFalse(index.add("EGFR", feature("EGFR", 0, 400)));
+        index.add("EGFLAM", feature("EGFLAM", 0, 10));
+        index.add("BRCA1", feature("BRCA1", 0, 10));
+
+        List<NamedFeature> features = index.get("EGFR");
+        assertEquals(3, features.size());
+        assertEquals(300, features.get(0).getEnd());
+        assertEquals(200, features.get(1).getEnd());
+        assertEquals(100, features.get(2).getEnd());
+
+        Map<String, NamedFeature[]> prefixMap = index.getPrefixMap("EGF");
+        assertEquals(2, prefixMap.size());
+        assertEquals("EGFLAM", prefixMap.keySet().iterator().next());
+
+        index.remove("EGFR");
+        assertNull(index.get("EGFR"));
+        assertEquals(2, index.size());
+        index.clear();
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testApproximateNames() {
+
+        FeatureNameIndex index = new FeatureNameIndex(LONGEST_FIRST, 20);
+        for (String name : new String[]{"EGFR", "EGFR-AS1", "EGFLAM", "BRCA1", "BRCA2", "GSTT1", "TP53", "ERBB2"}) {
+            index.add(name, feature(name, 0, 10));
+        }
+
+        // A transposed pair, substitution, or missing letter
+        assertEquals("EGFR", index.getApproximateNames("EGRF", 10, 1).get(0));
+        assertTrue(index.getApproximateNames("ZZZZ", 10, 1).isEmpty());
+        List<String> names = index.getApproximateNames("BRXA", 10, 1);
+        assertEquals(2, names.size());
+        assertTrue(names.contains("BRCA1") && names.contains("BRCA2"));
+        assertEquals("GSTT1", index.getApproximateNames("GSTT", 10, 1).get(0));
+        assertEquals("ERBB2", index.getApproximateNames("ERB2", 10, 1).get(0));
+
+        // Exact prefix matches come first
+        names = index.getApproximateNames("EGFR", 10, 1);
+        assertEquals("EGFR", names.get(0));
+        assertTrue(names.contains("EGFR-AS1"));
+
+        // The trigram index follows changes to the names
+        index.add("GSTM1", feature("GSTM1", 0, 10));
+        assertTrue(index.getApproximateNames("GSTM", 10, 1).contains("GSTM1"));
+        index.remove("GSTT1");
+        assertFalse(index.getApproximateNames("GSTT", 10, 1).contains("GSTT1"));
+    }
+
+    @Test
+    public void testApproximateNamesAfterRemoval() {
+
+        FeatureNameIndex index = new FeatureNameIndex(LONGEST_FIRST, 20);
+        for (int i = 0; i < 3000; i++) {
+            index.add("GENE" + i, feature("GENE" + i, 0, 10));
+        }
+        assertEquals("GENE123", index.getApproximateNames("GENX123", 10, 1).get(0));
+
+        // Enough removals to rebuild the index
+        for (int i = 0; i < 2000; i++) {
+            index.remove("GENE" + i);
+        }
+        assertTrue(index.getApproximateNames("GENX123", 10, 1).isEmpty());
+        assertEquals("GENE2123", index.getApproximateNames("GENX2123", 10, 1).get(0));
+
+        // A removed name added again
+        index.add("GENE123", feature("GENE123", 0, 10));
+        assertEquals("GENE123", index.getApproximateNames("GENX123", 10, 1).get(0));
+
+        index.clear();
+        assertTrue(index.getApproximateNames("GENX2123", 10, 1).isEmpty());
+    }
+
+    @Test
+    public void testPrefixEditDistance() {
+        assertEquals(0, FeatureNameIndex.prefixEditDistance("EGF", "EGFR", 1));
+        assertEquals(1, FeatureNameIndex.prefixEditDistance("EGR", "EGFR", 1));
+        assertEquals(2, FeatureNameIndex.prefixEditDistance("XXGFR", "EGFR", 1));
+        assertEquals(1, FeatureNameIndex.prefixEditDistance("EGFRR", "EGFR", 1));
+    }
+
+    @Test
+    public void testConcurrentAdd() throws Exception {
+
+        final FeatureNameIndex index = new FeatureNameIndex(LONGEST_FIRST, 1000);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final int offset = t;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    String name = "GENE" + (i % 500);
+                    index.add(name, feature(name, 0, 4 * i + offset));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(500, index.size());
+        for (int i = 0; i < 500; i++) {
+            List<NamedFeature> features = index.get("GENE" + i);
+            assertEquals(80, features.size());
+            for (int j = 1; j < features.size(); j++) {
+                assertTrue(features.get(j - 1).getEnd() >= features.get(j).getEnd());
+            }
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.feature;
+
+import htsjdk.tribble.AsciiFeatureCodec;
+import htsjdk.tribble.Feature;
+import htsjdk.tribble.readers.AsciiLineReader;
+import htsjdk.tribble.readers.AsciiLineReaderIterator;
+import org.broad.igv.data.DataTile;
+import org.broad.igv.feature.tribble.GFFCodec;
+import org.broad.igv.feature.tribble.IGVBEDCodec;
+import org.broad.igv.feature.tribble.ParallelFeatureDecoder;
+import org.broad.igv.util.FileUtils;
+import org.broad.igv.util.ParsingUtils;
+import org.broad.igv.util.ResourceLocator;
+import org.broad.igv.util.TestUtils;
+import org.broad.igv.util.collections.MultiMap;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class FeatureSnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testBedRoundTrip() throws Exception {
+        roundTrip(TestUtils.DATA_DIR + "bed/Unigene.sample.bed", new IGVBEDCodec());
+    }
+
+    @Test
+    public void testGFFRoundTrip() throws Exception {
+        roundTrip(TestUtils.DATA_DIR + "gff/aliased.unsorted.gff", new GFFCodec(null));
+    }
+
+    @Test
+    public void testStaleSnapshot() throws Exception {
+
+        File file = folder.newFile("test.bed");
+        FileUtils.copyFile(new File(TestUtils.DATA_DIR + "bed/test.bed"), file);
+        String path = file.getAbsolutePath();
+        Map<String, List<Feature>> featureMap = load(path, new IGVBEDCodec());
+
+        File snapshotFile = new File(folder.getRoot(), "test" + FeatureSnapshot.EXTENSION);
+        FeatureSnapshot.write(snapshotFile, path, "hg19", "bed", file.length(), file.lastModified(), featureMap, null, 0);
+
+        assertNotNull(FeatureSnapshot.open(snapshotFile, path, "hg19", "bed"));
+        assertNull(FeatureSnapshot.open(snapshotFile, path, "hg18", "bed"));
+        assertNull(FeatureSnapshot.open(snapshotFile, path, "hg19", "gff"));
+
+        assertTrue(file.setLastModified(file.lastModified() - 10000));
+        assertNull(FeatureSnapshot.open(snapshotFile, path, "hg19", "bed"));
+    }
+
+    /**
+     * Attributes merged with MultiMap.addAll, whose size() then disagrees with the pairs held.
+     */
+    @Test
+    public void testMergedAttributes() throws Exception {
+
+        File file = folder.newFile("merged.bed");
+        String path = file.getAbsolutePath();
+
+        MultiMap<String, String> attributes = new MultiMap<>();
+        attributes.put("ID", "gene1");
+        MultiMap<String, String> more = new MultiMap<>();
+        more.put("Name", "abc");
+        more.put("Note", "x");
+        attributes.addAll(more);
+
+        Map<String, List<Feature>> featureMap = new LinkedHashMap<>();
+        List<Feature> features = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            BasicFeature f = new BasicFeature("chr1", 100 * i, 100 * i + 50, Strand.POSITIVE);
+            f.setName("f" + i);
+            f.setAttributes(attributes);
+            features.add(f);
+        }
+        featureMap.put("chr1", features);
+
+        File snapshotFile = new File(folder.getRoot(), "merged" + FeatureSnapshot.EXTENSION);
+        FeatureSnapshot.write(snapshotFile, path, "hg19", "bed", file.length(), file.lastModified(), featureMap, null, 0);
+        FeatureSnapshot snapshot = FeatureSnapshot.open(snapshotFile, path, "hg19", "bed");
+        assertEquals(describe(features), describe(snapshot.readFeatures("chr1")));
+    }
+
+    @Test
+    public void testEvict() throws Exception {
+
+        File dir = folder.newFolder("features");
+        long now = System.currentTimeMillis();
+        File[] snapshots = new File[4];
+        for (int i = 0; i < snapshots.length; i++) {
+            snapshots[i] = new File(dir, i + FeatureSnapshot.EXTENSION);
+            try (FileOutputStream fos = new FileOutputStream(snapshots[i])) {
+                fos.write(new byte[1000]);
+            }
+            assertTrue(snapshots[i].setLastModified(now - (i + 1) * 60000L));
+        }
+        File staleTmp = new File(dir, "features123.tmp");
+        assertTrue(staleTmp.createNewFile());
+        assertTrue(staleTmp.setLastModified(now - 2 * 24 * 60 * 60 * 1000L));
+        File tmp = new File(dir, "features456.tmp");
+        assertTrue(tmp.createNewFile());
+
+        // The oldest snapshot was used most recently
+        assertTrue(snapshots[3].setLastModified(now));
+
+        FeatureSnapshot.evict(dir, 2500);
+        assertTrue(snapshots[0].exists());
+        assertFalse(snapshots[1].exists());
+        assertFalse(snapshots[2].exists());
+        assertTrue(snapshots[3].exists());
+        assertFalse(staleTmp.exists());
+        assertTrue(tmp.exists());
+
+        FeatureSnapshot.evict(dir, 2500);
+        assertTrue(snapshots[0].exists());
+        assertTrue(snapshots[3].exists());
+    }
+
+    private void roundTrip(String path, AsciiFeatureCodec codec) throws Exception {
+
+        path = new File(path).getAbsolutePath();
+        Map<String, List<Feature>> featureMap = load(path, codec);
+        assertTrue(FeatureSnapshot.isSupported(featureMap.values()));
+
+        DataTile coverage = new DataTile(new int[]{0, 10}, new int[]{10, 20}, new float[]{1, 2}, null);
+        File snapshotFile = new File(folder.getRoot(), "test" + FeatureSnapshot.EXTENSION);
+        File file = new File(path);
+        FeatureSnapshot.write(snapshotFile, path, "hg19", codec.getClass().getName(), file.length(), file.lastModified(),
+                featureMap, coverage, 2);
+
+        // Opening a snapshot marks it as recently used
+        long written = System.currentTimeMillis() - 60000;
+        assertTrue(snapshotFile.setLastModified(written));
+        FeatureSnapshot snapshot = FeatureSnapshot.open(snapshotFile, path, "hg19", codec.getClass().getName());
+        assertNotNull(snapshot);
+        assertTrue(snapshotFile.lastModified() > written);
+        assertEquals(featureMap.keySet(), snapshot.getChromosomes());
+        for (Map.Entry<String, List<Feature>> entry : featureMap.entrySet()) {
+            assertEquals(entry.getValue().size(), snapshot.getFeatureCount(entry.getKey()));
+            assertEquals(describe(entry.getValue()), describe(snapshot.readFeatures(entry.getKey())));
+        }
+        assertNull(snapshot.readFeatures("chrNone"));
+
+        assertArrayEquals(coverage.getStartLocations(), snapshot.getGenomeCoverage().getStartLocations());
+        assertArrayEquals(coverage.getValues(), snapshot.getGenomeCoverage().getValues(), 0);
+        assertEquals(2, snapshot.getDataMax(), 0);
+    }
+
+    private static Map<String, List<Feature>> load(String path, AsciiFeatureCodec codec) throws Exception {
+        Map<String, List<Feature>> featureMap = new LinkedHashMap<>();
+        try (AsciiLineReader reader = ParsingUtils.openAsciiReader(new ResourceLocator(path))) {
+            ParallelFeatureDecoder.decode(new AsciiLineReaderIterator(reader), () -> codec, 0,
+                    f -> featureMap.computeIfAbsent(f.getChr(), chr -> new ArrayList<>()).add(f));
+        }
+        return featureMap;
+    }
+
+    private static List<String> describe(List<Feature> features) {
+        List<String> descriptions = new ArrayList<>();
+        for (Feature f : features) {
+            BasicFeature bf = (BasicFeature) f;
+            StringBuilder buffer = new StringBuilder();
+            describe(bf, buffer);
+            buffer.append(" ").append(bf.getThickStart()).append("-").append(bf.getThickEnd())
+                    .append(" ").append(bf.getScore()).append(" ").append(bf.getIdentifier())
+                    .append(" ").append(Arrays.toString(bf.getParentIds()));
+            if (bf.getExons() != null) {
+                for (Exon exon : bf.getExons()) {
+                    buffer.append(" [");
+                    describe(exon, buffer);
+                    buffer.append(" ").append(exon.getCdStart()).append("-").append(exon.getCdEnd())
+                            .append(" ").append(exon.isNonCoding()).append(" ").append(exon.getNumber())
+                            .append("]");
+                }
+            }
+            descriptions.add(buffer.toString());
+        }
+        return descriptions;
+    }
+
+    private static void describe(AbstractFeature f, StringBuilder buffer) {
+        buffer.append(f.getChr()).append(":").append(f.getStart()).append("-").append(f.getEnd())
+                .append(" ").append(f.getStrand()).append(" ").append(f.getName()).append(" ").append(f.getType())
+                .append(" ").append(f.getColor()).append(" ").append(f.getReadingFrame())
+                .append(" ").append(f.getDescription());
+        if (f.getAttributes() != null) {
+            for (String key : f.getAttributes().keys()) {
+                buffer.append(" ").append(key).append("=").append(f.getAttributes().getAll(key));
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.feature.genome;
+
+import org.broad.igv.ui.panel.ReferenceFrame;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SequenceTileCacheTest {
+
+    @Test
+    public void testEviction() {
+
+        SequenceTileCache cache = new SequenceTileCache(2500);
+
+        cache.put("chr1/0", new SequenceWrapper.SequenceTile(0, new byte[1000]));
+        cache.put("chr1/1", new SequenceWrapper.SequenceTile(1000, new byte[1000]));
+        assertEquals(2, cache.size());
+
+        // Touch the first tile, the second is then the least recently used
+        assertNotNull(cache.get("chr1/0"));
+        cache.put("chr1/2", new SequenceWrapper.SequenceTile(2000, new byte[200]));
+        assertEquals(3, cache.size());
+        cache.put("chr1/3", new SequenceWrapper.SequenceTile(3000, new byte[500]));
+        assertFalse(cache.containsKey("chr1/1"));
+        assertTrue(cache.containsKey("chr1/0"));
+        assertTrue(cache.getCachedBytes() <= cache.getMaxBytes());
+
+        // A tile larger than the budget is kept, alone
+        cache.put("chr1/4", new SequenceWrapper.SequenceTile(4000, new byte[5000]));
+        assertEquals(1, cache.size());
+        assertNotNull(cache.get("chr1/4"));
+
+        assertNull(cache.get("chr1/0"));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getCachedBytes());
+    }
+
+    @Test
+    public void testPrefetch() throws Exception {
+
+        final String chr = "chr1";
+        final byte[] bases = new byte[3500000];
+        for (int i = 0; i < bases.length; i++) {
+            bases[i] = (byte) "ACGT".charAt(i % 4);
+        }
+        final AtomicInteger reads = new AtomicInteger();
+        Sequence source = new InMemorySequence(chr, bases) {
+            @Override
+            public byte[] getSequence(String chr, int qstart, int qend, boolean useCache) {
+                reads.incrementAndGet();
+                return super.getSequence(chr, qstart, qend, useCache);
+            }
+        };
+        SequenceWrapper wrapper = new SequenceWrapper(source, 100000000);
+
+        // A view at the start of the second tile, tiles 0 - 2 are prefetched
+        ReferenceFrame frame = new ReferenceFrame("test") {
+            @Override
+            public String getChrName() {
+                return chr;
+            }
+
+            @Override
+            public double getOrigin() {
+                return 1000000;
+            }
+
+            @Override
+            public double getEnd() {
+                return 1000100;
+            }
+        };
+        wrapper.prefetch(frame);
+
+        byte[] seq = wrapper.getSequence(chr, 999950, 1000150, true);
+        assertArrayEquals(Arrays.copyOfRange(bases, 999950, 1000150), seq);
+        assertEquals(bases[2500000], wrapper.getBase(chr, 2500000));
+        assertEquals(3, reads.get());
+        assertEquals(3, wrapper.getSequenceCache().size());
+        assertEquals(0, wrapper.getSequenceCache().getMissCount());
+        assertTrue(wrapper.isLoaded(frame));
+
+        // Already cached, nothing more is read
+        wrapper.prefetch(frame);
+        wrapper.getSequence(chr, 0, 10, true);
+        assertEquals(3, reads.get());
+    }
+
+    /**
+     * A tile still queued for prefetch is loaded by the requesting thread, it doesn't wait for the tiles ahead.
+     */
+    @Test
+    public void testQueuedPrefetchRunsOnCaller() throws Exception {
+
+        final String chr = "chr1";
+        final byte[] bases = new byte[3500000];
+        Arrays.fill(bases, (byte) 'A');
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Sequence source = new InMemorySequence(chr, bases) {
+            @Override
+            public byte[] getSequence(String chr, int qstart, int qend, boolean useCache) {
+                if (qstart == 0) {
+                    // Hold the prefetch thread on the first tile
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.getSequence(chr, qstart, qend, useCache);
+            }
+        };
+        SequenceWrapper wrapper = new SequenceWrapper(source, 100000000);
+        ReferenceFrame frame = new ReferenceFrame("test") {
+            @Override
+            public String getChrName() {
+                return chr;
+            }
+
+            @Override
+            public double getOrigin() {
+                return 1000000;
+            }
+
+            @Override
+            public double getEnd() {
+                return 1000100;
+            }
+        };
+
+        try {
+            wrapper.prefetch(frame);
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            byte base = CompletableFuture.supplyAsync(() -> wrapper.getBase(chr, 2500000)).get(10, TimeUnit.SECONDS);
+            assertEquals('A', base);
+        } finally {
+            release.countDown();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.feature.genome.fasta;
+
+import org.broad.igv.Globals;
+import org.broad.igv.feature.genome.SequenceWrapper;
+import org.broad.igv.prefs.Constants;
+import org.broad.igv.prefs.IGVPreferences;
+import org.broad.igv.prefs.PreferencesManager;
+import org.broad.igv.util.TestUtils;
+import org.junit.Assume;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of memory mapped fasta files, which need only local test data.
+ */
+public class FastaMappedSequenceTest {
+
+    /**
+     * Compare sequence and bases read from a mapped fasta with a conventional read, for all alignments of
+     * the query interval to the 60 base lines.
+     */
+    @Test
+    public void testMappedSequence() throws Exception {
+
+        // Files are never mapped on Windows
+        Assume.assumeTrue(!Globals.IS_WINDOWS);
+
+        String fasta = TestUtils.DATA_DIR + "fasta/ecoli_out.padded.fasta";
+        String chr = "NC_000913_bb";
+        int chrLength = 5081;
+
+        IGVPreferences prefs = PreferencesManager.getPreferences();
+        String mapped = prefs.get(Constants.MAPPED_LOCAL_FILES);
+        FastaIndexedSequence mappedSequence;
+        FastaIndexedSequence streamedSequence;
+        try {
+            prefs.put(Constants.MAPPED_LOCAL_FILES, "true");
+            mappedSequence = new FastaIndexedSequence(fasta);
+            prefs.put(Constants.MAPPED_LOCAL_FILES, "false");
+            streamedSequence = new FastaIndexedSequence(fasta);
+        } finally {
+            prefs.put(Constants.MAPPED_LOCAL_FILES, mapped);
+        }
+        assertTrue(mappedSequence.isRandomAccess());
+        assertFalse(streamedSequence.isRandomAccess());
+
+        for (int start = 0; start < 130; start++) {
+            for (int end : new int[]{start + 1, start + 59, start + 60, start + 61, start + 250, chrLength + 10}) {
+                assertArrayEquals(streamedSequence.getSequence(chr, start, end, false),
+                        mappedSequence.getSequence(chr, start, end, false));
+            }
+        }
+
+        byte[] allBytes = streamedSequence.getSequence(chr, 0, chrLength, false);
+        assertEquals(chrLength, allBytes.length);
+        for (int i = 0; i < chrLength; i++) {
+            assertEquals(allBytes[i], mappedSequence.getBase(chr, i));
+            assertEquals(allBytes[i], streamedSequence.getBase(chr, i));
+        }
+        assertEquals(0, mappedSequence.getBase(chr, chrLength));
+        assertEquals(0, mappedSequence.getBase("noSuchChr", 0));
+
+        // A random access sequence is read through the wrapper directly, padded as the tiled sequence is
+        SequenceWrapper wrapper = new SequenceWrapper(mappedSequence);
+        assertEquals(allBytes[0], wrapper.getBase(chr, 0));
+        byte[] padded = wrapper.getSequence(chr, -5, 10, true);
+        assertEquals(15, padded.length);
+        assertEquals(0, padded[4]);
+        assertEquals(new String(allBytes, 0, 10), new String(padded, 5, 10));
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.feature.tribble;
+
+import htsjdk.tribble.AsciiFeatureCodec;
+import htsjdk.tribble.Feature;
+import htsjdk.tribble.readers.AsciiLineReader;
+import htsjdk.tribble.readers.AsciiLineReaderIterator;
+import org.broad.igv.feature.BasicFeature;
+import org.broad.igv.track.GFFFeatureSource;
+import org.broad.igv.track.TrackProperties;
+import org.broad.igv.util.ParsingUtils;
+import org.broad.igv.util.ResourceLocator;
+import org.broad.igv.util.TestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+public class ParallelFeatureDecoderTest {
+
+    int batchSize;
+
+    @Before
+    public void setUp() {
+        // Small batches, so that the test files are split among several tasks
+        batchSize = ParallelFeatureDecoder.batchSize;
+        ParallelFeatureDecoder.batchSize = 3;
+    }
+
+    @After
+    public void tearDown() {
+        ParallelFeatureDecoder.batchSize = batchSize;
+    }
+
+    @Test
+    public void testDecodeInOrder() throws Exception {
+
+        String path = TestUtils.DATA_DIR + "bed/Unigene.withheader.sorted.bed";
+
+        List<Feature> expected = new ArrayList<>();
+        FeatureFileHeader expectedHeader = (FeatureFileHeader) decode(path, () -> new IGVBEDCodec(), 0, expected);
+
+        List<Feature> actual = new ArrayList<>();
+        FeatureFileHeader header = (FeatureFileHeader) decode(path, () -> new IGVBEDCodec(), 3, actual);
+
+        assertTrue(expected.size() > 3 * ParallelFeatureDecoder.batchSize);
+        assertEquals(describe(expected), describe(actual));
+
+        TrackProperties expectedProperties = expectedHeader.getTrackProperties();
+        assertNotNull(expectedProperties);
+        assertEquals(expectedProperties.getName(), header.getTrackProperties().getName());
+    }
+
+    @Test
+    public void testDecodeError() throws Exception {
+
+        Iterator<String> lines = Arrays.asList("1", "2", "3", "4", "x", "6", "7").iterator();
+        Supplier<Function<String, ? extends Feature>> decoderFactory = () -> line -> {
+            int pos = Integer.parseInt(line);
+            return new BasicFeature("chr1", pos, pos + 1);
+        };
+        try {
+            ParallelFeatureDecoder.decodeLines(lines, decoderFactory, 2, f -> {
+            });
+            fail("Expected a NumberFormatException");
+        } catch (NumberFormatException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Combining parts by chromosome should give the same features as combining the whole file.
+     */
+    @Test
+    public void testCombineByChromosome() throws Exception {
+
+        String path = TestUtils.DATA_DIR + "gff/aliased.unsorted.gff";
+
+        List<Feature> parts = new ArrayList<>();
+        decode(path, () -> new GFFCodec(null), 2, parts);
+
+        List<Feature> expected = new GFFFeatureSource.GFFCombiner().addFeatures(parts.iterator()).combineFeatures();
+
+        parts.clear();
+        decode(path, () -> new GFFCodec(null), 2, parts);
+        Map<String, List<Feature>> featureMap = new LinkedHashMap<>();
+        for (Feature f : parts) {
+            featureMap.computeIfAbsent(f.getChr(), chr -> new ArrayList<>()).add(f);
+        }
+        assertTrue(featureMap.size() > 1);
+
+        List<Feature> actual = new ArrayList<>();
+        for (List<Feature> features : GFFFeatureSource.combineByChromosome(featureMap).values()) {
+            actual.addAll(features);
+        }
+
+        List<String> expectedDescriptions = describe(expected);
+        List<String> actualDescriptions = describe(actual);
+        Collections.sort(expectedDescriptions);
+        Collections.sort(actualDescriptions);
+        assertEquals(expectedDescriptions, actualDescriptions);
+    }
+
+    private static Object decode(String path, Supplier<? extends AsciiFeatureCodec> codecFactory, int parallelism,
+                                 List<Feature> features) throws Exception {
+        try (AsciiLineReader reader = ParsingUtils.openAsciiReader(new ResourceLocator(path))) {
+            return ParallelFeatureDecoder.decode(new AsciiLineReaderIterator(reader), codecFactory, parallelism,
+                    features::add);
+        }
+    }
+
+    private static List<String> describe(List<Feature> features) {
+        List<String> descriptions = new ArrayList<>();
+        for (Feature f : features) {
+            BasicFeature bf = (BasicFeature) f;
+            descriptions.add(bf.getChr() + ":" + bf.getStart() + "-" + bf.getEnd() + " " + bf.getName() +
+                    " " + bf.getExonCount());
+        }
+        return descriptions;
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.sam;
+
+import htsjdk.samtools.util.CloseableIterator;
+import org.broad.igv.Globals;
+import org.broad.igv.prefs.IGVPreferences;
+import org.broad.igv.prefs.PreferencesManager;
+import org.broad.igv.sam.reader.AlignmentReader;
+import org.broad.igv.sam.reader.AlignmentReaderFactory;
+import org.broad.igv.util.ResourceLocator;
+import org.broad.igv.util.TestUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.broad.igv.prefs.Constants.*;
+import static org.junit.Assert.*;
+
+public class AlignmentTileCacheTest {
+
+    // Reads in the test file span a few hundred bases, so use small tiles
+    private static final int TILE_SIZE = 50;
+
+    private static final String BAM_PATH = TestUtils.DATA_DIR + "bam/gstt1_sample.bam";
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        Globals.setHeadless(true);
+
+        IGVPreferences prefs = PreferencesManager.getPreferences();
+        prefs.put(SAM_TILED_CACHE, true);
+        prefs.put(SAM_TILE_SIZE, String.valueOf(TILE_SIZE));
+        prefs.put(SAM_DOWNSAMPLE_READS, false);
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+        IGVPreferences prefs = PreferencesManager.getPreferences();
+        prefs.remove(SAM_TILED_CACHE);
+        prefs.remove(SAM_TILE_SIZE);
+        prefs.remove(SAM_DOWNSAMPLE_READS);
+    }
+
+    @Test
+    public void testReuseAndEviction() throws Exception {
+
+        final int tileSize = 1000;
+        final List<Integer> loaded = new ArrayList<>();
+        AlignmentTileCache.TileLoader loader = (chr, start, end) -> {
+            loaded.add(start);
+            AlignmentTileLoader.AlignmentTile tile = new AlignmentTileLoader.AlignmentTile(start, end, null,
+                    new AlignmentDataManager.DownsampleOptions(false, 50, 100), null, true, false);
+            tile.finish();
+            return tile;
+        };
+
+        // Budget allows ~4 empty tiles
+        long tileBytes = tileSize * 80;
+        AlignmentTileCache cache = new AlignmentTileCache(tileSize, 4 * tileBytes + tileBytes / 2);
+
+        List<AlignmentTileLoader.AlignmentTile> tiles = cache.getTiles("chr1", 500, 3500, loader);
+        assertEquals(4, tiles.size());
+        assertEquals(0, tiles.get(0).getStart());
+        assertEquals(4000, tiles.get(3).getEnd());
+        assertEquals(Arrays.asList(0, 1000, 2000, 3000), loaded);
+
+        // Shifting by one tile loads only the newly exposed tile, and evicts the least recently used
+        loaded.clear();
+        tiles = cache.getTiles("chr1", 1500, 4500, loader);
+        assertEquals(4, tiles.size());
+        assertEquals(Arrays.asList(4000), loaded);
+        assertEquals(4, cache.size());
+
+        loaded.clear();
+        cache.getTiles("chr1", 0, 1000, loader);
+        assertEquals(Arrays.asList(0), loaded);
+        assertTrue(cache.getCachedBytes() <= 4 * tileBytes + tileBytes / 2);
+
+        // Different chromosome
+        loaded.clear();
+        cache.getTiles("chr2", 0, 1000, loader);
+        assertEquals(Arrays.asList(0), loaded);
+    }
+
+    /**
+     * A tile being loaded by one caller is shared with concurrent callers rather than loaded again, and the
+     * cache is not locked during the load.
+     */
+    @Test
+    public void testConcurrentLoad() throws Exception {
+
+        final int tileSize = 1000;
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Integer> loaded = Collections.synchronizedList(new ArrayList<>());
+        AlignmentTileCache.TileLoader loader = (chr, start, end) -> {
+            loaded.add(start);
+            if (start == 0) {
+                loading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            AlignmentTileLoader.AlignmentTile tile = new AlignmentTileLoader.AlignmentTile(start, end, null,
+                    new AlignmentDataManager.DownsampleOptions(false, 50, 100), null, true, false);
+            tile.finish();
+            return tile;
+        };
+
+        AlignmentTileCache cache = new AlignmentTileCache(tileSize, Long.MAX_VALUE);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<List<AlignmentTileLoader.AlignmentTile>> first = executor.submit(() -> cache.getTiles("chr1", 0, 1000, loader));
+            assertTrue(loading.await(10, TimeUnit.SECONDS));
+
+            // Tiles not in flight can be loaded while tile 0 is loading
+            assertEquals(1, cache.getTiles("chr1", 1000, 2000, loader).size());
+
+            Future<List<AlignmentTileLoader.AlignmentTile>> second = executor.submit(() -> cache.getTiles("chr1", 0, 2000, loader));
+            release.countDown();
+
+            AlignmentTileLoader.AlignmentTile tile = first.get(10, TimeUnit.SECONDS).get(0);
+            assertSame(tile, second.get(10, TimeUnit.SECONDS).get(0));
+            assertEquals(Arrays.asList(0, 1000), loaded);
+            assertEquals(2, cache.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * A failed load is not cached and does not leave later tiles of the same request claimed
+     */
+    @Test
+    public void testFailedLoad() throws Exception {
+
+        final int tileSize = 1000;
+        final int[] failAt = {1000};
+        AlignmentTileCache.TileLoader loader = (chr, start, end) -> {
+            if (start == failAt[0]) {
+                throw new RuntimeException("Load failed");
+            }
+            AlignmentTileLoader.AlignmentTile tile = new AlignmentTileLoader.AlignmentTile(start, end, null,
+                    new AlignmentDataManager.DownsampleOptions(false, 50, 100), null, true, false);
+            tile.finish();
+            return tile;
+        };
+
+        AlignmentTileCache cache = new AlignmentTileCache(tileSize, Long.MAX_VALUE);
+        try {
+            cache.getTiles("chr1", 0, 3000, loader);
+            fail("Expected load to fail");
+        } catch (RuntimeException e) {
+            assertEquals("Load failed", e.getMessage());
+        }
+        assertEquals(1, cache.size());
+
+        failAt[0] = -1;
+        assertEquals(3, cache.getTiles("chr1", 0, 3000, loader).size());
+        assertEquals(3, cache.size());
+    }
+
+    /**
+     * An interval built from tiles must contain the same alignments and counts as one loaded in a single query
+     */
+    @Test
+    public void testTiledIntervalMatchesInterval() throws Exception {
+
+        AlignmentDataManager manager = new AlignmentDataManager(new ResourceLocator(BAM_PATH), null);
+        assertNotNull(manager.getTileCache());
+
+        String chr = "chr22";
+        int start = getFirstTileStart(chr);
+        int end = start + 3 * TILE_SIZE;
+
+        AlignmentInterval expected = manager.loadInterval(chr, start, end, null);
+        AlignmentInterval actual = manager.loadTiledInterval(chr, start, end);
+
+        assertEquals(start, actual.getStart());
+        assertEquals(end, actual.getEnd());
+        assertTrue(expected.getAlignments().size() > 0);
+        assertEquals(getKeys(expected.getAlignments()), getKeys(actual.getAlignments()));
+
+        AlignmentCounts expectedCounts = expected.getCounts();
+        AlignmentCounts actualCounts = actual.getCounts();
+        assertEquals(expectedCounts.getNumberOfPoints(), actualCounts.getNumberOfPoints());
+        for (int pos = start; pos < end; pos++) {
+            assertEquals(expectedCounts.getTotalCount(pos), actualCounts.getTotalCount(pos));
+            assertEquals(expectedCounts.getDelCount(pos), actualCounts.getDelCount(pos));
+            assertEquals(expectedCounts.getInsCount(pos), actualCounts.getInsCount(pos));
+            assertEquals(expectedCounts.getCount(pos, (byte) 'A'), actualCounts.getCount(pos, (byte) 'A'));
+        }
+        assertEquals(expectedCounts.getMaxCount(start, end), actualCounts.getMaxCount(start, end));
+
+        // Counting the alignments into empty tiles reproduces the counts
+        List<AlignmentCounts> emptyTiles = new ArrayList<>();
+        for (int tileStart = start; tileStart < end; tileStart += TILE_SIZE) {
+            emptyTiles.add(new DenseAlignmentCounts(tileStart, tileStart + TILE_SIZE, null));
+        }
+        TiledAlignmentCounts recounted = new TiledAlignmentCounts(emptyTiles, TILE_SIZE);
+        for (Alignment a : expected.getAlignments()) {
+            recounted.incCounts(a);
+        }
+        for (int pos = start; pos < end; pos++) {
+            assertEquals(expectedCounts.getTotalCount(pos), recounted.getTotalCount(pos));
+            assertEquals(expectedCounts.getDelCount(pos), recounted.getDelCount(pos));
+            assertEquals(expectedCounts.getCount(pos, (byte) 'A'), recounted.getCount(pos, (byte) 'A'));
+        }
+    }
+
+    @Test
+    public void testExtendPacking() throws Exception {
+
+        AlignmentDataManager manager = new AlignmentDataManager(new ResourceLocator(BAM_PATH), null);
+        AlignmentTrack.RenderOptions renderOptions = new AlignmentTrack.RenderOptions();
+
+        String chr = "chr22";
+        int start = getFirstTileStart(chr);
+
+        AlignmentInterval first = manager.loadTiledInterval(chr, start, start + 3 * TILE_SIZE);
+        first.packAlignments(renderOptions);
+
+        AlignmentInterval second = manager.loadTiledInterval(chr, start + TILE_SIZE, start + 4 * TILE_SIZE);
+        PackedAlignments extended = new AlignmentPacker().extendPacking(second, first, renderOptions);
+        assertNotNull(extended);
+
+        // Every alignment is packed exactly once, rows are sorted and do not overlap
+        Set<Alignment> packed = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (List<Row> rows : extended.values()) {
+            for (Row row : rows) {
+                Alignment last = null;
+                for (Alignment a : row.alignments) {
+                    if (last != null) {
+                        assertTrue(last.getEnd() + AlignmentPacker.MIN_ALIGNMENT_SPACING <= a.getStart());
+                    }
+                    assertTrue(packed.add(a));
+                    last = a;
+                }
+            }
+        }
+        assertEquals(second.getAlignments().size(), packed.size());
+        for (Alignment a : second.getAlignments()) {
+            assertTrue(packed.contains(a));
+        }
+
+        // Alignments in tiles shared by both intervals keep their rows
+        Map<Alignment, Integer> firstRows = getRowIndices(first.getPackedAlignments().get(""));
+        Map<Alignment, Integer> extendedRows = getRowIndices(extended.get(""));
+        int shared = 0;
+        for (Map.Entry<Alignment, Integer> entry : extendedRows.entrySet()) {
+            Integer row = firstRows.get(entry.getKey());
+            if (row != null) {
+                shared++;
+                assertTrue(entry.getValue() <= row);
+            }
+        }
+        assertTrue(shared > 0);
+    }
+
+    private static int getFirstTileStart(String chr) throws Exception {
+        AlignmentReader reader = AlignmentReaderFactory.getReader(new ResourceLocator(BAM_PATH));
+        CloseableIterator<Alignment> iter = reader.query(chr, 0, Integer.MAX_VALUE, false);
+        int start = iter.next().getStart();
+        iter.close();
+        reader.close();
+        return (start / TILE_SIZE) * TILE_SIZE;
+    }
+
+    private static List<String> getKeys(List<Alignment> alignments) {
+        List<String> keys = new ArrayList<>(alignments.size());
+        for (Alignment a : alignments) {
+            keys.add(a.getReadName() + ":" + a.getStart() + ":" + a.isFirstOfPair());
+        }
+        return keys;
+    }
+
+    private static Map<Alignment, Integer> getRowIndices(List<Row> rows) {
+        Map<Alignment, Integer> indices = new IdentityHashMap<>();
+        for (int i = 0; i < rows.size(); i++) {
+            for (Alignment a : rows.get(i).alignments) {
+                indices.put(a, i);
+            }
+        }
+        return indices;
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.sam;
+
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import htsjdk.samtools.ValidationStringency;
+import org.broad.igv.Globals;
+import org.broad.igv.util.TestUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ColumnarAlignmentStoreTest {
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        Globals.setHeadless(true);
+    }
+
+    @Test
+    public void testGSTT1Sample() throws Exception {
+        compareAlignments(TestUtils.DATA_DIR + "bam/gstt1_sample.bam");
+    }
+
+    /**
+     * The SAM spec example includes deletions, insertions, padding, soft and hard clips
+     */
+    @Test
+    public void testSamSpecExample() throws Exception {
+        compareAlignments(TestUtils.DATA_DIR + "bam/sam_spec_example.bam");
+    }
+
+    @Test
+    public void testCompact() throws Exception {
+
+        List<PicardAlignment> expected = readAlignments(TestUtils.DATA_DIR + "bam/gstt1_sample.bam");
+        ColumnarAlignmentStore store = new ColumnarAlignmentStore(expected.get(0).getRecord().getHeader());
+        List<Alignment> stored = new ArrayList<>();
+        for (PicardAlignment a : expected) {
+            stored.add(store.add(a));
+        }
+
+        // Retain every third alignment
+        List<Alignment> retained = new ArrayList<>();
+        List<PicardAlignment> expectedRetained = new ArrayList<>();
+        for (int i = 0; i < stored.size(); i += 3) {
+            retained.add(stored.get(i));
+            expectedRetained.add(expected.get(i));
+        }
+        long offHeapBytes = store.getOffHeapBytes();
+        store.compact(retained);
+
+        assertEquals(retained.size(), store.size());
+        assertTrue(store.getOffHeapBytes() < offHeapBytes);
+        for (int i = 0; i < retained.size(); i++) {
+            compareAlignment(expectedRetained.get(i), retained.get(i));
+        }
+    }
+
+    /**
+     * Records copied from their BAM binary form decode to the records read
+     */
+    @Test
+    public void testRecords() throws Exception {
+
+        List<PicardAlignment> expected = readAlignments(TestUtils.DATA_DIR + "bam/sam_spec_example.bam");
+        ColumnarAlignmentStore store = new ColumnarAlignmentStore(expected.get(0).getRecord().getHeader());
+        for (PicardAlignment a : expected) {
+            ColumnarAlignment s = (ColumnarAlignment) store.add(a);
+            assertEquals(a.getRecord().getSAMString(), s.toPicardAlignment().getRecord().getSAMString());
+        }
+
+        // A small interval does not reserve a whole segment
+        assertTrue(store.getOffHeapBytes() <= ColumnarAlignmentStore.MIN_SEGMENT_SIZE);
+    }
+
+    @Test
+    public void testSetStartEnd() throws Exception {
+
+        List<PicardAlignment> expected = readAlignments(TestUtils.DATA_DIR + "bam/gstt1_sample.bam");
+        ColumnarAlignmentStore store = new ColumnarAlignmentStore(expected.get(0).getRecord().getHeader());
+        Alignment a = store.add(expected.get(0));
+        int start = a.getStart();
+        int end = a.getEnd();
+        a.setStart(start - 10);
+        a.setEnd(end + 10);
+        assertEquals(start - 10, a.getStart());
+        assertEquals(end + 10, a.getEnd());
+    }
+
+    private void compareAlignments(String path) throws Exception {
+
+        List<PicardAlignment> expected = readAlignments(path);
+        assertTrue(expected.size() > 0);
+
+        ColumnarAlignmentStore store = new ColumnarAlignmentStore(expected.get(0).getRecord().getHeader());
+        List<Alignment> stored = new ArrayList<>();
+        int start = Integer.MAX_VALUE;
+        int end = 0;
+        for (PicardAlignment a : expected) {
+            Alignment s = store.add(a);
+            assertTrue(s instanceof ColumnarAlignment);
+            stored.add(s);
+            start = Math.min(start, a.getStart());
+            end = Math.max(end, a.getEnd());
+        }
+        assertTrue(store.getOffHeapBytes() > 0);
+
+        for (int i = 0; i < expected.size(); i++) {
+            compareAlignment(expected.get(i), stored.get(i));
+        }
+
+        // Counts computed from the stored records must match counts computed from alignment blocks
+        String chr = expected.get(0).getChr();
+        DenseAlignmentCounts expectedCounts = new DenseAlignmentCounts(start, end, null);
+        DenseAlignmentCounts actualCounts = new DenseAlignmentCounts(start, end, null);
+        for (int i = 0; i < expected.size(); i++) {
+            if (expected.get(i).getChr().equals(chr)) {
+                expectedCounts.incCounts(expected.get(i));
+                actualCounts.incCounts(stored.get(i));
+            }
+        }
+        expectedCounts.finish();
+        actualCounts.finish();
+        for (int pos = start; pos < end; pos++) {
+            assertEquals(expectedCounts.getTotalCount(pos), actualCounts.getTotalCount(pos));
+            assertEquals(expectedCounts.getDelCount(pos), actualCounts.getDelCount(pos));
+            assertEquals(expectedCounts.getInsCount(pos), actualCounts.getInsCount(pos));
+            for (byte b : new byte[]{'A', 'C', 'G', 'T', 'N'}) {
+                assertEquals(expectedCounts.getPosCount(pos, b), actualCounts.getPosCount(pos, b));
+                assertEquals(expectedCounts.getNegCount(pos, b), actualCounts.getNegCount(pos, b));
+            }
+        }
+    }
+
+    private static void compareAlignment(PicardAlignment expected, Alignment actual) {
+
+        assertEquals(expected.getReadName(), actual.getReadName());
+        assertEquals(expected.getChr(), actual.getChr());
+        assertEquals(expected.getStart(), actual.getStart());
+        assertEquals(expected.getEnd(), actual.getEnd());
+        assertEquals(expected.getAlignmentStart(), actual.getAlignmentStart());
+        assertEquals(expected.getAlignmentEnd(), actual.getAlignmentEnd());
+        assertEquals(expected.getCigarString(), actual.getCigarString());
+        assertEquals(expected.getMappingQuality(), actual.getMappingQuality());
+        assertEquals(expected.getReadStrand(), actual.getReadStrand());
+        assertEquals(expected.isPaired(), actual.isPaired());
+        assertEquals(expected.isProperPair(), actual.isProperPair());
+        assertEquals(expected.isFirstOfPair(), actual.isFirstOfPair());
+        assertEquals(expected.isDuplicate(), actual.isDuplicate());
+        assertEquals(expected.isPrimary(), actual.isPrimary());
+        assertEquals(expected.getInferredInsertSize(), actual.getInferredInsertSize());
+        assertEquals(expected.getPairOrientation(), actual.getPairOrientation());
+        assertEquals(expected.getReadGroup(), actual.getReadGroup());
+        assertEquals(expected.getSample(), actual.getSample());
+        assertEquals(expected.getReadSequence(), actual.getReadSequence());
+        assertEquals(expected.getAttribute("NM"), actual.getAttribute("NM"));
+
+        ReadMate expectedMate = expected.getMate();
+        ReadMate actualMate = actual.getMate();
+        assertEquals(expectedMate == null, actualMate == null);
+        if (expectedMate != null) {
+            assertEquals(expectedMate.getChr(), actualMate.getChr());
+            assertEquals(expectedMate.getStart(), actualMate.getStart());
+            assertEquals(expectedMate.isNegativeStrand(), actualMate.isNegativeStrand());
+            assertEquals(expectedMate.isMapped(), actualMate.isMapped());
+        }
+
+        compareBlocks(expected.getAlignmentBlocks(), actual.getAlignmentBlocks());
+        compareBlocks(expected.getInsertions(), actual.getInsertions());
+
+        List<Gap> expectedGaps = expected.getGaps();
+        List<Gap> actualGaps = actual.getGaps();
+        assertEquals(expectedGaps == null, actualGaps == null);
+        if (expectedGaps != null) {
+            assertEquals(expectedGaps.size(), actualGaps.size());
+            for (int i = 0; i < expectedGaps.size(); i++) {
+                assertEquals(expectedGaps.get(i).getStart(), actualGaps.get(i).getStart());
+                assertEquals(expectedGaps.get(i).getnBases(), actualGaps.get(i).getnBases());
+                assertEquals(expectedGaps.get(i).getType(), actualGaps.get(i).getType());
+            }
+        }
+    }
+
+    private static void compareBlocks(AlignmentBlock[] expected, AlignmentBlock[] actual) {
+        assertEquals(expected == null, actual == null);
+        if (expected == null) return;
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i].getStart(), actual[i].getStart());
+            assertEquals(expected[i].getLength(), actual[i].getLength());
+            assertEquals(expected[i].getPadding(), actual[i].getPadding());
+            assertEquals(expected[i].isSoftClipped(), actual[i].isSoftClipped());
+            assertArrayEquals(expected[i].getBases(), actual[i].getBases());
+            assertArrayEquals(expected[i].getQualities(), actual[i].getQualities());
+        }
+    }
+
+    private static List<PicardAlignment> readAlignments(String path) throws Exception {
+        List<PicardAlignment> alignments = new ArrayList<>();
+        try (SamReader reader = SamReaderFactory.makeDefault().validationStringency(ValidationStringency.SILENT).
+                open(new File(path))) {
+            SAMRecordIterator iter = reader.iterator();
+            while (iter.hasNext()) {
+                SAMRecord record = iter.next();
+                if (!record.getReadUnmappedFlag()) {
+                    alignments.add(new PicardAlignment(record));
+                }
+            }
+            iter.close();
+        }
+        return alignments;
+    }
+}
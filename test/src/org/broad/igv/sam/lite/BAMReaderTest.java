@@ -1,10 +1,16 @@
 package org.broad.igv.sam.lite;
 
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import htsjdk.samtools.ValidationStringency;
 import htsjdk.samtools.util.CloseableIterator;
 import org.broad.igv.sam.Alignment;
 import org.broad.igv.util.TestUtils;
 import org.junit.Test;
 
+import java.io.File;
 import java.util.*;
 
 import static junit.framework.Assert.assertEquals;
@@ -69,4 +75,39 @@ public class BAMReaderTest {
 
 
     }
+
+    /**
+     * Compare alignments decoded by the lite reader with those read by htsjdk.
+     */
+    @Test
+    public void compareWithHtsjdk() throws Exception {
+
+        String bamPath = TestUtils.DATA_DIR + "bam/gstt1_sample.bam";
+        String chr = "chr22";
+        int beg = 24376000;
+        int end = 24386000;
+
+        List<SAMRecord> expected = new ArrayList<>();
+        try (SamReader reader = SamReaderFactory.makeDefault().validationStringency(ValidationStringency.SILENT).open(new File(bamPath))) {
+            SAMRecordIterator iter = reader.queryOverlapping(chr, beg + 1, end + 1);
+            while (iter.hasNext()) {
+                expected.add(iter.next());
+            }
+        }
+
+        List<Alignment> alignments = new BAMReader(bamPath).readAlignments(chr, beg, end);
+
+        assertTrue(expected.size() > 100);
+        assertEquals(expected.size(), alignments.size());
+        for (int i = 0; i < alignments.size(); i++) {
+            SAMRecord record = expected.get(i);
+            BAMAlignment alignment = (BAMAlignment) alignments.get(i);
+            assertEquals(record.getReadName(), alignment.getReadName());
+            assertEquals(record.getAlignmentStart() - 1, alignment.getAlignmentStart());
+            assertEquals(record.getAlignmentEnd(), alignment.getAlignmentEnd());
+            assertEquals(record.getReadString(), alignment.getReadSequence());
+            assertEquals(record.getMappingQuality(), alignment.getMappingQuality());
+            assertEquals(record.getFlags(), alignment.flags);
+        }
+    }
 }
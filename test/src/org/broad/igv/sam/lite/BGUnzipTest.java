@@ -2,8 +2,14 @@ package org.broad.igv.sam.lite;
 
 import org.broad.igv.util.FileUtils;
 import org.broad.igv.util.TestUtils;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.samtools.util.BlockCompressedStreamConstants;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
 import static org.junit.Assert.*;
 
 /**
@@ -28,4 +34,35 @@ public class BGUnzipTest {
     }
 
 
+    /**
+     * Decode a series of blocks sequentially and in parallel, and with a partial block at the end.
+     */
+    @Test
+    public void decodeBlocks() throws Exception {
+
+        byte[] expected = new byte[3000000];
+        Random random = new Random(1);
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = (byte) ('A' + random.nextInt(4));
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (BlockCompressedOutputStream bgz = new BlockCompressedOutputStream(bos, null)) {
+            bgz.write(expected);
+        }
+        byte[] compressed = bos.toByteArray();
+
+        BGZFBlockDecoder decoder = new BGZFBlockDecoder();
+        for (boolean parallel : new boolean[]{false, true}) {
+            int length = decoder.decode(compressed, compressed.length, parallel);
+            assertEquals(expected.length, length);
+            assertArrayEquals(expected, Arrays.copyOf(decoder.getBuffer(), length));
+        }
+        assertArrayEquals(expected, BGUnzip.blockUnzip(compressed));
+
+        // Only the complete blocks are decoded
+        int length = decoder.decode(compressed, compressed.length / 2, true);
+        assertTrue(length > 0 && length < expected.length);
+        assertEquals(0, length % BlockCompressedStreamConstants.DEFAULT_UNCOMPRESSED_BLOCK_SIZE);
+        assertArrayEquals(Arrays.copyOf(expected, length), Arrays.copyOf(decoder.getBuffer(), length));
+    }
 }
@@ -0,0 +1,123 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.sam.reader;
+
+import htsjdk.samtools.util.CloseableIterator;
+import org.broad.igv.Globals;
+import org.broad.igv.sam.Alignment;
+import org.broad.igv.util.ResourceLocator;
+import org.broad.igv.util.TestUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ShardedAlignmentReaderTest {
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        Globals.setHeadless(true);
+    }
+
+    @Test
+    public void testShardBoundaries() throws Exception {
+
+        int start = 1000;
+        int end = 100000;
+        int[] boundaries = ShardedAlignmentReader.getShardBoundaries(start, end, 4);
+
+        assertEquals(start, boundaries[0]);
+        assertEquals(end, boundaries[boundaries.length - 1]);
+        for (int i = 1; i < boundaries.length - 1; i++) {
+            assertEquals(0, boundaries[i] % ShardedAlignmentReader.LINEAR_INDEX_WINDOW);
+            assertTrue(boundaries[i] > boundaries[i - 1]);
+        }
+        assertTrue(boundaries.length - 1 <= 5);
+
+        // A range smaller than a single index window is not split
+        boundaries = ShardedAlignmentReader.getShardBoundaries(10, 1000, 4);
+        assertEquals(2, boundaries.length);
+    }
+
+    /**
+     * The sharded query must return exactly the records, in the same order, as a sequential query.
+     */
+    @Test
+    public void testQueryMatchesSequential() throws Exception {
+
+        ResourceLocator locator = new ResourceLocator(TestUtils.createIndexedBam("sharded_index_test.bam").getPath());
+        String chr = "chr1";
+        int start = 0;
+        int end = 247000000;
+
+        AlignmentReader sequentialReader = AlignmentReaderFactory.getReader(locator);
+        List<String> expected = getRecords(sequentialReader, chr, start, end);
+        sequentialReader.close();
+
+        AlignmentReader reader = AlignmentReaderFactory.getReader(locator);
+        assertTrue(ShardedAlignmentReader.supports(locator, reader));
+        ShardedAlignmentReader shardedReader = new ShardedAlignmentReader(locator, reader, 4);
+        List<String> actual = getRecords(shardedReader, chr, start, end);
+        shardedReader.close();
+
+        assertTrue(expected.size() > 0);
+        assertEquals(expected, actual);
+    }
+
+    /**
+     * Canceling stops the queries in progress, but not a query started afterwards.
+     */
+    @Test
+    public void testCancelQuery() throws Exception {
+
+        ResourceLocator locator = new ResourceLocator(TestUtils.createIndexedBam("sharded_index_test.bam").getPath());
+        ShardedAlignmentReader shardedReader = new ShardedAlignmentReader(locator, AlignmentReaderFactory.getReader(locator), 4);
+
+        CloseableIterator<Alignment> canceledIter = shardedReader.query("chr1", 0, 247000000, false);
+        shardedReader.cancelQuery();
+        List<String> records = getRecords(shardedReader, "chr1", 0, 247000000);
+        assertFalse(canceledIter.hasNext());
+        canceledIter.close();
+
+        assertTrue(records.size() > 0);
+        assertEquals(records, getRecords(shardedReader, "chr1", 0, 247000000));
+        shardedReader.close();
+    }
+
+    private static List<String> getRecords(AlignmentReader reader, String chr, int start, int end) throws Exception {
+        List<String> records = new ArrayList<>();
+        CloseableIterator<Alignment> iter = reader.query(chr, start, end, false);
+        while (iter.hasNext()) {
+            Alignment a = iter.next();
+            records.add(a.getReadName() + ":" + a.getAlignmentStart() + ":" + a.isFirstOfPair());
+        }
+        iter.close();
+        return records;
+    }
+}
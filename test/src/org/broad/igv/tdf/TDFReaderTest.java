@@ -25,13 +25,24 @@
 
 package org.broad.igv.tdf;
 
+import org.broad.igv.track.TrackType;
+import org.broad.igv.track.WindowFunction;
 import org.broad.igv.util.ResourceLocator;
+import org.broad.igv.util.TestUtils;
 import org.junit.Test;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
 import static junit.framework.Assert.assertTrue;
 
 /**
@@ -70,4 +81,113 @@ public class TDFReaderTest {
         assertNotNull(tile);
 
     }
+
+    static final String DS_NAME = "/chr1/z0/mean";
+    static final int TILE_WIDTH = 1000;
+    static final int N_TILES = 20;
+    static final int EMPTY_TILE = 5;
+
+    @Test
+    public void testBatchedTiles() throws Exception {
+        checkBatchedTiles(false);
+        checkBatchedTiles(true);
+    }
+
+    private void checkBatchedTiles(boolean compressed) throws Exception {
+
+        File testFile = writeTestFile("batched" + compressed + ".tdf", compressed);
+        TDFReader reader = TDFReader.getReader(testFile.getAbsolutePath());
+        TDFDataset ds = reader.getDataset(DS_NAME);
+
+        List<TDFTile> tiles = reader.getTiles(ds, 0, N_TILES + 5, true);
+        assertEquals(N_TILES, tiles.size());
+        assertNull(tiles.get(EMPTY_TILE));
+        for (int t = 0; t < N_TILES; t++) {
+            assertTileEquals(reader.readTile(ds, t), tiles.get(t));
+        }
+
+        // Overlapping range is served from the cache
+        List<TDFTile> cached = reader.getTiles(ds, 3, 8, true);
+        for (int t = 3; t <= 8; t++) {
+            assertTrue(cached.get(t - 3) == tiles.get(t));
+        }
+
+        // Empty tiles are excluded from location queries
+        assertEquals(N_TILES - 1, ds.getTiles(0, N_TILES * TILE_WIDTH).size());
+
+        ds.clearCache();
+        assertTrue(reader.tileCache.isEmpty());
+        reader.close();
+    }
+
+    @Test
+    public void testConcurrentReads() throws Exception {
+
+        File testFile = writeTestFile("concurrent.tdf", true);
+        TDFReader reader = TDFReader.getReader(testFile.getAbsolutePath());
+        TDFDataset ds = reader.getDataset(DS_NAME);
+
+        List<TDFTile> expected = new ArrayList<>();
+        for (int t = 0; t < N_TILES; t++) {
+            expected.add(reader.readTile(ds, t));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<TDFTile>>> futures = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                final int start = (i * 7) % N_TILES;
+                final boolean cache = i % 2 == 0;
+                futures.add(executor.submit(() -> reader.getTiles(ds, start, N_TILES - 1, cache)));
+            }
+            for (Future<List<TDFTile>> f : futures) {
+                List<TDFTile> tiles = f.get();
+                int start = N_TILES - tiles.size();
+                for (int k = 0; k < tiles.size(); k++) {
+                    assertTileEquals(expected.get(start + k), tiles.get(k));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+        reader.close();
+    }
+
+    private static File writeTestFile(String name, boolean compressed) throws Exception {
+
+        File testFile = new File(TestUtils.TMP_OUTPUT_DIR, name);
+        testFile.deleteOnExit();
+
+        String[] trackNames = {"sample 1", "sample 2"};
+        List<WindowFunction> wfs = Collections.singletonList(WindowFunction.mean);
+        TDFWriter writer = new TDFWriter(testFile, "hg18", TrackType.OTHER, "", trackNames, wfs, compressed);
+        writer.createDataset(DS_NAME, TDFDataset.DataType.FLOAT, TILE_WIDTH, N_TILES);
+        for (int t = 0; t < N_TILES; t++) {
+            if (t == EMPTY_TILE) continue;
+            float[][] data = new float[trackNames.length][100];
+            for (int i = 0; i < trackNames.length; i++) {
+                for (int j = 0; j < data[i].length; j++) {
+                    data[i][j] = t * 1000 + i * 100 + j;
+                }
+            }
+            int start = t * TILE_WIDTH;
+            writer.writeTile(DS_NAME, t, new TDFFixedTile(start, start, 10, data));
+        }
+        writer.closeFile();
+        return testFile;
+    }
+
+    private static void assertTileEquals(TDFTile expected, TDFTile actual) {
+        if (expected == null) {
+            assertNull(actual);
+            return;
+        }
+        assertEquals(expected.getSize(), actual.getSize());
+        for (int i = 0; i < 2; i++) {
+            for (int j = 0; j < expected.getSize(); j++) {
+                assertEquals(expected.getStartPosition(j), actual.getStartPosition(j));
+                assertEquals(expected.getValue(i, j), actual.getValue(i, j));
+            }
+        }
+    }
 }
@@ -0,0 +1,178 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.tools;
+
+import org.broad.igv.Globals;
+import org.broad.igv.feature.Chromosome;
+import org.broad.igv.feature.Strand;
+import org.broad.igv.feature.genome.Genome;
+import org.broad.igv.feature.genome.GenomeManager;
+import org.broad.igv.tools.CoverageCounterTest.TestData;
+import org.broad.igv.tools.CoverageCounterTest.TestDataConsumer;
+import org.broad.igv.util.TestUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of {@link CoverageCounter} which need only local test data, and no genome.
+ */
+public class CoverageCounterLocalTest {
+
+    @BeforeClass
+    public static void setUpClass() {
+        Globals.setHeadless(true);
+    }
+
+    /**
+     * Windows spanning more than the initial ring buffer capacity, and windows before the first open window,
+     * should be counted and output in order.
+     */
+    @Test
+    public void testReadCounterWindows() throws Exception {
+
+        int windowSize = 10;
+        CoverageCounter cc = new CoverageCounter("test.bam", null, windowSize, 0, null, null, null, 0, CoverageCounter.BASES);
+        CoverageCounter.ReadCounter counter = cc.new ReadCounter("chr1");
+
+        int nWindows = 5 * CoverageCounter.ReadCounter.INITIAL_CAPACITY;
+        for (int pos = 1000; pos < 1000 + nWindows * windowSize; pos++) {
+            counter.incrementCount(pos, (byte) 'A', Strand.POSITIVE);
+        }
+        counter.incrementCount(500, (byte) 'C', Strand.NEGATIVE);
+        counter.incrementDeletion(505, Strand.NEGATIVE);
+
+        List<Integer> starts = new ArrayList<Integer>();
+        List<float[]> values = new ArrayList<float[]>();
+        counter.closeBucketsBefore(Integer.MAX_VALUE, (chr, start, end, data) -> {
+            starts.add(start);
+            values.add(data.clone());
+        });
+
+        assertEquals(nWindows + 1, starts.size());
+        assertEquals(500, (int) starts.get(0));
+        assertArrayEquals(new float[]{0, 0.1f, 0, 0, 0, 0.1f, 0}, values.get(0), 0);
+        for (int i = 1; i < starts.size(); i++) {
+            assertEquals(1000 + (i - 1) * windowSize, (int) starts.get(i));
+            assertArrayEquals(new float[]{1, 0, 0, 0, 0, 0, 0}, values.get(i), 0);
+        }
+
+        // All windows are closed
+        starts.clear();
+        counter.closeBucketsBefore(Integer.MAX_VALUE, (chr, start, end, data) -> starts.add(start));
+        assertEquals(0, starts.size());
+    }
+
+    /**
+     * Counting chromosomes concurrently should give exactly the same windows, in the same order, as a sequential count.
+     */
+    @Test
+    public void testCountThreads() throws Exception {
+
+        File bamFile = TestUtils.createIndexedBam("count_index_test.bam");
+
+        int[] countFlags = new int[]{0, CoverageCounter.BASES + CoverageCounter.STRANDS_BY_READ};
+        for (int flags : countFlags) {
+
+            TestDataConsumer expected = new TestDataConsumer();
+            new CoverageCounter(bamFile.getPath(), expected, 25, 0, null, null, null, 0, flags).parse();
+
+            TestDataConsumer actual = new TestDataConsumer();
+            CoverageCounter cc = new CoverageCounter(bamFile.getPath(), actual, 25, 0, null, null, null, 0, flags);
+            cc.setThreads(3);
+            cc.parse();
+
+            assertTrue(expected.testDatas.size() > 0);
+            assertEquals(expected.attributes.get("totalCount"), actual.attributes.get("totalCount"));
+            assertEquals(expected.testDatas.size(), actual.testDatas.size());
+            for (int i = 0; i < expected.testDatas.size(); i++) {
+                TestData e = expected.testDatas.get(i);
+                TestData a = actual.testDatas.get(i);
+                assertEquals(e.chr, a.chr);
+                assertEquals(e.start, a.start);
+                assertEquals(e.end, a.end);
+                assertArrayEquals(e.data, a.data, 0);
+            }
+        }
+    }
+
+    /**
+     * With a genome naming chromosomes "1", "2", ... and a bam file naming them "chr1", "chr2", ..., a concurrent
+     * count should output the same windows and wig file, under the genome's names, as a sequential count.
+     */
+    @Test
+    public void testCountThreadsChromosomeAliases() throws Exception {
+
+        File bamFile = TestUtils.createIndexedBam("count_index_test.bam");
+
+        List<Chromosome> chromosomes = new ArrayList<Chromosome>();
+        chromosomes.add(new Chromosome(0, "M", 16571));
+        for (int i = 1; i <= 22; i++) {
+            chromosomes.add(new Chromosome(i, String.valueOf(i), 250000000));
+        }
+        chromosomes.add(new Chromosome(23, "X", 160000000));
+        chromosomes.add(new Chromosome(24, "Y", 60000000));
+        Genome aliasGenome = new Genome("aliases", chromosomes);
+
+        Genome currentGenome = GenomeManager.getInstance().getCurrentGenome();
+        GenomeManager.getInstance().setCurrentGenome(aliasGenome);
+        try {
+            File expectedWig = new File(TestUtils.TMP_OUTPUT_DIR, "count_aliases_expected.wig");
+            TestDataConsumer expected = new TestDataConsumer();
+            new CoverageCounter(bamFile.getPath(), expected, 25, 0, expectedWig, aliasGenome, null, 0, 0).parse();
+
+            File actualWig = new File(TestUtils.TMP_OUTPUT_DIR, "count_aliases_actual.wig");
+            TestDataConsumer actual = new TestDataConsumer();
+            CoverageCounter cc = new CoverageCounter(bamFile.getPath(), actual, 25, 0, actualWig, aliasGenome, null, 0, 0);
+            cc.setThreads(3);
+            cc.parse();
+
+            assertTrue(expected.testDatas.size() > 0);
+            assertEquals(expected.testDatas.size(), actual.testDatas.size());
+            for (int i = 0; i < expected.testDatas.size(); i++) {
+                TestData e = expected.testDatas.get(i);
+                TestData a = actual.testDatas.get(i);
+                assertTrue(aliasGenome.getChromosome(e.chr) != null && !e.chr.startsWith("chr"));
+                assertEquals(e.chr, a.chr);
+                assertEquals(e.start, a.start);
+                assertArrayEquals(e.data, a.data, 0);
+            }
+
+            List<String> expectedLines = Files.readAllLines(expectedWig.toPath());
+            assertTrue(expectedLines.size() > 1);
+            assertEquals(expectedLines, Files.readAllLines(actualWig.toPath()));
+        } finally {
+            GenomeManager.getInstance().setCurrentGenome(currentGenome);
+        }
+    }
+
+}
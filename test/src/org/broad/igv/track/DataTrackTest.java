@@ -0,0 +1,88 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.track;
+
+import org.broad.igv.data.BasicScore;
+import org.broad.igv.feature.Chromosome;
+import org.broad.igv.feature.LocusScore;
+import org.broad.igv.feature.genome.Genome;
+import org.broad.igv.feature.genome.GenomeManager;
+import org.broad.igv.ui.panel.ReferenceFrame;
+import org.broad.igv.util.ResourceLocator;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DataTrackTest {
+
+    @Test
+    public void testLoadFrames() {
+
+        GenomeManager.getInstance().setCurrentGenome(
+                new Genome("frames", Arrays.asList(new Chromosome(0, "chr1", 1000000))));
+
+        List<String> queries = new ArrayList<>();
+        DataTrack track = new DataTrack(new ResourceLocator("frames"), "frames", "frames") {
+            @Override
+            public LoadedDataInterval<List<LocusScore>> getSummaryScores(String chr, int start, int end, int zoom) {
+                queries.add(chr + ":" + start + "-" + end);
+                List<LocusScore> scores = new ArrayList<>();
+                for (int pos = (start / 100) * 100; pos < end; pos += 100) {
+                    scores.add(new BasicScore(pos, pos + 100, 1));
+                }
+                return new LoadedDataInterval<>(chr, start, end, zoom, scores);
+            }
+        };
+
+        // Two loci close together and one far away, all at the same zoom
+        List<ReferenceFrame> frames = Arrays.asList(
+                frame("a", 10000), frame("b", 11500), frame("c", 500000));
+        track.loadFrames(frames);
+
+        assertEquals(2, queries.size());
+        assertEquals("chr1:10000-12501", queries.get(0));
+        for (ReferenceFrame frame : frames) {
+            assertTrue(track.isReadyToPaint(frame));
+            assertTrue(track.getInViewScores(frame).size() > 0);
+        }
+
+        // Already loaded
+        track.loadFrames(frames);
+        assertEquals(2, queries.size());
+    }
+
+    private static ReferenceFrame frame(String name, int start) {
+        ReferenceFrame frame = new ReferenceFrame(name);
+        frame.setBounds(0, 1000);
+        frame.jumpTo("chr1", start, start + 1000);
+        return frame;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.track;
+
+import htsjdk.tribble.Feature;
+import org.broad.igv.feature.BasicFeature;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of {@link GFFFeatureSource.SortedFeatures}, which need no genome.
+ */
+public class GFFSortedFeaturesTest {
+
+    /**
+     * Features found by binary search are those overlapping the query, in start order
+     */
+    @Test
+    public void testSortedFeaturesOverlapping() {
+        Random random = new Random(1);
+        List<Feature> features = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            int start = random.nextInt(100000);
+            int length = random.nextInt(i % 10 == 0 ? 20000 : 500);
+            features.add(new BasicFeature("chr1", start, start + length));
+        }
+        GFFFeatureSource.SortedFeatures sortedFeatures = new GFFFeatureSource.SortedFeatures(new ArrayList<>(features));
+
+        for (int i = 0; i < 1000; i++) {
+            int start = random.nextInt(110000) - 5000;
+            int end = start + random.nextInt(i % 2 == 0 ? 100 : 30000);
+            List<Feature> expected = new ArrayList<>();
+            for (Feature f : features) {
+                if (f.getStart() <= end && f.getEnd() > start) {
+                    expected.add(f);
+                }
+            }
+            List<Feature> actual = sortedFeatures.getOverlapping(start, end);
+            assertEquals(new HashSet<>(expected), new HashSet<>(actual));
+            assertEquals(expected.size(), actual.size());
+            for (int j = 1; j < actual.size(); j++) {
+                assertTrue(actual.get(j - 1).getStart() <= actual.get(j).getStart());
+            }
+        }
+    }
+}
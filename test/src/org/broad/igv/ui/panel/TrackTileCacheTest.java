@@ -0,0 +1,154 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.ui.panel;
+
+import org.broad.igv.Globals;
+import org.broad.igv.data.BasicScore;
+import org.broad.igv.feature.Chromosome;
+import org.broad.igv.feature.LocusScore;
+import org.broad.igv.feature.genome.Genome;
+import org.broad.igv.feature.genome.GenomeManager;
+import org.broad.igv.renderer.BarChartRenderer;
+import org.broad.igv.track.DataTrack;
+import org.broad.igv.track.LoadedDataInterval;
+import org.broad.igv.track.RenderContext;
+import org.broad.igv.util.ResourceLocator;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TrackTileCacheTest {
+
+    static final int WIDTH = 1000;
+    static final int HEIGHT = 20;
+
+    ReferenceFrame frame;
+    DataTrack track;
+
+    @Before
+    public void setUp() {
+        Globals.setHeadless(true);
+        GenomeManager.getInstance().setCurrentGenome(
+                new Genome("tiles", Arrays.asList(new Chromosome(0, "chr1", 1000000))));
+
+        frame = new ReferenceFrame("tiles");
+        frame.setBounds(0, WIDTH);
+        frame.jumpTo("chr1", 10000, 10000 + WIDTH);
+
+        // Scores of 100 bp, so that at 1 bp per pixel tiles and direct rendering agree exactly
+        track = new DataTrack(new ResourceLocator("tiles"), "tiles", "tiles") {
+            @Override
+            public LoadedDataInterval<List<LocusScore>> getSummaryScores(String chr, int start, int end, int zoom) {
+                List<LocusScore> scores = new ArrayList<>();
+                for (int pos = (start / 100) * 100; pos < end; pos += 100) {
+                    scores.add(new BasicScore(pos, pos + 100, (pos / 100) % 10));
+                }
+                return new LoadedDataInterval<>(chr, start, end, zoom, scores);
+            }
+        };
+        track.setRendererClass(BarChartRenderer.class);
+        track.load(frame);
+    }
+
+    @Test
+    public void testDrawTiles() {
+
+        assertEquals(1.0, frame.getScale(), 1.0e-9);
+        TrackTileCache cache = new TrackTileCache();
+
+        assertArrayEquals(renderDirect(), renderTiles(cache));
+        assertEquals(4, cache.getMissCount());
+        assertEquals(4, cache.size());
+
+        // Unchanged view, drawn from the cache
+        assertArrayEquals(renderDirect(), renderTiles(cache));
+        assertEquals(4, cache.getHitCount());
+
+        // Pan, a single new tile is rendered
+        frame.jumpTo("chr1", 10100, 10100 + WIDTH);
+        assertTrue(track.isReadyToPaint(frame));
+        assertArrayEquals(renderDirect(), renderTiles(cache));
+        assertEquals(8, cache.getHitCount());
+        assertEquals(5, cache.getMissCount());
+
+        // A change of render options misses
+        track.setColor(Color.green);
+        renderTiles(cache);
+        assertEquals(10, cache.getMissCount());
+
+        cache.receiveEvent(new Object());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testRemoveTrack() {
+        TrackTileCache cache = new TrackTileCache();
+        renderTiles(cache);
+        assertEquals(4, cache.size());
+
+        cache.remove(new DataTrack(new ResourceLocator("other"), "other", "other") {
+            @Override
+            public LoadedDataInterval<List<LocusScore>> getSummaryScores(String chr, int start, int end, int zoom) {
+                return null;
+            }
+        });
+        assertEquals(4, cache.size());
+
+        cache.remove(track);
+        assertEquals(0, cache.size());
+        assertEquals("tiles=0 bytes=0 hits=0 misses=4", cache.toString());
+    }
+
+    private int[] renderDirect() {
+        return render(context -> track.render(context, new Rectangle(0, 0, WIDTH, HEIGHT)));
+    }
+
+    private int[] renderTiles(TrackTileCache cache) {
+        return render(context -> assertTrue(cache.draw(track, new Rectangle(0, 0, WIDTH, HEIGHT), context)));
+    }
+
+    private int[] render(java.util.function.Consumer<RenderContext> renderer) {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        Rectangle rect = new Rectangle(0, 0, WIDTH, HEIGHT);
+        RenderContext context = new RenderContext(new JPanel(), g, frame, rect);
+        try {
+            renderer.accept(context);
+        } finally {
+            context.dispose();
+            g.dispose();
+        }
+        return image.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH);
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.util;
+
+import org.broad.igv.feature.Chromosome;
+import org.broad.igv.feature.genome.Genome;
+import org.broad.igv.feature.genome.GenomeManager;
+import org.broad.igv.track.AbstractTrack;
+import org.broad.igv.track.RenderContext;
+import org.broad.igv.ui.panel.ReferenceFrame;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LoadSchedulerTest {
+
+    LoadScheduler scheduler;
+    ReferenceFrame frame;
+    List<String> loads;
+    CountDownLatch gate;
+
+    @Before
+    public void setUp() {
+        GenomeManager.getInstance().setCurrentGenome(
+                new Genome("scheduler", Arrays.asList(new Chromosome(0, "chr1", 1000000))));
+        frame = new ReferenceFrame("scheduler");
+        frame.setBounds(0, 1000);
+        frame.jumpTo("chr1", 10000, 11000);
+
+        // A single I/O thread, held by a blocking task until the test has queued its loads
+        scheduler = new LoadScheduler(1, 1);
+        loads = Collections.synchronizedList(new ArrayList<>());
+        gate = new CountDownLatch(1);
+        scheduler.submit(() -> {
+            gate.await();
+            return null;
+        }, LoadScheduler.PRIORITY_USER);
+    }
+
+    @Test
+    public void testCoalesce() throws Exception {
+        TestTrack track = new TestTrack("a");
+        CompletableFuture<Void> f1 = scheduler.scheduleLoad(track, frame, LoadScheduler.PRIORITY_VISIBLE);
+        CompletableFuture<Void> f2 = scheduler.scheduleLoad(track, frame, LoadScheduler.PRIORITY_VISIBLE);
+        assertSame(f1, f2);
+
+        gate.countDown();
+        f1.get(10, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("a chr1:10,001-11,000"), loads);
+        assertEquals(1, scheduler.getStatistics().getCoalescedCount());
+    }
+
+    @Test
+    public void testSupersede() throws Exception {
+        TestTrack track = new TestTrack("a");
+        CompletableFuture<Void> f1 = scheduler.scheduleLoad(track, frame, LoadScheduler.PRIORITY_VISIBLE);
+        frame.jumpTo("chr1", 20000, 21000);
+        CompletableFuture<Void> f2 = scheduler.scheduleLoad(track, frame, LoadScheduler.PRIORITY_VISIBLE);
+        assertTrue(f1.isCancelled());
+
+        gate.countDown();
+        f2.get(10, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("a chr1:20,001-21,000"), loads);
+        assertEquals(1, scheduler.getStatistics().getCancelledCount());
+    }
+
+    @Test
+    public void testCancelObsolete() throws Exception {
+        TestTrack a = new TestTrack("a");
+        TestTrack b = new TestTrack("b");
+        CompletableFuture<Void> fa = scheduler.scheduleLoad(a, frame, LoadScheduler.PRIORITY_VISIBLE);
+        frame.jumpTo("chr1", 20000, 21000);
+        CompletableFuture<Void> fb = scheduler.scheduleLoad(b, frame, LoadScheduler.PRIORITY_VISIBLE);
+
+        scheduler.cancelObsolete(frame);
+        assertTrue(fa.isCancelled());
+        assertFalse(fb.isCancelled());
+        assertEquals(1, scheduler.getQueueDepth());
+
+        gate.countDown();
+        fb.get(10, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("b chr1:20,001-21,000"), loads);
+    }
+
+    @Test
+    public void testCancelTrackAndFrame() {
+        TestTrack a = new TestTrack("a");
+        TestTrack b = new TestTrack("b");
+        CompletableFuture<Void> fa = scheduler.scheduleLoad(a, frame, LoadScheduler.PRIORITY_VISIBLE);
+        CompletableFuture<Void> fb = scheduler.scheduleLoad(b, frame, LoadScheduler.PRIORITY_VISIBLE);
+
+        scheduler.cancel(a);
+        assertTrue(fa.isCancelled());
+        assertFalse(fb.isCancelled());
+
+        scheduler.cancel(frame);
+        assertTrue(fb.isCancelled());
+        assertEquals(0, scheduler.getQueueDepth());
+        gate.countDown();
+    }
+
+    @Test
+    public void testRunningLoadNotCancelled() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        TestTrack track = new TestTrack("a") {
+            @Override
+            public void load(ReferenceFrame frame) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.load(frame);
+            }
+        };
+        CompletableFuture<Void> f = scheduler.scheduleLoad(track, frame, LoadScheduler.PRIORITY_VISIBLE);
+        gate.countDown();
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        // The running load stays pending, so it is shared rather than scheduled again
+        scheduler.cancel(track);
+        scheduler.cancel(frame);
+        assertFalse(f.isCancelled());
+        assertSame(f, scheduler.scheduleLoad(track, frame, LoadScheduler.PRIORITY_VISIBLE));
+
+        release.countDown();
+        f.get(10, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("a chr1:10,001-11,000"), loads);
+        assertEquals(0, scheduler.getStatistics().getCancelledCount());
+    }
+
+    @Test
+    public void testLoadFrames() throws Exception {
+        ReferenceFrame other = new ReferenceFrame("other");
+        other.setBounds(0, 1000);
+        other.jumpTo("chr1", 50000, 51000);
+        List<ReferenceFrame> frames = Arrays.asList(frame, other);
+
+        // Requested by the data panel of each frame, loaded once
+        TestTrack track = new TestTrack("a");
+        CompletableFuture<Void> f1 = scheduler.scheduleLoad(track, frames, LoadScheduler.PRIORITY_VISIBLE);
+        CompletableFuture<Void> f2 = scheduler.scheduleLoad(track, new ArrayList<>(frames), LoadScheduler.PRIORITY_VISIBLE);
+        assertSame(f1, f2);
+
+        // Cancelled when either frame moves
+        other.jumpTo("chr1", 60000, 61000);
+        scheduler.cancelObsolete(frame);
+        assertFalse(f1.isCancelled());
+        scheduler.cancelObsolete(other);
+        assertTrue(f1.isCancelled());
+
+        CompletableFuture<Void> f3 = scheduler.scheduleLoad(track, frames, LoadScheduler.PRIORITY_VISIBLE);
+        gate.countDown();
+        f3.get(10, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("a chr1:10,001-11,000", "a chr1:60,001-61,000"), loads);
+    }
+
+    @Test
+    public void testPriority() throws Exception {
+        CompletableFuture<Void> f1 = scheduler.scheduleLoad(new TestTrack("adjacent"), frame, LoadScheduler.PRIORITY_ADJACENT);
+        CompletableFuture<Void> f2 = scheduler.scheduleLoad(new TestTrack("visible2"), frame, LoadScheduler.PRIORITY_VISIBLE + 1);
+        CompletableFuture<Void> f3 = scheduler.scheduleLoad(new TestTrack("visible1"), frame, LoadScheduler.PRIORITY_VISIBLE);
+        CompletableFuture<Void> f4 = scheduler.scheduleLoad(new TestTrack("visible1b"), frame, LoadScheduler.PRIORITY_VISIBLE);
+
+        gate.countDown();
+        CompletableFuture.allOf(f1, f2, f3, f4).get(10, TimeUnit.SECONDS);
+        List<String> tracks = new ArrayList<>();
+        for (String load : loads) {
+            tracks.add(load.split(" ")[0]);
+        }
+        assertEquals(Arrays.asList("visible1", "visible1b", "visible2", "adjacent"), tracks);
+    }
+
+    class TestTrack extends AbstractTrack {
+
+        TestTrack(String id) {
+            super(id);
+        }
+
+        @Override
+        public boolean isReadyToPaint(ReferenceFrame frame) {
+            return false;
+        }
+
+        @Override
+        public void load(ReferenceFrame frame) {
+            loads.add(getId() + " " + frame.getFormattedLocusString());
+        }
+
+        @Override
+        public void render(RenderContext context, Rectangle rect) {
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class StaticIntervalIndexTest {
+
+    @Test
+    public void testEmpty() {
+        StaticIntervalIndex<Integer> index = StaticIntervalIndex.<Integer>builder().build();
+        assertEquals(0, index.size());
+        assertTrue(index.findOverlapping(0, 100).isEmpty());
+        assertEquals(0, index.countOverlapping(0, 100));
+    }
+
+    @Test
+    public void testBoundsAreInclusive() {
+        StaticIntervalIndex<String> index = StaticIntervalIndex.<String>builder()
+                .add(10, 20, "a")
+                .add(0, 5, "b")
+                .add(20, 30, "c")
+                .build();
+
+        assertEquals("b", index.getValue(0));
+        assertEquals(Arrays.asList("a", "c"), index.findOverlapping(20, 20));
+        assertEquals(Arrays.asList("b"), index.findOverlapping(5, 9));
+        assertTrue(index.findOverlapping(6, 9).isEmpty());
+        assertTrue(index.findOverlapping(31, 40).isEmpty());
+    }
+
+    /**
+     * Compare random queries with the results of an {@link IntervalTree} over the same intervals.
+     */
+    @Test
+    public void testCompareWithIntervalTree() {
+
+        Random random = new Random(1);
+        for (int n : new int[]{1, 2, 3, 15, 16, 17, 100, 1000, 5000}) {
+
+            IntervalTree<Integer> tree = new IntervalTree<>();
+            StaticIntervalIndex.Builder<Integer> builder = StaticIntervalIndex.builder();
+            for (int i = 0; i < n; i++) {
+                int start = random.nextInt(100000);
+                int end = start + random.nextInt(random.nextInt(10) == 0 ? 20000 : 500);
+                tree.insert(new Interval<>(start, end, i));
+                builder.add(start, end, i);
+            }
+            StaticIntervalIndex<Integer> index = builder.build();
+
+            for (int q = 0; q < 500; q++) {
+                int start = random.nextInt(110000) - 5000;
+                int end = start + random.nextInt(5000);
+
+                List<Integer> expected = new ArrayList<>();
+                for (Interval<Integer> interval : tree.findOverlapping(start, end)) {
+                    expected.add(interval.getValue());
+                }
+                List<Integer> actual = index.findOverlapping(start, end);
+                expected.sort(null);
+                List<Integer> sortedActual = new ArrayList<>(actual);
+                sortedActual.sort(null);
+                assertEquals(expected, sortedActual);
+
+                // Streamed results are in start order, and agree with the list
+                int[] lastStart = {Integer.MIN_VALUE};
+                List<Integer> streamed = new ArrayList<>();
+                int count = index.findOverlapping(start, end, (s, e, value) -> {
+                    assertTrue(s >= lastStart[0]);
+                    lastStart[0] = s;
+                    streamed.add(value);
+                });
+                assertEquals(actual, streamed);
+                assertEquals(actual.size(), count);
+            }
+        }
+    }
+}
@@ -37,6 +37,10 @@ import org.broad.igv.prefs.PreferencesManager;
 import org.broad.igv.tools.IgvTools;
 import org.broad.igv.track.Track;
 import org.broad.igv.ui.IGV;
+import htsjdk.samtools.BAMIndexer;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import htsjdk.samtools.ValidationStringency;
 import htsjdk.tribble.Feature;
 import htsjdk.tribble.readers.AsciiLineReader;
 import org.junit.Assert;
@@ -58,6 +62,8 @@ import java.lang.management.ThreadInfo;
 import java.lang.management.ThreadMXBean;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 
 import static junit.framework.Assert.assertTrue;
@@ -142,6 +148,28 @@ public class TestUtils {
         indexFile.deleteOnExit();
     }
 
+    /**
+     * Copy the test bam file samtools/index_test.bam to the output directory under a new name, and index it.
+     * Both files are deleted on exit.
+     *
+     * @param name name of the copy
+     * @return the copy
+     * @throws IOException
+     */
+    public static File createIndexedBam(String name) throws IOException {
+        File bamFile = new File(TMP_OUTPUT_DIR, name);
+        Files.copy(new File(DATA_DIR + "samtools/index_test.bam").toPath(), bamFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        bamFile.deleteOnExit();
+        File indexFile = new File(bamFile.getPath() + ".bai");
+        indexFile.deleteOnExit();
+        try (SamReader samReader = SamReaderFactory.makeDefault().validationStringency(ValidationStringency.SILENT).
+                enable(SamReaderFactory.Option.INCLUDE_SOURCE_IN_RECORDS).open(bamFile)) {
+            BAMIndexer.createIndex(samReader, indexFile);
+        }
+        return bamFile;
+    }
+
     /**
      * Load a test genome
      *
@@ -0,0 +1,68 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.util.collections;
+
+import org.apache.commons.math.stat.StatUtils;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class QuantileSketchTest {
+
+    @Test
+    public void testExact() {
+        QuantileSketch sketch = new QuantileSketch(1000);
+        assertTrue(Double.isNaN(sketch.getPercentile(50)));
+
+        Random random = new Random(5);
+        double[] values = new double[1000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (float) random.nextGaussian();
+            sketch.add((float) values[i]);
+        }
+        assertTrue(sketch.isExact());
+        for (double p : new double[]{2, 10, 50, 90, 98}) {
+            assertEquals(StatUtils.percentile(values, p), sketch.getPercentile(p), 0);
+        }
+    }
+
+    @Test
+    public void testEstimate() {
+        int n = 1000000;
+        QuantileSketch sketch = new QuantileSketch(QuantileSketch.DEFAULT_K);
+        for (int i = 0; i < n; i++) {
+            // A shuffled sequence of 0 ... n-1, the p-th percentile is ~ p * n / 100
+            sketch.add(Math.floorMod(i * 7919L, n));
+        }
+        assertFalse(sketch.isExact());
+        assertEquals(n, sketch.getCount());
+        for (double p : new double[]{2, 10, 50, 90, 98}) {
+            assertEquals(p * n / 100, sketch.getPercentile(p), 0.01 * n);
+        }
+    }
+}
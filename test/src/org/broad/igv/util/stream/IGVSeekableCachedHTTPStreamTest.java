@@ -0,0 +1,238 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.util.stream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.broad.igv.Globals;
+import org.broad.igv.util.TestUtils;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests against a local http server which supports Range requests and counts them.
+ */
+public class IGVSeekableCachedHTTPStreamTest {
+
+    static final int BLOCK_SIZE = 1000;
+
+    static HttpServer server;
+    static byte[] content;
+    static URL url;
+    static AtomicInteger requestCount = new AtomicInteger();
+
+    RemoteBlockCache cache;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        Globals.setHeadless(true);
+
+        content = new byte[25500];
+        new Random(7).nextBytes(content);
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/data.bin", exchange -> sendRange(exchange, null));
+        server.createContext("/private.bin", exchange -> sendRange(exchange, "private, max-age=0"));
+        server.start();
+        url = new URL("http://localhost:" + server.getAddress().getPort() + "/data.bin");
+    }
+
+    private static void sendRange(HttpExchange exchange, String cacheControl) throws IOException {
+        requestCount.incrementAndGet();
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        String[] tokens = range.substring("bytes=".length()).split("-");
+        int start = Integer.parseInt(tokens[0]);
+        int end = Math.min(Integer.parseInt(tokens[1]), content.length - 1);
+        if (start >= content.length) {
+            exchange.sendResponseHeaders(416, -1);
+            exchange.close();
+            return;
+        }
+        exchange.getResponseHeaders().add("ETag", "\"v1\"");
+        if (cacheControl != null) {
+            exchange.getResponseHeaders().add("Cache-Control", cacheControl);
+        }
+        exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + content.length);
+        exchange.sendResponseHeaders(206, end - start + 1);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(content, start, end - start + 1);
+        }
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        server.stop(0);
+    }
+
+    @Before
+    public void setUp() {
+        cache = new RemoteBlockCache(10000000, null, 0);
+        requestCount.set(0);
+    }
+
+    @Test
+    public void testSequentialRead() throws Exception {
+
+        IGVSeekableCachedHTTPStream stream = new IGVSeekableCachedHTTPStream(url, cache, BLOCK_SIZE);
+        byte[] result = readAll(stream, 300);
+        assertArrayEquals(content, result);
+        assertEquals(content.length, stream.length());
+        assertTrue(stream.eof());
+
+        // 85 reads of 300 bytes, read-ahead should need far fewer requests than the 26 blocks
+        int sequentialRequests = requestCount.get();
+        assertTrue("Requests: " + sequentialRequests, sequentialRequests <= 6);
+
+        // A second stream is served entirely from the cache
+        stream = new IGVSeekableCachedHTTPStream(url, cache, BLOCK_SIZE);
+        assertArrayEquals(content, readAll(stream, 777));
+        assertEquals(sequentialRequests, requestCount.get());
+    }
+
+    @Test
+    public void testCoalescing() throws Exception {
+
+        IGVSeekableCachedHTTPStream stream = new IGVSeekableCachedHTTPStream(url, cache, BLOCK_SIZE);
+
+        // Cache blocks 2 and 4
+        readAt(stream, 2100, 10);
+        readAt(stream, 4100, 10);
+        assertEquals(2, requestCount.get());
+
+        // Blocks 1, 3 and 5 are missing, separated by single cached blocks -- a single request
+        readAt(stream, 1000, 5000);
+        assertEquals(3, requestCount.get());
+
+        // Random access across cached blocks -- no requests
+        readAt(stream, 1500, 4000);
+        assertEquals(3, requestCount.get());
+    }
+
+    @Test
+    public void testReadPastEnd() throws Exception {
+
+        IGVSeekableCachedHTTPStream stream = new IGVSeekableCachedHTTPStream(url, cache, BLOCK_SIZE);
+        byte[] buffer = new byte[1000];
+        stream.seek(content.length - 100);
+        assertEquals(100, stream.read(buffer, 0, buffer.length));
+        assertEquals(-1, stream.read(buffer, 0, buffer.length));
+        stream.seek(content.length + 5000);
+        assertEquals(-1, stream.read());
+    }
+
+    @Test
+    public void testDiskCache() throws Exception {
+
+        File dir = new File(TestUtils.TMP_OUTPUT_DIR, "blockCacheTest");
+        TestUtils.clearOutputDir();
+        dir.mkdirs();
+
+        RemoteBlockCache diskCache = new RemoteBlockCache(0, dir, 10000000);
+        IGVSeekableCachedHTTPStream stream = new IGVSeekableCachedHTTPStream(url, diskCache, BLOCK_SIZE);
+        assertArrayEquals(content, readAll(stream, 2000));
+        int requests = requestCount.get();
+
+        // A new cache over the same directory, as after a restart.  The first request discovers the ETag,
+        // the rest of the resource comes from disk.
+        diskCache = new RemoteBlockCache(0, dir, 10000000);
+        stream = new IGVSeekableCachedHTTPStream(url, diskCache, BLOCK_SIZE);
+        assertArrayEquals(content, readAll(stream, 2000));
+        assertEquals(requests + 1, requestCount.get());
+        assertTrue(diskCache.getDiskHits() > 0);
+    }
+
+    @Test
+    public void testNoDiskCacheForPrivate() throws Exception {
+
+        URL base = new URL("http://localhost:" + server.getAddress().getPort());
+        URL signedUrl = new URL(base, "/data.bin?X-Goog-Signature=abc");
+        URL privateUrl = new URL(base, "/private.bin");
+        assertTrue(IGVSeekableCachedHTTPStream.isAuthenticated(signedUrl));
+        assertFalse(IGVSeekableCachedHTTPStream.isAuthenticated(url));
+
+        File dir = new File(TestUtils.TMP_OUTPUT_DIR, "blockCacheTest");
+        TestUtils.clearOutputDir();
+        dir.mkdirs();
+
+        for (URL u : new URL[]{signedUrl, privateUrl}) {
+            RemoteBlockCache diskCache = new RemoteBlockCache(10000000, dir, 10000000);
+            IGVSeekableCachedHTTPStream stream = new IGVSeekableCachedHTTPStream(u, diskCache, BLOCK_SIZE);
+            assertArrayEquals(content, readAll(stream, 2000));
+
+            // Still cached in memory
+            int requests = requestCount.get();
+            stream = new IGVSeekableCachedHTTPStream(u, diskCache, BLOCK_SIZE);
+            assertArrayEquals(content, readAll(stream, 2000));
+            assertEquals(requests, requestCount.get());
+
+            // But not on disk
+            diskCache = new RemoteBlockCache(0, dir, 10000000);
+            stream = new IGVSeekableCachedHTTPStream(u, diskCache, BLOCK_SIZE);
+            assertArrayEquals(content, readAll(stream, 2000));
+            assertEquals(0, diskCache.getDiskHits());
+        }
+    }
+
+    @Test
+    public void testParseContentLength() {
+        assertEquals(12345, IGVSeekableCachedHTTPStream.parseContentLength("bytes 0-999/12345"));
+        assertEquals(-1, IGVSeekableCachedHTTPStream.parseContentLength("bytes 0-999/*"));
+        assertEquals(-1, IGVSeekableCachedHTTPStream.parseContentLength(null));
+    }
+
+    private static byte[] readAll(IGVSeekableCachedHTTPStream stream, int chunkSize) throws Exception {
+        byte[] result = new byte[content.length];
+        byte[] buffer = new byte[chunkSize];
+        int pos = 0;
+        int n;
+        while ((n = stream.read(buffer, 0, buffer.length)) > 0) {
+            System.arraycopy(buffer, 0, result, pos, n);
+            pos += n;
+        }
+        assertEquals(content.length, pos);
+        return result;
+    }
+
+    private static void readAt(IGVSeekableCachedHTTPStream stream, int position, int len) throws Exception {
+        byte[] buffer = new byte[len];
+        stream.seek(position);
+        stream.readFully(buffer);
+        assertArrayEquals(Arrays.copyOfRange(content, position, position + len), buffer);
+    }
+}
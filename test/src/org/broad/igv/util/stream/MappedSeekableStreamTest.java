@@ -0,0 +1,213 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.util.stream;
+
+import htsjdk.samtools.seekablestream.SeekableFileStream;
+import htsjdk.samtools.seekablestream.SeekableStream;
+import org.broad.igv.Globals;
+import org.broad.igv.prefs.Constants;
+import org.broad.igv.prefs.IGVPreferences;
+import org.broad.igv.prefs.PreferencesManager;
+import org.broad.igv.util.TestUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class MappedSeekableStreamTest {
+
+    // Small segments so reads cross segment boundaries
+    static final int SEGMENT_SIZE = 1000;
+
+    static byte[] expectedBytes;
+    static File testFile;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        Globals.setHeadless(true);
+        expectedBytes = new byte[10500];
+        new Random(42).nextBytes(expectedBytes);
+        testFile = new File(TestUtils.TMP_OUTPUT_DIR, "mappedStreamTest.bin");
+        testFile.deleteOnExit();
+        Files.write(testFile.toPath(), expectedBytes);
+    }
+
+    @Test
+    public void testStreamMatchesFileStream() throws Exception {
+
+        MappedSeekableStream mapped = new MappedSeekableStream(testFile, SEGMENT_SIZE);
+        SeekableStream expected = new SeekableFileStream(testFile);
+        assertEquals(expected.length(), mapped.length());
+
+        long[] positions = {0, 999, 1000, 5555, 10400};
+        for (long pos : positions) {
+            mapped.seek(pos);
+            expected.seek(pos);
+            assertEquals(expected.read(), mapped.read());
+
+            byte[] a = new byte[300];
+            byte[] b = new byte[300];
+            int na = expected.read(a, 0, a.length);
+            int nb = mapped.read(b, 0, b.length);
+            assertEquals(na, nb);
+            assertArrayEquals(a, b);
+            assertEquals(expected.position(), mapped.position());
+            assertEquals(expected.eof(), mapped.eof());
+        }
+
+        mapped.seek(expectedBytes.length);
+        assertEquals(-1, mapped.read());
+        assertEquals(-1, mapped.read(new byte[10], 0, 10));
+        assertTrue(mapped.eof());
+
+        expected.close();
+        mapped.close();
+    }
+
+    @Test
+    public void testSlice() throws Exception {
+
+        MappedSeekableStream mapped = new MappedSeekableStream(testFile, SEGMENT_SIZE);
+
+        // Within a segment, and spanning segments
+        int[][] ranges = {{10, 500}, {1000, 1000}, {950, 100}, {500, 3000}};
+        for (int[] range : ranges) {
+            ByteBuffer slice = mapped.slice(range[0], range[1]);
+            assertEquals(range[1], slice.remaining());
+            byte[] bytes = new byte[range[1]];
+            slice.get(bytes);
+            assertArrayEquals(Arrays.copyOfRange(expectedBytes, range[0], range[0] + range[1]), bytes);
+        }
+        assertEquals(0, mapped.position());
+        mapped.close();
+    }
+
+    @Test
+    public void testConcurrentPositionalReads() throws Exception {
+
+        MappedSeekableStream mapped = new MappedSeekableStream(testFile, SEGMENT_SIZE);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                final int pos = (i * 997) % (expectedBytes.length - 400);
+                futures.add(executor.submit(() -> {
+                    byte[] b = new byte[400];
+                    mapped.readFully(pos, b, 0, b.length);
+                    return Arrays.equals(Arrays.copyOfRange(expectedBytes, pos, pos + 400), b);
+                }));
+            }
+            for (Future<Boolean> f : futures) {
+                assertTrue(f.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        mapped.close();
+    }
+
+    @Test
+    public void testMappedBytes() throws Exception {
+
+        long before = MappedSeekableStream.getMappedBytes();
+        MappedSeekableStream mapped = new MappedSeekableStream(testFile);
+        assertEquals(before + expectedBytes.length, MappedSeekableStream.getMappedBytes());
+        mapped.close();
+        mapped.close();
+        assertEquals(before, MappedSeekableStream.getMappedBytes());
+    }
+
+    @Test
+    public void testFactory() throws Exception {
+
+        File tdfFile = new File(TestUtils.TMP_OUTPUT_DIR, "mappedStreamTest.tdf");
+        tdfFile.deleteOnExit();
+        Files.write(tdfFile.toPath(), expectedBytes);
+
+        IGVPreferences prefs = PreferencesManager.getPreferences();
+        String mapped = prefs.get(Constants.MAPPED_LOCAL_FILES);
+        try {
+            prefs.put(Constants.MAPPED_LOCAL_FILES, "false");
+            SeekableStream stream = IGVSeekableStreamFactory.getInstance().getStreamFor(tdfFile.getAbsolutePath());
+            assertFalse(stream instanceof MappedSeekableStream);
+            stream.close();
+
+            prefs.put(Constants.MAPPED_LOCAL_FILES, "true");
+            stream = IGVSeekableStreamFactory.getInstance().getStreamFor(tdfFile.getAbsolutePath());
+            assertEquals(!Globals.IS_WINDOWS, stream instanceof MappedSeekableStream);
+            if (stream instanceof MappedSeekableStream) {
+                assertTrue(stream == IGVSeekableStreamFactory.getInstance().getBufferedStream(stream));
+            }
+            stream.close();
+
+            // Only indexed read-only formats are mapped
+            stream = IGVSeekableStreamFactory.getInstance().getStreamFor(testFile.getAbsolutePath());
+            assertFalse(stream instanceof MappedSeekableStream);
+            stream.close();
+        } finally {
+            prefs.put(Constants.MAPPED_LOCAL_FILES, mapped);
+        }
+    }
+
+    /**
+     * Reading pages lost by truncating a mapped file is an IOException, not a crash
+     */
+    @Test
+    public void testTruncatedFile() throws Exception {
+
+        File truncatedFile = new File(TestUtils.TMP_OUTPUT_DIR, "mappedStreamTruncated.bin");
+        truncatedFile.deleteOnExit();
+        byte[] bytes = new byte[64 * 1024];
+        Files.write(truncatedFile.toPath(), bytes);
+
+        MappedSeekableStream mapped = new MappedSeekableStream(truncatedFile);
+        try (FileChannel channel = FileChannel.open(truncatedFile.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(0);
+        }
+        try {
+            mapped.readFully(32 * 1024, new byte[100], 0, 100);
+            fail("Expected IOException");
+        } catch (IOException e) {
+            // Expected
+        } finally {
+            mapped.close();
+        }
+    }
+}
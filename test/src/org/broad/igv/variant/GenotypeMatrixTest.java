@@ -0,0 +1,133 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.variant;
+
+import htsjdk.tribble.AbstractFeatureReader;
+import htsjdk.tribble.FeatureReader;
+import htsjdk.tribble.readers.AsciiLineReader;
+import htsjdk.tribble.readers.AsciiLineReaderIterator;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFHeader;
+import org.broad.igv.feature.tribble.VCFWrapperCodec;
+import org.broad.igv.util.TestUtils;
+import org.broad.igv.variant.vcf.VCFVariant;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class GenotypeMatrixTest {
+
+    List<String> samples;
+    List<Variant> variants;
+
+    @Before
+    public void setUp() throws Exception {
+        String path = TestUtils.DATA_DIR + "vcf/ex2.vcf";
+        variants = new ArrayList<>();
+        try (FeatureReader<VariantContext> reader = AbstractFeatureReader.getFeatureReader(path, new VCFCodec(), false)) {
+            samples = ((VCFHeader) reader.getHeader()).getGenotypeSamples();
+            for (VariantContext vc : reader.iterator()) {
+                variants.add(new VCFVariant(vc, vc.getContig()));
+            }
+        }
+    }
+
+    @Test
+    public void testMatchesGenotypes() {
+
+        // File order, and reversed so genotypes are looked up by name
+        List<String> reversed = new ArrayList<>(samples);
+        Collections.reverse(reversed);
+
+        for (List<String> columns : Arrays.asList(samples, reversed)) {
+            GenotypeMatrix matrix = new GenotypeMatrix(columns, variants);
+            assertEquals(variants.size(), matrix.getRowCount());
+            for (Variant variant : variants) {
+                int row = matrix.getRow(variant);
+                for (String sample : samples) {
+                    int column = matrix.getColumn(sample);
+                    Genotype genotype = variant.getGenotype(sample);
+                    assertEquals(GenotypeMatrix.getType(genotype), matrix.getType(row, column));
+
+                    // DP is a standard field, not an attribute of the htsjdk genotype
+                    htsjdk.variant.variantcontext.Genotype vcfGenotype =
+                            ((VCFVariant) variant).getVariantContext().getGenotype(sample);
+                    assertEquals(vcfGenotype.hasDP() ? vcfGenotype.getDP() : -1, matrix.getDepth(row, column));
+                    assertEquals((int) genotype.getPhredScaledQual(), matrix.getQuality(row, column));
+                }
+            }
+        }
+    }
+
+    /**
+     * Genotypes of text VCF lines are parsed when first used.  Genotypes which cannot be parsed are missing.
+     */
+    @Test
+    public void testMalformedGenotypes() throws Exception {
+
+        VCFWrapperCodec codec = new VCFWrapperCodec(new VCFCodec(), null);
+        try (FileInputStream is = new FileInputStream(TestUtils.DATA_DIR + "vcf/ex2.vcf")) {
+            codec.readActualHeader(new AsciiLineReaderIterator(new AsciiLineReader(is)));
+        }
+        VCFVariant good = codec.decode("20\t17330\t.\tT\tA\t.\tq10;s50\tNS=3;DP=11\tGT:GQ:DP\t0|0:49:3\t0|1:3:5\t0/0:41:3");
+        VCFVariant bad = codec.decode("20\t17340\t.\tT\tA\t.\tPASS\tNS=3;DP=11\tGT:GQ:DP\t0|0:x:3\t0|1:3:5\t0/0:41:3");
+        assertEquals("T*", bad.getReference());
+
+        GenotypeMatrix matrix = new GenotypeMatrix(samples, Arrays.asList(good, bad));
+        for (int column = 0; column < samples.size(); column++) {
+            assertEquals(GenotypeMatrix.MISSING, matrix.getType(1, column));
+        }
+        assertEquals(GenotypeMatrix.HOM_REF, matrix.getType(0, 0));
+        assertEquals(GenotypeMatrix.HET, matrix.getType(0, 1));
+        assertEquals(49, matrix.getQuality(0, 0));
+    }
+
+    @Test
+    public void testTypes() {
+        GenotypeMatrix matrix = new GenotypeMatrix(samples, variants);
+
+        // 20 14370: 0|0:48:1  1|0:48:8  ./.:43:5
+        assertEquals(Arrays.asList("NA00001", "NA00002", "NA00003"), samples);
+        assertEquals(GenotypeMatrix.HOM_REF, matrix.getType(0, 0));
+        assertEquals(GenotypeMatrix.HET, matrix.getType(0, 1));
+        assertEquals(GenotypeMatrix.NO_CALL, matrix.getType(0, 2));
+        assertEquals(8, matrix.getDepth(0, 1));
+        assertEquals(43, matrix.getQuality(0, 2));
+
+        // Unknown sample and variant
+        assertEquals(-1, matrix.getColumn("unknown"));
+        assertEquals(GenotypeMatrix.MISSING, matrix.getType(0, -1));
+        assertEquals(-1, matrix.getRow(new VCFVariant(((VCFVariant) variants.get(0)).getVariantContext(), "20")));
+    }
+}
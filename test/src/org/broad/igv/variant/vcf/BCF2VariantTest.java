@@ -0,0 +1,141 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2007-2017 Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.broad.igv.variant.vcf;
+
+import htsjdk.tribble.readers.PositionalBufferedStream;
+import htsjdk.variant.bcf2.BCF2Codec;
+import htsjdk.variant.variantcontext.VariantContext;
+import org.broad.igv.feature.tribble.BCF2WrapperCodec;
+import org.broad.igv.util.TestUtils;
+import org.broad.igv.variant.Allele;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class BCF2VariantTest {
+
+    static final String PATH = TestUtils.DATA_DIR + "bcf/ex2.bcf";
+
+    /**
+     * The site fields and INFO attributes parsed from the record bytes match those of the htsjdk context
+     */
+    @Test
+    public void testSiteFields() throws Exception {
+
+        List<VCFVariant> expected = readCodecVariants();
+        List<VCFVariant> variants = readVariants();
+        assertEquals(expected.size(), variants.size());
+        assertTrue(variants.size() > 0);
+
+        for (int i = 0; i < variants.size(); i++) {
+            VCFVariant e = expected.get(i);
+            VCFVariant v = variants.get(i);
+            assertTrue(v instanceof BCF2Variant);
+            assertNull("Context decoded eagerly", v.variantContext);
+
+            assertEquals(e.getChr(), v.getChr());
+            assertEquals(e.getStart(), v.getStart());
+            assertEquals(e.getEnd(), v.getEnd());
+            assertEquals(e.getPositionString(), v.getPositionString());
+            assertEquals(e.getID(), v.getID());
+            assertEquals(e.getReference(), v.getReference());
+            assertEquals(toStrings(e.getAlternateAlleles()), toStrings(v.getAlternateAlleles()));
+            assertEquals(e.getType(), v.getType());
+            assertEquals(e.getPhredScaledQual(), v.getPhredScaledQual(), 1.0e-6);
+            assertEquals(e.isFiltered(), v.isFiltered());
+            assertEquals(new ArrayList<>(e.getFilters()), new ArrayList<>(v.getFilters()));
+
+            Map<String, Object> attributes = e.getAttributes();
+            assertEquals(attributes, v.getAttributes());
+            for (String key : attributes.keySet()) {
+                assertEquals(e.getAttributeAsString(key), v.getAttributeAsString(key));
+            }
+            assertArrayEquals(e.getAlleleFreqs(), v.getAlleleFreqs(), 1.0e-9);
+            assertArrayEquals(e.getAlleleCounts(), v.getAlleleCounts());
+            assertEquals(e.getTotalAlleleCount(), v.getTotalAlleleCount());
+            assertNull("Context decoded for site fields", v.variantContext);
+        }
+    }
+
+    /**
+     * Genotypes are decoded from the record bytes on demand
+     */
+    @Test
+    public void testGenotypes() throws Exception {
+
+        List<VCFVariant> expected = readCodecVariants();
+        List<VCFVariant> variants = readVariants();
+
+        for (int i = 0; i < variants.size(); i++) {
+            VCFVariant e = expected.get(i);
+            VCFVariant v = variants.get(i);
+            assertEquals(e.getSampleNames(), v.getSampleNames());
+            for (String sample : e.getSampleNames()) {
+                assertEquals(e.getGenotype(sample).getType(), v.getGenotype(sample).getType());
+                assertEquals(e.getGenotype(sample).getAttributes(), v.getGenotype(sample).getAttributes());
+            }
+            assertNotNull(v.variantContext);
+        }
+    }
+
+    private static List<String> toStrings(List<Allele> alleles) {
+        List<String> strings = new ArrayList<>();
+        for (Allele allele : alleles) {
+            strings.add(new String(allele.getBases()));
+        }
+        return strings;
+    }
+
+    private static List<VCFVariant> readVariants() throws Exception {
+        BCF2WrapperCodec codec = new BCF2WrapperCodec(new BCF2Codec(), null);
+        List<VCFVariant> variants = new ArrayList<>();
+        try (PositionalBufferedStream stream = new PositionalBufferedStream(new FileInputStream(PATH))) {
+            codec.readHeader(stream);
+            while (!codec.isDone(stream)) {
+                variants.add(codec.decode(stream));
+            }
+        }
+        return variants;
+    }
+
+    private static List<VCFVariant> readCodecVariants() throws Exception {
+        BCF2Codec codec = new BCF2Codec();
+        List<VCFVariant> variants = new ArrayList<>();
+        try (PositionalBufferedStream stream = new PositionalBufferedStream(new FileInputStream(PATH))) {
+            codec.readHeader(stream);
+            while (!stream.isDone()) {
+                VariantContext vc = codec.decode(stream);
+                variants.add(new VCFVariant(vc, vc.getContig()));
+            }
+        }
+        return variants;
+    }
+}
@@ -25,16 +25,18 @@
 
 package util;
 
+import htsjdk.samtools.*;
 import org.broad.igv.util.TestUtils;
 import org.junit.Ignore;
 
+import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.Random;
 
 /**
- * Generates alignment files (.aligned format) for testing
+ * Generates alignment files (.aligned format, and indexed bam files) for testing
  *
  * @author Jim Robinson
  * @date 3/2/12
@@ -100,4 +102,93 @@ public class AlignmentFileGenerator {
         }
 
     }
+
+    /**
+     * Generate a coordinate sorted, indexed bam file of paired reads with random bases.  About 1 in 10 reads has
+     * a small deletion or insertion.  The file is reproducible for a given seed.
+     *
+     * @param outputFile    bam file, the index is written alongside it
+     * @param chr           the single reference sequence
+     * @param chrLength     length of the reference sequence
+     * @param averageDepth  average coverage depth
+     * @param readLength    length of each read
+     * @param seed          random seed
+     */
+    public static void generateBamFile(File outputFile, String chr, int chrLength, int averageDepth,
+                                       int readLength, long seed) {
+
+        Random rand = new Random(seed);
+        byte[] bases = {'A', 'C', 'G', 'T'};
+
+        SAMFileHeader header = new SAMFileHeader();
+        header.setSortOrder(SAMFileHeader.SortOrder.coordinate);
+        header.addSequence(new SAMSequenceRecord(chr, chrLength));
+        SAMReadGroupRecord readGroup = new SAMReadGroupRecord("rg1");
+        readGroup.setSample("sample1");
+        readGroup.setPlatform("ILLUMINA");
+        header.addReadGroup(readGroup);
+
+        int nPairs = (int) ((long) chrLength * averageDepth / (2 * readLength));
+        int insertSize = 3 * readLength;
+
+        SAMFileWriter writer = new SAMFileWriterFactory().setCreateIndex(true).makeBAMWriter(header, false, outputFile);
+        try {
+            for (int i = 0; i < nPairs; i++) {
+                String name = "read" + i;
+                int start = 1 + rand.nextInt(chrLength - insertSize - readLength);
+                int mateStart = start + insertSize - readLength + (int) (readLength * 0.2 * rand.nextGaussian());
+                mateStart = Math.max(start, Math.min(chrLength - readLength, mateStart));
+                boolean reverse = rand.nextBoolean();
+
+                SAMRecord first = createRecord(header, name, start, mateStart, reverse, true, readLength, bases, rand);
+                SAMRecord second = createRecord(header, name, mateStart, start, !reverse, false, readLength, bases, rand);
+                int tlen = mateStart + readLength - start;
+                first.setInferredInsertSize(tlen);
+                second.setInferredInsertSize(-tlen);
+                writer.addAlignment(first);
+                writer.addAlignment(second);
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static SAMRecord createRecord(SAMFileHeader header, String name, int start, int mateStart,
+                                          boolean reverse, boolean firstOfPair, int readLength,
+                                          byte[] bases, Random rand) {
+
+        SAMRecord record = new SAMRecord(header);
+        record.setReadName(name);
+        record.setReferenceIndex(0);
+        record.setAlignmentStart(start);
+        record.setMateReferenceIndex(0);
+        record.setMateAlignmentStart(mateStart);
+        record.setMappingQuality(rand.nextInt(61));
+
+        int flags = READ_PAIRED_FLAG | PROPER_PAIR_FLAG | (firstOfPair ? FIRST_OF_PAIR_FLAG : SECOND_OF_PAIR_FLAG);
+        if (reverse) flags |= READ_STRAND_FLAG;
+        else flags |= MATE_STRAND_FLAG;
+        record.setFlags(flags);
+
+        byte[] readBases = new byte[readLength];
+        byte[] qualities = new byte[readLength];
+        for (int i = 0; i < readLength; i++) {
+            readBases[i] = bases[rand.nextInt(bases.length)];
+            qualities[i] = (byte) (10 + rand.nextInt(30));
+        }
+        record.setReadBases(readBases);
+        record.setBaseQualities(qualities);
+
+        int indel = rand.nextInt(10) == 0 ? 1 + rand.nextInt(3) : 0;
+        int left = readLength / 2;
+        if (indel == 0) {
+            record.setCigarString(readLength + "M");
+        } else if (rand.nextBoolean()) {
+            record.setCigarString(left + "M" + indel + "D" + (readLength - left) + "M");
+        } else {
+            record.setCigarString(left + "M" + indel + "I" + (readLength - left - indel) + "M");
+        }
+        record.setAttribute("RG", "rg1");
+        return record;
+    }
 }